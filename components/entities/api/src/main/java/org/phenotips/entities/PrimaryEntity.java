@@ -17,6 +17,7 @@
  */
 package org.phenotips.entities;
 
+import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.stability.Unstable;
@@ -55,6 +56,16 @@
      */
     DocumentReference getDocument();
 
+    /**
+     * Returns the document where the entity is stored, as it was loaded for this entity. Code working with the entity's
+     * data should use this instead of fetching the document again.
+     *
+     * @return the document, may be an in-memory copy that isn't saved yet, or {@code null} if this entity isn't backed
+     *         by an already loaded document
+     * @since 1.3M4
+     */
+    DocumentModelBridge getXDocument();
+
     /**
      * Returns the internal identifier of the entity.
      *
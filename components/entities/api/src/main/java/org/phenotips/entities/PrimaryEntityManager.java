@@ -96,6 +96,17 @@
      */
     Iterator<E> getAll();
 
+    /**
+     * Retrieves references to the documents of all entities of the managed type, without loading the entities
+     * themselves. This is useful for filtering the entities before actually loading them, since loading an entity is
+     * much more expensive than handling its reference.
+     *
+     * @return an iterator over the references to all entities, in the same order as {@link #getAll()}, may be empty if
+     *         no entities exist
+     * @since 1.3M4
+     */
+    Iterator<DocumentReference> getAllReferences();
+
     /**
      * Deletes an entity.
      *
@@ -71,6 +71,12 @@ public DocumentReference getDocument()
         return this.document.getDocumentReference();
     }
 
+    @Override
+    public XWikiDocument getXDocument()
+    {
+        return this.document;
+    }
+
     @Override
     public String getId()
     {
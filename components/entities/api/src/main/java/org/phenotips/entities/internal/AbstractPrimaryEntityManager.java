@@ -37,6 +37,7 @@
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -117,6 +118,17 @@
     /** The constructor for concrete {@link PrimaryEntity} instance class being managed. */
     private Constructor<? extends E> econstructor;
 
+    /** Hands out the sequence numbers used for new documents, initialized from {@link #getLastUsedId()}. */
+    private final PrimaryEntityIdAllocator idAllocator =
+        new PrimaryEntityIdAllocator(new PrimaryEntityIdAllocator.LastUsedIdProvider()
+        {
+            @Override
+            public long getLastUsedId()
+            {
+                return AbstractPrimaryEntityManager.this.getLastUsedId();
+            }
+        });
+
     @Override
     public E create()
     {
@@ -124,27 +136,11 @@ public E create()
     }
 
     @Override
-    public synchronized E create(DocumentReference creator)
+    public E create(DocumentReference creator)
     {
         try {
             XWikiContext context = this.xcontextProvider.get();
-            DocumentReference newDoc = getNextDocument();
-            XWikiDocument doc = (XWikiDocument) this.bridge.getDocument(newDoc);
-
-            DocumentReference template = getEntityXClassReference();
-            template = new DocumentReference(template.getName().concat("Template"), template.getLastSpaceReference());
-            if (!this.bridge.exists(template)) {
-                template = new DocumentReference(template.getName().replaceAll("Class(Template)$", "$1"),
-                    template.getLastSpaceReference());
-            }
-            if (this.bridge.exists(template)) {
-                doc.readFromTemplate(template, context);
-            }
-            if (creator != null) {
-                doc.setCreatorReference(creator);
-                doc.setAuthorReference(creator);
-                doc.setContentAuthorReference(creator);
-            }
+            XWikiDocument doc = prepareDocument(getNextDocument(), creator);
             context.getWiki().saveDocument(doc, context);
 
             return load(doc);
@@ -203,21 +199,18 @@ public E getByName(String name)
     @Override
     public Iterator<E> getAll()
     {
-        try {
-            Query q = this.qm.createQuery(
-                "select doc.fullName from Document as doc, doc.object("
-                    + this.localSerializer.serialize(getEntityXClassReference())
-                    + ") as entity where doc.name not in (:template1, :template2) order by doc.name asc",
-                Query.XWQL).bindValue("template1", this.getEntityXClassReference().getName() + "Template")
-                .bindValue("template2",
-                    StringUtils.removeEnd(this.getEntityXClassReference().getName(), "Class") + "Template");
-            List<String> docNames = q.execute();
-            return new LazyPrimaryEntityIterator<>(docNames, this);
-        } catch (QueryException ex) {
-            this.logger.warn("Failed to query all entities of type [{}]: {}", getEntityXClassReference(),
-                ex.getMessage());
+        return new LazyPrimaryEntityIterator<>(getAllDocumentNames(), this);
+    }
+
+    @Override
+    public Iterator<DocumentReference> getAllReferences()
+    {
+        List<String> docNames = getAllDocumentNames();
+        List<DocumentReference> references = new ArrayList<>(docNames.size());
+        for (String docName : docNames) {
+            references.add(this.stringResolver.resolve(docName, getDataSpace()));
         }
-        return Collections.emptyIterator();
+        return references.iterator();
     }
 
     @Override
@@ -246,25 +239,102 @@ public E load(DocumentModelBridge document) throws IllegalArgumentException
         return null;
     }
 
+    /**
+     * Lists the names of all the documents holding entities of the managed type, excluding the templates.
+     *
+     * @return a list of local document names, sorted by name, may be empty if no entities exist or the query fails
+     */
+    protected List<String> getAllDocumentNames()
+    {
+        try {
+            Query q = this.qm.createQuery(
+                "select doc.fullName from Document as doc, doc.object("
+                    + this.localSerializer.serialize(getEntityXClassReference())
+                    + ") as entity where doc.name not in (:template1, :template2) order by doc.name asc",
+                Query.XWQL).bindValue("template1", this.getEntityXClassReference().getName() + "Template")
+                .bindValue("template2",
+                    StringUtils.removeEnd(this.getEntityXClassReference().getName(), "Class") + "Template");
+            return q.execute();
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to query all entities of type [{}]: {}", getEntityXClassReference(),
+                ex.getMessage());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Prepares a new entity document in memory, without saving it: the document is filled from the entity template, if
+     * one exists, and the given principal is set as its creator.
+     *
+     * @param reference the reference of the new document
+     * @param creator a reference to the document representing a principal (a user or a group) which will be set as the
+     *            creator for the entity, may be {@code null}
+     * @return the prepared document
+     * @throws Exception if accessing the document or the template fails
+     */
+    protected XWikiDocument prepareDocument(DocumentReference reference, DocumentReference creator) throws Exception
+    {
+        XWikiContext context = this.xcontextProvider.get();
+        XWikiDocument doc = (XWikiDocument) this.bridge.getDocument(reference);
+
+        DocumentReference template = getEntityXClassReference();
+        template = new DocumentReference(template.getName().concat("Template"), template.getLastSpaceReference());
+        if (!this.bridge.exists(template)) {
+            template = new DocumentReference(template.getName().replaceAll("Class(Template)$", "$1"),
+                template.getLastSpaceReference());
+        }
+        if (this.bridge.exists(template)) {
+            doc.readFromTemplate(template, context);
+        }
+        if (creator != null) {
+            doc.setCreatorReference(creator);
+            doc.setAuthorReference(creator);
+            doc.setContentAuthorReference(creator);
+        }
+        return doc;
+    }
+
     /**
      * Gets a reference to the next document that can be used for a newly created entity. It uses {@link #getIdPrefix()
-     * a short prefix} and {@link #getLastUsedId() a sequence number} for the document name, and {@link #getDataSpace()
-     * a space that can be configured by subclases}.
+     * a short prefix} and a sequence number for the document name, and {@link #getDataSpace() a space that can be
+     * configured by subclases}. Sequence numbers are allocated without locking, starting after {@link #getLastUsedId()
+     * the last used number}, which is only looked up once per wiki.
      *
      * @return a reference for a new document
      */
     protected DocumentReference getNextDocument()
     {
-        String prefix = getIdPrefix();
-        long id = getLastUsedId();
+        String wiki = this.xcontextProvider.get().getWikiId();
         DocumentReference newDoc;
         do {
-            newDoc = this.referenceResolver.resolve(new EntityReference(
-                prefix + String.format("%07d", ++id), EntityType.DOCUMENT, getDataSpace()));
+            newDoc = getDocumentReference(this.idAllocator.allocate(wiki));
         } while (this.bridge.exists(newDoc));
         return newDoc;
     }
 
+    /**
+     * Gets references to several documents that can be used for newly created entities, named just like
+     * {@link #getNextDocument()} would. The sequence numbers are allocated as a single block, so the returned documents
+     * are reserved for the caller and won't be used for other entities, even before they are saved.
+     *
+     * @param count how many references are needed
+     * @return a list of references to new documents, with increasing sequence numbers
+     */
+    protected List<DocumentReference> getNextDocuments(int count)
+    {
+        List<DocumentReference> result = new ArrayList<>(count);
+        String wiki = this.xcontextProvider.get().getWikiId();
+        long first = this.idAllocator.allocate(wiki, count);
+        for (long id = first; id < first + count; ++id) {
+            addIfNew(getDocumentReference(id), result);
+        }
+        // Some of the names were already taken, fill in with more numbers
+        while (result.size() < count) {
+            addIfNew(getDocumentReference(this.idAllocator.allocate(wiki)), result);
+        }
+        return result;
+    }
+
     /**
      * Gets a prefix for all {@code #create() generated} documents. This implementation computes it from the uppercase
      * letters of the XClass name, excluding {@code Class}, e.g. for {@code PhenoTips.DiseaseStudyClass} the prefix will
@@ -279,6 +349,12 @@ protected String getIdPrefix()
         return name.replaceAll("\\p{Lower}++", "");
     }
 
+    /**
+     * Looks up the highest sequence number used in the names of the existing entities. Only used for initializing the
+     * sequence once per wiki, since afterwards numbers are allocated in memory.
+     *
+     * @return the last used number, or {@code 0} if there are no entities yet
+     */
     protected long getLastUsedId()
     {
         long crtMaxID = 0;
@@ -300,6 +376,19 @@ protected long getLastUsedId()
         return crtMaxID;
     }
 
+    private DocumentReference getDocumentReference(long id)
+    {
+        return this.referenceResolver.resolve(new EntityReference(
+            getIdPrefix() + String.format("%07d", id), EntityType.DOCUMENT, getDataSpace()));
+    }
+
+    private void addIfNew(DocumentReference reference, List<DocumentReference> references)
+    {
+        if (!this.bridge.exists(reference)) {
+            references.add(reference);
+        }
+    }
+
     /**
      * Gets a reference to {@link PrimaryEntity#getType() the XClass used} for the primary entities being managed. The
      * base implementation assumes that this class is annotated with a {@code Named} with its value set to a partial
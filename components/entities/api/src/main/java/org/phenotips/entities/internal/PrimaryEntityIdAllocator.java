@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the sequence numbers used for naming new entities of one type, without locking. The sequence is persisted
+ * by the entities themselves: the last number already used is looked up only once per wiki, the first time a number is
+ * requested, and from then on numbers are taken from an in-memory atomic counter. Several consecutive numbers can be
+ * reserved at once, for creating entities in bulk.
+ * <p>
+ * This assumes that all the entities of this type are created through the same allocator. Numbers that end up being
+ * used by other means, for example by importing documents, are not known, so callers should still skip names that are
+ * already taken.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class PrimaryEntityIdAllocator
+{
+    /** Looks up the last sequence number already used in the current wiki, called once per wiki. */
+    public interface LastUsedIdProvider
+    {
+        /**
+         * Looks up the last sequence number already used in the current wiki.
+         *
+         * @return the highest number in use, or {@code 0} if there are no entities yet
+         */
+        long getLastUsedId();
+    }
+
+    /** The last allocated number, for each wiki. */
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private final LastUsedIdProvider lastUsedIdProvider;
+
+    /**
+     * Simple constructor.
+     *
+     * @param lastUsedIdProvider used to initialize the counter of each wiki
+     */
+    public PrimaryEntityIdAllocator(LastUsedIdProvider lastUsedIdProvider)
+    {
+        this.lastUsedIdProvider = lastUsedIdProvider;
+    }
+
+    /**
+     * Allocates a new sequence number.
+     *
+     * @param wiki the wiki where a new entity will be created
+     * @return a number that was not returned before for the same wiki
+     */
+    public long allocate(String wiki)
+    {
+        return allocate(wiki, 1);
+    }
+
+    /**
+     * Allocates a block of consecutive sequence numbers.
+     *
+     * @param wiki the wiki where new entities will be created
+     * @param count how many numbers are needed, must be positive
+     * @return the first number in the allocated block, the following {@code count - 1} numbers are also reserved
+     */
+    public long allocate(String wiki, int count)
+    {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one identifier must be allocated");
+        }
+        return getCounter(wiki).getAndAdd(count) + 1;
+    }
+
+    private AtomicLong getCounter(String wiki)
+    {
+        AtomicLong counter = this.counters.get(wiki);
+        if (counter == null) {
+            // Only done once per wiki, make sure that the database is queried just once
+            synchronized (this) {
+                counter = this.counters.get(wiki);
+                if (counter == null) {
+                    counter = new AtomicLong(this.lastUsedIdProvider.getLastUsedId());
+                    this.counters.put(wiki, counter);
+                }
+            }
+        }
+        return counter;
+    }
+}
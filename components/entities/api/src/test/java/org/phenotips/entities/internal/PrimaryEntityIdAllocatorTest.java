@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PrimaryEntityIdAllocator} class.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class PrimaryEntityIdAllocatorTest
+{
+    @Mock
+    private PrimaryEntityIdAllocator.LastUsedIdProvider lastUsedIdProvider;
+
+    private PrimaryEntityIdAllocator allocator;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.lastUsedIdProvider.getLastUsedId()).thenReturn(41L);
+        this.allocator = new PrimaryEntityIdAllocator(this.lastUsedIdProvider);
+    }
+
+    @Test
+    public void allocationContinuesAfterTheLastUsedId()
+    {
+        Assert.assertEquals(42L, this.allocator.allocate("xwiki"));
+        Assert.assertEquals(43L, this.allocator.allocate("xwiki"));
+        verify(this.lastUsedIdProvider, times(1)).getLastUsedId();
+    }
+
+    @Test
+    public void blocksAreReserved()
+    {
+        Assert.assertEquals(42L, this.allocator.allocate("xwiki", 10));
+        Assert.assertEquals(52L, this.allocator.allocate("xwiki"));
+    }
+
+    @Test
+    public void wikisHaveSeparateCounters()
+    {
+        Assert.assertEquals(42L, this.allocator.allocate("xwiki"));
+        when(this.lastUsedIdProvider.getLastUsedId()).thenReturn(0L);
+        Assert.assertEquals(1L, this.allocator.allocate("other"));
+        Assert.assertEquals(43L, this.allocator.allocate("xwiki"));
+        Assert.assertEquals(2L, this.allocator.allocate("other"));
+    }
+
+    @Test
+    public void failedInitializationIsRetried()
+    {
+        when(this.lastUsedIdProvider.getLastUsedId()).thenThrow(new IllegalStateException()).thenReturn(41L);
+        try {
+            this.allocator.allocate("xwiki");
+            Assert.fail("The initialization failure should be propagated");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        Assert.assertEquals(42L, this.allocator.allocate("xwiki"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBlocksAreRejected()
+    {
+        this.allocator.allocate("xwiki", 0);
+    }
+
+    @Test
+    public void concurrentAllocationsAreUnique() throws Exception
+    {
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                results.add(workers.submit(new Callable<Long>()
+                {
+                    @Override
+                    public Long call()
+                    {
+                        return PrimaryEntityIdAllocatorTest.this.allocator.allocate("xwiki");
+                    }
+                }));
+            }
+            Set<Long> ids = new HashSet<>();
+            for (Future<Long> result : results) {
+                ids.add(result.get());
+            }
+            Assert.assertEquals(1000, ids.size());
+            Assert.assertEquals(Long.valueOf(42L), Collections.min(ids));
+            Assert.assertEquals(Long.valueOf(1041L), Collections.max(ids));
+        } finally {
+            workers.shutdownNow();
+        }
+        verify(this.lastUsedIdProvider, times(1)).getLastUsedId();
+    }
+}
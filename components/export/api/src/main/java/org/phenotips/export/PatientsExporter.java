@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Writes patients to a stream in a plain text format. Each format is implemented by a component whose hint is the
+ * name of the format, for example {@code csv}, {@code tsv} or {@code jsonl}. Patients are retrieved and written one at
+ * a time, so that the memory needed doesn't depend on the number of exported patients.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Unstable
+@Role
+public interface PatientsExporter
+{
+    /**
+     * The media type of the exported data, for example {@code text/csv}.
+     *
+     * @return a media type
+     */
+    String getMediaType();
+
+    /**
+     * Whether the fields to export must be specified. Formats which mirror the spreadsheet export need a list of
+     * columns, while formats based on the JSON representation of the patients can export all the fields.
+     *
+     * @return {@code true} if {@link #export} doesn't write anything when no fields are specified
+     */
+    boolean requiresFields();
+
+    /**
+     * Exports the patients, limited by the list of fields that are requested, and writes the result to the output
+     * stream as UTF-8 text. The stream is closed once the export is done.
+     *
+     * @param fields the names of the fields to export; the exact meaning depends on the format, and all the fields are
+     *            exported if {@code null}, unless {@link #requiresFields() fields are required}
+     * @param patients the patients to export, which may be loaded lazily; {@code null} patients are skipped
+     * @param outputStream stream to which the export will be written to
+     * @throws IOException if converting or writing the patients fails
+     */
+    void export(Collection<String> fields, Iterator<Patient> patients, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Keeps track of the longest text found in each column while cells are committed, and computes the column widths from
+ * it. This replaces {@link Sheet#autoSizeColumn(int)} when the sheet is written in parts, since the rows that were
+ * already flushed can no longer be measured.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class ColumnWidths
+{
+    /** The width of one character, in the units used by {@link Sheet#setColumnWidth(int, int)}. */
+    private static final int CHARACTER_WIDTH = 256;
+
+    /** Columns are never made wider than this, same as for the sheets that are sized automatically. */
+    private static final int MAX_WIDTH = DataToCellConverter.charactersPerLine * 210;
+
+    /** The length of the longest line of text found so far in each column. */
+    private Map<Integer, Integer> maxLengths = new HashMap<Integer, Integer>();
+
+    /**
+     * Measures the text of the cells in a section.
+     *
+     * @param section a {@link DataSection#finalizeToMatrix() finalized} section, starting in the first column
+     */
+    public void update(DataSection section)
+    {
+        for (int y = 0; y <= section.getMaxY(); y++) {
+            for (Map.Entry<Integer, DataCell> cell : section.getRow(y).entrySet()) {
+                int maxLength = 0;
+                for (String line : cell.getValue().getValue().split("\n")) {
+                    maxLength = Math.max(maxLength, line.length());
+                }
+                Integer previous = this.maxLengths.get(cell.getKey());
+                if (previous == null || previous < maxLength) {
+                    this.maxLengths.put(cell.getKey(), maxLength);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the width of the measured columns to fit their longest line of text, within a limit.
+     *
+     * @param sheet the sheet where the measured cells were written
+     */
+    public void apply(Sheet sheet)
+    {
+        for (Map.Entry<Integer, Integer> column : this.maxLengths.entrySet()) {
+            // One extra character as padding, like the automatically sized columns have
+            int width = (column.getValue() + 1) * CHARACTER_WIDTH;
+            sheet.setColumnWidth(column.getKey(), Math.min(width, MAX_WIDTH));
+        }
+    }
+}
@@ -178,25 +178,44 @@ public List<Feature> sortFeaturesSimple(Set<? extends Feature> features)
      *
      * @param features set of features to sort. Cannot be null
      * @return a subset of the passed in features in a specific order
+     * @see #sortFeaturesWithSections(Set, Map)
      */
     public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features)
     {
-        List<Feature> positiveList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, true));
-        List<Feature> negativeList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, false));
+        return sortFeaturesWithSections(features, this.sectionFeatureTree);
+    }
+
+    /**
+     * Same as {@link #sortFeaturesWithSections(Set)}, but the sections of the features are recorded in the passed in
+     * map instead of {@link #sectionFeatureTree}. This doesn't change the state of the helper, so once set up, the
+     * helper can be used for converting several patients at the same time.
+     *
+     * @param features set of features to sort. Cannot be null
+     * @param sectionFeatureLookup where each feature id is mapped to the title of the category the feature belongs to
+     * @return a subset of the passed in features in a specific order
+     * @since 1.3M4
+     */
+    public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features,
+        Map<String, String> sectionFeatureLookup)
+    {
+        List<Feature> positiveList =
+            sortFeaturesBySection(filterFeaturesByPresentStatus(features, true), sectionFeatureLookup);
+        List<Feature> negativeList =
+            sortFeaturesBySection(filterFeaturesByPresentStatus(features, false), sectionFeatureLookup);
 
         positiveList.addAll(negativeList);
         return positiveList;
     }
 
     /**
-     * Fills {@link #sectionFeatureTree} with feature ids mapped to section names. This function is used internally only
-     * in {@link #sortFeaturesWithSections(java.util.Set)}; if changing that, keep in mind the mutation of
-     * {@link #sectionFeatureTree}.
+     * Fills the passed in map with feature ids mapped to section names. This function is used internally only in
+     * {@link #sortFeaturesWithSections(java.util.Set, Map)}; if changing that, keep in mind the mutation of the map.
      *
      * @param features list of features to be sorted. Cannot be null
+     * @param sectionFeatureLookup where each feature id is mapped to the title of the category the feature belongs to
      * @return list of features sorted in the same order as {@link #categoryMapping}
      */
-    private List<Feature> sortFeaturesBySection(List<Feature> features)
+    private List<Feature> sortFeaturesBySection(List<Feature> features, Map<String, String> sectionFeatureLookup)
     {
         List<Feature> sortedFeatures = new LinkedList<>();
 
@@ -213,7 +232,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
                     Feature feature = iter.next();
                     if (getCategoriesFromOntology(feature.getId()).contains(category)
                         || StringUtils.equals(feature.getId(), category)) {
-                        this.sectionFeatureTree.put(feature.getId(), section);
+                        sectionFeatureLookup.put(feature.getId(), section);
                         sortedFeatures.add(feature);
                         iter.remove();
                     }
@@ -221,7 +240,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
             }
         }
         for (Feature feature : features) {
-            this.sectionFeatureTree.put(feature.getId(), "No category");
+            sectionFeatureLookup.put(feature.getId(), "No category");
         }
         sortedFeatures.addAll(features);
         return sortedFeatures;
@@ -20,8 +20,11 @@
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Holds the value of the cell, its styling, instructions on merging and size. A
@@ -34,6 +37,13 @@
  */
 public class DataCell
 {
+    /**
+     * The distinct style combinations in use, so that all the cells styled the same way share the same immutable
+     * {@link #styleKey}. There are only a handful of such combinations.
+     */
+    private static final ConcurrentMap<Set<StyleOption>, Set<StyleOption>> STYLE_KEYS =
+        new ConcurrentHashMap<Set<StyleOption>, Set<StyleOption>>();
+
     /** The contents of this {@link org.phenotips.export.internal.DataCell}. */
     private String value;
 
@@ -43,6 +53,9 @@
      */
     private Set<StyleOption> styles;
 
+    /** An immutable snapshot of {@link #styles}, computed when first needed and discarded when the styles change. */
+    private Set<StyleOption> styleKey;
+
     /**
      * An arbitrary x coordinate assigned to this cell. This coordinate should not be used when committing cells to a
      * spreadsheet.
@@ -114,6 +127,7 @@ public void addStyle(StyleOption style)
             this.styles = new HashSet<>();
         }
         this.styles.add(style);
+        this.styleKey = null;
         if (this.generated != null) {
             for (DataCell child : this.generated) {
                 child.addStyle(style);
@@ -133,6 +147,7 @@ public void addStyles(Collection<StyleOption> styles)
             this.styles = new HashSet<>();
         }
         this.styles.addAll(styles);
+        this.styleKey = null;
         if (this.generated != null) {
             for (DataCell child : this.generated) {
                 child.addStyles(styles);
@@ -147,6 +162,7 @@ public void removeStyles(Collection<StyleOption> styles)
     {
         if (this.styles != null) {
             this.styles.removeAll(styles);
+            this.styleKey = null;
         }
     }
 
@@ -243,6 +259,27 @@ public Set<StyleOption> getStyles()
         return this.styles;
     }
 
+    /**
+     * The styles of this cell, in a form suitable for looking up the matching spreadsheet style: the returned set is
+     * immutable, and shared by all the cells having the same styles.
+     *
+     * @return the {@link #styles}, or an empty set if there are none
+     * @since 1.3M4
+     */
+    public Set<StyleOption> getStyleKey()
+    {
+        if (this.styleKey == null) {
+            if (this.styles == null || this.styles.isEmpty()) {
+                this.styleKey = Collections.emptySet();
+            } else {
+                Set<StyleOption> key = Collections.unmodifiableSet(EnumSet.copyOf(this.styles));
+                Set<StyleOption> interned = STYLE_KEYS.putIfAbsent(key, key);
+                this.styleKey = interned != null ? interned : key;
+            }
+        }
+        return this.styleKey;
+    }
+
     /**
      * @return {@link #isChild} if not null, false otherwise
      */
@@ -17,12 +17,15 @@
  */
 package org.phenotips.export.internal;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * A container for {@link org.phenotips.export.internal.DataCell}s, that organizes its contents into a positional
- * matrix.
+ * matrix. Since exported sheets are wide and mostly empty, only the positions that hold a cell are stored, row by row.
  *
  * @version $Id$
  * @since 1.0RC1
@@ -32,38 +35,29 @@
     private Set<DataCell> cellList = new LinkedHashSet<>();
 
     /**
-     * Eventually the {@link org.phenotips.export.internal.DataCell}s end up in this matrix, with x and y coordinates
-     * corresponding to the matrix's indices.
+     * Eventually the {@link org.phenotips.export.internal.DataCell}s end up in this matrix, indexed first by their y
+     * coordinate and then by their x coordinate. Empty positions have no entry.
      */
-    private DataCell[][] matrix;
+    private Map<Integer, Map<Integer, DataCell>> matrix;
 
-    /** The size of the matrix along x axis. */
-    private Integer matrixX = 0;
-
-    /** @see #matrixX */
-    private Integer matrixY = 0;
-
-    /** Used for creating the {@link #matrix}. */
+    /** Used for determining the size of the matrix. */
     private Integer maxX = 0;
 
     /** @see #maxX */
     private Integer maxY = 0;
 
     /**
-     * Adds a new cell to the {@link #cellList} and attempts to include it into the {@link #matrix}.
+     * Adds a new cell to the {@link #cellList} and, if the section was already finalized, attempts to include it into
+     * the {@link #matrix}.
      *
      * @param cell cannot be null, and must have coordinates set relative to the top-left corner of this {@linkplain
      * org.phenotips.export.internal.DataSection}
      */
     public void addCell(DataCell cell)
     {
-        /* Add to matrix only if the cell fits within the boundaries and the current spot is empty */
-        if (this.matrix != null) {
-            if (cell.getX() < this.matrixX && cell.getY() < this.matrixY) {
-                if (this.matrix[cell.getX()][cell.getY()] == null) {
-                    this.matrix[cell.getX()][cell.getY()] = cell;
-                }
-            }
+        /* Add to matrix only if the current spot is empty */
+        if (this.matrix != null && getCell(cell.getX(), cell.getY()) == null) {
+            put(cell);
         }
         if (cell.getX() > this.maxX) {
             this.maxX = cell.getX();
@@ -86,17 +80,15 @@ public void finalizeToMatrix() throws Exception
             throw new Exception("The maximum values should be initialized");
         }
 
-        // From now on the cell positioning can be read from the 2D array's points, rather then the positioning stored
-        // within the cell.
-        this.matrixX = this.maxX + 1;
-        this.matrixY = this.maxY + 1;
-        this.matrix = new DataCell[this.matrixX][this.matrixY];
+        // From now on the cell positioning can be read from the matrix, rather then the positioning stored within the
+        // cell.
+        this.matrix = new HashMap<>();
         for (DataCell cell : this.cellList) {
-            this.matrix[cell.getX()][cell.getY()] = cell;
+            put(cell);
 
             // Some cells will be later merged, and to preserve styles they need to generate a list of empty cells
             for (DataCell emptyCell : cell.generateMergedCells()) {
-                this.matrix[emptyCell.getX()][emptyCell.getY()] = emptyCell;
+                put(emptyCell);
             }
         }
     }
@@ -113,15 +105,11 @@ public void mergeX() throws Exception
         if (this.matrix == null) {
             throw new Exception("The section has not been converted to a matrix");
         }
-        for (Integer y = 0; y <= getMaxY(); y++) {
-            for (Integer x = 0; x <= getMaxX(); x++) {
-                DataCell cell = this.matrix[x][y];
-                if (cell == null) {
-                    continue;
-                }
-                Integer nextX = x + 1;
-                while (nextX <= getMaxX() && this.matrix[nextX][y] == null) {
-                    cell.addMergeX();
+        for (Map<Integer, DataCell> row : this.matrix.values()) {
+            for (Map.Entry<Integer, DataCell> cell : row.entrySet()) {
+                Integer nextX = cell.getKey() + 1;
+                while (nextX <= getMaxX() && !row.containsKey(nextX)) {
+                    cell.getValue().addMergeX();
                     nextX++;
                 }
             }
@@ -137,11 +125,42 @@ public Set<DataCell> getCellList()
     }
 
     /**
-     * @return {@link #matrix}
+     * @return whether the section was {@link #finalizeToMatrix() finalized}, and its cells can be looked up by their
+     *         position
+     */
+    public boolean isFinalized()
+    {
+        return this.matrix != null;
+    }
+
+    /**
+     * Looks up a cell by its position in the {@link #matrix}.
+     *
+     * @param x the column, relative to the left of this section
+     * @param y the row, relative to the top of this section
+     * @return the cell found at that position, or {@code null} if the position is empty or the section was not
+     *         {@link #finalizeToMatrix() finalized}
+     */
+    public DataCell getCell(int x, int y)
+    {
+        Map<Integer, DataCell> row = this.matrix == null ? null : this.matrix.get(y);
+        return row == null ? null : row.get(x);
+    }
+
+    /**
+     * Lists the non-empty positions of a row in the {@link #matrix}.
+     *
+     * @param y the row, relative to the top of this section
+     * @return the cells found on that row, indexed by their column, in no particular order; an empty map if the row
+     *         is empty or the section was not {@link #finalizeToMatrix() finalized}
      */
-    public DataCell[][] getMatrix()
+    public Map<Integer, DataCell> getRow(int y)
     {
-        return this.matrix;
+        Map<Integer, DataCell> row = this.matrix == null ? null : this.matrix.get(y);
+        if (row == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(row);
     }
 
     /**
@@ -159,4 +178,14 @@ public Integer getMaxY()
     {
         return this.maxY;
     }
+
+    private void put(DataCell cell)
+    {
+        Map<Integer, DataCell> row = this.matrix.get(cell.getY());
+        if (row == null) {
+            row = new HashMap<>();
+            this.matrix.put(cell.getY(), row);
+        }
+        row.put(cell.getX(), cell);
+    }
 }
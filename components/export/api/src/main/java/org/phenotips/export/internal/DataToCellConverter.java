@@ -53,7 +53,9 @@
  * Each of functions need to be written with certain specification. Body producing functions must return null if they
  * produce no cells, and they must not remove from {@link #enabledHeaderIdsBySection}. If there are cells requested
  * (header present) but there is no data to put inside the cells, do not return null as cell value or no cell at all,
- * return a cell containing an empty string. Otherwise, the header will not be matched with the body.
+ * return a cell containing an empty string. Otherwise, the header will not be matched with the body. Once the setup
+ * and header functions were called, body producing functions must not change the state of the converter, since
+ * several patients may be converted at the same time.
  *
  * @version $Id$
  * @since 1.0RC1
@@ -168,15 +170,13 @@ public DataSection phenotypeBody(Patient patient) throws Exception
         int x;
         int y = 0;
         Set<? extends Feature> features = patient.getFeatures();
-        this.phenotypeHelper.newPatient();
         Boolean categoriesEnabled = present.contains("type");
         List<Feature> sortedFeatures;
         Map<String, String> sectionFeatureLookup = new HashMap<>();
         if (!categoriesEnabled) {
             sortedFeatures = this.phenotypeHelper.sortFeaturesSimple(features);
         } else {
-            sortedFeatures = this.phenotypeHelper.sortFeaturesWithSections(features);
-            sectionFeatureLookup = this.phenotypeHelper.getSectionFeatureTree();
+            sortedFeatures = this.phenotypeHelper.sortFeaturesWithSections(features, sectionFeatureLookup);
         }
 
         Boolean lastStatus = false;
@@ -1055,7 +1055,6 @@ public DataSection prenatalPhenotypeBody(Patient patient) throws Exception
         int y = 0;
         Set<? extends Feature> features = patient.getFeatures();
 
-        this.prenatalPhenotypeHelper.newPatient();
         features = this.prenatalPhenotypeHelper.filterFeaturesByPrenatal(features, true);
         List<Feature> sortedFeatures;
         sortedFeatures = this.prenatalPhenotypeHelper.sortFeaturesSimple(features);
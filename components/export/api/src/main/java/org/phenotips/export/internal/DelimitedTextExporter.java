@@ -0,0 +1,237 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.export.PatientsExporter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Exports patients as delimited text, either comma separated values (CSV) or tab separated values (TSV), with the
+ * same columns and the same rows as the spreadsheet exported by {@link SpreadsheetExporter}, but without the overhead
+ * of building a workbook. The header, which spans several rows in the spreadsheet, is written as a single line, where
+ * each column is labeled with the titles above it, joined by {@code " / "}. The lines of each patient are written as
+ * soon as the patient is converted.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ * @see CSVPatientsExporter
+ * @see TSVPatientsExporter
+ */
+public class DelimitedTextExporter implements PatientsExporter
+{
+    /** Separates the titles of a column when the header is flattened into a single line. */
+    private static final String TITLE_SEPARATOR = " / ";
+
+    private static final char QUOTE = '"';
+
+    private static final char NEWLINE = '\n';
+
+    private static final char COMMA = ',';
+
+    private final char separator;
+
+    /**
+     * Simple constructor.
+     *
+     * @param separator the character separating the values on a line, usually {@code ','} for CSV or {@code '\t'} for
+     *            TSV; values containing commas, quotes or line breaks are quoted when exporting CSV, while tabs and
+     *            line breaks are replaced by spaces for any other separator
+     */
+    public DelimitedTextExporter(char separator)
+    {
+        this.separator = separator;
+    }
+
+    @Override
+    public String getMediaType()
+    {
+        return this.separator == COMMA ? "text/csv" : "text/tab-separated-values";
+    }
+
+    @Override
+    public boolean requiresFields()
+    {
+        return true;
+    }
+
+    @Override
+    public void export(Collection<String> fields, Iterator<Patient> patients, OutputStream outputStream)
+        throws IOException
+    {
+        try {
+            export(fields == null ? null : fields.toArray(new String[fields.size()]), patients, outputStream);
+        } catch (IOException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Failed to export the patients: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Exports the patients, limited by the list of fields that are requested, and writes the result to the output
+     * stream as UTF-8 text. Patients are retrieved and converted one at a time, so that the memory needed doesn't
+     * depend on the number of exported patients.
+     *
+     * @param enabledFieldsArray array of field ids that should be present in the export
+     * @param patients the patients whose information should be present in the export, which may be loaded lazily;
+     *            {@code null} patients are skipped
+     * @param outputStream stream to which the export will be written to
+     * @throws Exception an attempt to close outputStream will be made, but the exception will not be handled
+     */
+    public void export(String[] enabledFieldsArray, Iterator<Patient> patients, OutputStream outputStream)
+        throws Exception
+    {
+        if (enabledFieldsArray == null || outputStream == null) {
+            return;
+        }
+        Set<String> enabledFields = new HashSet<String>(Arrays.asList(enabledFieldsArray));
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            SheetAssembler assembler = runStreamingAssembler(enabledFields);
+            final int width = assembler.getAssembled().getMaxX() + 1;
+            writeHeader(assembler.getAssembled(), width, writer);
+            assembler.assemblePatients(patients, new SheetAssembler.PatientSectionHandler()
+            {
+                @Override
+                public void handle(DataSection section) throws IOException
+                {
+                    writeRows(section, width, writer);
+                    // Send each patient to the client as soon as it is ready
+                    writer.flush();
+                }
+            });
+            writer.flush();
+        } finally {
+            try {
+                outputStream.close();
+            } catch (IOException ex) {
+                //If this happens,something went very wrong.
+            }
+        }
+    }
+
+    protected SheetAssembler runStreamingAssembler(Set<String> enabledFields) throws Exception
+    {
+        return new SheetAssembler(enabledFields);
+    }
+
+    /**
+     * Writes the header as a single line. Titles merged over several columns are repeated for each of these columns,
+     * and the non-empty titles found in each column are joined together.
+     *
+     * @param header the finalized and merged header section
+     * @param width the number of columns
+     * @param writer where to write the line
+     * @throws IOException if writing fails
+     */
+    protected void writeHeader(DataSection header, int width, Writer writer) throws IOException
+    {
+        List<List<String>> titles = new ArrayList<List<String>>(width);
+        for (int x = 0; x < width; x++) {
+            titles.add(new ArrayList<String>());
+        }
+        for (int y = 0; y <= header.getMaxY(); y++) {
+            String title = null;
+            int lastMergedX = -1;
+            for (int x = 0; x < width; x++) {
+                DataCell cell = header.getCell(x, y);
+                if (cell != null && !cell.isChild()) {
+                    title = cell.getValue();
+                    lastMergedX = x + (cell.getMergeX() == null ? 0 : cell.getMergeX());
+                }
+                if (x <= lastMergedX && StringUtils.isNotBlank(title)) {
+                    titles.get(x).add(title.trim());
+                }
+            }
+        }
+
+        List<String> line = new ArrayList<String>(width);
+        for (List<String> column : titles) {
+            line.add(StringUtils.join(column, TITLE_SEPARATOR));
+        }
+        writeLine(line, writer);
+    }
+
+    /**
+     * Writes each row of a section as a line, with empty values for the missing cells.
+     *
+     * @param section a finalized section, starting in the first column
+     * @param width the number of columns
+     * @param writer where to write the lines
+     * @throws IOException if writing fails
+     */
+    protected void writeRows(DataSection section, int width, Writer writer) throws IOException
+    {
+        List<String> line = new ArrayList<String>(width);
+        for (int y = 0; y <= section.getMaxY(); y++) {
+            line.clear();
+            for (int x = 0; x < width; x++) {
+                DataCell cell = section.getCell(x, y);
+                line.add(cell == null ? null : cell.getValue());
+            }
+            writeLine(line, writer);
+        }
+    }
+
+    private void writeLine(List<String> values, Writer writer) throws IOException
+    {
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                writer.write(this.separator);
+            }
+            writer.write(escape(StringUtils.defaultString(value)));
+            first = false;
+        }
+        writer.write(NEWLINE);
+    }
+
+    /**
+     * Makes a value safe to be written between separators: CSV values are quoted as described in RFC 4180 when
+     * needed, while for other formats, which have no quoting rules, separators and line breaks are replaced by spaces.
+     *
+     * @param value the value to escape, not {@code null}
+     * @return the escaped value
+     */
+    protected String escape(String value)
+    {
+        if (this.separator != COMMA) {
+            return StringUtils.replaceChars(value, this.separator + "\r\n", "   ");
+        }
+        if (StringUtils.containsNone(value, ",\"\r\n")) {
+            return value;
+        }
+        return QUOTE + StringUtils.replace(value, "\"", "\"\"") + QUOTE;
+    }
+}
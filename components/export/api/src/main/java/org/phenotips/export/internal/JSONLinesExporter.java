@@ -0,0 +1,97 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.export.PatientsExporter;
+
+import org.xwiki.component.annotation.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Exports patients in the JSON Lines format: the {@link Patient#toJSON(Collection) JSON representation} of each
+ * patient is written on its own line, as soon as the patient is loaded, so that only one record is held in memory at
+ * any time and consumers can process the records one by one.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Component
+@Named("jsonl")
+@Singleton
+public class JSONLinesExporter implements PatientsExporter
+{
+    @Override
+    public String getMediaType()
+    {
+        return "application/x-ndjson";
+    }
+
+    @Override
+    public boolean requiresFields()
+    {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The fields are the names of the patient fields, as used in the JSON representation of the patients.
+     * </p>
+     */
+    @Override
+    public void export(Collection<String> selectedFields, Iterator<Patient> patients, OutputStream outputStream)
+        throws IOException
+    {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            while (patients.hasNext()) {
+                Patient patient = patients.next();
+                if (patient == null) {
+                    continue;
+                }
+                // JSONObject.write doesn't output raw line breaks, so each record stays on a single line
+                patient.toJSON(selectedFields).write(writer);
+                writer.write('\n');
+                // Send each record to the client as soon as it is ready
+                writer.flush();
+            }
+            writer.flush();
+        } finally {
+            try {
+                outputStream.close();
+            } catch (IOException ex) {
+                //If this happens,something went very wrong.
+            }
+        }
+    }
+}
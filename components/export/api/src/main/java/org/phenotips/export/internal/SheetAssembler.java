@@ -17,13 +17,37 @@
  */
 package org.phenotips.export.internal;
 
+import org.phenotips.components.ComponentManagerRegistry;
 import org.phenotips.data.Patient;
 
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.slf4j.LoggerFactory;
+
+import com.xpn.xwiki.XWikiContext;
 
 /**
  * Assembles the various DataSections.
@@ -39,6 +63,15 @@
     /** The number of rows the header occupies. */
     private Integer headerHeight = 0;
 
+    /** Generates the cells, holds the state set up while generating the header. */
+    private DataToCellConverter converter = new DataToCellConverter();
+
+    /**
+     * When assembling patients one by one, the section borders found so far for each column, which must be extended
+     * down through every patient.
+     */
+    private Map<Integer, Set<StyleOption>> columnBorders = new HashMap<Integer, Set<StyleOption>>();
+
     /**
      * Generates {@link org.phenotips.export.internal.DataCell} containing the data to export, combines them together
      * into one big matrix ({@link #oneSection}), and styles them.
@@ -49,31 +82,243 @@
      */
     public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws Exception
     {
-        DataToCellConverter converter = new DataToCellConverter();
+        DataSection headerCombined = assembleHeader(enabledFields);
 
-        /* Some sections require setup, which need to be run here. */
-        converter.phenotypeSetup(enabledFields);
-        converter.prenatalPhenotypeSetup(enabledFields);
-        converter.genesSetup(enabledFields);
-        converter.variantsSetup(enabledFields);
+        final List<DataSection> patientsCombined = new LinkedList<DataSection>();
+        convertPatients(patients.iterator(), new PatientSectionHandler()
+        {
+            @Override
+            public void handle(DataSection section)
+            {
+                patientsCombined.add(section);
+            }
+        });
+        DataSection bodyCombined = assembleSectionsY(patientsCombined, false);
 
-        /* Headers MUST be generated first. Some of them contain setup code for the body */
-        List<DataSection> headers = generateHeader(converter, enabledFields);
-        List<List<DataSection>> bodySections = generateBody(converter, patients);
-
-        List<DataSection> patientsCombined = new LinkedList<DataSection>();
-        for (List<DataSection> patientSections : bodySections) {
-            for (DataSection section : patientSections) {
-                section.finalizeToMatrix();
-                Styler.disallowBodyStyles(section);
-                Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
-                Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        this.oneSection = assembleSectionsY(Arrays.asList(headerCombined, bodyCombined), true);
+
+        /* Extend the section borders all the way to the bottom of the sheet */
+        Styler
+            .extendStyleVertically(this.oneSection, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+    }
+
+    /**
+     * Prepares for assembling the sheet one patient at a time: only the header is generated and styled, and becomes
+     * the {@link #getAssembled() assembled section}, while each patient is then converted on demand by
+     * {@link #assemblePatient(Patient)}. This way the cells of only one patient are held in memory at a time.
+     *
+     * @param enabledFields set of fields for which data should be exported
+     * @throws java.lang.Exception half of the functions used throw exceptions
+     * @since 1.3M4
+     */
+    public SheetAssembler(Set<String> enabledFields) throws Exception
+    {
+        this.oneSection = assembleHeader(enabledFields);
+        extendBorders(this.oneSection);
+    }
+
+    /**
+     * Converts and styles the data of one patient, as it should appear below the header and the patients assembled
+     * before it. The coordinates of the returned section are relative to its top-left corner. Only meaningful after
+     * {@link #SheetAssembler(Set)}.
+     *
+     * @param patient the patient whose data should be exported
+     * @return the patient's section, or {@code null} if the patient is {@code null}
+     * @throws java.lang.Exception half of the functions used throw exceptions
+     * @since 1.3M4
+     */
+    public DataSection assemblePatient(Patient patient) throws Exception
+    {
+        if (patient == null) {
+            return null;
+        }
+        DataSection assembled = assembleBody(patient);
+        placeBelowPrevious(assembled);
+        return assembled;
+    }
+
+    /**
+     * Same as calling {@link #assemblePatient(Patient)} for each patient, but several patients are converted at the
+     * same time, on a bounded pool of threads. The sections are still passed to the handler one at a time, in the same
+     * order as the patients, and only a few patients are converted ahead of the handler.
+     *
+     * @param patients the patients whose data should be exported, {@code null} patients are skipped
+     * @param handler receives the section of each patient, as soon as it is ready
+     * @throws java.lang.Exception if converting a patient or handling its section fails
+     * @since 1.3M4
+     */
+    public void assemblePatients(Iterator<Patient> patients, final PatientSectionHandler handler) throws Exception
+    {
+        convertPatients(patients, new PatientSectionHandler()
+        {
+            @Override
+            public void handle(DataSection section) throws Exception
+            {
+                placeBelowPrevious(section);
+                handler.handle(section);
+            }
+        });
+    }
+
+    /**
+     * Prepares the section of a patient for being placed below the header and the patients assembled before it, must
+     * be called in the order in which the patients are placed.
+     */
+    private void placeBelowPrevious(DataSection assembled) throws Exception
+    {
+        /* Make room for the borders of the header's last columns, even if this patient has no data there */
+        if (assembled.getMaxX() < this.oneSection.getMaxX()) {
+            assembled.addCell(new DataCell("", this.oneSection.getMaxX(), 0));
+        }
+        extendBorders(assembled);
+    }
+
+    /**
+     * Runs {@link #assembleBody(Patient)} for each patient on a pool of worker threads, each with its own copy of the
+     * XWiki context of the current request, and passes the results to the handler in the original order. Falls back to
+     * converting patients in the current thread if there is only one processor, or no XWiki context to copy.
+     */
+    private void convertPatients(Iterator<Patient> patients, PatientSectionHandler handler) throws Exception
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = threads > 1 ? createWorkers(threads) : null;
+        /* Limit how many patients are converted ahead, so that memory doesn't depend on the number of patients */
+        convertPatients(patients, handler, workers, threads * 2);
+    }
+
+    /**
+     * Runs {@link #assembleBody(Patient)} for each patient on the given workers, and passes the results to the handler
+     * in the original order. The workers are shut down once done.
+     *
+     * @param patients the patients to convert, {@code null} patients are skipped
+     * @param handler receives the section of each patient, in order
+     * @param workers the pool of threads to use, or {@code null} to convert the patients in the current thread
+     * @param window how many patients may be converted ahead of the handler
+     * @throws java.lang.Exception if converting a patient or handling its section fails
+     */
+    protected void convertPatients(Iterator<Patient> patients, PatientSectionHandler handler, ExecutorService workers,
+        int window) throws Exception
+    {
+        if (workers == null) {
+            while (patients.hasNext()) {
+                Patient patient = patients.next();
+                if (patient != null) {
+                    handler.handle(assembleBody(patient));
+                }
+            }
+            return;
+        }
+
+        try {
+            Queue<Future<DataSection>> pending = new LinkedList<Future<DataSection>>();
+            while (patients.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < window && patients.hasNext()) {
+                    final Patient patient = patients.next();
+                    if (patient == null) {
+                        continue;
+                    }
+                    pending.add(workers.submit(new Callable<DataSection>()
+                    {
+                        @Override
+                        public DataSection call() throws Exception
+                        {
+                            return assembleBody(patient);
+                        }
+                    }));
+                }
+                if (!pending.isEmpty()) {
+                    handler.handle(getResult(pending.poll()));
+                }
             }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private DataSection getResult(Future<DataSection> result) throws Exception
+    {
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+    }
 
-            DataSection assembled = assembleSectionsX(patientSections, true);
-            Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
-            patientsCombined.add(assembled);
+    /**
+     * Creates the pool of threads used for converting patients. Each thread gets an execution context holding a copy
+     * of the XWiki context of the current request, so that it can access documents and translations.
+     *
+     * @return the thread pool, or {@code null} if the execution context cannot be copied
+     */
+    private ExecutorService createWorkers(int threads)
+    {
+        final Execution execution;
+        final ExecutionContextManager contextManager;
+        final XWikiContext requestContext;
+        try {
+            ComponentManager cm = ComponentManagerRegistry.getContextComponentManager();
+            execution = cm.getInstance(Execution.class);
+            contextManager = cm.getInstance(ExecutionContextManager.class);
+            Provider<XWikiContext> xcontextProvider = cm.getInstance(XWikiContext.TYPE_PROVIDER);
+            requestContext = xcontextProvider.get();
+        } catch (ComponentLookupException | RuntimeException ex) {
+            LoggerFactory.getLogger(getClass()).debug("Converting patients sequentially: {}", ex.getMessage());
+            return null;
         }
+        if (requestContext == null) {
+            return null;
+        }
+
+        return Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable task)
+            {
+                Thread result = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        ExecutionContext context = new ExecutionContext();
+                        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, requestContext.clone());
+                        try {
+                            contextManager.initialize(context);
+                        } catch (ExecutionContextException ex) {
+                            LoggerFactory.getLogger(SheetAssembler.class)
+                                .warn("Failed to initialize the export context: {}", ex.getMessage());
+                        }
+                        try {
+                            task.run();
+                        } finally {
+                            execution.removeContext();
+                        }
+                    }
+                }, "SpreadsheetExport-" + this.count.incrementAndGet());
+                result.setDaemon(true);
+                return result;
+            }
+        });
+    }
+
+    /** Generates the header sections, and combines them into one finalized and styled section. */
+    private DataSection assembleHeader(Set<String> enabledFields) throws Exception
+    {
+        /* Some sections require setup, which need to be run here. */
+        this.converter.phenotypeSetup(enabledFields);
+        this.converter.prenatalPhenotypeSetup(enabledFields);
+        this.converter.genesSetup(enabledFields);
+        this.converter.variantsSetup(enabledFields);
+
+        /* Headers MUST be generated first. Some of them contain setup code for the body */
+        List<DataSection> headers = generateHeader(this.converter, enabledFields);
 
         /* Inserting styling calls here is fairly unavoidable. Also don't forget to merge BEFORE styling. */
         for (DataSection header : headers) {
@@ -82,18 +327,46 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
             Styler.styleSectionBorder(header, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
         }
 
-        DataSection bodyCombined = assembleSectionsY(patientsCombined, false);
         DataSection headerCombined = assembleSectionsX(headers, true);
 
         /* Add style through functions. Use only with finalized sections. */
         Styler.styleSectionBottom(headerCombined, StyleOption.HEADER_BOTTOM);
 
         this.headerHeight = headerCombined.getMaxY() + 1;
-        this.oneSection = assembleSectionsY(Arrays.asList(headerCombined, bodyCombined), true);
+        return headerCombined;
+    }
 
-        /* Extend the section borders all the way to the bottom of the sheet */
-        Styler
-            .extendStyleVertically(this.oneSection, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+    /**
+     * Generates the sections of one patient, and combines them into one finalized and styled section.
+     *
+     * @param patient the patient whose data should be exported
+     * @return the patient's section, with coordinates relative to its top-left corner
+     * @throws java.lang.Exception half of the functions used throw exceptions
+     */
+    protected DataSection assembleBody(Patient patient) throws Exception
+    {
+        List<DataSection> patientSections = generateBody(this.converter, patient);
+        for (DataSection section : patientSections) {
+            section.finalizeToMatrix();
+            Styler.disallowBodyStyles(section);
+            Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
+            Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        }
+
+        DataSection assembled = assembleSectionsX(patientSections, true);
+        Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
+        return assembled;
+    }
+
+    /**
+     * Same as {@link Styler#extendStyleVertically(DataSection, StyleOption[])}, but remembering the borders found in
+     * the previously assembled sections, which are placed above this one.
+     */
+    private void extendBorders(DataSection section) throws Exception
+    {
+        Styler.findVerticalStyles(section, this.columnBorders, StyleOption.SECTION_BORDER_LEFT,
+            StyleOption.SECTION_BORDER_RIGHT);
+        Styler.applyVerticalStyles(section, this.columnBorders);
     }
 
     /**
@@ -102,44 +375,36 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
      *
      * @return list of generated, not null {@link org.phenotips.export.internal.DataSection}s
      */
-    private List<List<DataSection>> generateBody(DataToCellConverter converter, List<Patient> patients)
-        throws Exception
+    private List<DataSection> generateBody(DataToCellConverter converter, Patient patient) throws Exception
     {
-        List<List<DataSection>> allSections = new LinkedList<List<DataSection>>();
-        for (Patient patient : patients) {
-            if (patient == null) {
-                continue;
-            }
-            List<DataSection> patientSections = new LinkedList<DataSection>();
-            patientSections.add(converter.idBody(patient));
-            patientSections.add(converter.documentInfoBody(patient));
-            patientSections.add(converter.patientInfoBody(patient));
-            patientSections.add(converter.familyHistoryBody(patient));
-            patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
-            patientSections.add(converter.prenatalPhenotypeBody(patient));
-            patientSections.add(converter.medicalHistoryBody(patient));
-            patientSections.add(converter.isNormalBody(patient));
-            patientSections.add(converter.phenotypeBody(patient));
-            patientSections.add(converter.genesBody(patient));
-            patientSections.add(converter.variantsBody(patient));
-            patientSections.add(converter.disordersBody(patient));
-            patientSections.add(converter.isSolvedBody(patient));
-
-            /* Null section filter */
-            Iterator<DataSection> it = patientSections.iterator();
-            while (it.hasNext()) {
-                DataSection i = it.next();
-                if (i == null) {
-                    it.remove();
-                }
+        List<DataSection> patientSections = new LinkedList<DataSection>();
+        patientSections.add(converter.idBody(patient));
+        patientSections.add(converter.documentInfoBody(patient));
+        patientSections.add(converter.patientInfoBody(patient));
+        patientSections.add(converter.familyHistoryBody(patient));
+        patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
+        patientSections.add(converter.prenatalPhenotypeBody(patient));
+        patientSections.add(converter.medicalHistoryBody(patient));
+        patientSections.add(converter.isNormalBody(patient));
+        patientSections.add(converter.phenotypeBody(patient));
+        patientSections.add(converter.genesBody(patient));
+        patientSections.add(converter.variantsBody(patient));
+        patientSections.add(converter.disordersBody(patient));
+        patientSections.add(converter.isSolvedBody(patient));
+
+        /* Null section filter */
+        Iterator<DataSection> it = patientSections.iterator();
+        while (it.hasNext()) {
+            DataSection i = it.next();
+            if (i == null) {
+                it.remove();
             }
-            allSections.add(patientSections);
         }
-        return allSections;
+        return patientSections;
     }
 
     /**
-     * Same as {@link #generateBody(DataToCellConverter, java.util.List)} but for header sections. Most of header
+     * Same as {@link #generateBody(DataToCellConverter, Patient)} but for header sections. Most of header
      * functions from {@link org.phenotips.export.internal.DataToCellConverter} contain some set up code.
      */
     private List<DataSection> generateHeader(DataToCellConverter converter, Set<String> enabledFields) throws Exception
@@ -216,7 +481,7 @@ private DataSection assembleSectionsY(List<DataSection> sections, Boolean finali
 
     /**
      * @return a {@link org.phenotips.export.internal.DataSection} that contains all {@link
-     * org.phenotips.export.internal.DataCell}s
+     * org.phenotips.export.internal.DataCell}s, or just the header ones when patients are assembled one by one
      */
     public DataSection getAssembled()
     {
@@ -230,4 +495,16 @@ public Integer getHeaderHeight()
     {
         return this.headerHeight;
     }
+
+    /** Receives the sections of the patients, in the same order as the patients, as soon as they are assembled. */
+    public interface PatientSectionHandler
+    {
+        /**
+         * Handles the section of one patient.
+         *
+         * @param section the finalized section of a patient, with coordinates relative to its top-left corner
+         * @throws Exception if handling the section fails, in which case the assembly stops
+         */
+        void handle(DataSection section) throws Exception;
+    }
 }
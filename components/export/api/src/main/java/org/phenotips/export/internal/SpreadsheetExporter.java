@@ -24,6 +24,7 @@
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +34,7 @@
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
@@ -44,6 +46,9 @@
  */
 public class SpreadsheetExporter
 {
+    /** How many rows are kept in memory when {@link #exportStreaming streaming}, older rows are flushed to disk. */
+    private static final int ROW_WINDOW_SIZE = 100;
+
     protected Workbook wBook;
 
     /**
@@ -82,11 +87,52 @@ public void export(String[] enabledFieldsArray, List<Patient> patients, OutputSt
         }
     }
 
+    /**
+     * Same as {@link #export(String[], List, OutputStream)}, but the patients are retrieved, converted and written one
+     * at a time, and only a small window of rows is kept in memory, so that the memory needed doesn't depend on the
+     * number of exported patients. Column widths are computed from the length of the exported text, instead of being
+     * measured over the whole sheet.
+     *
+     * @param enabledFieldsArray array of field ids that should be present in the export
+     * @param patients the patients whose information should be present in the export, which may be loaded lazily
+     * @param outputStream stream to which the export will be written to
+     * @throws Exception an attempt to close outputStream will be made, but the exception will not be handled
+     * @since 1.3M4
+     */
+    public void exportStreaming(String[] enabledFieldsArray, Iterator<Patient> patients, OutputStream outputStream)
+        throws Exception
+    {
+        if (enabledFieldsArray == null || outputStream == null) {
+            return;
+        }
+        Set<String> enabledFields = new HashSet<String>(Arrays.asList(enabledFieldsArray));
+        SXSSFWorkbook streamingBook = createNewStreamingWorkbook();
+        try {
+            this.wBook = streamingBook;
+            processMainSheetStreaming(enabledFields, patients);
+            this.wBook.write(outputStream);
+            outputStream.flush();
+        } finally {
+            // Delete the temporary files holding the rows already flushed
+            streamingBook.dispose();
+            try {
+                outputStream.close();
+            } catch (IOException ex) {
+                //If this happens,something went very wrong.
+            }
+        }
+    }
+
     protected Workbook createNewWorkbook()
     {
         return new XSSFWorkbook();
     }
 
+    protected SXSSFWorkbook createNewStreamingWorkbook()
+    {
+        return new SXSSFWorkbook(ROW_WINDOW_SIZE);
+    }
+
     /**
      * Creates the main sheet in the workbook, calculates the positioning of the cells, and commits them into the
      * workbook.
@@ -102,6 +148,44 @@ protected void processMainSheet(Set<String> enabledFields, List<Patient> patient
         freezeHeader(assembler.getHeaderHeight().shortValue(), sheet);
     }
 
+    /**
+     * Same as {@link #processMainSheet(Set, List)}, but the cells of each patient are committed as soon as they are
+     * assembled.
+     */
+    protected void processMainSheetStreaming(Set<String> enabledFields, Iterator<Patient> patients) throws Exception
+    {
+        String sheetName = "main";
+        final Sheet sheet = this.wBook.createSheet("Patient Sheet");
+        this.sheets.put(sheetName, sheet);
+
+        final Styler styler = new Styler();
+        final ColumnWidths widths = new ColumnWidths();
+
+        SheetAssembler assembler = runStreamingAssembler(enabledFields);
+        DataSection header = assembler.getAssembled();
+        commitRows(header, sheet, styler, 0);
+        mergeCells(header, sheet, 0);
+        widths.update(header);
+
+        final int headerHeight = assembler.getHeaderHeight();
+        assembler.assemblePatients(patients, new SheetAssembler.PatientSectionHandler()
+        {
+            private int rowOffset = headerHeight;
+
+            @Override
+            public void handle(DataSection section)
+            {
+                commitRows(section, sheet, styler, this.rowOffset);
+                mergeCells(section, sheet, this.rowOffset);
+                widths.update(section);
+                this.rowOffset += section.getMaxY() + 1;
+            }
+        });
+
+        widths.apply(sheet);
+        freezeHeader(assembler.getHeaderHeight().shortValue(), sheet);
+    }
+
     protected void freezeHeader(Short height, Sheet sheet)
     {
         sheet.createFreezePane(0, height);
@@ -113,6 +197,11 @@ protected SheetAssembler runAssembler(Set<String> enabledFields, List<Patient> p
         return new SheetAssembler(enabledFields, patients);
     }
 
+    protected SheetAssembler runStreamingAssembler(Set<String> enabledFields) throws Exception
+    {
+        return new SheetAssembler(enabledFields);
+    }
+
     /**
      * Commits cells row by row, sets row height and column width, and merges cells.
      *
@@ -121,7 +210,6 @@ protected SheetAssembler runAssembler(Set<String> enabledFields, List<Patient> p
      */
     protected void commit(DataSection section, Sheet sheet)
     {
-        DataCell[][] cells = section.getMatrix();
         Styler styler = new Styler();
 
         commitRows(section, sheet, styler);
@@ -135,11 +223,25 @@ protected void commit(DataSection section, Sheet sheet)
         }
 
         /* Merging has to be done after autosizing because otherwise autosizing breaks */
+        mergeCells(section, sheet, 0);
+    }
+
+    /**
+     * Merges the cells that span several columns.
+     *
+     * @param section the section whose cells were committed
+     * @param sheet the workbook sheet to which the cells were written
+     * @param rowOffset the row where the section starts in the sheet
+     */
+    protected void mergeCells(DataSection section, Sheet sheet, int rowOffset)
+    {
         for (Integer y = 0; y <= section.getMaxY(); y++) {
-            for (Integer x = 0; x <= section.getMaxX(); x++) {
-                DataCell dataCell = cells[x][y];
-                if (dataCell != null && dataCell.getMergeX() != null) {
-                    sheet.addMergedRegion(new CellRangeAddress(y, y, x, x + dataCell.getMergeX()));
+            for (Map.Entry<Integer, DataCell> entry : section.getRow(y).entrySet()) {
+                Integer x = entry.getKey();
+                DataCell dataCell = entry.getValue();
+                if (dataCell.getMergeX() != null) {
+                    sheet.addMergedRegion(
+                        new CellRangeAddress(y + rowOffset, y + rowOffset, x, x + dataCell.getMergeX()));
                 }
                 /*
                  * No longer will be merging cells on the Y axis, but keep this code for future reference.
@@ -152,18 +254,27 @@ protected void commit(DataSection section, Sheet sheet)
 
     protected void commitRows(DataSection section, Sheet sheet, Styler styler)
     {
-        DataCell[][] cells = section.getMatrix();
+        commitRows(section, sheet, styler, 0);
+    }
+
+    /**
+     * Commits cells row by row, and sets the row height.
+     *
+     * @param section the section to commit
+     * @param sheet a workbook sheet to which the cells from the section will be written
+     * @param styler translates the cell styles, should be shared by all the sections written in the same workbook
+     * @param rowOffset the row where the section starts in the sheet
+     */
+    protected void commitRows(DataSection section, Sheet sheet, Styler styler, int rowOffset)
+    {
         Row row;
         for (Integer y = 0; y <= section.getMaxY(); y++) {
-            row = sheet.createRow(y);
+            row = sheet.createRow(y + rowOffset);
             Integer maxLines = 0;
 
-            for (Integer x = 0; x <= section.getMaxX(); x++) {
-                DataCell dataCell = cells[x][y];
-                if (dataCell == null) {
-                    continue;
-                }
-                Cell cell = row.createCell(x);
+            for (Map.Entry<Integer, DataCell> entry : section.getRow(y).entrySet()) {
+                DataCell dataCell = entry.getValue();
+                Cell cell = row.createCell(entry.getKey());
                 cell.setCellValue(dataCell.getValue());
                 styler.style(dataCell, cell, this.wBook);
 
@@ -18,7 +18,7 @@
 package org.phenotips.export.internal;
 
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -49,12 +49,15 @@
 
     /**
      * The {@link org.apache.poi.ss.usermodel.Workbook} can have only a limited number of styles. The cache prevents
-     * creation of duplicates.
+     * creation of duplicates. The keys are {@link DataCell#getStyleKey() immutable}.
      */
     private Map<Set<StyleOption>, CellStyle> styleCache = new HashMap<Set<StyleOption>, CellStyle>();
 
-    /** Cached font. */
-    private Font defaultFont;
+    /** Cached fonts. */
+    private Map<FontType, Font> fontCache = new EnumMap<FontType, Font>(FontType.class);
+
+    /** The workbook in which the cached styles and fonts were created. */
+    private Workbook workbook;
 
     /**
      * In some corner cases, some styles should be removed from cells to prevent conflicts with styles in other cells.
@@ -64,15 +67,14 @@
      */
     public static void disallowBodyStyles(DataSection section) throws Exception
     {
-        DataCell[][] cellMatrix = section.getMatrix();
-        if (cellMatrix == null) {
+        if (!section.isFinalized()) {
             throw new Exception(NO_MATRIX_ERR_MSG);
         }
         List<StyleOption> disallowedStyles =
             Arrays.asList(StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
 
         for (int x = 0; x <= section.getMaxX(); x++) {
-            DataCell cell = cellMatrix[x][0];
+            DataCell cell = section.getCell(x, 0);
             if (cell != null) {
                 cell.removeStyles(disallowedStyles);
             }
@@ -91,14 +93,13 @@ public static void disallowBodyStyles(DataSection section) throws Exception
      */
     public static void styleSectionBottom(DataSection section, StyleOption style) throws Exception
     {
-        DataCell[][] cellMatrix = section.getMatrix();
-        if (cellMatrix == null) {
+        if (!section.isFinalized()) {
             throw new Exception(NO_MATRIX_ERR_MSG);
         }
 
         /* In case the border passes through non-existent cells */
         for (int x = 0; x <= section.getMaxX(); x++) {
-            DataCell cell = cellMatrix[x][section.getMaxY()];
+            DataCell cell = section.getCell(x, section.getMaxY());
             if (cell == null) {
                 cell = new DataCell("", x, section.getMaxY());
                 section.addCell(cell);
@@ -120,15 +121,14 @@ public static void styleSectionBottom(DataSection section, StyleOption style) th
     public static void styleSectionBorder(DataSection section, StyleOption styleLeft, StyleOption styleRight)
         throws Exception
     {
-        DataCell[][] cellMatrix = section.getMatrix();
-        if (cellMatrix == null) {
+        if (!section.isFinalized()) {
             throw new Exception(NO_MATRIX_ERR_MSG);
         }
 
         /* In case the border passes through non-existent cells */
         for (int y = 0; y <= section.getMaxY(); y++) {
-            DataCell cellLeft = cellMatrix[0][y];
-            DataCell cellRight = cellMatrix[section.getMaxX()][y];
+            DataCell cellLeft = section.getCell(0, y);
+            DataCell cellRight = section.getCell(section.getMaxX(), y);
             if (cellLeft == null) {
                 cellLeft = new DataCell("", 0, y);
                 section.addCell(cellLeft);
@@ -155,8 +155,7 @@ public static void styleSectionBorder(DataSection section, StyleOption styleLeft
     public static void extendStyleHorizontally(DataSection section, StyleOption... styles)
         throws Exception
     {
-        DataCell[][] cellMatrix = section.getMatrix();
-        if (cellMatrix == null) {
+        if (!section.isFinalized()) {
             throw new Exception(NO_MATRIX_ERR_MSG);
         }
 
@@ -166,7 +165,7 @@ public static void extendStyleHorizontally(DataSection section, StyleOption... s
             Boolean found = false;
             for (int x = 0; x <= section.getMaxX(); x++) {
                 found = false;
-                DataCell cell = cellMatrix[x][y];
+                DataCell cell = section.getCell(x, y);
                 if (cell == null) {
                     continue;
                 }
@@ -187,7 +186,7 @@ public static void extendStyleHorizontally(DataSection section, StyleOption... s
 
             /* In case the border passes through non-existent cells */
             for (int x = startingX + 1; x <= section.getMaxX(); x++) {
-                DataCell cell = cellMatrix[x][y];
+                DataCell cell = section.getCell(x, y);
                 if (cell == null) {
                     cell = new DataCell("", x, y);
                     section.addCell(cell);
@@ -209,48 +208,86 @@ public static void extendStyleHorizontally(DataSection section, StyleOption... s
     public static void extendStyleVertically(DataSection section, StyleOption... styles)
         throws Exception
     {
-        DataCell[][] cellMatrix = section.getMatrix();
-        if (cellMatrix == null) {
+        Map<Integer, Set<StyleOption>> columnStyles = new HashMap<Integer, Set<StyleOption>>();
+        findVerticalStyles(section, columnStyles, styles);
+        applyVerticalStyles(section, columnStyles);
+    }
+
+    /**
+     * Finds, for each column of the section, the styles that {@link #extendStyleVertically(DataSection, StyleOption[])}
+     * would extend: the ones present on the top-most non-child cell having any of the passed in styles. Columns that
+     * already have an entry in {@code columnStyles} are skipped, so that the styles found in a section can be reused
+     * for the sections placed below it, when the sheet is built in several parts.
+     *
+     * @param section cannot be null
+     * @param columnStyles where the styles found are recorded, indexed by column
+     * @param styles an array of styles to look for
+     * @throws Exception if the section was not {@link DataSection#finalizeToMatrix()}
+     */
+    public static void findVerticalStyles(DataSection section, Map<Integer, Set<StyleOption>> columnStyles,
+        StyleOption... styles) throws Exception
+    {
+        if (!section.isFinalized()) {
             throw new Exception(NO_MATRIX_ERR_MSG);
         }
 
         for (int x = 0; x <= section.getMaxX(); x++) {
-            Set<StyleOption> toExtend = new HashSet<StyleOption>();
-            Boolean found = false;
+            if (columnStyles.containsKey(x)) {
+                continue;
+            }
             for (int y = 0; y <= section.getMaxY(); y++) {
-                found = false;
-                DataCell cell = cellMatrix[x][y];
-                if (cell == null) {
+                DataCell cell = section.getCell(x, y);
+                if (cell == null || cell.isChild() || cell.getStyles() == null) {
                     continue;
                 }
+                Set<StyleOption> toExtend = new HashSet<StyleOption>();
                 for (StyleOption style : styles) {
-                    if (!cell.isChild() && cell.getStyles() != null && cell.getStyles().contains(style)) {
+                    if (cell.getStyles().contains(style)) {
                         toExtend.add(style);
-                        found = true;
                     }
                 }
-                if (found) {
+                if (!toExtend.isEmpty()) {
+                    columnStyles.put(x, toExtend);
                     break;
                 }
             }
-            if (!found) {
+        }
+    }
+
+    /**
+     * Adds the styles found by {@link #findVerticalStyles(DataSection, Map, StyleOption[])} to every row of their
+     * column, creating empty cells where the border passes through non-existent cells.
+     *
+     * @param section cannot be null
+     * @param columnStyles the styles to add, indexed by column
+     * @throws Exception if the section was not {@link DataSection#finalizeToMatrix()}
+     */
+    public static void applyVerticalStyles(DataSection section, Map<Integer, Set<StyleOption>> columnStyles)
+        throws Exception
+    {
+        if (!section.isFinalized()) {
+            throw new Exception(NO_MATRIX_ERR_MSG);
+        }
+
+        for (Map.Entry<Integer, Set<StyleOption>> column : columnStyles.entrySet()) {
+            int x = column.getKey();
+            if (x > section.getMaxX()) {
                 continue;
             }
-
-            /* In case the border passes through non-existent cells */
             for (int y = 0; y <= section.getMaxY(); y++) {
-                DataCell cell = cellMatrix[x][y];
+                DataCell cell = section.getCell(x, y);
                 if (cell == null) {
                     cell = new DataCell("", x, y);
                     section.addCell(cell);
                 }
-                cell.addStyles(toExtend);
+                cell.addStyles(column.getValue());
             }
         }
     }
 
     /**
-     * Translates the internal styling into styling that {@link org.apache.poi.ss.usermodel.Workbook} can use.
+     * Translates the internal styling into styling that {@link org.apache.poi.ss.usermodel.Workbook} can use. Each
+     * distinct combination of styles is created only once per workbook, and then shared by all the cells using it.
      *
      * @param dataCell from which the styling should be read
      * @param cell to which the styling should be applied
@@ -258,87 +295,54 @@ public static void extendStyleVertically(DataSection section, StyleOption... sty
      */
     public void style(DataCell dataCell, Cell cell, Workbook wBook)
     {
-        Set<StyleOption> styles = dataCell.getStyles();
-        CellStyle cellStyle = wBook.createCellStyle();
-        /* For \n to work properly set to true */
-        cellStyle.setWrapText(true);
-        if (this.defaultFont == null) {
-            this.defaultFont = createDefaultFont(wBook);
+        if (wBook != this.workbook) {
+            /* Styles and fonts belong to the workbook that created them */
+            this.workbook = wBook;
+            this.styleCache.clear();
+            this.fontCache.clear();
         }
-        cellStyle.setFont(this.defaultFont);
-        cellStyle.setVerticalAlignment(CellStyle.VERTICAL_TOP);
 
-        /* If the DataCell's styles is not set, gives default style, and indicates that this function should return. */
-        if (this.setDefaultStyle(styles, cell, cellStyle)) {
-            return;
-        }
-        if (this.styleCache.containsKey(styles)) {
-            cell.setCellStyle(this.styleCache.get(styles));
-            return;
+        Set<StyleOption> styles = dataCell.getStyleKey();
+        CellStyle cellStyle = this.styleCache.get(styles);
+        if (cellStyle == null) {
+            cellStyle = createStyle(styles, wBook);
+            this.styleCache.put(styles, cellStyle);
         }
-
-        /* Priority of styles can be coded in by placing the if statement lower within the corresponding function. */
-        this.setFontStyles(styles, cell, cellStyle, wBook);
-        this.setBorderStyles(styles, cell, cellStyle, wBook);
-
-        /* Keep this as the last statement. */
-        this.styleCache.put(styles, cellStyle);
+        cell.setCellStyle(cellStyle);
     }
 
-    /**
-     * In case a {@link org.phenotips.export.internal.DataCell} does not have its styles set, applies the default
-     * style.
-     */
-    private boolean setDefaultStyle(Set<StyleOption> styles, Cell cell, CellStyle cellStyle)
+    private CellStyle createStyle(Set<StyleOption> styles, Workbook wBook)
     {
-        if (styles == null) {
-            if (this.styleCache.containsKey(Collections.<StyleOption>emptySet())) {
-                cell.setCellStyle(this.styleCache.get(Collections.<StyleOption>emptySet()));
-                return true;
-            }
-            cell.setCellStyle(cellStyle);
-            this.styleCache.put(Collections.<StyleOption>emptySet(), cellStyle);
-            return true;
-        }
-        return false;
+        CellStyle cellStyle = wBook.createCellStyle();
+        /* For \n to work properly set to true */
+        cellStyle.setWrapText(true);
+        cellStyle.setFont(getFont(FontType.DEFAULT, wBook));
+        cellStyle.setVerticalAlignment(CellStyle.VERTICAL_TOP);
+
+        /* Priority of styles can be coded in by placing the if statement lower within the corresponding function. */
+        this.setFontStyles(styles, cellStyle, wBook);
+        this.setBorderStyles(styles, cellStyle);
+        return cellStyle;
     }
 
     /**
-     * Creates new {@link org.apache.poi.ss.usermodel.Font}s. Priority can be coded in by placing the if statement
-     * lower, for higher priority.
+     * Sets the font of the style. Priority can be coded in by placing the if statement lower, for higher priority.
      */
-    private void setFontStyles(Set<StyleOption> styles, Cell cell, CellStyle cellStyle, Workbook wBook)
+    private void setFontStyles(Set<StyleOption> styles, CellStyle cellStyle, Workbook wBook)
     {
-        Font headerFont = null;
         if (styles.contains(StyleOption.HEADER)) {
-            headerFont = wBook.createFont();
-            headerFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
-            cellStyle.setFont(headerFont);
+            cellStyle.setFont(getFont(FontType.HEADER, wBook));
             cellStyle.setAlignment(CellStyle.ALIGN_CENTER);
             cellStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.LARGE_HEADER)) {
-            if (headerFont == null) {
-                headerFont = wBook.createFont();
-                headerFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
-            }
-            headerFont.setFontHeightInPoints((short) 12);
-            cellStyle.setFont(headerFont);
-            cell.setCellStyle(cellStyle);
+            cellStyle.setFont(getFont(FontType.LARGE_HEADER, wBook));
         }
         if (styles.contains(StyleOption.YES)) {
-            Font font = createDefaultFont(wBook);
-            font.setColor(HSSFColor.GREEN.index);
-            cellStyle.setFont(font);
-            cell.setCellStyle(cellStyle);
+            cellStyle.setFont(getFont(FontType.YES, wBook));
         }
         if (styles.contains(StyleOption.NO)) {
-            Font font = createDefaultFont(wBook);
-            font.setColor(HSSFColor.DARK_RED.index);
-            font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-            cellStyle.setFont(font);
-            cell.setCellStyle(cellStyle);
+            cellStyle.setFont(getFont(FontType.NO, wBook));
         }
     }
 
@@ -346,36 +350,64 @@ private void setFontStyles(Set<StyleOption> styles, Cell cell, CellStyle cellSty
      * Converts {@link org.phenotips.export.internal.StyleOption} enum to {@link org.apache.poi.ss.usermodel.CellStyle}
      * enum. Priority can be coded in by placing the if statement lower, for higher priority.
      */
-    private void setBorderStyles(Set<StyleOption> styles, Cell cell, CellStyle cellStyle, Workbook wBook)
+    private void setBorderStyles(Set<StyleOption> styles, CellStyle cellStyle)
     {
         if (styles.contains(StyleOption.HEADER_BOTTOM)) {
             cellStyle.setBorderBottom(CellStyle.BORDER_MEDIUM);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.SECTION_BORDER_LEFT)) {
             cellStyle.setBorderLeft(CellStyle.BORDER_MEDIUM);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.SECTION_BORDER_RIGHT)) {
             cellStyle.setBorderRight(CellStyle.BORDER_MEDIUM);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.PATIENT_BORDER)) {
             cellStyle.setBorderBottom(CellStyle.BORDER_THIN);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.FEATURE_SEPARATOR)) {
             cellStyle.setBorderTop(CellStyle.BORDER_THIN);
             cellStyle.setTopBorderColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.YES_NO_SEPARATOR)) {
             cellStyle.setBorderTop(CellStyle.BORDER_DASHED);
             cellStyle.setTopBorderColor(IndexedColors.GREY_50_PERCENT.getIndex());
-            cell.setCellStyle(cellStyle);
         }
     }
 
+    /** Returns the cached font of the requested type, creating it the first time it is needed. */
+    private Font getFont(FontType type, Workbook wBook)
+    {
+        Font font = this.fontCache.get(type);
+        if (font != null) {
+            return font;
+        }
+        switch (type) {
+            case HEADER:
+                font = wBook.createFont();
+                font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+                break;
+            case LARGE_HEADER:
+                font = wBook.createFont();
+                font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+                font.setFontHeightInPoints((short) 12);
+                break;
+            case YES:
+                font = createDefaultFont(wBook);
+                font.setColor(HSSFColor.GREEN.index);
+                break;
+            case NO:
+                font = createDefaultFont(wBook);
+                font.setColor(HSSFColor.DARK_RED.index);
+                font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+                break;
+            default:
+                font = createDefaultFont(wBook);
+                break;
+        }
+        this.fontCache.put(type, font);
+        return font;
+    }
+
     private Font createDefaultFont(Workbook wBook)
     {
         Font font = wBook.createFont();
@@ -383,4 +415,19 @@ private Font createDefaultFont(Workbook wBook)
         font.setFontName(XSSFFont.DEFAULT_FONT_NAME);
         return font;
     }
+
+    /** The fonts used by the export, each is created once per workbook. */
+    private enum FontType
+    {
+        /** Small font used for the data. */
+        DEFAULT,
+        /** Bold font used for column titles. */
+        HEADER,
+        /** Larger bold font used for section titles. */
+        LARGE_HEADER,
+        /** Green font used for positive values. */
+        YES,
+        /** Red bold font used for negative values. */
+        NO
+    }
 }
@@ -18,6 +18,8 @@
 package org.phenotips.export.script;
 
 import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.export.PatientsExporter;
 import org.phenotips.export.internal.SpreadsheetExporter;
 
 import org.xwiki.component.annotation.Component;
@@ -25,8 +27,12 @@
 import org.xwiki.script.service.ScriptService;
 import org.xwiki.stability.Unstable;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -35,7 +41,8 @@
 import org.slf4j.Logger;
 
 /**
- * Service for exporting a list of patients into an {@code .xlsx} Excel file.
+ * Service for exporting a list of patients into an {@code .xlsx} Excel file, or into plain text formats better suited
+ * for processing by other tools: CSV, TSV and JSON Lines.
  *
  * @version $Id$
  * @since 1.0RC1
@@ -49,10 +56,26 @@ public class SpreadsheetExportService implements ScriptService
     @Inject
     private Logger logger;
 
+    @Inject
+    @Named("secure")
+    private PatientRepository repository;
+
     @Inject
     @Named("current")
     private DocumentReferenceResolver<String> referenceResolver;
 
+    @Inject
+    @Named("csv")
+    private PatientsExporter csvExporter;
+
+    @Inject
+    @Named("tsv")
+    private PatientsExporter tsvExporter;
+
+    @Inject
+    @Named("jsonl")
+    private PatientsExporter jsonLinesExporter;
+
     /**
      * Export the provided list of patients into an Excel file, containing the specified columns. The resulting binary
      * filled will be sent through the provided output stream, usually the {@code $response}'s output stream.
@@ -71,4 +94,134 @@ public void export(List<Patient> patients, String[] enabledFields, OutputStream
             this.logger.error("Error caught while generating an export spreadsheet", ex);
         }
     }
+
+    /**
+     * Export the specified patients into an Excel file, containing the specified columns. Unlike
+     * {@link #export(List, String[], OutputStream)}, patients are loaded one at a time, while the spreadsheet is being
+     * written, and only a small part of the spreadsheet is kept in memory, so that large cohorts can be exported.
+     * Patients that don't exist or that the current user isn't allowed to see are skipped.
+     *
+     * @param patientIds the identifiers of the patients to export
+     * @param enabledFields a list of field names to export; these are internal names, which will be turned into human
+     *            readable labels
+     * @param outputStream the output stream where the resulting binary {@code .xlsx} file will be sent
+     * @since 1.3M4
+     */
+    public void exportRecords(List<String> patientIds, String[] enabledFields, OutputStream outputStream)
+    {
+        SpreadsheetExporter exporter = new SpreadsheetExporter();
+        try {
+            exporter.exportStreaming(enabledFields, new PatientIterator(patientIds.iterator()), outputStream);
+        } catch (Exception ex) {
+            this.logger.error("Error caught while generating an export spreadsheet", ex);
+        }
+    }
+
+    /**
+     * Export the specified patients as comma separated values, with the same columns and rows as the
+     * {@link #exportRecords(List, String[], OutputStream) spreadsheet export}, except that the header is written on a
+     * single line. Patients are loaded, converted and written one at a time. Patients that don't exist or that the
+     * current user isn't allowed to see are skipped.
+     *
+     * @param patientIds the identifiers of the patients to export
+     * @param enabledFields a list of field names to export; these are internal names, which will be turned into human
+     *            readable labels
+     * @param compress whether the output should be compressed with gzip
+     * @param outputStream the output stream where the resulting UTF-8 text will be sent
+     * @since 1.3M4
+     */
+    public void exportCSV(List<String> patientIds, String[] enabledFields, boolean compress,
+        OutputStream outputStream)
+    {
+        exportText(this.csvExporter, patientIds, enabledFields, compress, outputStream);
+    }
+
+    /**
+     * Same as {@link #exportCSV(List, String[], boolean, OutputStream)}, but the values are separated by tabs. Tabs
+     * and line breaks inside values are replaced by spaces.
+     *
+     * @param patientIds the identifiers of the patients to export
+     * @param enabledFields a list of field names to export; these are internal names, which will be turned into human
+     *            readable labels
+     * @param compress whether the output should be compressed with gzip
+     * @param outputStream the output stream where the resulting UTF-8 text will be sent
+     * @since 1.3M4
+     */
+    public void exportTSV(List<String> patientIds, String[] enabledFields, boolean compress,
+        OutputStream outputStream)
+    {
+        exportText(this.tsvExporter, patientIds, enabledFields, compress, outputStream);
+    }
+
+    /**
+     * Export the specified patients in the JSON Lines format, with the JSON representation of each patient on its own
+     * line. Patients are loaded and written one at a time. Patients that don't exist or that the current user isn't
+     * allowed to see are skipped.
+     *
+     * @param patientIds the identifiers of the patients to export
+     * @param fields the names of the patient fields to export, as used in the JSON representation of the patients; all
+     *            fields are exported if {@code null} or empty
+     * @param compress whether the output should be compressed with gzip
+     * @param outputStream the output stream where the resulting UTF-8 text will be sent
+     * @since 1.3M4
+     */
+    public void exportJSONLines(List<String> patientIds, String[] fields, boolean compress,
+        OutputStream outputStream)
+    {
+        exportText(this.jsonLinesExporter, patientIds, fields == null || fields.length == 0 ? null : fields,
+            compress, outputStream);
+    }
+
+    private void exportText(PatientsExporter exporter, List<String> patientIds, String[] fields, boolean compress,
+        OutputStream outputStream)
+    {
+        if (outputStream == null || (fields == null && exporter.requiresFields())) {
+            // Checked here, since the gzip header would be written before the exporter gives up
+            return;
+        }
+        try {
+            exporter.export(fields == null ? null : Arrays.asList(fields), new PatientIterator(patientIds.iterator()),
+                compress(outputStream, compress));
+        } catch (Exception ex) {
+            this.logger.error("Error caught while generating a [{}] export", exporter.getMediaType(), ex);
+        }
+    }
+
+    private OutputStream compress(OutputStream outputStream, boolean compress) throws IOException
+    {
+        return compress ? new GZIPOutputStream(outputStream) : outputStream;
+    }
+
+    /** Loads patients only when they are needed. */
+    private final class PatientIterator implements Iterator<Patient>
+    {
+        private final Iterator<String> ids;
+
+        PatientIterator(Iterator<String> ids)
+        {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.ids.hasNext();
+        }
+
+        @Override
+        public Patient next()
+        {
+            try {
+                return SpreadsheetExportService.this.repository.get(this.ids.next());
+            } catch (SecurityException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
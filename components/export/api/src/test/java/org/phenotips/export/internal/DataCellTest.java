@@ -18,6 +18,8 @@
 package org.phenotips.export.internal;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -59,6 +61,29 @@ public void addStyles()
         Assert.assertTrue(cell.getStyles().size() == 2);
     }
 
+    @Test
+    public void styleKeysAreSharedAndFollowStyleChanges()
+    {
+        DataCell first = new DataCell("", 0, 0);
+        DataCell second = new DataCell("", 1, 0, StyleOption.HEADER);
+        Assert.assertTrue(first.getStyleKey().isEmpty());
+
+        first.addStyle(StyleOption.HEADER);
+        Assert.assertSame(second.getStyleKey(), first.getStyleKey());
+
+        first.addStyles(Collections.singleton(StyleOption.HEADER_BOTTOM));
+        Assert.assertEquals(EnumSet.of(StyleOption.HEADER, StyleOption.HEADER_BOTTOM), first.getStyleKey());
+
+        first.removeStyles(Collections.singleton(StyleOption.HEADER_BOTTOM));
+        Assert.assertSame(second.getStyleKey(), first.getStyleKey());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void styleKeysAreImmutable()
+    {
+        new DataCell("", 0, 0, StyleOption.HEADER).getStyleKey().add(StyleOption.YES);
+    }
+
     @Test
     public void linesTest()
     {
@@ -43,19 +43,20 @@ public void addCellFinalizeAddAgainOverwrite() throws Exception
         when(cellOne.getY()).thenReturn(yOne);
 
         section.addCell(cellOne);
-        Assert.assertNull(section.getMatrix());
+        Assert.assertFalse(section.isFinalized());
+        Assert.assertNull(section.getCell(xOne, yOne));
         Assert.assertThat(section.getCellList().isEmpty(), is(false));
         Assert.assertThat(section.getCellList().contains(cellOne), is(true));
         Assert.assertEquals(xOne, section.getMaxX());
         Assert.assertEquals(yOne, section.getMaxY());
 
         section.finalizeToMatrix();
-        Assert.assertNotNull(section.getMatrix());
-        Assert.assertEquals(xOne + 1, section.getMatrix().length);
-        Assert.assertEquals(yOne + 1, section.getMatrix()[0].length);
-        Assert.assertEquals(cellOne, section.getMatrix()[xOne][yOne]);
+        Assert.assertTrue(section.isFinalized());
+        Assert.assertEquals(cellOne, section.getCell(xOne, yOne));
+        Assert.assertNull(section.getCell(0, 0));
+        Assert.assertEquals(1, section.getRow(yOne).size());
 
-        /* This cell should not end up in the matrix. */
+        /* This cell is outside the initial bounds, the matrix grows to include it. */
         Integer xTwo = 2;
         Integer yTwo = 1;
         DataCell cellTwo = mock(DataCell.class);
@@ -65,6 +66,7 @@ public void addCellFinalizeAddAgainOverwrite() throws Exception
         section.addCell(cellTwo);
         Assert.assertEquals(xTwo, section.getMaxX());
         Assert.assertEquals(yOne, section.getMaxY());
+        Assert.assertEquals(cellTwo, section.getCell(xTwo, yTwo));
         /* Should contain both cells still. */
         Assert.assertThat(section.getCellList().contains(cellOne), is(true));
         Assert.assertThat(section.getCellList().contains(cellTwo), is(true));
@@ -80,7 +82,7 @@ public void addCellFinalizeAddAgainOverwrite() throws Exception
 
         section.addCell(cellThree);
         section.finalizeToMatrix();
-        Assert.assertEquals(cellThree, section.getMatrix()[xTwo][yTwo]);
+        Assert.assertEquals(cellThree, section.getCell(xTwo, yTwo));
 
         /* If the cell has it's coordinates changed and re-added, it should not have a duplicate in cell list. */
         Integer newX = 0;
@@ -91,8 +93,8 @@ public void addCellFinalizeAddAgainOverwrite() throws Exception
         when(cellThree.getY()).thenReturn(newY);
         section.addCell(cellThree);
         Assert.assertEquals(3, section.getCellList().size());
-        /* Since the coodinates are within the current matrix size, the new cell should be inserted into the matrix. */
-        Assert.assertEquals(cellThree, section.getMatrix()[newX][newY]);
+        /* Since the new position is empty, the cell should be inserted into the matrix. */
+        Assert.assertEquals(cellThree, section.getCell(newX, newY));
     }
 
     @Test(expected = Exception.class)
@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class DelimitedTextExporterTest
+{
+    @Test
+    public void badParameters() throws Exception
+    {
+        DelimitedTextExporter spy = spy(new DelimitedTextExporter(','));
+        OutputStream stream = mock(OutputStream.class);
+
+        spy.export((String[]) null, null, stream);
+        spy.export(new String[0], null, null);
+
+        verify(spy, never()).runStreamingAssembler(anySetOf(String.class));
+        verifyZeroInteractions(stream);
+    }
+
+    @Test
+    public void componentsDescribeTheirFormat()
+    {
+        Assert.assertEquals("text/csv", new CSVPatientsExporter().getMediaType());
+        Assert.assertEquals("\"a,b\"", new CSVPatientsExporter().escape("a,b"));
+        Assert.assertEquals("text/tab-separated-values", new TSVPatientsExporter().getMediaType());
+        Assert.assertEquals("a b", new TSVPatientsExporter().escape("a\tb"));
+        Assert.assertTrue(new TSVPatientsExporter().requiresFields());
+    }
+
+    @Test
+    public void csvValuesAreQuotedWhenNeeded()
+    {
+        DelimitedTextExporter exporter = new DelimitedTextExporter(',');
+
+        Assert.assertEquals("plain value", exporter.escape("plain value"));
+        Assert.assertEquals("\"one, two\"", exporter.escape("one, two"));
+        Assert.assertEquals("\"say \"\"hi\"\"\"", exporter.escape("say \"hi\""));
+        Assert.assertEquals("\"two\nlines\"", exporter.escape("two\nlines"));
+    }
+
+    @Test
+    public void tsvValuesHaveTabsAndLineBreaksReplaced()
+    {
+        DelimitedTextExporter exporter = new DelimitedTextExporter('\t');
+
+        Assert.assertEquals("one, \"two\"", exporter.escape("one, \"two\""));
+        Assert.assertEquals("a b c  d", exporter.escape("a\tb\nc\r\nd"));
+    }
+
+    @Test
+    public void headerIsFlattenedIntoOneLine() throws Exception
+    {
+        DataSection header = new DataSection();
+        header.addCell(new DataCell("Identifier", 0, 0));
+        header.addCell(new DataCell("Phenotype", 1, 0));
+        header.addCell(new DataCell("Present", 1, 1));
+        header.addCell(new DataCell("Absent", 2, 1));
+        header.finalizeToMatrix();
+        header.mergeX();
+        StringWriter writer = new StringWriter();
+
+        new DelimitedTextExporter(',').writeHeader(header, 3, writer);
+
+        Assert.assertEquals("Identifier,Phenotype / Present,Phenotype / Absent\n", writer.toString());
+    }
+
+    @Test
+    public void rowsAreWrittenWithEmptyValuesForMissingCells() throws Exception
+    {
+        DataSection section = new DataSection();
+        section.addCell(new DataCell("P0000001", 0, 0));
+        section.addCell(new DataCell("Yes, confirmed", 2, 0));
+        section.addCell(new DataCell("Second", 1, 1));
+        section.finalizeToMatrix();
+        StringWriter writer = new StringWriter();
+
+        new DelimitedTextExporter(',').writeRows(section, 4, writer);
+
+        Assert.assertEquals("P0000001,,\"Yes, confirmed\",\n,Second,,\n", writer.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void patientsAreWrittenBelowTheHeader() throws Exception
+    {
+        DelimitedTextExporter spy = spy(new DelimitedTextExporter('\t'));
+        SheetAssembler assembler = mock(SheetAssembler.class);
+
+        DataSection header = new DataSection();
+        header.addCell(new DataCell("Identifier", 0, 0));
+        header.addCell(new DataCell("Sex", 1, 0));
+        header.finalizeToMatrix();
+        final DataSection first = new DataSection();
+        first.addCell(new DataCell("P0000001", 0, 0));
+        first.addCell(new DataCell("F", 1, 0));
+        first.finalizeToMatrix();
+        final DataSection second = new DataSection();
+        second.addCell(new DataCell("P0000002", 0, 0));
+        second.finalizeToMatrix();
+
+        doReturn(assembler).when(spy).runStreamingAssembler(anySetOf(String.class));
+        doReturn(header).when(assembler).getAssembled();
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception
+            {
+                SheetAssembler.PatientSectionHandler handler =
+                    (SheetAssembler.PatientSectionHandler) invocation.getArguments()[1];
+                handler.handle(first);
+                handler.handle(second);
+                return null;
+            }
+        }).when(assembler).assemblePatients(any(Iterator.class), any(SheetAssembler.PatientSectionHandler.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        spy.export(new String[] { "doc.name", "gender" },
+            Arrays.asList(mock(Patient.class), mock(Patient.class)).iterator(), out);
+
+        Assert.assertEquals("Identifier\tSex\nP0000001\tF\nP0000002\t\n",
+            new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
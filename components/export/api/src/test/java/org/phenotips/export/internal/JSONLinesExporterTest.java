@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JSONLinesExporterTest
+{
+    @Test
+    public void eachPatientIsWrittenOnItsOwnLine() throws Exception
+    {
+        Patient patient1 = mock(Patient.class);
+        Patient patient2 = mock(Patient.class);
+        when(patient1.toJSON(null)).thenReturn(new JSONObject().put("id", "P0000001").put("notes", "two\nlines"));
+        when(patient2.toJSON(null)).thenReturn(new JSONObject().put("id", "P0000002"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new JSONLinesExporter().export(null, Arrays.asList(patient1, null, patient2).iterator(), out);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("two\nlines", new JSONObject(lines[0]).getString("notes"));
+        Assert.assertEquals("P0000002", new JSONObject(lines[1]).getString("id"));
+    }
+
+    @Test
+    public void onlySelectedFieldsAreWritten() throws Exception
+    {
+        Patient patient = mock(Patient.class);
+        Collection<String> fields = Arrays.asList("external_id", "phenotype");
+        when(patient.toJSON(fields)).thenReturn(new JSONObject().put("external_id", "E1"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new JSONLinesExporter().export(fields, Arrays.asList(patient).iterator(), out);
+
+        Assert.assertEquals("{\"external_id\":\"E1\"}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertFalse(new JSONLinesExporter().requiresFields());
+    }
+}
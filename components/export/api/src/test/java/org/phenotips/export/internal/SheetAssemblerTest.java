@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class SheetAssemblerTest
+{
+    private SheetAssembler assembler;
+
+    private Patient patient1 = mock(Patient.class);
+
+    private Patient patient2 = mock(Patient.class);
+
+    private Patient patient3 = mock(Patient.class);
+
+    private DataSection section1 = new DataSection();
+
+    private DataSection section2 = new DataSection();
+
+    private DataSection section3 = new DataSection();
+
+    private List<DataSection> handled = Collections.synchronizedList(new ArrayList<DataSection>());
+
+    private SheetAssembler.PatientSectionHandler handler = new SheetAssembler.PatientSectionHandler()
+    {
+        @Override
+        public void handle(DataSection section)
+        {
+            SheetAssemblerTest.this.handled.add(section);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        this.assembler = mock(SheetAssembler.class);
+        doCallRealMethod().when(this.assembler).convertPatients(any(Iterator.class),
+            any(SheetAssembler.PatientSectionHandler.class), any(ExecutorService.class), anyInt());
+    }
+
+    @Test
+    public void sectionsAreHandledInOrderWhenConversionsFinishOutOfOrder() throws Exception
+    {
+        final CountDownLatch lastConverted = new CountDownLatch(1);
+        final List<Patient> completed = Collections.synchronizedList(new ArrayList<Patient>());
+        doAnswer(new Answer<DataSection>()
+        {
+            @Override
+            public DataSection answer(InvocationOnMock invocation) throws Exception
+            {
+                // The first patient only finishes after the last one
+                Assert.assertTrue(lastConverted.await(10, TimeUnit.SECONDS));
+                completed.add(SheetAssemblerTest.this.patient1);
+                return SheetAssemblerTest.this.section1;
+            }
+        }).when(this.assembler).assembleBody(this.patient1);
+        doAnswer(new Answer<DataSection>()
+        {
+            @Override
+            public DataSection answer(InvocationOnMock invocation) throws Exception
+            {
+                completed.add(SheetAssemblerTest.this.patient2);
+                return SheetAssemblerTest.this.section2;
+            }
+        }).when(this.assembler).assembleBody(this.patient2);
+        doAnswer(new Answer<DataSection>()
+        {
+            @Override
+            public DataSection answer(InvocationOnMock invocation) throws Exception
+            {
+                completed.add(SheetAssemblerTest.this.patient3);
+                lastConverted.countDown();
+                return SheetAssemblerTest.this.section3;
+            }
+        }).when(this.assembler).assembleBody(this.patient3);
+        ExecutorService workers = Executors.newFixedThreadPool(3);
+
+        this.assembler.convertPatients(Arrays.asList(this.patient1, null, this.patient2, this.patient3).iterator(),
+            this.handler, workers, 3);
+
+        Assert.assertTrue(completed.indexOf(this.patient1) > completed.indexOf(this.patient3));
+        Assert.assertEquals(Arrays.asList(this.section1, this.section2, this.section3), this.handled);
+        Assert.assertTrue(workers.isShutdown());
+    }
+
+    @Test
+    public void conversionFailuresReachTheCaller() throws Exception
+    {
+        doReturn(this.section1).when(this.assembler).assembleBody(this.patient1);
+        IllegalStateException failure = new IllegalStateException("Broken record");
+        doThrow(failure).when(this.assembler).assembleBody(this.patient2);
+        doReturn(this.section3).when(this.assembler).assembleBody(this.patient3);
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+
+        try {
+            this.assembler.convertPatients(Arrays.asList(this.patient1, this.patient2, this.patient3).iterator(),
+                this.handler, workers, 2);
+            Assert.fail("The conversion failure wasn't reported");
+        } catch (IllegalStateException ex) {
+            Assert.assertSame(failure, ex);
+        }
+        Assert.assertEquals(Collections.singletonList(this.section1), this.handled);
+        Assert.assertTrue(workers.isShutdown());
+    }
+
+    @Test
+    public void patientsAreConvertedSequentiallyWithoutWorkers() throws Exception
+    {
+        doReturn(this.section1).when(this.assembler).assembleBody(this.patient1);
+        doReturn(this.section2).when(this.assembler).assembleBody(this.patient2);
+
+        this.assembler.convertPatients(Arrays.asList(this.patient1, null, this.patient2).iterator(), this.handler,
+            null, 4);
+
+        Assert.assertEquals(Arrays.asList(this.section1, this.section2), this.handled);
+    }
+}
@@ -27,8 +27,13 @@
 
 import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Provider;
 
@@ -40,6 +45,8 @@
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -50,6 +57,7 @@
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -166,7 +174,7 @@ public void commitTest() throws NoSuchFieldException, IllegalArgumentException,
         doNothing().when(spy).commitRows(eq(section), eq(sheet), any(Styler.class));
         doReturn(0).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(1).when(cell).getMergeX();
 
         Field field = ReflectionUtils.getField(ComponentManagerRegistry.class, "cmProvider");
@@ -206,7 +214,7 @@ public void commitRowTest()
         DataCell[][] matrix = new DataCell[1][1];
         matrix[0][0] = dataCell;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(row).when(sheet).createRow(anyInt());
         doReturn(0).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
@@ -235,7 +243,7 @@ public void commitEmptyTest()
         Styler styler = mock(Styler.class);
         DataCell[][] matrix = new DataCell[1][1];
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(row).when(sheet).createRow(anyInt());
         doReturn(0).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
@@ -260,7 +268,7 @@ public void commitRowAdjustHeightTest()
         DataCell[][] matrix = new DataCell[1][1];
         matrix[0][0] = dataCell;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(row).when(sheet).createRow(anyInt());
         doReturn(0).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
@@ -273,4 +281,73 @@ public void commitRowAdjustHeightTest()
 
         verify(row, times(1)).setHeight(anyShort());
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void streamingCommitsPatientsOneBelowTheOther() throws Exception
+    {
+        SpreadsheetExporter exporter = new SpreadsheetExporter();
+        SpreadsheetExporter spy = spy(exporter);
+        Workbook workbook = mock(Workbook.class);
+        Sheet sheet = mock(Sheet.class);
+        SheetAssembler assembler = mock(SheetAssembler.class);
+        Patient first = mock(Patient.class);
+        Patient second = mock(Patient.class);
+
+        DataSection header = new DataSection();
+        header.addCell(new DataCell("Identifier", 0, 0));
+        header.finalizeToMatrix();
+        final DataSection firstSection = new DataSection();
+        firstSection.addCell(new DataCell("P0000001", 0, 0));
+        firstSection.addCell(new DataCell("A longer value\non two lines", 0, 1));
+        firstSection.finalizeToMatrix();
+        final DataSection secondSection = new DataSection();
+        secondSection.addCell(new DataCell("P0000002", 0, 0));
+        secondSection.finalizeToMatrix();
+
+        spy.wBook = workbook;
+        doReturn(sheet).when(workbook).createSheet(anyString());
+        doReturn(assembler).when(spy).runStreamingAssembler(anySetOf(String.class));
+        doReturn(header).when(assembler).getAssembled();
+        doReturn(1).when(assembler).getHeaderHeight();
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception
+            {
+                SheetAssembler.PatientSectionHandler handler =
+                    (SheetAssembler.PatientSectionHandler) invocation.getArguments()[1];
+                handler.handle(firstSection);
+                handler.handle(secondSection);
+                return null;
+            }
+        }).when(assembler).assemblePatients(any(Iterator.class), any(SheetAssembler.PatientSectionHandler.class));
+        doNothing().when(spy).commitRows(any(DataSection.class), any(Sheet.class), any(Styler.class), anyInt());
+        doNothing().when(spy).freezeHeader(anyShort(), any(Sheet.class));
+
+        spy.processMainSheetStreaming(new HashSet<String>(), Arrays.asList(first, null, second).iterator());
+
+        verify(spy).commitRows(eq(header), eq(sheet), any(Styler.class), eq(0));
+        verify(spy).commitRows(eq(firstSection), eq(sheet), any(Styler.class), eq(1));
+        verify(spy).commitRows(eq(secondSection), eq(sheet), any(Styler.class), eq(3));
+        verify(sheet).setColumnWidth(0, ("A longer value".length() + 1) * 256);
+        verify(sheet, times(0)).autoSizeColumn(anyInt());
+        verify(spy).freezeHeader((short) 1, sheet);
+    }
+
+    /** Makes a mocked section return the cells of the given matrix, indexed by x and then y. */
+    private static void mockMatrix(DataSection section, DataCell[][] matrix)
+    {
+        doReturn(true).when(section).isFinalized();
+        for (int y = 0; y < matrix[0].length; y++) {
+            Map<Integer, DataCell> row = new HashMap<>();
+            for (int x = 0; x < matrix.length; x++) {
+                if (matrix[x][y] != null) {
+                    doReturn(matrix[x][y]).when(section).getCell(x, y);
+                    row.put(x, matrix[x][y]);
+                }
+            }
+            doReturn(row).when(section).getRow(y);
+        }
+    }
 }
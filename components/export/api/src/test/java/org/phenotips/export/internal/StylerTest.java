@@ -36,6 +36,7 @@
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 public class StylerTest
 {
@@ -48,7 +49,7 @@ public void styleBottom() throws Exception
         DataCell[][] matrix = new DataCell[2][1];
         matrix[0][0] = cell;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(1).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
 
@@ -70,7 +71,7 @@ public void styleBorder() throws Exception
         matrix[0][0] = cellLeft;
         matrix[1][0] = cellRight;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(1).when(section).getMaxX();
         doReturn(1).when(section).getMaxY();
 
@@ -98,7 +99,7 @@ public void extendHorizontally() throws Exception
         matrix[1][0] = cellMiddle;
         matrix[3][0] = cellRightSpy;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(3).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
         doReturn(styleSet).when(cellMiddle).getStyles();
@@ -127,7 +128,7 @@ public void extendHorizontallyNotFound() throws Exception
         matrix[1][0] = cellMiddle;
         matrix[3][0] = cellRight;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(3).when(section).getMaxX();
         doReturn(0).when(section).getMaxY();
         doReturn(styleSet).when(cellMiddle).getStyles();
@@ -158,7 +159,7 @@ public void extendVertically() throws Exception
         matrix[0][1] = cellMiddle;
         matrix[0][3] = cellBottomSpy;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(0).when(section).getMaxX();
         doReturn(3).when(section).getMaxY();
         doReturn(styleSet).when(cellMiddle).getStyles();
@@ -190,7 +191,7 @@ public void extendVerticallyNotFound() throws Exception
         matrix[0][1] = cellMiddle;
         matrix[0][3] = cellBottomSpy;
 
-        doReturn(matrix).when(section).getMatrix();
+        mockMatrix(section, matrix);
         doReturn(0).when(section).getMaxX();
         doReturn(3).when(section).getMaxY();
         doReturn(styleSet).when(cellMiddle).getStyles();
@@ -223,7 +224,7 @@ public void styleNoStyles()
 
         styler.style(dataCell, cell, workbook);
 
-        verify(dataCell).getStyles();
+        verify(dataCell).getStyleKey();
         verify(style, times(1)).setWrapText(true);
         verify(style, times(1)).setFont(any(Font.class));
         verify(style, times(1)).setVerticalAlignment(CellStyle.VERTICAL_TOP);
@@ -234,13 +235,38 @@ public void styleNoStyles()
         verifyNoMoreInteractions(dataCell);
     }
 
+    @Test
+    public void stylesAreCreatedOncePerDistinctStyles()
+    {
+        Styler styler = new Styler();
+        Workbook workbook = mock(Workbook.class);
+        CellStyle headerStyle = mock(CellStyle.class);
+        CellStyle plainStyle = mock(CellStyle.class);
+        Font font = mock(Font.class);
+        Cell cell = mock(Cell.class);
+
+        when(workbook.createCellStyle()).thenReturn(headerStyle, plainStyle);
+        doReturn(font).when(workbook).createFont();
+
+        for (int x = 0; x < 100; x++) {
+            styler.style(new DataCell("", x, 0, StyleOption.HEADER), cell, workbook);
+            styler.style(new DataCell("", x, 1), cell, workbook);
+        }
+
+        verify(workbook, times(2)).createCellStyle();
+        /* The data font and the header font */
+        verify(workbook, times(2)).createFont();
+        verify(cell, times(100)).setCellStyle(headerStyle);
+        verify(cell, times(100)).setCellStyle(plainStyle);
+    }
+
     @Test(expected = Exception.class)
     public void styleBottomNullMatrix() throws Exception
     {
         DataSection section = mock(DataSection.class);
         StyleOption style = mock(StyleOption.class);
 
-        doReturn(null).when(section).getMatrix();
+        doReturn(false).when(section).isFinalized();
 
         Styler.styleSectionBottom(section, style);
 
@@ -254,7 +280,7 @@ public void styleBorderNullMatrix() throws Exception
         StyleOption styleLeft = StyleOption.SECTION_BORDER_LEFT;
         StyleOption styleRight = StyleOption.SECTION_BORDER_RIGHT;
 
-        doReturn(null).when(section).getMatrix();
+        doReturn(false).when(section).isFinalized();
 
         Styler.styleSectionBorder(section, styleLeft, styleRight);
 
@@ -267,7 +293,7 @@ public void extendHorizontallyNullMatrix() throws Exception
         DataSection section = mock(DataSection.class);
         StyleOption style = StyleOption.SECTION_BORDER_LEFT;
 
-        doReturn(null).when(section).getMatrix();
+        doReturn(false).when(section).isFinalized();
 
         Styler.extendStyleHorizontally(section, style);
 
@@ -280,10 +306,21 @@ public void extendVerticallyNullMatrix() throws Exception
         DataSection section = mock(DataSection.class);
         StyleOption style = StyleOption.SECTION_BORDER_LEFT;
 
-        doReturn(null).when(section).getMatrix();
+        doReturn(false).when(section).isFinalized();
 
         Styler.extendStyleVertically(section, style);
 
         verifyNoMoreInteractions(section);
     }
+
+    /** Makes a mocked section return the cells of the given matrix, indexed by x and then y. */
+    private static void mockMatrix(DataSection section, DataCell[][] matrix)
+    {
+        doReturn(true).when(section).isFinalized();
+        for (int x = 0; x < matrix.length; x++) {
+            for (int y = 0; y < matrix[x].length; y++) {
+                doReturn(matrix[x][y]).when(section).getCell(x, y);
+            }
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.rest;
+
+import org.phenotips.data.rest.PatientsResource;
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+import org.phenotips.rest.RequiredAccess;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for exporting all the patient records accessible to the current user in plain text formats meant for
+ * processing by other tools: comma or tab separated values, with the same columns as the spreadsheet export, or JSON
+ * Lines, with the JSON representation of each record on its own line. Records are written out as they are loaded, so
+ * that the memory needed doesn't grow with the number of records.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Path("/patients/export/{format}")
+@Relation("https://phenotips.org/rel/patientRecordsBulkExport")
+@ParentResource(PatientsResource.class)
+public interface PatientsBulkExportResource
+{
+    /** The media type of comma separated values. */
+    String TEXT_CSV = "text/csv";
+
+    /** The media type of tab separated values. */
+    String TEXT_TSV = "text/tab-separated-values";
+
+    /** The media type of JSON Lines. */
+    String APPLICATION_JSON_LINES = "application/x-ndjson";
+
+    /** The media type of gzip compressed exports. */
+    String APPLICATION_GZIP = "application/gzip";
+
+    /**
+     * Export the patient records that the current user can view.
+     *
+     * @param format the export format, one of {@code csv}, {@code tsv} or {@code jsonl}
+     * @param fields a comma separated list of the fields to export; for {@code csv} and {@code tsv} these are the same
+     *            column names as used by the spreadsheet export, for example {@code external_id,phenotype}, and are
+     *            mandatory, while for {@code jsonl} these are the names of the patient fields, as used in the JSON
+     *            representation of the records, and all fields are exported if missing
+     * @param compress whether the export should be compressed with gzip
+     * @return a response streaming the exported records, or a {@code 400} response if the format is not supported or
+     *         the mandatory fields are missing
+     */
+    @GET
+    @Produces({ TEXT_CSV, TEXT_TSV, APPLICATION_JSON_LINES, APPLICATION_GZIP })
+    @RequiredAccess("view")
+    Response exportPatients(
+        @PathParam("format") String format,
+        @QueryParam("fields") String fields,
+        @QueryParam("compress") @DefaultValue("false") Boolean compress);
+}
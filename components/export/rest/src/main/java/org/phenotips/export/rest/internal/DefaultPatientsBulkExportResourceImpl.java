@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.rest.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.export.PatientsExporter;
+import org.phenotips.export.rest.PatientsBulkExportResource;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.rest.XWikiResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Default implementation for {@link PatientsBulkExportResource} using XWiki's support for REST resources. Records are
+ * loaded, converted and written to the response one at a time, in a copy of the XWiki context of the request, since
+ * the response is written after the request has been handled.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Component
+@Named("org.phenotips.export.rest.internal.DefaultPatientsBulkExportResourceImpl")
+@Singleton
+public class DefaultPatientsBulkExportResourceImpl extends XWikiResource implements PatientsBulkExportResource
+{
+    @Inject
+    private Logger logger;
+
+    /** Only returns the patients that the current user can view. */
+    @Inject
+    @Named("secure")
+    private PatientRepository repository;
+
+    /** Provides the exporters, registered under the name of the format that they write. */
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    /** Used for removing the execution context once the response is written. */
+    @Inject
+    private Execution currentExecution;
+
+    @Override
+    public Response exportPatients(String format, String fields, Boolean compress)
+    {
+        this.logger.debug("Exporting patient records as [{}] via REST, with fields [{}]", format, fields);
+        final String[] selectedFields = StringUtils.isBlank(fields) ? null : StringUtils.split(fields, ", ");
+        final PatientsExporter exporter;
+        try {
+            exporter = this.componentManagerProvider.get().getInstance(PatientsExporter.class, format);
+        } catch (ComponentLookupException ex) {
+            this.logger.debug("Unsupported export format: [{}]", format);
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        if (selectedFields == null && exporter.requiresFields()) {
+            this.logger.debug("No columns requested for the [{}] export", format);
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        final boolean gzip = Boolean.TRUE.equals(compress);
+
+        // Access rights are checked for the current user, the iterator must be obtained while handling the request
+        final Iterator<Patient> patients = this.repository.getAll();
+        // The request context is cleaned up before the response is written, so keep a copy for loading the records;
+        // this also lets the export convert the records in parallel, since its workers copy the current context
+        final XWikiContext requestContext = getXWikiContext().clone();
+        StreamingOutput output = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream stream) throws IOException
+            {
+                ExecutionContext executionContext = new ExecutionContext();
+                executionContext.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, requestContext);
+                try {
+                    DefaultPatientsBulkExportResourceImpl.this.contextManager.initialize(executionContext);
+                    writePatients(exporter, selectedFields, patients, gzip ? new GZIPOutputStream(stream) : stream);
+                } catch (ExecutionContextException ex) {
+                    throw new IOException("Failed to initialize the export context", ex);
+                } finally {
+                    DefaultPatientsBulkExportResourceImpl.this.currentExecution.removeContext();
+                }
+            }
+        };
+        return Response.ok(output, gzip ? APPLICATION_GZIP : exporter.getMediaType()).build();
+    }
+
+    private void writePatients(PatientsExporter exporter, String[] selectedFields, Iterator<Patient> patients,
+        OutputStream stream) throws IOException
+    {
+        try {
+            exporter.export(selectedFields == null ? null : Arrays.asList(selectedFields), patients, stream);
+        } catch (RuntimeException ex) {
+            this.logger.error("Failed to export patient records as [{}]: {}", exporter.getMediaType(),
+                ex.getMessage(), ex);
+            throw new WebApplicationException(ex, Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.rest.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.export.PatientsExporter;
+import org.phenotips.export.rest.PatientsBulkExportResource;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+
+import javax.inject.Provider;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientsBulkExportResourceImpl} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientsBulkExportResourceImplTest
+{
+    @Rule
+    public MockitoComponentMockingRule<PatientsBulkExportResource> mocker =
+        new MockitoComponentMockingRule<PatientsBulkExportResource>(DefaultPatientsBulkExportResourceImpl.class);
+
+    @Mock
+    private Patient patient1;
+
+    @Mock
+    private Patient patient2;
+
+    @Mock
+    private XWikiContext requestContextCopy;
+
+    @Mock
+    private PatientsExporter csvExporter;
+
+    private PatientRepository repository;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        Execution execution = mock(Execution.class);
+        ExecutionContext executionContext = mock(ExecutionContext.class);
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        doReturn(executionContext).when(execution).getContext();
+        XWikiContext requestContext = mock(XWikiContext.class);
+        doReturn(requestContext).when(executionContext).getProperty("xwikicontext");
+        when(requestContext.clone()).thenReturn(this.requestContextCopy);
+
+        Provider<ComponentManager> componentManagerProvider = this.mocker.getInstance(
+            new DefaultParameterizedType((Type) null, Provider.class, new Type[] { ComponentManager.class }),
+            "context");
+        when(componentManagerProvider.get()).thenReturn(componentManager);
+        when(componentManager.getInstance(PatientsExporter.class, "jsonl")).thenReturn(new LinesExporter());
+        when(componentManager.getInstance(PatientsExporter.class, "csv")).thenReturn(this.csvExporter);
+        when(componentManager.getInstance(PatientsExporter.class, "xml"))
+            .thenThrow(new ComponentLookupException("Unknown format"));
+        when(this.csvExporter.getMediaType()).thenReturn("text/csv");
+        when(this.csvExporter.requiresFields()).thenReturn(true);
+
+        this.repository = this.mocker.getInstance(PatientRepository.class, "secure");
+        when(this.patient1.toJSON(null)).thenReturn(new JSONObject().put("id", "P0000001"));
+        when(this.patient2.toJSON(null)).thenReturn(new JSONObject().put("id", "P0000002"));
+    }
+
+    @Test
+    public void exportIsWrittenWithTheMediaTypeOfTheFormat() throws Exception
+    {
+        when(this.repository.getAll()).thenReturn(Arrays.asList(this.patient1, this.patient2).iterator());
+
+        Response response = this.mocker.getComponentUnderTest().exportPatients("jsonl", null, false);
+
+        Assert.assertEquals(PatientsBulkExportResource.APPLICATION_JSON_LINES,
+            response.getMetadata().getFirst("Content-Type").toString());
+        String[] lines = new String(export(response), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("P0000001", new JSONObject(lines[0]).getString("id"));
+        Assert.assertEquals("P0000002", new JSONObject(lines[1]).getString("id"));
+    }
+
+    @Test
+    public void selectedFieldsArePassedToTheExporter() throws Exception
+    {
+        when(this.repository.getAll()).thenReturn(Collections.singletonList(this.patient1).iterator());
+        when(this.patient1.toJSON(Arrays.asList("external_id", "phenotype")))
+            .thenReturn(new JSONObject().put("external_id", "E1"));
+
+        Response response =
+            this.mocker.getComponentUnderTest().exportPatients("jsonl", "external_id, phenotype", false);
+
+        Assert.assertEquals("{\"external_id\":\"E1\"}\n", new String(export(response), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compressedExportIsGzipped() throws Exception
+    {
+        when(this.repository.getAll()).thenReturn(Collections.singletonList(this.patient1).iterator());
+
+        Response response = this.mocker.getComponentUnderTest().exportPatients("jsonl", null, true);
+
+        Assert.assertEquals(PatientsBulkExportResource.APPLICATION_GZIP,
+            response.getMetadata().getFirst("Content-Type").toString());
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(export(response)));
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+            uncompressed.write(buffer, 0, read);
+        }
+        Assert.assertEquals("{\"id\":\"P0000001\"}\n", new String(uncompressed.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void unsupportedFormatsAreRejected() throws Exception
+    {
+        Response response = this.mocker.getComponentUnderTest().exportPatients("xml", null, false);
+
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(this.repository, never()).getAll();
+    }
+
+    @Test
+    public void delimitedExportsRequireFields() throws Exception
+    {
+        Response response = this.mocker.getComponentUnderTest().exportPatients("csv", " ", false);
+
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(this.repository, never()).getAll();
+    }
+
+    @Test
+    public void delimitedExportsAreWrittenByTheExporterOfTheFormat() throws Exception
+    {
+        final Iterator<Patient> patients = Collections.singletonList(this.patient1).iterator();
+        when(this.repository.getAll()).thenReturn(patients);
+
+        Response response = this.mocker.getComponentUnderTest().exportPatients("csv", "external_id,phenotype", false);
+
+        Assert.assertEquals("text/csv", response.getMetadata().getFirst("Content-Type").toString());
+        export(response);
+        ArgumentCaptor<Collection> fields = ArgumentCaptor.forClass(Collection.class);
+        verify(this.csvExporter).export(fields.capture(), same(patients), any(OutputStream.class));
+        Assert.assertEquals(Arrays.asList("external_id", "phenotype"), fields.getValue());
+    }
+
+    @Test
+    public void patientsAreExportedInACopyOfTheRequestContext() throws Exception
+    {
+        final ExecutionContextManager contextManager = this.mocker.getInstance(ExecutionContextManager.class);
+        final Execution execution = this.mocker.getInstance(Execution.class);
+        when(this.repository.getAll()).thenReturn(Collections.singletonList(this.patient1).iterator());
+        when(this.patient1.toJSON(null)).thenAnswer(new Answer<JSONObject>()
+        {
+            @Override
+            public JSONObject answer(InvocationOnMock invocation) throws Exception
+            {
+                ArgumentCaptor<ExecutionContext> context = ArgumentCaptor.forClass(ExecutionContext.class);
+                verify(contextManager).initialize(context.capture());
+                Assert.assertSame(DefaultPatientsBulkExportResourceImplTest.this.requestContextCopy,
+                    context.getValue().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY));
+                verify(execution, never()).removeContext();
+                return new JSONObject().put("id", "P0000001");
+            }
+        });
+
+        Response response = this.mocker.getComponentUnderTest().exportPatients("jsonl", null, true);
+        verify(contextManager, never()).initialize(any(ExecutionContext.class));
+        export(response);
+
+        InOrder order = inOrder(contextManager, this.patient1, execution);
+        order.verify(contextManager).initialize(any(ExecutionContext.class));
+        order.verify(this.patient1).toJSON(null);
+        order.verify(execution).removeContext();
+    }
+
+    private byte[] export(Response response) throws Exception
+    {
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        return out.toByteArray();
+    }
+
+    /** Writes the JSON of each patient on its own line, like the JSON Lines exporter. */
+    private static final class LinesExporter implements PatientsExporter
+    {
+        @Override
+        public String getMediaType()
+        {
+            return PatientsBulkExportResource.APPLICATION_JSON_LINES;
+        }
+
+        @Override
+        public boolean requiresFields()
+        {
+            return false;
+        }
+
+        @Override
+        public void export(Collection<String> fields, Iterator<Patient> patients, OutputStream outputStream)
+            throws IOException
+        {
+            while (patients.hasNext()) {
+                outputStream.write((patients.next().toJSON(fields).toString() + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+            outputStream.close();
+        }
+    }
+}
@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
 import org.phenotips.data.permissions.Owner;
+import org.phenotips.entities.internal.PrimaryEntityIdAllocator;
 import org.phenotips.security.authorization.AuthorizationService;
 import org.phenotips.studies.family.Family;
 import org.phenotips.studies.family.FamilyRepository;
@@ -117,6 +118,22 @@ public class PhenotipsFamilyRepository implements FamilyRepository
     @Named("current")
     private DocumentReferenceResolver<EntityReference> entityReferenceResolver;
 
+    /** Hands out the identifiers of new families, initialized from {@link #getLastUsedId()}. */
+    private final PrimaryEntityIdAllocator idAllocator =
+        new PrimaryEntityIdAllocator(new PrimaryEntityIdAllocator.LastUsedIdProvider()
+        {
+            @Override
+            public long getLastUsedId()
+            {
+                try {
+                    return PhenotipsFamilyRepository.this.getLastUsedId();
+                } catch (QueryException ex) {
+                    // Don't start from an unknown point, the next allocation will try again
+                    throw new IllegalStateException("Failed to get the last used family identifier", ex);
+                }
+            }
+        });
+
     @Override
     public Family createFamily(User creator)
     {
@@ -669,20 +686,19 @@ private DocumentReference getFamilyReference(XWikiDocument patientDocument)
     /*
      * Creates a new document for the family. Only handles XWiki side and no PhenotipsFamily is created.
      */
-    private synchronized XWikiDocument createFamilyDocument(User creator)
-        throws IllegalArgumentException, QueryException, XWikiException
+    private XWikiDocument createFamilyDocument(User creator) throws XWikiException
     {
         XWikiContext context = this.provider.get();
         XWiki wiki = context.getWiki();
-        long nextId = getLastUsedId() + 1;
-        String nextStringId = String.format("%s%07d", PREFIX, nextId);
-
-        EntityReference newFamilyRef =
-            new EntityReference(nextStringId, EntityType.DOCUMENT, Family.DATA_SPACE);
-        XWikiDocument newFamilyDoc = wiki.getDocument(newFamilyRef, context);
-        if (!newFamilyDoc.isNew()) {
-            throw new IllegalArgumentException("The new family id was already taken.");
-        }
+        long nextId;
+        XWikiDocument newFamilyDoc;
+        do {
+            nextId = this.idAllocator.allocate(context.getWikiId());
+            String nextStringId = String.format("%s%07d", PREFIX, nextId);
+            EntityReference newFamilyRef =
+                new EntityReference(nextStringId, EntityType.DOCUMENT, Family.DATA_SPACE);
+            newFamilyDoc = wiki.getDocument(newFamilyRef, context);
+        } while (!newFamilyDoc.isNew());
 
         // Copying all objects from template to family
         newFamilyDoc.readFromTemplate(
@@ -0,0 +1,214 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental OBO parser: lines are fed one at a time, and each completed term is returned as soon as the start of the
+ * next stanza, or the end of the input, is reached. Lines are scanned by hand rather than with regular expressions,
+ * since this is called for every line of large ontologies.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+class OBOParser
+{
+    private static final String TERM_MARKER = "[Term]";
+
+    private static final char FIELD_NAME_VALUE_SEPARATOR = ':';
+
+    /** Quoted values, like definitions and synonyms, are followed by a qualifier or a list of references. */
+    private static final Pattern QUOTED_VALUE = Pattern.compile("^\"(.+)\"\\s*?(?:[A-Z]+|\\[).*");
+
+    private static final String ESCAPED_QUOTE = "\\\"";
+
+    private static final String QUOTE = "\"";
+
+    private final Map<String, Double> fieldSelection;
+
+    /** Canonical instances of the field names, so that all terms share the same keys. */
+    private final Map<String, String> fieldNames = new HashMap<String, String>();
+
+    private int counter;
+
+    /**
+     * When encountering a separator that is not a term separator, all data should be skipped until a term separator is
+     * encountered again
+     */
+    private boolean skip;
+
+    private TermData crtTerm = new TermData();
+
+    OBOParser(Map<String, Double> fieldSelection)
+    {
+        this.fieldSelection = fieldSelection;
+    }
+
+    /**
+     * Process one line of input.
+     *
+     * @param line the line to process
+     * @return the term completed by this line, or {@code null} if this line doesn't end a term
+     */
+    TermData feed(String line)
+    {
+        TermData result = null;
+        String trimmed = line.trim();
+        if (isStanzaHeader(trimmed)) {
+            if (this.counter > 0) {
+                result = takeCrtTerm();
+            }
+            if (trimmed.equalsIgnoreCase(TERM_MARKER)) {
+                ++this.counter;
+                this.skip = false;
+                return result;
+            }
+            // Not all entities are terms, skip everything until the next term
+            this.skip = true;
+        }
+        if (!this.skip) {
+            int separator = findSeparator(line);
+            if (separator < 0) {
+                return result;
+            }
+            String name = getFieldName(line, separator);
+            String value = line.substring(skipWhitespace(line, separator + 1));
+            if ("data-version".equals(name.trim())) {
+                this.crtTerm.addTo("version", value);
+                this.crtTerm.addTo(TermData.ID_FIELD_NAME, "HEADER_INFO");
+                this.counter++;
+            }
+            loadField(name, value);
+        }
+        return result;
+    }
+
+    /**
+     * Signal that the input ended.
+     *
+     * @return the last term, or {@code null} if there's no pending term
+     */
+    TermData finish()
+    {
+        return this.counter > 0 ? takeCrtTerm() : null;
+    }
+
+    /**
+     * Check if a line starts a new stanza, which may or may not be a term.
+     *
+     * @param line the line to check
+     * @return {@code true} if the line is a stanza header
+     */
+    static boolean isStanzaStart(String line)
+    {
+        return isStanzaHeader(line.trim());
+    }
+
+    boolean isFieldSelected(String name)
+    {
+        return this.fieldSelection.isEmpty() || this.fieldSelection.containsKey(name);
+    }
+
+    /** Check for a stanza header, a sequence of letters enclosed in square brackets, on an already trimmed line. */
+    private static boolean isStanzaHeader(String trimmed)
+    {
+        int last = trimmed.length() - 1;
+        if (last < 2 || trimmed.charAt(0) != '[' || trimmed.charAt(last) != ']') {
+            return false;
+        }
+        for (int i = 1; i < last; ++i) {
+            char c = trimmed.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Find the first colon followed by whitespace, which separates the field name from the value. */
+    private static int findSeparator(String line)
+    {
+        int position = line.indexOf(FIELD_NAME_VALUE_SEPARATOR);
+        while (position >= 0) {
+            if (position + 1 < line.length() && isWhitespace(line.charAt(position + 1))) {
+                return position;
+            }
+            position = line.indexOf(FIELD_NAME_VALUE_SEPARATOR, position + 1);
+        }
+        return -1;
+    }
+
+    private String getFieldName(String line, int separator)
+    {
+        int end = separator;
+        while (end > 0 && isWhitespace(line.charAt(end - 1))) {
+            --end;
+        }
+        String name = line.substring(0, end);
+        String canonical = this.fieldNames.get(name);
+        if (canonical == null) {
+            canonical = name.intern();
+            this.fieldNames.put(canonical, canonical);
+        }
+        return canonical;
+    }
+
+    private static int skipWhitespace(String line, int start)
+    {
+        int result = start;
+        while (result < line.length() && isWhitespace(line.charAt(result))) {
+            ++result;
+        }
+        return result;
+    }
+
+    /** Same characters as the {@code \s} regular expression class. */
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private TermData takeCrtTerm()
+    {
+        TermData result = this.crtTerm.getId() != null ? this.crtTerm : null;
+        this.crtTerm = new TermData();
+        return result;
+    }
+
+    private void loadField(String name, String value)
+    {
+        if (!(isFieldSelected(name))) {
+            return;
+        }
+        String cleanValue = value;
+        if (cleanValue.startsWith(QUOTE)) {
+            Matcher matcher = QUOTED_VALUE.matcher(cleanValue);
+            if (matcher.find()) {
+                cleanValue = matcher.group(1) + cleanValue.substring(matcher.end());
+            }
+        }
+        if (cleanValue.contains(ESCAPED_QUOTE)) {
+            cleanValue = cleanValue.replace(ESCAPED_QUOTE, QUOTE);
+        }
+        this.crtTerm.addTo(name, cleanValue);
+    }
+}
@@ -18,34 +18,76 @@
 package org.phenotips.obo2solr;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SolrUpdateGenerator
 {
-    private static final String TERM_MARKER = "[Term]";
+    private static final String FILE_PROTOCOL = "file";
 
-    /** Not all entities are terms prompted by the presence of a {@link #TERM_MARKER} */
-    private static final String ENTITY_SEPARATION_REGEX = "^\\[[a-zA-Z]+\\]$";
+    /** The default number of stanzas, or terms, processed by one fork-join task. */
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
 
-    private static final String FIELD_NAME_VALUE_SEPARATOR = "\\s*:\\s+";
+    private Map<String, TermData> data = new LinkedHashMap<String, TermData>();
 
-    private int counter;
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private TermData crtTerm = new TermData();
+    /** The pool used for parsing in parallel, {@code null} for the sequential mode. */
+    private final ForkJoinPool pool;
 
-    private Map<String, TermData> data = new LinkedHashMap<String, TermData>();
+    private final int chunkSize;
 
-    private Map<String, Double> fieldSelection;
+    /**
+     * Default constructor, all the processing is done sequentially on the calling thread.
+     */
+    public SolrUpdateGenerator()
+    {
+        this(null, DEFAULT_CHUNK_SIZE);
+    }
 
-    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    /**
+     * Constructor enabling the fork-join mode for {@link #transform(URL, Map)}: the input is split into chunks of
+     * stanzas, which are parsed in parallel, and the ancestors of the parsed terms are also computed in parallel. The
+     * output is identical to the sequential mode.
+     *
+     * @param pool the pool used for processing chunks, {@code null} for the sequential mode
+     * @since 1.3M4
+     */
+    public SolrUpdateGenerator(ForkJoinPool pool)
+    {
+        this(pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor enabling the fork-join mode with a custom chunk size.
+     *
+     * @param pool the pool used for processing chunks, {@code null} for the sequential mode
+     * @param chunkSize how many stanzas, or terms, are processed by one task
+     * @see #SolrUpdateGenerator(ForkJoinPool)
+     * @since 1.3M4
+     */
+    public SolrUpdateGenerator(ForkJoinPool pool, int chunkSize)
+    {
+        this.pool = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
 
     public Map<String, TermData> transform(String ontologyUrl, Map<String, Double> fieldSelection)
     {
@@ -60,78 +102,161 @@ public Map<String, TermData> transform(String ontologyUrl, Map<String, Double> f
 
     public Map<String, TermData> transform(URL input, Map<String, Double> fieldSelection)
     {
-        this.fieldSelection = fieldSelection;
-        try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(input.openConnection().getInputStream()));
+        if (this.pool != null) {
+            return transformInParallel(input, fieldSelection);
+        }
+        OBOParser parser = new OBOParser(fieldSelection);
+        try (BufferedReader in = open(input)) {
             String line;
-            this.counter = 0;
-
-            /*
-             * When encountering a separator that is not a term separator, all data should be skipped until a term
-             * separator is encountered again
-             */
-            boolean skip = false;
             while ((line = in.readLine()) != null) {
-                if (line.trim().matches(ENTITY_SEPARATION_REGEX)) {
-                    if (this.counter > 0) {
-                        storeCrtTerm();
-                    }
-                    // Overridden below
-                    skip = true;
-                }
-                if (line.trim().equalsIgnoreCase(TERM_MARKER)) {
-                    ++this.counter;
-                    skip = false;
-                    continue;
-                }
-                if (!skip) {
-                    String[] pieces = line.split(FIELD_NAME_VALUE_SEPARATOR, 2);
-                    if (pieces.length != 2) {
-                        continue;
-                    }
-                    if (pieces[0].trim().equals("data-version")) {
-                        this.crtTerm.addTo("version", pieces[1]);
-                        this.crtTerm.addTo(TermData.ID_FIELD_NAME, "HEADER_INFO");
-                        this.counter++;
-                    }
-                    loadField(pieces[0], pieces[1]);
-                }
-            }
-            if (this.counter > 0) {
-                storeCrtTerm();
+                storeTerm(parser.feed(line));
             }
-            if (isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
+            storeTerm(parser.finish());
+            if (parser.isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
                 propagateAncestors();
             }
         } catch (NullPointerException ex) {
             this.logger.error("NullPointer: {}", ex.getMessage());
         } catch (IOException ex) {
             this.logger.error("IOException: {}", ex.getMessage());
-        } finally {
-            this.fieldSelection = null;
         }
         return this.data;
     }
 
-    private void storeCrtTerm()
+    private Map<String, TermData> transformInParallel(URL input, Map<String, Double> fieldSelection)
     {
-        if (this.crtTerm.getId() != null) {
-            this.data.put(this.crtTerm.getId(), this.crtTerm);
+        try {
+            List<List<String>> chunks = readChunks(input);
+            List<List<TermData>> parsed = new ArrayList<List<TermData>>(Collections.nCopies(chunks.size(),
+                (List<TermData>) null));
+            this.pool.invoke(new ParseTask(chunks, parsed, fieldSelection, 0, chunks.size()));
+            for (List<TermData> terms : parsed) {
+                for (TermData term : terms) {
+                    storeTerm(term);
+                }
+            }
+            if (new OBOParser(fieldSelection).isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
+                TermGraph graph = new TermGraph();
+                for (TermData term : this.data.values()) {
+                    graph.add(term);
+                }
+                List<TermData> terms = new ArrayList<TermData>(this.data.values());
+                this.pool.invoke(new ExpandTask(terms, graph, this.chunkSize, 0, terms.size()));
+            }
+        } catch (IOException ex) {
+            this.logger.error("IOException: {}", ex.getMessage());
         }
-        this.crtTerm = new TermData();
+        return this.data;
     }
 
-    private boolean isFieldSelected(String name)
+    /**
+     * Read the whole input, split into chunks of raw lines. Chunks always start at a stanza boundary, so each one can be
+     * parsed independently.
+     */
+    private List<List<String>> readChunks(URL input) throws IOException
     {
-        return this.fieldSelection.isEmpty() || this.fieldSelection.containsKey(name);
+        List<List<String>> result = new ArrayList<List<String>>();
+        List<String> chunk = new ArrayList<String>();
+        int stanzas = 0;
+        try (BufferedReader in = open(input)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (OBOParser.isStanzaStart(line) && ++stanzas > this.chunkSize) {
+                    result.add(chunk);
+                    chunk = new ArrayList<String>();
+                    stanzas = 1;
+                }
+                chunk.add(line);
+            }
+        }
+        result.add(chunk);
+        return result;
     }
 
-    private void loadField(String name, String value)
+    /**
+     * Streaming alternative to {@link #transform(String, Map)}, which doesn't hold the whole ontology in memory. The
+     * source is read twice: the first pass only collects the parent relations into a compact {@link TermGraph}, while
+     * the second pass returns the terms one by one, with their {@code term_category} closure computed from that graph.
+     *
+     * @param ontologyUrl the location of the OBO file
+     * @param fieldSelection the fields to keep, an empty map for keeping all the fields
+     * @return a stream of terms, which must be closed after use, or {@code null} if the source cannot be read
+     * @since 1.3M4
+     */
+    public TermStream stream(String ontologyUrl, Map<String, Double> fieldSelection)
     {
-        if (!(isFieldSelected(name))) {
-            return;
+        URL url;
+        try {
+            url = new URL(ontologyUrl);
+        } catch (MalformedURLException ex) {
+            return null;
+        }
+        return stream(url, fieldSelection);
+    }
+
+    /**
+     * Streaming alternative to {@link #transform(URL, Map)}, which doesn't hold the whole ontology in memory.
+     *
+     * @param input the location of the OBO file; remote files are first downloaded to a temporary file, since they
+     *            have to be read twice
+     * @param fieldSelection the fields to keep, an empty map for keeping all the fields
+     * @return a stream of terms, which must be closed after use, or {@code null} if the source cannot be read
+     * @see #stream(String, Map)
+     * @since 1.3M4
+     */
+    public TermStream stream(URL input, Map<String, Double> fieldSelection)
+    {
+        File localCopy = null;
+        try {
+            URL source = input;
+            if (!FILE_PROTOCOL.equals(input.getProtocol())) {
+                localCopy = File.createTempFile("obo2solr", ".obo");
+                try (InputStream in = input.openStream()) {
+                    Files.copy(in, localCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                source = localCopy.toURI().toURL();
+            }
+            TermGraph graph = null;
+            if (new OBOParser(fieldSelection).isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
+                graph = buildGraph(source);
+            }
+            return new TermStream(open(source), new OBOParser(fieldSelection), graph, localCopy);
+        } catch (IOException ex) {
+            this.logger.error("IOException: {}", ex.getMessage());
+            if (localCopy != null && !localCopy.delete()) {
+                localCopy.deleteOnExit();
+            }
+        }
+        return null;
+    }
+
+    private TermGraph buildGraph(URL source) throws IOException
+    {
+        TermGraph graph = new TermGraph();
+        Map<String, Double> graphFields = new HashMap<String, Double>();
+        graphFields.put(TermData.ID_FIELD_NAME, ParameterPreparer.DEFAULT_BOOST);
+        graphFields.put(TermData.PARENT_FIELD_NAME, ParameterPreparer.DEFAULT_BOOST);
+        OBOParser parser = new OBOParser(graphFields);
+        try (BufferedReader in = open(source)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                graph.add(parser.feed(line));
+            }
+            graph.add(parser.finish());
+        }
+        return graph;
+    }
+
+    private BufferedReader open(URL input) throws IOException
+    {
+        return new BufferedReader(new InputStreamReader(input.openConnection().getInputStream()));
+    }
+
+    private void storeTerm(TermData term)
+    {
+        if (term != null) {
+            this.data.put(term.getId(), term);
         }
-        this.crtTerm.addTo(name, value.replaceFirst("^\"(.+)\"\\s*?(?:[A-Z]+|\\[).*", "$1").replace("\\\"", "\""));
     }
 
     private void propagateAncestors()
@@ -141,4 +266,96 @@ private void propagateAncestors()
             term.expandTermCategories(this.data);
         }
     }
+
+    /** Parses a range of chunks, storing the terms of each chunk at the same position in the output list. */
+    private static final class ParseTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<String>> chunks;
+
+        private final List<List<TermData>> output;
+
+        private final Map<String, Double> fieldSelection;
+
+        private final int from;
+
+        private final int to;
+
+        ParseTask(List<List<String>> chunks, List<List<TermData>> output, Map<String, Double> fieldSelection,
+            int from, int to)
+        {
+            this.chunks = chunks;
+            this.output = output;
+            this.fieldSelection = fieldSelection;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new ParseTask(this.chunks, this.output, this.fieldSelection, this.from, middle),
+                    new ParseTask(this.chunks, this.output, this.fieldSelection, middle, this.to));
+                return;
+            }
+            for (int i = this.from; i < this.to; ++i) {
+                OBOParser parser = new OBOParser(this.fieldSelection);
+                List<TermData> terms = new ArrayList<TermData>();
+                for (String line : this.chunks.get(i)) {
+                    addIfNotNull(terms, parser.feed(line));
+                }
+                addIfNotNull(terms, parser.finish());
+                this.output.set(i, terms);
+            }
+        }
+
+        private static void addIfNotNull(List<TermData> terms, TermData term)
+        {
+            if (term != null) {
+                terms.add(term);
+            }
+        }
+    }
+
+    /** Expands the ancestors of a range of terms; each task only modifies its own terms. */
+    private static final class ExpandTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<TermData> terms;
+
+        private final TermGraph graph;
+
+        private final int chunkSize;
+
+        private final int from;
+
+        private final int to;
+
+        ExpandTask(List<TermData> terms, TermGraph graph, int chunkSize, int from, int to)
+        {
+            this.terms = terms;
+            this.graph = graph;
+            this.chunkSize = chunkSize;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from > this.chunkSize) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new ExpandTask(this.terms, this.graph, this.chunkSize, this.from, middle),
+                    new ExpandTask(this.terms, this.graph, this.chunkSize, middle, this.to));
+                return;
+            }
+            for (int i = this.from; i < this.to; ++i) {
+                this.terms.get(i).expandTermCategories(this.graph);
+            }
+        }
+    }
 }
@@ -25,6 +25,7 @@
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 public class TermData extends SetMap<String, String>
 {
@@ -38,6 +39,8 @@ public class TermData extends SetMap<String, String>
 
     public static final String PARENT_ID_REGEX = "^(HP\\:[0-9]{7})\\s*!\\s*.*";
 
+    private static final Pattern PARENT_ID_PATTERN = Pattern.compile(PARENT_ID_REGEX);
+
     private String id;
 
     @Override
@@ -52,13 +55,24 @@ String getId()
         return this.id;
     }
 
+    /**
+     * Strip the name of the parent term from an {@code is_a} value.
+     *
+     * @param value a parent reference, in the {@code HP:0000118 ! Phenotypic abnormality} format
+     * @return the identifier of the parent term
+     */
+    static String getParentId(String value)
+    {
+        return PARENT_ID_PATTERN.matcher(value).replaceAll("$1");
+    }
+
     @Override
     public boolean addTo(String key, String value)
     {
         if (ID_FIELD_NAME.equals(key)) {
             this.id = value;
         } else if (PARENT_FIELD_NAME.equals(key)) {
-            this.addTo(TERM_CATEGORY_FIELD_NAME, value.replaceAll(PARENT_ID_REGEX, "$1"));
+            this.addTo(TERM_CATEGORY_FIELD_NAME, getParentId(value));
         }
         return super.addTo(key, value);
     }
@@ -91,7 +105,37 @@ public void expandTermCategories(Map<String, TermData> data)
                 continue;
             }
             for (String parentTermId : data.get(nextTermId).get(PARENT_FIELD_NAME)) {
-                parentTermId = parentTermId.replaceAll(PARENT_ID_REGEX, "$1");
+                parentTermId = getParentId(parentTermId);
+                if (!result.contains(parentTermId) && !front.contains(parentTermId)) {
+                    front.add(parentTermId);
+                }
+            }
+        }
+        this.put(TERM_CATEGORY_FIELD_NAME, result);
+    }
+
+    /**
+     * Replace the direct parents listed in {@code term_category} with all the ancestors of this term, as known by the
+     * compact parent graph of the ontology.
+     *
+     * @param graph the parent relation of the whole ontology
+     * @since 1.3M4
+     */
+    public void expandTermCategories(TermGraph graph)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        Queue<String> front = new LinkedList<>();
+
+        if (this.get(TERM_CATEGORY_FIELD_NAME) == null) {
+            this.put(TERM_CATEGORY_FIELD_NAME, super.getEmptyCollection());
+        }
+
+        result.add(this.id);
+        front.addAll(this.get(TERM_CATEGORY_FIELD_NAME));
+        String nextTermId;
+        while ((nextTermId = front.poll()) != null) {
+            result.add(nextTermId);
+            for (String parentTermId : graph.getParents(nextTermId)) {
                 if (!result.contains(parentTermId) && !front.contains(parentTermId)) {
                     front.add(parentTermId);
                 }
@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact representation of the parent relation of an ontology. Term identifiers are stored once, and mapped to
+ * integer indexes, while the parents of each term are stored as a slice of a shared array of indexes.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class TermGraph
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+
+    /** Where the parents of each term start in {@link #parents}. */
+    private int[] parentStart = new int[INITIAL_CAPACITY];
+
+    /** How many parents each term has. */
+    private int[] parentCount = new int[INITIAL_CAPACITY];
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    private int edges;
+
+    /**
+     * Add a parsed term to the graph. Only the identifier and the parents of the term are kept.
+     *
+     * @param term the term to add, {@code null} values are ignored
+     */
+    public void add(TermData term)
+    {
+        if (term == null || term.getId() == null) {
+            return;
+        }
+        int termIndex = indexOf(term.getId());
+        Collection<String> termParents = term.get(TermData.PARENT_FIELD_NAME);
+        int count = termParents == null ? 0 : termParents.size();
+        this.parents = ensureCapacity(this.parents, this.edges + count);
+        this.parentStart[termIndex] = this.edges;
+        this.parentCount[termIndex] = count;
+        if (termParents != null) {
+            for (String parent : termParents) {
+                this.parents[this.edges++] = indexOf(TermData.getParentId(parent));
+            }
+        }
+    }
+
+    /**
+     * Get the parents of a term, in the order they were declared.
+     *
+     * @param id the identifier of the term
+     * @return the identifiers of the parents, an empty list if the term is unknown
+     */
+    public List<String> getParents(String id)
+    {
+        Integer termIndex = this.index.get(id);
+        if (termIndex == null) {
+            return Collections.emptyList();
+        }
+        int start = this.parentStart[termIndex];
+        List<String> result = new ArrayList<String>(this.parentCount[termIndex]);
+        for (int i = start; i < start + this.parentCount[termIndex]; ++i) {
+            result.add(this.ids[this.parents[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * The number of distinct identifiers known to this graph, including parents not defined as terms.
+     *
+     * @return a positive number
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    private int indexOf(String id)
+    {
+        Integer result = this.index.get(id);
+        if (result == null) {
+            result = this.size++;
+            this.index.put(id, result);
+            this.ids = ensureCapacity(this.ids, this.size);
+            this.parentStart = ensureCapacity(this.parentStart, this.size);
+            this.parentCount = ensureCapacity(this.parentCount, this.size);
+            this.ids[result] = id;
+        }
+        return result;
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity)
+    {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private static String[] ensureCapacity(String[] array, int capacity)
+    {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stream of terms parsed from an OBO file, returned one at a time. If the {@code term_category} field is selected,
+ * each returned term has its ancestors already expanded.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ * @see SolrUpdateGenerator#stream(String, java.util.Map)
+ */
+public class TermStream implements Iterator<TermData>, Closeable
+{
+    private final BufferedReader in;
+
+    private final OBOParser parser;
+
+    private final TermGraph graph;
+
+    /** A temporary file holding the downloaded source, to be deleted when the stream is closed; may be null. */
+    private final File localCopy;
+
+    private TermData next;
+
+    private boolean finished;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    TermStream(BufferedReader in, OBOParser parser, TermGraph graph, File localCopy)
+    {
+        this.in = in;
+        this.parser = parser;
+        this.graph = graph;
+        this.localCopy = localCopy;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (this.next == null && !this.finished) {
+            this.next = readNext();
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public TermData next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TermData result = this.next;
+        this.next = null;
+        if (this.graph != null) {
+            result.expandTermCategories(this.graph);
+        }
+        return result;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.finished = true;
+        try {
+            this.in.close();
+        } finally {
+            if (this.localCopy != null && !this.localCopy.delete()) {
+                this.localCopy.deleteOnExit();
+            }
+        }
+    }
+
+    private TermData readNext()
+    {
+        try {
+            String line = this.in.readLine();
+            if (line == null) {
+                this.finished = true;
+                return this.parser.finish();
+            }
+            return this.parser.feed(line);
+        } catch (IOException ex) {
+            this.logger.error("IOException: {}", ex.getMessage());
+            this.finished = true;
+        }
+        return null;
+    }
+}
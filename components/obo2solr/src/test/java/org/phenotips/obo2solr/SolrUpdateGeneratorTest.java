@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SolrUpdateGenerator}.
+ */
+public class SolrUpdateGeneratorTest
+{
+    private final URL input = this.getClass().getResource("/hpo-test.obo");
+
+    @Test
+    public void ancestorsArePropagated()
+    {
+        Map<String, TermData> data = new SolrUpdateGenerator().transform(this.input, new HashMap<String, Double>());
+        Assert.assertEquals(7, data.size());
+        Assert.assertTrue(data.get("HP:0001507").get(TermData.TERM_CATEGORY_FIELD_NAME).contains("HP:0000001"));
+        Assert.assertEquals("releases/2015-04-10", data.get("HEADER_INFO").get("version").iterator().next());
+    }
+
+    @Test
+    public void forkJoinModeProducesTheSameOutput()
+    {
+        Map<String, TermData> expected =
+            new SolrUpdateGenerator().transform(this.input, new HashMap<String, Double>());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize = 1; chunkSize < 4; ++chunkSize) {
+                Map<String, TermData> actual =
+                    new SolrUpdateGenerator(pool, chunkSize).transform(this.input, new HashMap<String, Double>());
+                Assert.assertEquals(expected, actual);
+                Assert.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -82,7 +82,12 @@ public class MedicationController implements PatientDataController<Medication>
     public PatientData<Medication> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            // Prefer the document already loaded by the patient, instead of fetching it again
+            DocumentModelBridge loaded = patient.getXDocument();
+            if (loaded == null) {
+                loaded = this.documentAccessBridge.getDocument(patient.getDocument());
+            }
+            XWikiDocument doc = (XWikiDocument) loaded;
             List<BaseObject> data = doc.getXObjects(Medication.CLASS_REFERENCE);
             if (data == null || data.isEmpty()) {
                 this.logger.debug("No medication data for patient [{}]", patient.getDocument());
@@ -29,6 +29,7 @@
 import java.util.Set;
 
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 /**
  * Information about a patient.
@@ -119,6 +120,19 @@ public interface Patient extends PrimaryEntity
      */
     JSONObject toJSON(Collection<String> selectedFields);
 
+    /**
+     * Writes patient data in a JSON format, restricted to the fields listed in selectedFields, as a single value at the
+     * current position of the writer. The written JSON is the same as the one returned by {@link #toJSON(Collection)},
+     * but the data of the {@link StreamingPatientDataController controllers that support it} is written directly,
+     * without building a JSON tree first. This is meant for serializing many patients one after the other.
+     *
+     * @param writer the writer where the patient JSON object is written, for example in an array of patients
+     * @param selectedFields list of fields which should be included in the resulting JSON. All available fields will be
+     *            included if null
+     * @since 1.3M4
+     */
+    void writeJSON(JSONWriter writer, Collection<String> selectedFields);
+
     /**
      * Update patient data using the provided json object (in the format generated by {@link #toJSON()}).
      * <p>
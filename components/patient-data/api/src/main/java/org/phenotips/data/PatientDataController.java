@@ -41,7 +41,9 @@
  * The {@link #writeJSON(Patient, JSONObject)} method serializes custom data into the JSON being generated for a
  * patient, and {@link #readJSON(JSONObject)} reads back data from a JSON into a patient record. Since different
  * components might serialize their custom data into the same JSON property, the {@link #writeJSON(Patient, JSONObject)}
- * method should not always create a new property, but first try to extend an existing one.
+ * method should not always create a new property, but first try to extend an existing one. Controllers which are the
+ * only ones writing their properties can also implement {@link StreamingPatientDataController}, so that their data is
+ * written without building a JSON tree when many patients are serialized.
  * </p>
  *
  * @param <T> the type of data being managed by this component, usually {@code String}, but other types are possible,
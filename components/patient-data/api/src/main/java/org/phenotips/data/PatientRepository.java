@@ -24,6 +24,10 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.stability.Unstable;
 
+import java.util.List;
+
+import org.json.JSONObject;
+
 /**
  * API that provides access to patient data. No access rights are checked here.
  *
@@ -88,6 +92,19 @@ public interface PatientRepository extends PrimaryEntityManager<Patient>
     @Deprecated
     Patient createNewPatient(DocumentReference creator);
 
+    /**
+     * Create many new patient records at once, owned by the currently logged in user, and fill them from their JSON
+     * representation. This is much faster than calling {@link #create()} and {@link Patient#updateFromJSON} for each
+     * record: identifiers are reserved for all the records at once, each record is saved only once, and several
+     * records are imported in parallel.
+     *
+     * @param patients the JSON representations of the new patient records; {@code null} entries are skipped
+     * @return a list with the same size and order as the input, holding the created patient records, or {@code null}
+     *         for the entries that could not be imported
+     * @since 1.3M4
+     */
+    List<Patient> createFromJSON(List<JSONObject> patients);
+
     /**
      * Delete a patient record, identified by its internal PhenoTips identifier. If the indicated patient record doesn't
      * exist, or if the user sending the request doesn't have the right to delete the target patient record, no change
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+/**
+ * A patient data controller which can write its data straight to a character stream, token by token, instead of
+ * adding it to a {@link JSONObject}. This is used when many patients are serialized one after the other, for example
+ * by exports, so that no JSON tree needs to be built for the data of this controller.
+ * <p>
+ * Since a streamed property cannot be extended once it is written, only controllers which are the only ones writing
+ * their JSON properties should implement this interface. The data written must be the same as the one added by
+ * {@link #writeJSON(Patient, JSONObject, Collection)}. Controllers which don't implement this interface are still
+ * serialized, through their {@code writeJSON} method, into a JSON object shared by all of them, which is then written
+ * to the stream.
+ * </p>
+ *
+ * @param <T> the type of data being managed by this controller
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Unstable
+public interface StreamingPatientDataController<T> extends PatientDataController<T>
+{
+    /**
+     * Writes the data managed by this controller as properties of the JSON object which is currently open in the
+     * writer. Nothing is written if there is no data to export.
+     *
+     * @param patient the patient being exported
+     * @param writer the writer where the patient JSON object is being written; this method must not end the object
+     * @param selectedFieldNames the list of Patient record fields which this controller should consider, with the same
+     *            meaning as for {@link #writeJSON(Patient, JSONObject, Collection)}; may be {@code null}, in which case
+     *            all available data should be written
+     */
+    void writeJSON(Patient patient, JSONWriter writer, Collection<String> selectedFieldNames);
+}
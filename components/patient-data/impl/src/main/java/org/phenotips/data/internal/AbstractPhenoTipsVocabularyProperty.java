@@ -52,6 +52,9 @@ public abstract class AbstractPhenoTipsVocabularyProperty implements VocabularyP
     /** @see #getName() */
     protected String name;
 
+    /** Resolves the name together with the other properties of the same patient, if any. */
+    private VocabularyNameResolver nameResolver;
+
     /**
      * Simple constructor providing the {@link #id term identifier}.
      *
@@ -95,6 +98,13 @@ public String getName()
         if (this.name != null) {
             return this.name;
         }
+        VocabularyNameResolver resolver = this.nameResolver;
+        if (resolver != null) {
+            resolver.resolve();
+            if (this.name != null) {
+                return this.name;
+            }
+        }
         try {
             VocabularyManager vm =
                 ComponentManagerRegistry.getContextComponentManager().getInstance(VocabularyManager.class);
@@ -109,6 +119,16 @@ public String getName()
         return this.id;
     }
 
+    /**
+     * Set the resolver that will look up the name of this property in a batch with other properties, instead of alone.
+     *
+     * @param nameResolver the batch resolver, or {@code null} to resolve the name alone
+     */
+    void setNameResolver(VocabularyNameResolver nameResolver)
+    {
+        this.nameResolver = nameResolver;
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,183 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+import org.phenotips.data.internal.controller.SelectableFieldsController;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link PatientDataControllerRegistry}, caching the controllers available in the context
+ * component manager. Since different wikis and users may see different components, a separate snapshot is kept for
+ * each context component manager.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Component
+@Singleton
+public class DefaultPatientDataControllerRegistry implements PatientDataControllerRegistry
+{
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManager;
+
+    /** The current snapshots of the controllers, for each context component manager used so far. */
+    private final Map<ComponentManager, Controllers> controllers = new WeakHashMap<>();
+
+    /**
+     * Incremented on each invalidation. Snapshots remember the generation current when their lookup started, so that
+     * a snapshot computed concurrently with an invalidation is never used.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public Map<String, PatientDataController<?>> getControllers()
+    {
+        return get().byName;
+    }
+
+    @Override
+    public Collection<PatientDataController<?>> getControllers(Collection<String> selectedFieldNames)
+    {
+        Controllers current = get();
+        if (selectedFieldNames == null) {
+            return current.byName.values();
+        }
+        Set<String> names = new TreeSet<>(current.alwaysNeeded);
+        for (String fieldName : selectedFieldNames) {
+            Set<String> fieldControllers = current.byField.get(fieldName);
+            if (fieldControllers != null) {
+                names.addAll(fieldControllers);
+            }
+        }
+        List<PatientDataController<?>> result = new ArrayList<>(names.size());
+        for (String name : names) {
+            result.add(current.byName.get(name));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public Collection<String> getControllerNames(String fieldName)
+    {
+        Set<String> result = get().byField.get(fieldName);
+        return result == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public void invalidate()
+    {
+        this.generation.incrementAndGet();
+        synchronized (this.controllers) {
+            this.controllers.clear();
+        }
+    }
+
+    private Controllers get()
+    {
+        ComponentManager cm = this.componentManager.get();
+        Controllers result;
+        synchronized (this.controllers) {
+            result = this.controllers.get(cm);
+            if (result != null && result.generation == this.generation.get()) {
+                return result;
+            }
+            // Must be read before looking up the controllers, so that a concurrent invalidation isn't lost
+            long currentGeneration = this.generation.get();
+            result = lookup(cm, currentGeneration);
+            this.controllers.put(cm, result);
+        }
+        return result;
+    }
+
+    private Controllers lookup(ComponentManager cm, long currentGeneration)
+    {
+        Controllers result = new Controllers(currentGeneration);
+        try {
+            List<PatientDataController<?>> available = cm.getInstanceList(PatientDataController.class);
+            for (PatientDataController<?> controller : available) {
+                if (result.byName.containsKey(controller.getName())) {
+                    this.logger.warn("Overwriting patient data controller with the name [{}]", controller.getName());
+                }
+                result.byName.put(controller.getName(), controller);
+            }
+        } catch (ComponentLookupException ex) {
+            this.logger.error("Failed to lookup serializers", ex);
+        }
+        for (PatientDataController<?> controller : result.byName.values()) {
+            if (controller instanceof SelectableFieldsController) {
+                for (String field : ((SelectableFieldsController<?>) controller).getSelectableFieldNames()) {
+                    Set<String> fieldControllers = result.byField.get(field);
+                    if (fieldControllers == null) {
+                        fieldControllers = new TreeSet<>();
+                        result.byField.put(field, fieldControllers);
+                    }
+                    fieldControllers.add(controller.getName());
+                }
+            } else {
+                result.alwaysNeeded.add(controller.getName());
+            }
+        }
+        result.byName = Collections.unmodifiableMap(result.byName);
+        return result;
+    }
+
+    /** A snapshot of the available controllers. */
+    private static final class Controllers
+    {
+        private final long generation;
+
+        private Map<String, PatientDataController<?>> byName = new TreeMap<>();
+
+        private final Map<String, Set<String>> byField = new HashMap<>();
+
+        private final Set<String> alwaysNeeded = new TreeSet<>();
+
+        Controllers(long generation)
+        {
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Keeps the list of available {@link PatientDataController patient data controllers}, so that loading a patient
+ * doesn't have to look them all up in the component manager again. The list is computed when first needed, and
+ * recomputed after a patient data controller is registered or unregistered.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Role
+public interface PatientDataControllerRegistry
+{
+    /**
+     * Get all the available controllers.
+     *
+     * @return an unmodifiable map of controllers, indexed and sorted by their {@link PatientDataController#getName()
+     *         name}
+     */
+    Map<String, PatientDataController<?>> getControllers();
+
+    /**
+     * Get the controllers which may write something in the patient JSON when only some fields are selected.
+     * Controllers which don't tell which fields they need are always included.
+     *
+     * @param selectedFieldNames the selected field names, may be {@code null}, in which case all fields are selected
+     * @return an unmodifiable collection of controllers, sorted by their name
+     */
+    Collection<PatientDataController<?>> getControllers(Collection<String> selectedFieldNames);
+
+    /**
+     * Get the names of the controllers which need a field to be selected before writing it in the patient JSON.
+     *
+     * @param fieldName the name of a selectable field
+     * @return an unmodifiable set of controller names, empty if no controller declares this field
+     */
+    Collection<String> getControllerNames(String fieldName);
+
+    /** Forget the cached controllers, so that they are looked up again when next needed. */
+    void invalidate();
+}
@@ -19,15 +19,19 @@
 
 import org.phenotips.data.Patient;
 import org.phenotips.data.events.PatientChangingEvent;
+import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
-import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.observation.AbstractEventListener;
 import org.xwiki.observation.event.Event;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -35,6 +39,8 @@
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -67,36 +73,105 @@ public void onEvent(Event event, Object source, Object data)
         if (patientRecordObj == null) {
             return;
         }
-        updateField("phenotype", "extended_phenotype", patientRecordObj);
-        updateField("prenatal_phenotype", "extended_prenatal_phenotype", patientRecordObj);
-        updateField("negative_phenotype", "extended_negative_phenotype", patientRecordObj);
+        XWikiDocument originalDoc = doc.getOriginalDocument();
+        BaseObject originalRecordObj = originalDoc == null ? null : originalDoc.getXObject(Patient.CLASS_REFERENCE);
+        updateField("phenotype", "extended_phenotype", patientRecordObj, originalRecordObj);
+        updateField("prenatal_phenotype", "extended_prenatal_phenotype", patientRecordObj, originalRecordObj);
+        updateField("negative_phenotype", "extended_negative_phenotype", patientRecordObj, originalRecordObj);
     }
 
     /**
-     * Fills in an extended phenotype field using the base phenotype field.
+     * Fills in an extended phenotype field using the base phenotype field. The work is done incrementally, based on
+     * the previous version of the patient record: nothing is done if the phenotypes didn't change, only the new terms
+     * are expanded if phenotypes were only added, and the whole extended list is recomputed only when phenotypes were
+     * removed, since an ancestor of a removed term may still be an ancestor of a remaining term.
      *
      * @param baseFieldName the name of the field holding the basic list of phenotypes
      * @param extendedFieldName the name of the target field that will hold the extended list of phenotypes
      * @param patientRecordObj the object to update
+     * @param originalRecordObj the object as it was before the current changes, {@code null} for new records
      */
-    private void updateField(String baseFieldName, String extendedFieldName, BaseObject patientRecordObj)
+    private void updateField(String baseFieldName, String extendedFieldName, BaseObject patientRecordObj,
+        BaseObject originalRecordObj)
     {
         @SuppressWarnings("unchecked")
         List<String> phenotypes = patientRecordObj.getListValue(baseFieldName);
-        Set<String> extendedPhenotypes = new TreeSet<>();
-        Set<String> sortedPhenotypes = new TreeSet<>();
+        Set<String> sortedPhenotypes = new TreeSet<>(phenotypes);
+        @SuppressWarnings("unchecked")
+        List<String> previousExtendedPhenotypes = patientRecordObj.getListValue(extendedFieldName);
+
+        Set<String> extendedPhenotypes;
+        Set<String> previousPhenotypes = getPreviousPhenotypes(baseFieldName, originalRecordObj);
+        if (previousPhenotypes == null || !sortedPhenotypes.containsAll(previousPhenotypes)
+            || previousExtendedPhenotypes.isEmpty() && !previousPhenotypes.isEmpty()) {
+            // New record, removed phenotypes, or missing extended phenotypes: recompute everything
+            extendedPhenotypes = expand(sortedPhenotypes);
+        } else if (sortedPhenotypes.size() > previousPhenotypes.size()) {
+            Set<String> addedPhenotypes = new TreeSet<>(sortedPhenotypes);
+            addedPhenotypes.removeAll(previousPhenotypes);
+            extendedPhenotypes = new TreeSet<>(previousExtendedPhenotypes);
+            extendedPhenotypes.addAll(expand(addedPhenotypes));
+        } else {
+            // The phenotypes didn't change
+            extendedPhenotypes = null;
+        }
+
+        if (extendedPhenotypes != null) {
+            patientRecordObj.setDBStringListValue(extendedFieldName, new ArrayList<>(extendedPhenotypes));
+        }
+        if (!phenotypes.equals(new ArrayList<>(sortedPhenotypes))) {
+            patientRecordObj.setDBStringListValue(baseFieldName, new ArrayList<>(sortedPhenotypes));
+        }
+    }
+
+    private Set<String> getPreviousPhenotypes(String baseFieldName, BaseObject originalRecordObj)
+    {
+        if (originalRecordObj == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        List<String> phenotypes = originalRecordObj.getListValue(baseFieldName);
+        return new TreeSet<>(phenotypes);
+    }
+
+    /**
+     * Expands phenotypes into their ancestors, looking up all the terms from the same vocabulary at once. Terms that
+     * can't be found in a vocabulary, such as free text phenotypes, are kept as they are.
+     *
+     * @param phenotypes the phenotypes to expand
+     * @return the phenotypes along with all their ancestors
+     */
+    private Set<String> expand(Collection<String> phenotypes)
+    {
+        Set<String> result = new TreeSet<>();
+        Map<Vocabulary, List<String>> termsByVocabulary = new HashMap<>();
         for (String phenotype : phenotypes) {
-            sortedPhenotypes.add(phenotype);
-            VocabularyTerm phenotypeTerm = this.vocabularyManager.resolveTerm(phenotype);
-            if (phenotypeTerm != null) {
-                for (VocabularyTerm term : phenotypeTerm.getAncestorsAndSelf()) {
-                    extendedPhenotypes.add(term.getId());
+            Vocabulary vocabulary = null;
+            if (StringUtils.contains(phenotype, ':')) {
+                vocabulary = this.vocabularyManager.getVocabulary(StringUtils.substringBefore(phenotype, ":"));
+            }
+            if (vocabulary == null) {
+                result.add(phenotype);
+                continue;
+            }
+            List<String> terms = termsByVocabulary.get(vocabulary);
+            if (terms == null) {
+                terms = new LinkedList<>();
+                termsByVocabulary.put(vocabulary, terms);
+            }
+            terms.add(phenotype);
+        }
+        for (Map.Entry<Vocabulary, List<String>> entry : termsByVocabulary.entrySet()) {
+            Map<String, Set<String>> ancestors = entry.getKey().getAncestorsAndSelf(entry.getValue());
+            for (String phenotype : entry.getValue()) {
+                Set<String> termAncestors = ancestors.get(phenotype);
+                if (termAncestors != null) {
+                    result.addAll(termAncestors);
+                } else {
+                    result.add(phenotype);
                 }
-            } else {
-                extendedPhenotypes.add(phenotype);
             }
         }
-        patientRecordObj.setDBStringListValue(extendedFieldName, new ArrayList<>(extendedPhenotypes));
-        patientRecordObj.setDBStringListValue(baseFieldName, new ArrayList<>(sortedPhenotypes));
+        return result;
     }
 }
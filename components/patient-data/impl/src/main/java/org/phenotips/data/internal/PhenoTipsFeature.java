@@ -119,6 +119,18 @@ public class PhenoTipsFeature extends AbstractPhenoTipsVocabularyProperty implem
      * @param value the specific value from the property represented by this object
      */
     PhenoTipsFeature(XWikiDocument doc, ListProperty property, String value)
+    {
+        this(new PhenoTipsFeatureDecoder(doc), property, value);
+    }
+
+    /**
+     * Constructor that copies the data from an XProperty value, looking up metadata in an already indexed document.
+     *
+     * @param decoder the decoder holding the indexed metadata objects of the patient document
+     * @param property the feature category XProperty
+     * @param value the specific value from the property represented by this object
+     */
+    PhenoTipsFeature(PhenoTipsFeatureDecoder decoder, ListProperty property, String value)
     {
         super(value);
         this.propertyName = property.getName();
@@ -129,12 +141,14 @@ public class PhenoTipsFeature extends AbstractPhenoTipsVocabularyProperty implem
         this.metadata = new TreeMap<>();
         String metadataNotes = "";
         try {
-            BaseObject metadataObject = findMetadataObject(doc);
+            BaseObject metadataObject = decoder.getMetadataObject(this.propertyName, getValue());
             if (metadataObject != null) {
                 for (FeatureMetadatum.Type metadataType : FeatureMetadatum.Type.values()) {
                     StringProperty metadataProp = (StringProperty) metadataObject.get(metadataType.toString());
                     if (metadataProp != null && StringUtils.isNotBlank(metadataProp.getValue())) {
-                        this.metadata.put(metadataType.toString(), new PhenoTipsFeatureMetadatum(metadataProp));
+                        PhenoTipsFeatureMetadatum metadatum = new PhenoTipsFeatureMetadatum(metadataProp);
+                        decoder.deferNameResolution(metadatum);
+                        this.metadata.put(metadataType.toString(), metadatum);
                     }
                 }
                 metadataNotes = metadataObject.getLargeStringValue("comments");
@@ -148,18 +162,14 @@ public class PhenoTipsFeature extends AbstractPhenoTipsVocabularyProperty implem
         this.metadata = Collections.unmodifiableMap(this.metadata);
 
         List<String> categoriesList = Collections.emptyList();
-        try {
-            BaseObject categoriesObject = findCategoriesObject(doc);
-            if (categoriesObject != null && categoriesObject.getListValue(META_PROPERTY_CATEGORIES) != null) {
-                @SuppressWarnings("unchecked")
-                List<String> originalCategories = categoriesObject.getListValue(META_PROPERTY_CATEGORIES);
-                categoriesList = Collections.unmodifiableList(originalCategories);
-            }
-        } catch (XWikiException ex) {
-            // Cannot access metadata, simply ignore
-            this.logger.info("Failed to retrieve phenotype categories: {}", ex.getMessage());
+        BaseObject categoriesObject = decoder.getCategoriesObject(this.propertyName, getValue());
+        if (categoriesObject != null && categoriesObject.getListValue(META_PROPERTY_CATEGORIES) != null) {
+            @SuppressWarnings("unchecked")
+            List<String> originalCategories = categoriesObject.getListValue(META_PROPERTY_CATEGORIES);
+            categoriesList = Collections.unmodifiableList(originalCategories);
         }
         this.categories = categoriesList;
+        decoder.deferNameResolution(this);
     }
 
     /**
@@ -280,57 +290,4 @@ public JSONObject toJSON()
         }
         return result;
     }
-
-    /**
-     * Find the XObject that contains metadata for this feature, if any.
-     *
-     * @param doc the patient's XDocument, where metadata objects are stored
-     * @return the found object, or {@code null} if one wasn't found
-     * @throws XWikiException if accessing the data fails
-     */
-    private BaseObject findMetadataObject(XWikiDocument doc) throws XWikiException
-    {
-        List<BaseObject> objects = doc.getXObjects(FeatureMetadatum.CLASS_REFERENCE);
-        if (objects != null && !objects.isEmpty()) {
-            for (BaseObject o : objects) {
-                if (o == null) {
-                    continue;
-                }
-                StringProperty nameProperty = (StringProperty) o.get(META_PROPERTY_NAME);
-                StringProperty valueProperty = (StringProperty) o.get(META_PROPERTY_VALUE);
-                if (nameProperty != null && StringUtils.equals(nameProperty.getValue(), this.propertyName)
-                    && valueProperty != null && StringUtils.equals(valueProperty.getValue(), this.getValue())) {
-                    return o;
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Find the XObject that contains the custom categories for this non-standard feature, if any.
-     *
-     * @param doc the patient's XDocument, where objects are stored
-     * @return the found object, or {@code null} if one wasn't found
-     * @throws XWikiException if accessing the data fails
-     */
-    private BaseObject findCategoriesObject(XWikiDocument doc) throws XWikiException
-    {
-        List<BaseObject> objects =
-            doc.getXObjects(CATEGORY_CLASS_REFERENCE);
-        if (objects != null && !objects.isEmpty()) {
-            for (BaseObject o : objects) {
-                if (o == null) {
-                    continue;
-                }
-                StringProperty nameProperty = (StringProperty) o.get(META_PROPERTY_NAME);
-                StringProperty valueProperty = (StringProperty) o.get(META_PROPERTY_VALUE);
-                if (nameProperty != null && StringUtils.equals(nameProperty.getValue(), this.propertyName)
-                    && valueProperty != null && StringUtils.equals(valueProperty.getValue(), this.getValue())) {
-                    return o;
-                }
-            }
-        }
-        return null;
-    }
 }
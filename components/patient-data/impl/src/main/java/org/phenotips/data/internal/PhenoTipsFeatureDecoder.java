@@ -0,0 +1,198 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.FeatureMetadatum;
+
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.ListProperty;
+import com.xpn.xwiki.objects.StringProperty;
+
+/**
+ * Decodes all the features stored in a patient document in a single pass. The feature metadata and custom categories
+ * objects are indexed once by their target property name and value, instead of being searched again for each feature.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+final class PhenoTipsFeatureDecoder
+{
+    private static final String PHENOTYPE_PROPERTY = "phenotype";
+
+    private static final String PHENOTYPE_SUFFIX = "_" + PHENOTYPE_PROPERTY;
+
+    private static final String EXTENDED_PREFIX = "extended_";
+
+    /** Logging helper object. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhenoTipsFeatureDecoder.class);
+
+    /** Feature metadata objects, indexed by their target property name and value. */
+    private final Map<Pair<String, String>, BaseObject> metadataObjects;
+
+    /** Feature categories objects, indexed by their target property name and value. */
+    private final Map<Pair<String, String>, BaseObject> categoriesObjects;
+
+    /** Resolves the names of the decoded features in a single batch, may be {@code null}. */
+    private final VocabularyNameResolver nameResolver;
+
+    /**
+     * Index the feature metadata and categories objects of a patient document.
+     *
+     * @param doc the XDocument representing the patient in XWiki
+     */
+    PhenoTipsFeatureDecoder(XWikiDocument doc)
+    {
+        this(doc, null);
+    }
+
+    /**
+     * Index the feature metadata and categories objects of a patient document.
+     *
+     * @param doc the XDocument representing the patient in XWiki
+     * @param nameResolver resolves the names of the decoded features and their metadata in a single batch, when first
+     *            needed; if {@code null}, each name is resolved on its own
+     */
+    PhenoTipsFeatureDecoder(XWikiDocument doc, VocabularyNameResolver nameResolver)
+    {
+        this.metadataObjects = indexObjects(doc, FeatureMetadatum.CLASS_REFERENCE);
+        this.categoriesObjects = indexObjects(doc, PhenoTipsFeature.CATEGORY_CLASS_REFERENCE);
+        this.nameResolver = nameResolver;
+    }
+
+    /**
+     * Build all the features stored in the phenotype properties of a patient object. A term or free text value stored
+     * more than once, in the same or in different properties, is only decoded the first time it is found.
+     *
+     * @param data the patient object, of type {@code PhenoTips.PatientClass}
+     * @param features where to add the decoded features
+     */
+    void decodeFeatures(BaseObject data, Collection<Feature> features)
+    {
+        @SuppressWarnings("unchecked")
+        Collection<BaseProperty<EntityReference>> fields = data.getFieldList();
+        Set<String> decodedValues = new HashSet<>();
+        for (BaseProperty<EntityReference> field : fields) {
+            if (!(field instanceof ListProperty) || !isFeatureProperty(field.getName())) {
+                continue;
+            }
+            ListProperty values = (ListProperty) field;
+            for (String value : values.getList()) {
+                if (StringUtils.isNotBlank(value) && decodedValues.add(value)) {
+                    features.add(new PhenoTipsFeature(this, values, value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the XObject that contains metadata for a feature, if any.
+     *
+     * @param propertyName the name of the property holding the feature
+     * @param value the feature identifier or label
+     * @return the found object, or {@code null} if one wasn't found
+     */
+    BaseObject getMetadataObject(String propertyName, String value)
+    {
+        return this.metadataObjects.get(Pair.of(propertyName, value));
+    }
+
+    /**
+     * Find the XObject that contains the custom categories for a non-standard feature, if any.
+     *
+     * @param propertyName the name of the property holding the feature
+     * @param value the feature identifier or label
+     * @return the found object, or {@code null} if one wasn't found
+     */
+    BaseObject getCategoriesObject(String propertyName, String value)
+    {
+        return this.categoriesObjects.get(Pair.of(propertyName, value));
+    }
+
+    /**
+     * Defer resolving the name of a decoded property until the names of all the properties are needed.
+     *
+     * @param property a decoded feature or feature metadatum
+     */
+    void deferNameResolution(AbstractPhenoTipsVocabularyProperty property)
+    {
+        if (this.nameResolver != null) {
+            this.nameResolver.register(property);
+        }
+    }
+
+    /**
+     * Check if a property holds features: {@code phenotype}, or any {@code *_phenotype} property except the
+     * {@code extended_*} ones, which hold the computed ancestors.
+     *
+     * @param name the name of the property to check
+     * @return {@code true} if the property holds features
+     */
+    static boolean isFeatureProperty(String name)
+    {
+        return name != null && (PHENOTYPE_PROPERTY.equals(name)
+            || name.endsWith(PHENOTYPE_SUFFIX) && !name.startsWith(EXTENDED_PREFIX));
+    }
+
+    private static Map<Pair<String, String>, BaseObject> indexObjects(XWikiDocument doc, EntityReference classReference)
+    {
+        Map<Pair<String, String>, BaseObject> result = new HashMap<>();
+        List<BaseObject> objects = doc.getXObjects(classReference);
+        if (objects == null) {
+            return result;
+        }
+        for (BaseObject o : objects) {
+            if (o == null) {
+                continue;
+            }
+            try {
+                StringProperty nameProperty = (StringProperty) o.get(PhenoTipsFeature.META_PROPERTY_NAME);
+                StringProperty valueProperty = (StringProperty) o.get(PhenoTipsFeature.META_PROPERTY_VALUE);
+                if (nameProperty == null || valueProperty == null) {
+                    continue;
+                }
+                Pair<String, String> key = Pair.of(nameProperty.getValue(), valueProperty.getValue());
+                // Keep the first object when there are duplicates
+                if (!result.containsKey(key)) {
+                    result.put(key, o);
+                }
+            } catch (XWikiException ex) {
+                // Cannot access the object, simply ignore it
+                LOGGER.info("Failed to read phenotype metadata: {}", ex.getMessage());
+            }
+        }
+        return result;
+    }
+}
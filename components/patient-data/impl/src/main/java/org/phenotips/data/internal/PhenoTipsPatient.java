@@ -25,6 +25,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.StreamingPatientDataController;
 import org.phenotips.entities.internal.AbstractPrimaryEntity;
 
 import org.xwiki.component.manager.ComponentLookupException;
@@ -34,6 +35,8 @@
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +47,7 @@
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +55,6 @@
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
-import com.xpn.xwiki.objects.BaseProperty;
 import com.xpn.xwiki.objects.ListProperty;
 
 /**
@@ -105,14 +108,22 @@ public class PhenoTipsPatient extends AbstractPrimaryEntity implements Patient
     /** @see #getReporter() */
     private DocumentReference reporter;
 
-    /** @see #getFeatures() */
-    private Set<Feature> features = new TreeSet<>();
+    /**
+     * Kept in the order they are stored in the document, since sorting by name would need a vocabulary lookup for each
+     * feature, even when only the identifiers are needed.
+     *
+     * @see #getFeatures()
+     */
+    private Set<Feature> features = new LinkedHashSet<>();
 
     /** @see #getDisorders() */
-    private Set<Disorder> disorders = new TreeSet<>();
+    private Set<Disorder> disorders = new LinkedHashSet<>();
 
     /** The list of all the initialized data holders (PatientDataSerializer). */
-    private Map<String, PatientDataController<?>> serializers = new TreeMap<>();
+    private Map<String, PatientDataController<?>> serializers = Collections.emptyMap();
+
+    /** Knows which data holders are needed for writing only some of the fields. */
+    private PatientDataControllerRegistry controllers;
 
     /** Extra data that can be plugged into the patient record. */
     private Map<String, PatientData<?>> extraData = new TreeMap<>();
@@ -133,8 +144,10 @@ public PhenoTipsPatient(XWikiDocument doc)
         }
 
         try {
-            loadFeatures(doc, data);
-            loadDisorders(doc, data);
+            // The names of all the features and disorders are resolved together, only when first needed
+            VocabularyNameResolver nameResolver = new VocabularyNameResolver();
+            loadFeatures(doc, data, nameResolver);
+            loadDisorders(doc, data, nameResolver);
             loadSerializers();
         } catch (XWikiException ex) {
             this.logger.warn("Failed to access patient data for [{}]: {}", doc.getDocumentReference(), ex.getMessage());
@@ -152,32 +165,28 @@ public EntityReference getType()
         return CLASS_REFERENCE;
     }
 
-    private void loadFeatures(XWikiDocument doc, BaseObject data)
+    private void loadFeatures(XWikiDocument doc, BaseObject data, VocabularyNameResolver nameResolver)
     {
-        @SuppressWarnings("unchecked")
-        Collection<BaseProperty<EntityReference>> fields = data.getFieldList();
-        for (BaseProperty<EntityReference> field : fields) {
-            if (field == null || !field.getName().matches("(?!extended_)(.*_)?phenotype")
-                || !ListProperty.class.isInstance(field)) {
-                continue;
-            }
-            ListProperty values = (ListProperty) field;
-            for (String value : values.getList()) {
-                if (StringUtils.isNotBlank(value)) {
-                    this.features.add(new PhenoTipsFeature(doc, values, value));
-                }
-            }
-        }
+        // Index the metadata objects once, instead of searching them again for every feature
+        new PhenoTipsFeatureDecoder(doc, nameResolver).decodeFeatures(data, this.features);
     }
 
-    private void loadDisorders(XWikiDocument doc, BaseObject data) throws XWikiException
+    private void loadDisorders(XWikiDocument doc, BaseObject data, VocabularyNameResolver nameResolver)
+        throws XWikiException
     {
+        // Disorders don't define equals, so the set doesn't collapse a disorder stored more than once by itself
+        Set<String> loadedDisorders = new HashSet<>();
         for (String property : DISORDER_PROPERTIES) {
             ListProperty values = (ListProperty) data.get(property);
             if (values != null) {
                 for (String value : values.getList()) {
                     if (StringUtils.isNotBlank(value)) {
-                        this.disorders.add(new PhenoTipsDisorder(values, value));
+                        PhenoTipsDisorder disorder = new PhenoTipsDisorder(values, value);
+                        if (!loadedDisorders.add(StringUtils.defaultIfEmpty(disorder.getId(), value))) {
+                            continue;
+                        }
+                        nameResolver.register(disorder);
+                        this.disorders.add(disorder);
                     }
                 }
             }
@@ -187,15 +196,10 @@ private void loadDisorders(XWikiDocument doc, BaseObject data) throws XWikiExcep
     private void loadSerializers()
     {
         try {
-            List<PatientDataController<?>> availableSerializers = ComponentManagerRegistry
-                .getContextComponentManager()
-                .getInstanceList(PatientDataController.class);
-            for (PatientDataController<?> serializer : availableSerializers) {
-                if (this.serializers.containsKey(serializer.getName())) {
-                    this.logger.warn("Overwriting patient data controller with the name [{}]", serializer.getName());
-                }
-                this.serializers.put(serializer.getName(), serializer);
-            }
+            // The controllers are looked up once and shared by all patients, instead of once per patient
+            this.controllers =
+                ComponentManagerRegistry.getContextComponentManager().getInstance(PatientDataControllerRegistry.class);
+            this.serializers = this.controllers.getControllers();
         } catch (ComponentLookupException ex) {
             this.logger.error("Failed to lookup serializers", ex);
         }
@@ -356,13 +360,84 @@ public JSONObject toJSON(Collection<String> selectedFields)
             result.put(JSON_KEY_DISORDERS, diseasesToJSON());
         }
 
-        for (PatientDataController<?> serializer : this.serializers.values()) {
+        for (PatientDataController<?> serializer : getSelectedSerializers(selectedFields)) {
             serializer.writeJSON(this, result, selectedFields);
         }
 
         return result;
     }
 
+    @Override
+    public void writeJSON(JSONWriter writer, Collection<String> selectedFields)
+    {
+        writer.object();
+
+        if (isFieldIncluded(selectedFields, JSON_KEY_ID)) {
+            writer.key(JSON_KEY_ID).value(getDocument().getName());
+        }
+
+        if (getReporter() != null && isFieldIncluded(selectedFields, JSON_KEY_REPORTER)) {
+            writer.key(JSON_KEY_REPORTER).value(getReporter().getName());
+        }
+
+        if (isFieldSuffixIncluded(selectedFields, PHENOTYPE_POSITIVE_PROPERTY)) {
+            writer.key(JSON_KEY_FEATURES);
+            writeFeatures(writer, selectedFields, true);
+            writer.key(JSON_KEY_NON_STANDARD_FEATURES);
+            writeFeatures(writer, selectedFields, false);
+        }
+
+        if (isFieldIncluded(selectedFields, DISORDER_PROPERTIES)) {
+            writer.key(JSON_KEY_DISORDERS).array();
+            for (Disorder disease : this.disorders) {
+                JSONObject diseaseJSON = disease.toJSON();
+                if (diseaseJSON != null) {
+                    writer.value(diseaseJSON);
+                }
+            }
+            writer.endArray();
+        }
+
+        // Controllers that can't stream their data may extend each other's properties, so they still share an object
+        JSONObject shared = new JSONObject();
+        for (PatientDataController<?> serializer : getSelectedSerializers(selectedFields)) {
+            if (serializer instanceof StreamingPatientDataController) {
+                ((StreamingPatientDataController<?>) serializer).writeJSON(this, writer, selectedFields);
+            } else {
+                serializer.writeJSON(this, shared, selectedFields);
+            }
+        }
+        for (String key : shared.keySet()) {
+            writer.key(key).value(shared.get(key));
+        }
+
+        writer.endObject();
+    }
+
+    /** Writes an array with either the standard or the non-standard features, one at a time. */
+    private void writeFeatures(JSONWriter writer, Collection<String> selectedFields, boolean standard)
+    {
+        writer.array();
+        for (Feature phenotype : this.features) {
+            if (StringUtils.isBlank(phenotype.getId()) == standard
+                || !isFieldIncluded(selectedFields, phenotype.getType())) {
+                continue;
+            }
+            JSONObject featureJSON = phenotype.toJSON();
+            if (featureJSON != null) {
+                writer.value(featureJSON);
+            }
+        }
+        writer.endArray();
+    }
+
+    /** Skips the controllers that don't write any of the selected fields, so that their data isn't even loaded. */
+    private Collection<PatientDataController<?>> getSelectedSerializers(Collection<String> selectedFields)
+    {
+        return (this.controllers == null) ? this.serializers.values()
+            : this.controllers.getControllers(selectedFields);
+    }
+
     private void updateFeaturesFromJSON(XWikiDocument doc, BaseObject data, XWikiContext context,
         JSONObject json)
     {
@@ -526,38 +601,51 @@ public void updateFromJSON(JSONObject json)
         try {
             // TODO: Check versions and throw if versions mismatch if necessary
 
-            XWikiContext context = getXContext();
-
-            BaseObject data = this.document.getXObject(CLASS_REFERENCE);
-            if (data == null) {
-                return;
+            if (readJSON(json)) {
+                XWikiContext context = getXContext();
+                context.getWiki().saveDocument(this.document, "Updated from JSON", true, context);
             }
+        } catch (Exception ex) {
+            this.logger.error("Failed to update patient data from JSON [{}]: {}", ex.getMessage(), ex);
+        }
+    }
 
-            updateFeaturesFromJSON(this.document, data, context, json);
-            updateDisordersFromJSON(this.document, data, context, json);
-
-            for (PatientDataController<?> serializer : this.serializers.values()) {
-                try {
-                    PatientData<?> patientData = serializer.readJSON(json);
-                    if (patientData != null) {
-                        this.extraData.put(patientData.getName(), patientData);
-                        serializer.save(this, this.document);
-                        this.logger.info("Successfully updated patient form JSON using serializer [{}]",
-                            serializer.getName());
-                    }
-                } catch (UnsupportedOperationException ex) {
-                    this.logger.debug("Unable to update patient from JSON using serializer [{}]: not supported",
+    /**
+     * Updates the in-memory patient document from its JSON representation, without saving it, like
+     * {@link #updateFromJSON(JSONObject)} does. Used when creating new patients, which must only be saved once.
+     *
+     * @param json the JSON representation of the patient data
+     * @return {@code false} if the document is not a patient record, {@code true} otherwise
+     */
+    boolean readJSON(JSONObject json)
+    {
+        BaseObject data = this.document.getXObject(CLASS_REFERENCE);
+        if (data == null) {
+            return false;
+        }
+
+        XWikiContext context = getXContext();
+        updateFeaturesFromJSON(this.document, data, context, json);
+        updateDisordersFromJSON(this.document, data, context, json);
+
+        for (PatientDataController<?> serializer : this.serializers.values()) {
+            try {
+                PatientData<?> patientData = serializer.readJSON(json);
+                if (patientData != null) {
+                    this.extraData.put(patientData.getName(), patientData);
+                    serializer.save(this, this.document);
+                    this.logger.info("Successfully updated patient form JSON using serializer [{}]",
                         serializer.getName());
-                } catch (Exception ex) {
-                    this.logger.error("Failed to update patient data from JSON using serializer [{}]: {}",
-                        serializer.getName(), ex.getMessage(), ex);
                 }
+            } catch (UnsupportedOperationException ex) {
+                this.logger.debug("Unable to update patient from JSON using serializer [{}]: not supported",
+                    serializer.getName());
+            } catch (Exception ex) {
+                this.logger.error("Failed to update patient data from JSON using serializer [{}]: {}",
+                    serializer.getName(), ex.getMessage(), ex);
             }
-
-            context.getWiki().saveDocument(this.document, "Updated from JSON", true, context);
-        } catch (Exception ex) {
-            this.logger.error("Failed to update patient data from JSON [{}]: {}", ex.getMessage(), ex);
         }
+        return true;
     }
 
     @Override
@@ -23,18 +23,31 @@
 
 import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.json.JSONObject;
+
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
 
 /**
  * Implementation of patient data access service using XWiki as the storage backend, where patients in documents having
@@ -47,9 +60,21 @@
 @Singleton
 public class PhenoTipsPatientRepository extends PatientEntityManager implements PatientRepository
 {
+    /** The maximum number of threads used for importing patients in bulk. */
+    private static final int MAX_IMPORT_THREADS = 4;
+
+    private static final String IDENTIFIER = "identifier";
+
     @Inject
     private Provider<List<PatientRecordInitializer>> initializers;
 
+    /** Used for setting up an execution context for the import threads. */
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    @Inject
+    private Execution execution;
+
     @Override
     public Patient getPatientById(String id)
     {
@@ -97,25 +122,25 @@ public Patient loadPatientFromDocument(DocumentModelBridge document)
     }
 
     @Override
-    public synchronized Patient createNewPatient()
+    public Patient createNewPatient()
     {
         return create();
     }
 
     @Override
-    public synchronized Patient createNewPatient(DocumentReference creator)
+    public Patient createNewPatient(DocumentReference creator)
     {
         return create(creator);
     }
 
     @Override
-    public synchronized Patient create(DocumentReference creator)
+    public Patient create(DocumentReference creator)
     {
         try {
             XWikiContext context = this.xcontextProvider.get();
             Patient patient = super.create(creator);
             XWikiDocument doc = (XWikiDocument) this.bridge.getDocument(patient.getDocument());
-            doc.getXObject(Patient.CLASS_REFERENCE).setLongValue("identifier",
+            doc.getXObject(Patient.CLASS_REFERENCE).setLongValue(IDENTIFIER,
                 Integer.parseInt(patient.getDocument().getName().replaceAll("\\D++", "")));
             if (creator != null) {
                 doc.setCreatorReference(creator);
@@ -147,6 +172,48 @@ public synchronized Patient create(DocumentReference creator)
         }
     }
 
+    @Override
+    public List<Patient> createFromJSON(List<JSONObject> patients)
+    {
+        List<Patient> result = new ArrayList<>(Collections.nCopies(patients.size(), (Patient) null));
+        List<Integer> indexes = new ArrayList<>(patients.size());
+        for (int i = 0; i < patients.size(); ++i) {
+            if (patients.get(i) != null) {
+                indexes.add(i);
+            }
+        }
+        if (indexes.isEmpty()) {
+            return result;
+        }
+
+        List<DocumentReference> references = getNextDocuments(indexes.size());
+        DocumentReference creator = this.bridge.getCurrentUserReference();
+        XWikiContext context = this.xcontextProvider.get();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(indexes.size(),
+            Math.min(MAX_IMPORT_THREADS, Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Patient>> tasks = new ArrayList<>(indexes.size());
+            for (int i = 0; i < indexes.size(); ++i) {
+                tasks.add(workers.submit(new PatientImporter(references.get(i), patients.get(indexes.get(i)),
+                    creator, context)));
+            }
+            for (int i = 0; i < tasks.size(); ++i) {
+                try {
+                    result.set(indexes.get(i), tasks.get(i).get());
+                } catch (ExecutionException ex) {
+                    this.logger.warn("Failed to import patient [{}]: {}", references.get(i),
+                        ex.getCause().getMessage(), ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            this.logger.warn("Interrupted while importing patients");
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+        return result;
+    }
+
     @Override
     public boolean deletePatient(String id)
     {
@@ -178,4 +245,62 @@ protected long getLastUsedId()
         }
         return crtMaxID;
     }
+
+    private long getIdentifier(DocumentReference reference)
+    {
+        return Long.parseLong(reference.getName().replaceAll("\\D++", ""));
+    }
+
+    /**
+     * Builds a new patient document from its JSON representation, entirely in memory, then saves it once. Runs in a
+     * separate thread, with a copy of the XWiki context of the request.
+     */
+    private final class PatientImporter implements Callable<Patient>
+    {
+        private final DocumentReference reference;
+
+        private final JSONObject json;
+
+        private final DocumentReference creator;
+
+        private final XWikiContext requestContext;
+
+        PatientImporter(DocumentReference reference, JSONObject json, DocumentReference creator,
+            XWikiContext requestContext)
+        {
+            this.reference = reference;
+            this.json = json;
+            this.creator = creator;
+            this.requestContext = requestContext;
+        }
+
+        @Override
+        public Patient call() throws Exception
+        {
+            ExecutionContext executionContext = new ExecutionContext();
+            executionContext.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, this.requestContext.clone());
+            PhenoTipsPatientRepository.this.contextManager.initialize(executionContext);
+            try {
+                XWikiContext context = PhenoTipsPatientRepository.this.xcontextProvider.get();
+                XWikiDocument doc = prepareDocument(this.reference, this.creator);
+                BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE, true, context);
+                data.setLongValue(IDENTIFIER, getIdentifier(this.reference));
+
+                PhenoTipsPatient patient = new PhenoTipsPatient(doc);
+                for (PatientRecordInitializer initializer : PhenoTipsPatientRepository.this.initializers.get()) {
+                    try {
+                        initializer.initialize(patient);
+                    } catch (Exception ex) {
+                        PhenoTipsPatientRepository.this.logger.warn("Patient initializer [{}] failed: {}",
+                            initializer.getClass().getName(), ex.getMessage(), ex);
+                    }
+                }
+                patient.readJSON(this.json);
+                context.getWiki().saveDocument(doc, "Imported from JSON", true, context);
+                return patient;
+            } finally {
+                PhenoTipsPatientRepository.this.execution.removeContext();
+            }
+        }
+    }
 }
@@ -18,16 +18,22 @@
 package org.phenotips.data.internal;
 
 import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
 import org.phenotips.security.authorization.AuthorizationService;
 
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 
 /**
  * An iterator on an immutable, patients collection, which only returns patients that the current user has access to.
+ * When built from document references, access rights are checked in batches on the references, and only the patients
+ * that the user can view are actually loaded, lazily, optionally keeping a few patients loaded ahead.
  *
  * @version $Id$
  * @since 1.3M2
@@ -36,6 +42,15 @@ public class SecurePatientIterator implements Iterator<Patient>
 {
     private Iterator<Patient> patientIterator;
 
+    private Iterator<DocumentReference> referenceIterator;
+
+    private PatientRepository repository;
+
+    private int prefetch;
+
+    /** Accessible patients already loaded ahead, but not yet returned. */
+    private final Queue<Patient> loadedPatients = new LinkedList<>();
+
     private User currentUser;
 
     private AuthorizationService access;
@@ -43,12 +58,15 @@ public class SecurePatientIterator implements Iterator<Patient>
     private Patient nextPatient;
 
     /**
-     * Default constructor.
+     * Constructor wrapping an iterator of already loaded patients.
      *
      * @param patientIterator Iterator for a collection of patients that this class wraps with security.
      * @param access the authorization manager actually responsible for checking if a patient is accessible
      * @param currentUser the current user, may be {@code null}
+     * @deprecated use {@link #SecurePatientIterator(Iterator, PatientRepository, AuthorizationService, User, int)}
+     *             instead, which only loads the patients that are accessible
      */
+    @Deprecated
     public SecurePatientIterator(Iterator<Patient> patientIterator, AuthorizationService access, User currentUser)
     {
         this.patientIterator = patientIterator;
@@ -58,6 +76,30 @@ public SecurePatientIterator(Iterator<Patient> patientIterator, AuthorizationSer
         this.findNextPatient();
     }
 
+    /**
+     * Constructor wrapping an iterator of references to patient documents. Access rights are checked in batches of
+     * {@link SecureReferenceIterator#DEFAULT_BATCH_SIZE} references, and only the accessible patients are loaded.
+     *
+     * @param references iterator over the references to the patient documents that this class wraps with security
+     * @param repository the trusted repository used for loading the accessible patients
+     * @param access the authorization manager actually responsible for checking if a patient is accessible
+     * @param currentUser the current user, may be {@code null}
+     * @param prefetch how many accessible patients to keep loaded ahead of the one being returned; {@code 0} only loads
+     *            each patient right before it is needed
+     * @since 1.3M4
+     */
+    public SecurePatientIterator(Iterator<DocumentReference> references, PatientRepository repository,
+        AuthorizationService access, User currentUser, int prefetch)
+    {
+        this.referenceIterator = new SecureReferenceIterator(references, access, currentUser);
+        this.repository = repository;
+        this.prefetch = Math.max(prefetch, 0);
+        this.currentUser = currentUser;
+        this.access = access;
+
+        this.findNextPatient();
+    }
+
     @Override
     public boolean hasNext()
     {
@@ -86,6 +128,11 @@ public void remove()
     private void findNextPatient()
     {
         this.nextPatient = null;
+        if (this.referenceIterator != null) {
+            loadNextPatients();
+            this.nextPatient = this.loadedPatients.poll();
+            return;
+        }
         if (this.patientIterator == null) {
             return;
         }
@@ -97,4 +144,18 @@ private void findNextPatient()
             }
         }
     }
+
+    /**
+     * Loads accessible patients until the prefetch window is full, plus the one about to be returned.
+     */
+    private void loadNextPatients()
+    {
+        while (this.loadedPatients.size() <= this.prefetch && this.referenceIterator.hasNext()) {
+            Patient patient = this.repository.get(this.referenceIterator.next());
+            // Documents deleted since the references were listed can't be loaded anymore, skip them
+            if (patient != null) {
+                this.loadedPatients.add(patient);
+            }
+        }
+    }
 }
@@ -33,11 +33,13 @@
 import org.xwiki.users.UserManager;
 
 import java.util.Iterator;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.json.JSONObject;
 import org.slf4j.Logger;
 
 /**
@@ -117,6 +119,17 @@ public Patient createNewPatient(DocumentReference creator)
         return create(creator);
     }
 
+    @Override
+    public List<Patient> createFromJSON(List<JSONObject> patients)
+    {
+        User currentUser = this.userManager.getCurrentUser();
+        if (this.access.hasAccess(currentUser, Right.EDIT,
+            this.currentResolver.resolve(Patient.DEFAULT_DATA_SPACE, EntityType.SPACE))) {
+            return this.internalService.createFromJSON(patients);
+        }
+        throw new SecurityException("User not authorized to create new patients");
+    }
+
     @Override
     public Patient get(String id)
     {
@@ -153,8 +166,16 @@ public Patient getPatientByExternalId(String externalId)
     @Override
     public Iterator<Patient> getAll()
     {
-        Iterator<Patient> patientsIterator = this.internalService.getAll();
-        return new SecurePatientIterator(patientsIterator, this.access, this.userManager.getCurrentUser());
+        // Check rights on the references first, so that only the accessible patients are loaded
+        return new SecurePatientIterator(this.internalService.getAllReferences(), this.internalService, this.access,
+            this.userManager.getCurrentUser(), 0);
+    }
+
+    @Override
+    public Iterator<DocumentReference> getAllReferences()
+    {
+        return new SecureReferenceIterator(this.internalService.getAllReferences(), this.access,
+            this.userManager.getCurrentUser());
     }
 
     @Override
@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * An iterator on an immutable collection of document references, which only returns the documents that the current
+ * user can view. Rights are checked in batches, using {@link AuthorizationService#filterByAccess}, so that the
+ * authorization modules are only looked up once per batch.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class SecureReferenceIterator implements Iterator<DocumentReference>
+{
+    /** The default number of references checked at once. */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final Iterator<DocumentReference> referenceIterator;
+
+    private final User currentUser;
+
+    private final AuthorizationService access;
+
+    private final int batchSize;
+
+    /** References from the last checked batch that are accessible, and haven't been returned yet. */
+    private final Queue<DocumentReference> accessible = new LinkedList<>();
+
+    /**
+     * Constructor using the {@link #DEFAULT_BATCH_SIZE default batch size}.
+     *
+     * @param referenceIterator iterator for a collection of document references that this class wraps with security
+     * @param access the authorization manager actually responsible for checking if a document is accessible
+     * @param currentUser the current user, may be {@code null}
+     */
+    public SecureReferenceIterator(Iterator<DocumentReference> referenceIterator, AuthorizationService access,
+        User currentUser)
+    {
+        this(referenceIterator, access, currentUser, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor with a custom batch size.
+     *
+     * @param referenceIterator iterator for a collection of document references that this class wraps with security
+     * @param access the authorization manager actually responsible for checking if a document is accessible
+     * @param currentUser the current user, may be {@code null}
+     * @param batchSize how many references to check at once, must be positive
+     */
+    public SecureReferenceIterator(Iterator<DocumentReference> referenceIterator, AuthorizationService access,
+        User currentUser, int batchSize)
+    {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.referenceIterator = referenceIterator;
+        this.access = access;
+        this.currentUser = currentUser;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (this.accessible.isEmpty() && this.referenceIterator != null && this.referenceIterator.hasNext()) {
+            checkNextBatch();
+        }
+        return !this.accessible.isEmpty();
+    }
+
+    @Override
+    public DocumentReference next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.accessible.remove();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private void checkNextBatch()
+    {
+        List<DocumentReference> batch = new ArrayList<>(this.batchSize);
+        while (batch.size() < this.batchSize && this.referenceIterator.hasNext()) {
+            batch.add(this.referenceIterator.next());
+        }
+        this.accessible.addAll(this.access.filterByAccess(this.currentUser, Right.VIEW, batch));
+    }
+}
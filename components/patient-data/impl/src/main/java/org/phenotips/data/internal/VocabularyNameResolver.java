@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.manager.ComponentLookupException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Resolves the names of all the vocabulary properties of a patient at once, the first time one of them is needed. The
+ * pending term identifiers are grouped by vocabulary, and each vocabulary is queried only once, with
+ * {@link Vocabulary#getTerms(Collection)}. Patients that are loaded only for reading identifiers, for example for
+ * indexing or for checking rights, don't query the vocabularies at all.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+final class VocabularyNameResolver
+{
+    private static final String PREFIX_SEPARATOR = ":";
+
+    /** The properties whose names weren't resolved yet, indexed by their term identifier. */
+    private final Map<String, List<AbstractPhenoTipsVocabularyProperty>> pending = new HashMap<>();
+
+    /**
+     * Add a property to the next batch, if its name is not already known.
+     *
+     * @param property the property to resolve later
+     */
+    synchronized void register(AbstractPhenoTipsVocabularyProperty property)
+    {
+        if (property.name != null || StringUtils.isEmpty(property.id)) {
+            return;
+        }
+        List<AbstractPhenoTipsVocabularyProperty> properties = this.pending.get(property.id);
+        if (properties == null) {
+            properties = new LinkedList<>();
+            this.pending.put(property.id, properties);
+        }
+        properties.add(property);
+        property.setNameResolver(this);
+    }
+
+    /**
+     * Resolve the names of all the pending properties. Properties whose terms are not found keep an unknown name, and
+     * will try to resolve it on their own.
+     */
+    synchronized void resolve()
+    {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        try {
+            VocabularyManager vm =
+                ComponentManagerRegistry.getContextComponentManager().getInstance(VocabularyManager.class);
+            for (Map.Entry<String, Collection<String>> group : groupByVocabulary().entrySet()) {
+                Vocabulary vocabulary = vm.getVocabulary(group.getKey());
+                if (vocabulary == null) {
+                    continue;
+                }
+                for (VocabularyTerm term : vocabulary.getTerms(group.getValue())) {
+                    // Identifiers that are not in the vocabulary, for example obsolete terms, come back as null
+                    if (term == null) {
+                        continue;
+                    }
+                    List<AbstractPhenoTipsVocabularyProperty> properties = this.pending.get(term.getId());
+                    if (properties == null || StringUtils.isEmpty(term.getName())) {
+                        continue;
+                    }
+                    for (AbstractPhenoTipsVocabularyProperty property : properties) {
+                        property.name = term.getName();
+                    }
+                }
+            }
+        } catch (ComponentLookupException ex) {
+            // Shouldn't happen
+        } finally {
+            for (List<AbstractPhenoTipsVocabularyProperty> properties : this.pending.values()) {
+                for (AbstractPhenoTipsVocabularyProperty property : properties) {
+                    property.setNameResolver(null);
+                }
+            }
+            this.pending.clear();
+        }
+    }
+
+    private Map<String, Collection<String>> groupByVocabulary()
+    {
+        Map<String, Collection<String>> result = new HashMap<>();
+        for (String id : this.pending.keySet()) {
+            String vocabularyId = StringUtils.substringBefore(id, PREFIX_SEPARATOR);
+            if (StringUtils.isBlank(vocabularyId)) {
+                continue;
+            }
+            Collection<String> ids = result.get(vocabularyId);
+            if (ids == null) {
+                ids = new HashSet<>();
+                result.put(vocabularyId, ids);
+            }
+            ids.add(id);
+        }
+        return result;
+    }
+}
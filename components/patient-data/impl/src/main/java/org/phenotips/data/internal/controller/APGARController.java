@@ -74,7 +74,7 @@ public class APGARController implements PatientDataController<Integer>
     public PatientData<Integer> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -33,11 +33,14 @@
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -80,7 +83,7 @@
     public PatientData<T> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(getXClassReference());
             if (data == null) {
                 return null;
@@ -139,6 +142,23 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         }
     }
 
+    /**
+     * The names of the fields which enable the output of {@link #writeJSON(Patient, JSONObject, Collection)}: the
+     * {@link #getControllingFieldName(String) controlling fields} of all the {@link #getProperties() managed
+     * properties}. Subclasses that don't override {@code writeJSON} can expose them by implementing
+     * {@link SelectableFieldsController}.
+     *
+     * @return an unmodifiable collection of field names
+     */
+    public Collection<String> getSelectableFieldNames()
+    {
+        Set<String> result = new LinkedHashSet<>();
+        for (String property : getProperties()) {
+            result.add(getControllingFieldName(property));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
     /**
      * @return name of controlling field which is responsible for export fields grouping
      */
@@ -26,6 +26,7 @@
 import org.xwiki.bridge.DocumentModelBridge;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -60,7 +61,7 @@ public abstract class AbstractSimpleController implements PatientDataController<
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -126,6 +127,18 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         }
     }
 
+    /**
+     * The names of the fields which enable the output of {@link #writeJSON(Patient, JSONObject, Collection)}: all the
+     * {@link #getProperties() managed properties}. Subclasses that don't override {@code writeJSON} can expose them by
+     * implementing {@link SelectableFieldsController}.
+     *
+     * @return an unmodifiable collection of field names
+     */
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.unmodifiableList(getProperties());
+    }
+
     @Override
     public PatientData<String> readJSON(JSONObject json)
     {
@@ -31,6 +31,7 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -55,7 +56,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("allergies")
 @Singleton
-public class AllergiesController implements PatientDataController<String>
+public class AllergiesController implements SelectableFieldsController<String>
 {
     private static final String DATA_NAME = "allergies";
 
@@ -85,7 +86,7 @@ public String getName()
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -182,4 +183,10 @@ public PatientData<String> readJSON(JSONObject json)
 
         return new IndexedPatientData<>(DATA_NAME, result);
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(DATA_NAME);
+    }
 }
@@ -28,6 +28,7 @@
 import org.xwiki.model.reference.ObjectPropertyReference;
 
 import java.util.Collection;
+import java.util.Collections;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -50,7 +51,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("clinicalStatus")
 @Singleton
-public class ClinicalStatusController implements PatientDataController<String>
+public class ClinicalStatusController implements SelectableFieldsController<String>
 {
     private static final String CLINICAL_STATUS = "clinicalStatus";
 
@@ -84,7 +85,7 @@ public String getName()
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -154,4 +155,10 @@ public PatientData<String> readJSON(JSONObject json)
         }
         return null;
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(CONTROLLING_FIELDNAME);
+    }
 }
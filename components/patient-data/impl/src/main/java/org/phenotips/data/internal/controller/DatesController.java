@@ -32,6 +32,7 @@
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -56,7 +57,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("dates")
 @Singleton
-public class DatesController implements PatientDataController<PhenoTipsDate>
+public class DatesController implements SelectableFieldsController<PhenoTipsDate>
 {
     // field names as stored in the patient document
     protected static final String PATIENT_DATEOFDEATH_FIELDNAME = "date_of_death";
@@ -111,7 +112,7 @@ public class DatesController implements PatientDataController<PhenoTipsDate>
     public PatientData<PhenoTipsDate> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -286,4 +287,14 @@ protected String getPhenotipsFieldName(String jsonFieldName)
         }
         throw new NullPointerException("JSON field name has no corresponding Phenotips field name");
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        Set<String> result = new LinkedHashSet<>();
+        for (String propertyName : getPatientDocumentProperties()) {
+            result.add(getControllingFieldName(propertyName));
+        }
+        return Collections.unmodifiableSet(result);
+    }
 }
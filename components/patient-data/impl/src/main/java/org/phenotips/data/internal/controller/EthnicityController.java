@@ -38,6 +38,7 @@
 @Named("ethnicity")
 @Singleton
 public class EthnicityController extends AbstractComplexController<List<String>>
+    implements SelectableFieldsController<List<String>>
 {
     @Override
     public String getName()
@@ -38,6 +38,7 @@
 @Named("familyHistory")
 @Singleton
 public class FamilyHistoryController extends AbstractComplexController<Integer>
+    implements SelectableFieldsController<Integer>
 {
     private static final String CONSANGUINITY = "consanguinity";
 
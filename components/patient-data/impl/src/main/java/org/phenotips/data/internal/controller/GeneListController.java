@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.StreamingPatientDataController;
 
 import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
@@ -47,6 +48,7 @@
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 
 import com.xpn.xwiki.XWikiContext;
@@ -65,6 +67,7 @@
 @Named("gene")
 @Singleton
 public class GeneListController extends AbstractComplexController<Map<String, String>>
+    implements SelectableFieldsController<Map<String, String>>, StreamingPatientDataController<Map<String, String>>
 {
     /** The XClass used for storing gene data. */
     protected static final EntityReference GENE_CLASS_REFERENCE = new EntityReference("GeneClass",
@@ -149,7 +152,7 @@ protected List<String> getCodeFields()
     public PatientData<Map<String, String>> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             List<BaseObject> geneXWikiObjects = doc.getXObjects(GENE_CLASS_REFERENCE);
             if (geneXWikiObjects == null || geneXWikiObjects.isEmpty()) {
                 return null;
@@ -221,11 +224,7 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         json.put(getJsonPropertyName(), new JSONArray());
         JSONArray container = json.getJSONArray(getJsonPropertyName());
 
-        Map<String, String> internalToJSONkeys = new HashMap<>();
-        internalToJSONkeys.put(JSON_GENE_KEY, INTERNAL_GENE_KEY);
-        internalToJSONkeys.put(JSON_STATUS_KEY, INTERNAL_STATUS_KEY);
-        internalToJSONkeys.put(JSON_STRATEGY_KEY, INTERNAL_STRATEGY_KEY);
-        internalToJSONkeys.put(JSON_COMMENTS_KEY, INTERNAL_COMMENTS_KEY);
+        Map<String, String> internalToJSONkeys = getInternalToJSONKeys();
 
         while (iterator.hasNext()) {
             Map<String, String> item = iterator.next();
@@ -236,6 +235,43 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         }
     }
 
+    @Override
+    public void writeJSON(Patient patient, JSONWriter writer, Collection<String> selectedFieldNames)
+    {
+        if (selectedFieldNames != null && !selectedFieldNames.contains(GENES_ENABLING_FIELD_NAME)) {
+            return;
+        }
+
+        PatientData<Map<String, String>> data = patient.getData(getName());
+        if (data == null || !data.isIndexed() || data.size() == 0) {
+            if (selectedFieldNames != null && selectedFieldNames.contains(GENES_ENABLING_FIELD_NAME)) {
+                writer.key(getJsonPropertyName()).array().endArray();
+            }
+            return;
+        }
+
+        Map<String, String> internalToJSONkeys = getInternalToJSONKeys();
+        writer.key(getJsonPropertyName()).array();
+        Iterator<Map<String, String>> iterator = data.iterator();
+        while (iterator.hasNext()) {
+            Map<String, String> item = iterator.next();
+            if (!StringUtils.isBlank(item.get(INTERNAL_GENE_KEY))) {
+                writer.value(assebleGene(internalToJSONkeys, item));
+            }
+        }
+        writer.endArray();
+    }
+
+    private Map<String, String> getInternalToJSONKeys()
+    {
+        Map<String, String> internalToJSONkeys = new HashMap<>();
+        internalToJSONkeys.put(JSON_GENE_KEY, INTERNAL_GENE_KEY);
+        internalToJSONkeys.put(JSON_STATUS_KEY, INTERNAL_STATUS_KEY);
+        internalToJSONkeys.put(JSON_STRATEGY_KEY, INTERNAL_STRATEGY_KEY);
+        internalToJSONkeys.put(JSON_COMMENTS_KEY, INTERNAL_COMMENTS_KEY);
+        return internalToJSONkeys;
+    }
+
     private JSONObject assebleGene(Map<String, String> internalToJSONkeys, Map<String, String> data)
     {
         JSONObject newGene = new JSONObject();
@@ -409,4 +445,10 @@ public void save(Patient patient, DocumentModelBridge doc)
             }
         }
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(GENES_ENABLING_FIELD_NAME);
+    }
 }
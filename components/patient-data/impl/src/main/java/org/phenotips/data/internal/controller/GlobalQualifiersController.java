@@ -31,6 +31,7 @@
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -63,7 +64,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("global-qualifiers")
 @Singleton
-public class GlobalQualifiersController implements PatientDataController<List<VocabularyTerm>>
+public class GlobalQualifiersController implements SelectableFieldsController<List<VocabularyTerm>>
 {
     private static final String DATA_NAME = "global-qualifiers";
 
@@ -84,7 +85,7 @@ public class GlobalQualifiersController implements PatientDataController<List<Vo
     public PatientData<List<VocabularyTerm>> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -234,4 +235,10 @@ private void addTerms(String item, List<VocabularyTerm> holder)
             }
         }
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.unmodifiableList(getProperties());
+    }
 }
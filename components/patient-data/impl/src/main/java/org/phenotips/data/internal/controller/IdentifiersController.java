@@ -28,6 +28,7 @@
 import org.xwiki.context.Execution;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -52,7 +53,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("identifiers")
 @Singleton
-public class IdentifiersController implements PatientDataController<String>
+public class IdentifiersController implements SelectableFieldsController<String>
 {
     private static final String DATA_NAME = "identifiers";
 
@@ -74,7 +75,7 @@ public class IdentifiersController implements PatientDataController<String>
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -148,4 +149,10 @@ public String getName()
     {
         return DATA_NAME;
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(EXTERNAL_IDENTIFIER_PROPERTY_NAME);
+    }
 }
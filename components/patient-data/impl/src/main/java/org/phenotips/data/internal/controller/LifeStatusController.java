@@ -29,6 +29,7 @@
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
@@ -53,7 +54,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("lifeStatus")
 @Singleton
-public class LifeStatusController implements PatientDataController<String>
+public class LifeStatusController implements SelectableFieldsController<String>
 {
     private static final String DATA_NAME = "life_status";
 
@@ -81,7 +82,7 @@ public class LifeStatusController implements PatientDataController<String>
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -173,4 +174,10 @@ public String getName()
     {
         return DATA_NAME;
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(DATA_NAME);
+    }
 }
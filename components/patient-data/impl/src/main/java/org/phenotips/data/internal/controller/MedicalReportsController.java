@@ -27,6 +27,7 @@
 import org.xwiki.component.annotation.Component;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,7 +54,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("medicalreports")
 @Singleton
-public class MedicalReportsController implements PatientDataController<String>
+public class MedicalReportsController implements SelectableFieldsController<String>
 {
     /**
      * Provides access to the underlying data storage.
@@ -76,7 +77,7 @@ public PatientData<String> load(Patient patient)
     {
         try {
             XWikiContext context = this.contextProvider.get();
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 throw new NullPointerException("The patient does not have a PatientClass");
@@ -126,4 +127,11 @@ public String getName()
     {
         return "medicalreports";
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        // Nothing is written in the JSON
+        return Collections.emptySet();
+    }
 }
@@ -24,6 +24,7 @@
 
 import org.xwiki.component.annotation.Component;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -55,7 +56,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("metadata")
 @Singleton
-public class MetaDataController extends AbstractSimpleController implements PatientDataController<String>
+public class MetaDataController extends AbstractSimpleController implements SelectableFieldsController<String>
 {
     private static final String UNKNOWN_USER = "Unknown user";
 
@@ -82,7 +83,7 @@ public class MetaDataController extends AbstractSimpleController implements Pati
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
 
             Map<String, String> result = new LinkedHashMap<>();
 
@@ -158,4 +159,10 @@ private String getJSONkey(String key)
                 return key;
         }
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.unmodifiableList(Arrays.asList(DOCUMENT_NAME, CREATION_DATE, AUTHOR, DATE));
+    }
 }
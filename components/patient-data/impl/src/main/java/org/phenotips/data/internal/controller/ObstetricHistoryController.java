@@ -31,6 +31,7 @@
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -58,7 +59,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("obstetric-history")
 @Singleton
-public class ObstetricHistoryController implements PatientDataController<Integer>
+public class ObstetricHistoryController implements SelectableFieldsController<Integer>
 {
     /** The XClass used for storing parental information. */
     public static final EntityReference CLASS_REFERENCE =
@@ -102,7 +103,7 @@ public String getName()
     public PatientData<Integer> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(getXClassReference());
             if (data == null) {
                 this.logger.debug("No data for patient [{}]", patient.getDocument());
@@ -222,4 +223,10 @@ private JSONObject findContainer(JSONObject json)
         }
         return container;
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(getName());
+    }
 }
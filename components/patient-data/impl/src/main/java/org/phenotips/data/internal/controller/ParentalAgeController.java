@@ -31,6 +31,7 @@
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,7 +57,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("parentalAge")
 @Singleton
-public class ParentalAgeController implements PatientDataController<Integer>
+public class ParentalAgeController implements SelectableFieldsController<Integer>
 {
     /** The XClass used for storing parental information. */
     public static final EntityReference CLASS_REFERENCE =
@@ -90,7 +91,7 @@ public String getName()
     public PatientData<Integer> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(getXClassReference());
             if (data == null) {
                 this.logger.debug("No parental information for patient [{}]", patient.getDocument());
@@ -201,4 +202,10 @@ private String getJsonPropertyName()
     {
         return "prenatal_perinatal_history";
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(ENABLING_FIELD_NAME);
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal.controller;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Gives controllers access to the document of a patient record.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+final class PatientDocuments
+{
+    private PatientDocuments()
+    {
+        // Utility class, no instances
+    }
+
+    /**
+     * Gets the document where the patient is stored, preferably {@link Patient#getXDocument() the one already loaded by
+     * the patient}, so that each controller loading data doesn't fetch the document again. The document is only
+     * fetched for patients that aren't backed by a loaded document.
+     *
+     * @param patient the patient whose document is needed
+     * @param bridge used for fetching the document when the patient doesn't hold it
+     * @return the patient document
+     * @throws Exception if fetching the document fails
+     */
+    static XWikiDocument get(Patient patient, DocumentAccessBridge bridge) throws Exception
+    {
+        DocumentModelBridge doc = patient.getXDocument();
+        if (doc == null) {
+            doc = bridge.getDocument(patient.getDocument());
+        }
+        return (XWikiDocument) doc;
+    }
+}
@@ -36,7 +36,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("patient-name")
 @Singleton
-public class PatientNameController extends AbstractSimpleController
+public class PatientNameController extends AbstractSimpleController implements SelectableFieldsController<String>
 {
     @Override
     protected List<String> getProperties()
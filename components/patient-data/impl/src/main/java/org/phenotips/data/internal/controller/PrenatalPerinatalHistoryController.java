@@ -38,6 +38,7 @@
 @Named("prenatalPerinatalHistory")
 @Singleton
 public class PrenatalPerinatalHistoryController extends AbstractComplexController<String>
+    implements SelectableFieldsController<String>
 {
     private static final String IVF = "ivf";
 
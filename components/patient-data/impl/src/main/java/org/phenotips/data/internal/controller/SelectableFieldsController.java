@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal.controller;
+
+import org.phenotips.data.PatientDataController;
+
+import java.util.Collection;
+
+/**
+ * A patient data controller which knows in advance which fields must be selected for it to write anything in the
+ * patient JSON. When none of these fields are selected, {@link PatientDataController#writeJSON} doesn't need to be
+ * called at all, which also avoids loading the controller's data.
+ *
+ * @param <T> the type of data being managed by this controller
+ * @version $Id$
+ * @since 1.3M4
+ */
+public interface SelectableFieldsController<T> extends PatientDataController<T>
+{
+    /**
+     * The names of the fields which enable this controller's output, as checked against the {@code selectedFieldNames}
+     * parameter of {@link PatientDataController#writeJSON(org.phenotips.data.Patient, org.json.JSONObject, Collection)}.
+     *
+     * @return an unmodifiable collection of field names, may be empty
+     */
+    Collection<String> getSelectableFieldNames();
+}
@@ -27,6 +27,7 @@
 import org.xwiki.component.annotation.Component;
 
 import java.util.Collection;
+import java.util.Collections;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -48,7 +49,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("sex")
 @Singleton
-public class SexController implements PatientDataController<String>
+public class SexController implements SelectableFieldsController<String>
 {
     private static final String DATA_NAME = "sex";
 
@@ -81,7 +82,7 @@ private String parseGender(String gender)
     public PatientData<String> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             BaseObject data = doc.getXObject(Patient.CLASS_REFERENCE);
             if (data == null) {
                 return null;
@@ -148,4 +149,10 @@ public String getName()
     {
         return DATA_NAME;
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(INTERNAL_PROPERTY_NAME);
+    }
 }
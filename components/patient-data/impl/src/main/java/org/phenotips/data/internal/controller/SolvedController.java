@@ -56,7 +56,8 @@
 @Component(roles = { PatientDataController.class })
 @Named("solved")
 @Singleton
-public class SolvedController extends AbstractSimpleController implements Initializable
+public class SolvedController extends AbstractSimpleController
+    implements SelectableFieldsController<String>, Initializable
 {
     private static final String SOLVED_STRING = "solved";
 
@@ -36,7 +36,7 @@
 @Component(roles = { PatientDataController.class })
 @Named("notes")
 @Singleton
-public class TextNotesController extends AbstractSimpleController
+public class TextNotesController extends AbstractSimpleController implements SelectableFieldsController<String>
 {
     @Override
     protected List<String> getProperties()
@@ -22,6 +22,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.StreamingPatientDataController;
 
 import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
@@ -48,6 +49,7 @@
 import org.apache.commons.lang3.math.NumberUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 
 import com.xpn.xwiki.XWikiContext;
@@ -66,6 +68,7 @@
 @Named("variant")
 @Singleton
 public class VariantListController extends AbstractComplexController<Map<String, String>>
+    implements SelectableFieldsController<Map<String, String>>, StreamingPatientDataController<Map<String, String>>
 {
     /** The XClass used for storing variant data. */
     private static final EntityReference VARIANT_CLASS_REFERENCE = new EntityReference("GeneVariantClass",
@@ -209,7 +212,7 @@ protected List<String> getCodeFields()
     public PatientData<Map<String, String>> load(Patient patient)
     {
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             List<BaseObject> variantXWikiObjects = doc.getXObjects(VARIANT_CLASS_REFERENCE);
             if (variantXWikiObjects == null || variantXWikiObjects.isEmpty()) {
                 return null;
@@ -288,6 +291,46 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         json.put(getJsonPropertyName(), new JSONArray());
         JSONArray container = json.getJSONArray(getJsonPropertyName());
 
+        Map<String, String> internalToJSONkeys = getInternalToJSONKeys();
+
+        while (iterator.hasNext()) {
+            Map<String, String> item = iterator.next();
+
+            if (!StringUtils.isBlank(item.get(INTERNAL_VARIANT_KEY))) {
+                container.put(assembleVariant(internalToJSONkeys, item));
+            }
+        }
+    }
+
+    @Override
+    public void writeJSON(Patient patient, JSONWriter writer, Collection<String> selectedFieldNames)
+    {
+        if (selectedFieldNames != null && !selectedFieldNames.contains(VARIANTS_ENABLING_FIELD_NAME)) {
+            return;
+        }
+
+        PatientData<Map<String, String>> data = patient.getData(getName());
+        if (data == null || data.size() == 0) {
+            if (selectedFieldNames != null && selectedFieldNames.contains(VARIANTS_ENABLING_FIELD_NAME)) {
+                writer.key(getJsonPropertyName()).array().endArray();
+            }
+            return;
+        }
+
+        Map<String, String> internalToJSONkeys = getInternalToJSONKeys();
+        writer.key(getJsonPropertyName()).array();
+        Iterator<Map<String, String>> iterator = data.iterator();
+        while (iterator.hasNext()) {
+            Map<String, String> item = iterator.next();
+            if (!StringUtils.isBlank(item.get(INTERNAL_VARIANT_KEY))) {
+                writer.value(assembleVariant(internalToJSONkeys, item));
+            }
+        }
+        writer.endArray();
+    }
+
+    private Map<String, String> getInternalToJSONKeys()
+    {
         Map<String, String> internalToJSONkeys = new HashMap<>();
         internalToJSONkeys.put(JSON_VARIANT_KEY, INTERNAL_VARIANT_KEY);
         internalToJSONkeys.put(JSON_GENESYMBOL_KEY, INTERNAL_GENESYMBOL_KEY);
@@ -305,24 +348,22 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         internalToJSONkeys.put(JSON_START_POSITION_KEY, INTERNAL_START_POSITION_KEY);
         internalToJSONkeys.put(JSON_END_POSITION_KEY, INTERNAL_END_POSITION_KEY);
         internalToJSONkeys.put(JSON_REFERENCE_GENOME_KEY, INTERNAL_REFERENCE_GENOME_KEY);
+        return internalToJSONkeys;
+    }
 
-        while (iterator.hasNext()) {
-            Map<String, String> item = iterator.next();
-
-            if (!StringUtils.isBlank(item.get(INTERNAL_VARIANT_KEY))) {
-                JSONObject nextVariant = new JSONObject();
-                for (String key : internalToJSONkeys.keySet()) {
-                    if (!StringUtils.isBlank(item.get(key))) {
-                        if (INTERNAL_EVIDENCE_KEY.equals(key)) {
-                            nextVariant.put(key, new JSONArray(item.get(internalToJSONkeys.get(key)).split("\\|")));
-                        } else {
-                            nextVariant.put(key, item.get(internalToJSONkeys.get(key)));
-                        }
-                    }
+    private JSONObject assembleVariant(Map<String, String> internalToJSONkeys, Map<String, String> item)
+    {
+        JSONObject nextVariant = new JSONObject();
+        for (String key : internalToJSONkeys.keySet()) {
+            if (!StringUtils.isBlank(item.get(key))) {
+                if (INTERNAL_EVIDENCE_KEY.equals(key)) {
+                    nextVariant.put(key, new JSONArray(item.get(internalToJSONkeys.get(key)).split("\\|")));
+                } else {
+                    nextVariant.put(key, item.get(internalToJSONkeys.get(key)));
                 }
-                container.put(nextVariant);
             }
         }
+        return nextVariant;
     }
 
     @Override
@@ -458,4 +499,10 @@ public void save(Patient patient, DocumentModelBridge doc)
             }
         }
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(VARIANTS_ENABLING_FIELD_NAME);
+    }
 }
@@ -57,7 +57,7 @@
 @Named("versions")
 @Singleton
 public class VersionsController extends AbstractSimpleController
-    implements PatientDataController<String>
+    implements SelectableFieldsController<String>
 {
     /** The XClass used for storing version data of different ontologies. */
     private static final EntityReference ONTOLOGY_VERSION_CLASS_REFERENCE =
@@ -74,7 +74,7 @@ public PatientData<String> load(Patient patient)
         Map<String, String> versions = new LinkedHashMap<>();
 
         try {
-            XWikiDocument doc = (XWikiDocument) this.documentAccessBridge.getDocument(patient.getDocument());
+            XWikiDocument doc = PatientDocuments.get(patient, this.documentAccessBridge);
             addOntologyVersions(doc, versions);
             addPhenoTipsVersion(versions);
         } catch (Exception e) {
@@ -166,4 +166,10 @@ public static String getEnablingFieldName()
     {
         return CONTROLLER_NAME;
     }
+
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(getEnablingFieldName());
+    }
 }
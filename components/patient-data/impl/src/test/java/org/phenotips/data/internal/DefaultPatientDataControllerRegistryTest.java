@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+import org.phenotips.data.internal.controller.SelectableFieldsController;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link DefaultPatientDataControllerRegistry}.
+ */
+public class DefaultPatientDataControllerRegistryTest
+{
+    @Rule
+    public MockitoComponentMockingRule<PatientDataControllerRegistry> mocker =
+        new MockitoComponentMockingRule<PatientDataControllerRegistry>(DefaultPatientDataControllerRegistry.class);
+
+    private ComponentManager cm;
+
+    private PatientDataController<?> sex;
+
+    private SelectableFieldsController<?> name;
+
+    private SelectableFieldsController<?> notes;
+
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        this.cm = this.mocker.getInstance(ComponentManager.class, "context");
+        this.sex = mock(PatientDataController.class);
+        when(this.sex.getName()).thenReturn("sex");
+        this.name = mock(SelectableFieldsController.class);
+        when(this.name.getName()).thenReturn("patientName");
+        when(this.name.getSelectableFieldNames()).thenReturn(Arrays.asList("first_name", "last_name"));
+        this.notes = mock(SelectableFieldsController.class);
+        when(this.notes.getName()).thenReturn("notes");
+        when(this.notes.getSelectableFieldNames()).thenReturn(Arrays.asList("family_history", "last_name"));
+        List<PatientDataController<?>> controllers = new ArrayList<>();
+        controllers.add(this.sex);
+        controllers.add(this.name);
+        controllers.add(this.notes);
+        when(this.cm.<PatientDataController<?>>getInstanceList(PatientDataController.class)).thenReturn(controllers);
+    }
+
+    @Test
+    public void controllersAreLookedUpOnceAndSortedByName() throws ComponentLookupException
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        Assert.assertEquals(Arrays.asList("notes", "patientName", "sex"),
+            new ArrayList<>(registry.getControllers().keySet()));
+        Assert.assertSame(this.sex, registry.getControllers().get("sex"));
+        Assert.assertEquals(3, registry.getControllers(null).size());
+
+        verify(this.cm, times(1)).getInstanceList(PatientDataController.class);
+    }
+
+    @Test
+    public void onlyNeededControllersAreReturnedForSelectedFields() throws ComponentLookupException
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+
+        Collection<PatientDataController<?>> selected = registry.getControllers(Arrays.asList("first_name", "id"));
+        Assert.assertEquals(2, selected.size());
+        Iterator<PatientDataController<?>> it = selected.iterator();
+        Assert.assertSame(this.name, it.next());
+        Assert.assertSame(this.sex, it.next());
+
+        selected = registry.getControllers(Collections.singletonList("last_name"));
+        Assert.assertEquals(3, selected.size());
+
+        selected = registry.getControllers(Collections.<String>emptyList());
+        Assert.assertEquals(1, selected.size());
+        Assert.assertSame(this.sex, selected.iterator().next());
+
+        Assert.assertEquals(Arrays.asList("notes", "patientName"),
+            new ArrayList<>(registry.getControllerNames("last_name")));
+        Assert.assertTrue(registry.getControllerNames("sex").isEmpty());
+    }
+
+    @Test
+    public void invalidatedControllersAreLookedUpAgain() throws ComponentLookupException
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        Assert.assertEquals(3, registry.getControllers().size());
+
+        when(this.cm.<PatientDataController<?>>getInstanceList(PatientDataController.class)).thenReturn(
+            Collections.<PatientDataController<?>>singletonList(this.sex));
+        Assert.assertEquals(3, registry.getControllers().size());
+        registry.invalidate();
+        Assert.assertEquals(1, registry.getControllers().size());
+
+        verify(this.cm, times(2)).getInstanceList(PatientDataController.class);
+    }
+
+    @Test
+    public void invalidationDuringLookupIsNotLost() throws ComponentLookupException
+    {
+        final PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        when(this.cm.<PatientDataController<?>>getInstanceList(PatientDataController.class)).thenAnswer(
+            new Answer<List<PatientDataController<?>>>()
+            {
+                @Override
+                public List<PatientDataController<?>> answer(InvocationOnMock invocation)
+                {
+                    // A controller is removed while the previous list is being looked up
+                    registry.invalidate();
+                    return Arrays.<PatientDataController<?>>asList(DefaultPatientDataControllerRegistryTest.this.sex,
+                        DefaultPatientDataControllerRegistryTest.this.name);
+                }
+            }).thenReturn(Collections.<PatientDataController<?>>singletonList(this.sex));
+
+        Assert.assertEquals(2, registry.getControllers().size());
+        Assert.assertEquals(1, registry.getControllers().size());
+        Assert.assertEquals(1, registry.getControllers().size());
+
+        verify(this.cm, times(2)).getInstanceList(PatientDataController.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void controllersAreCachedSeparatelyForEachComponentManager() throws Exception
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        ComponentManager otherCM = mock(ComponentManager.class);
+        when(otherCM.<PatientDataController<?>>getInstanceList(PatientDataController.class)).thenReturn(
+            Collections.<PatientDataController<?>>singletonList(this.sex));
+        Provider<ComponentManager> provider = mock(Provider.class);
+        when(provider.get()).thenReturn(this.cm, otherCM, this.cm, otherCM);
+        ReflectionUtils.setFieldValue(registry, "componentManager", provider);
+
+        Assert.assertEquals(3, registry.getControllers().size());
+        Assert.assertEquals(1, registry.getControllers().size());
+        Assert.assertEquals(3, registry.getControllers().size());
+        Assert.assertEquals(1, registry.getControllers().size());
+
+        verify(this.cm, times(1)).getInstanceList(PatientDataController.class);
+        verify(otherCM, times(1)).getInstanceList(PatientDataController.class);
+    }
+
+    @Test
+    public void lookupFailuresAreHandled() throws ComponentLookupException
+    {
+        when(this.cm.<PatientDataController<?>>getInstanceList(PatientDataController.class)).thenThrow(
+            new ComponentLookupException("failed"));
+        Assert.assertTrue(this.mocker.getComponentUnderTest().getControllers().isEmpty());
+    }
+}
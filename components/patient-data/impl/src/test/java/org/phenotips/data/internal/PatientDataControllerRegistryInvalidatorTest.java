@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PatientDataControllerRegistryInvalidator}.
+ */
+public class PatientDataControllerRegistryInvalidatorTest
+{
+    @Rule
+    public MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<EventListener>(PatientDataControllerRegistryInvalidator.class);
+
+    @Test
+    public void listensToComponentChanges() throws ComponentLookupException
+    {
+        EventListener listener = this.mocker.getComponentUnderTest();
+        Assert.assertEquals("patient-data-controller-registry-invalidator", listener.getName());
+        Assert.assertEquals(2, listener.getEvents().size());
+    }
+
+    @Test
+    public void registryIsInvalidatedWhenControllersChange() throws ComponentLookupException
+    {
+        ComponentDescriptorAddedEvent added = mock(ComponentDescriptorAddedEvent.class);
+        when(added.getRoleType()).thenReturn(PatientDataController.class);
+        ComponentDescriptorRemovedEvent removed = mock(ComponentDescriptorRemovedEvent.class);
+        when(removed.getRoleType()).thenReturn(PatientDataController.class);
+
+        this.mocker.getComponentUnderTest().onEvent(added, null, null);
+        this.mocker.getComponentUnderTest().onEvent(removed, null, null);
+
+        verify(this.mocker.getInstance(PatientDataControllerRegistry.class), times(2)).invalidate();
+    }
+
+    @Test
+    public void otherComponentsAreIgnored() throws ComponentLookupException
+    {
+        ComponentDescriptorAddedEvent added = mock(ComponentDescriptorAddedEvent.class);
+        when(added.getRoleType()).thenReturn(EventListener.class);
+
+        this.mocker.getComponentUnderTest().onEvent(added, null, null);
+
+        verify(this.mocker.<PatientDataControllerRegistry>getInstance(PatientDataControllerRegistry.class), never())
+            .invalidate();
+    }
+}
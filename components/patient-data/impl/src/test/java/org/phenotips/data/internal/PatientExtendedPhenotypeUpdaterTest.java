@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientExtendedPhenotypeUpdater} component.
+ *
+ * @version $Id$
+ */
+public class PatientExtendedPhenotypeUpdaterTest
+{
+    private static final String PHENOTYPE = "phenotype";
+
+    private static final String EXTENDED_PHENOTYPE = "extended_phenotype";
+
+    private static final String PARENT = "HP:0000001";
+
+    private static final String TERM1 = "HP:0000002";
+
+    private static final String TERM2 = "HP:0000003";
+
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<EventListener>(PatientExtendedPhenotypeUpdater.class);
+
+    @Mock
+    private XWikiDocument doc;
+
+    @Mock
+    private XWikiDocument originalDoc;
+
+    @Mock
+    private BaseObject patientRecordObj;
+
+    @Mock
+    private BaseObject originalRecordObj;
+
+    @Mock
+    private Vocabulary hpo;
+
+    @Mock
+    private Event event;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        doReturn(this.patientRecordObj).when(this.doc).getXObject(Patient.CLASS_REFERENCE);
+        doReturn(this.originalDoc).when(this.doc).getOriginalDocument();
+        doReturn(this.originalRecordObj).when(this.originalDoc).getXObject(Patient.CLASS_REFERENCE);
+
+        VocabularyManager vm = this.mocker.getInstance(VocabularyManager.class);
+        when(vm.getVocabulary("HP")).thenReturn(this.hpo);
+        Map<String, Set<String>> ancestors = new HashMap<>();
+        ancestors.put(PARENT, Collections.singleton(PARENT));
+        ancestors.put(TERM1, new HashSet<>(Arrays.asList(TERM1, PARENT)));
+        ancestors.put(TERM2, new HashSet<>(Arrays.asList(TERM2, PARENT)));
+        when(this.hpo.getAncestorsAndSelf(anyCollectionOf(String.class))).thenReturn(ancestors);
+    }
+
+    @Test
+    public void nothingIsDoneWhenPhenotypesDidNotChange() throws Exception
+    {
+        setPhenotypes(this.originalRecordObj, TERM1);
+        setPhenotypes(this.patientRecordObj, TERM1);
+        doReturn(Arrays.asList(PARENT, TERM1)).when(this.patientRecordObj).getListValue(EXTENDED_PHENOTYPE);
+
+        this.mocker.getComponentUnderTest().onEvent(this.event, this.doc, null);
+
+        verify(this.hpo, never()).getAncestorsAndSelf(anyCollectionOf(String.class));
+        verify(this.patientRecordObj, never()).setDBStringListValue(anyString(), anyListOf(String.class));
+    }
+
+    @Test
+    public void onlyAddedPhenotypesAreExpanded() throws Exception
+    {
+        setPhenotypes(this.originalRecordObj, TERM1);
+        setPhenotypes(this.patientRecordObj, TERM1, TERM2, "free text");
+        doReturn(Arrays.asList(PARENT, TERM1)).when(this.patientRecordObj).getListValue(EXTENDED_PHENOTYPE);
+
+        this.mocker.getComponentUnderTest().onEvent(this.event, this.doc, null);
+
+        verify(this.hpo).getAncestorsAndSelf(Collections.singletonList(TERM2));
+        verify(this.patientRecordObj).setDBStringListValue(EXTENDED_PHENOTYPE,
+            Arrays.asList(PARENT, TERM1, TERM2, "free text"));
+    }
+
+    @Test
+    public void extendedPhenotypesAreRecomputedWhenPhenotypesAreRemoved() throws Exception
+    {
+        setPhenotypes(this.originalRecordObj, TERM1, TERM2);
+        setPhenotypes(this.patientRecordObj, TERM2);
+        doReturn(Arrays.asList(PARENT, TERM1, TERM2)).when(this.patientRecordObj).getListValue(EXTENDED_PHENOTYPE);
+
+        this.mocker.getComponentUnderTest().onEvent(this.event, this.doc, null);
+
+        verify(this.hpo).getAncestorsAndSelf(Collections.singletonList(TERM2));
+        verify(this.patientRecordObj).setDBStringListValue(EXTENDED_PHENOTYPE, Arrays.asList(PARENT, TERM2));
+    }
+
+    @Test
+    public void newRecordsAreFullyExpanded() throws Exception
+    {
+        doReturn(null).when(this.originalDoc).getXObject(Patient.CLASS_REFERENCE);
+        setPhenotypes(this.patientRecordObj, TERM2, TERM1);
+
+        this.mocker.getComponentUnderTest().onEvent(this.event, this.doc, null);
+
+        verify(this.hpo).getAncestorsAndSelf(Arrays.asList(TERM1, TERM2));
+        verify(this.patientRecordObj).setDBStringListValue(EXTENDED_PHENOTYPE, Arrays.asList(PARENT, TERM1, TERM2));
+        verify(this.patientRecordObj).setDBStringListValue(PHENOTYPE, Arrays.asList(TERM1, TERM2));
+    }
+
+    @Test
+    public void returnsNormallyWhenPatientDoesNotHavePatientClass() throws Exception
+    {
+        doReturn(null).when(this.doc).getXObject(Patient.CLASS_REFERENCE);
+        this.mocker.getComponentUnderTest().onEvent(this.event, this.doc, null);
+        verify(this.hpo, never()).getAncestorsAndSelf(anyCollectionOf(String.class));
+    }
+
+    private void setPhenotypes(BaseObject obj, String... phenotypes)
+    {
+        List<String> values = Arrays.asList(phenotypes);
+        doReturn(values).when(obj).getListValue(PHENOTYPE);
+    }
+}
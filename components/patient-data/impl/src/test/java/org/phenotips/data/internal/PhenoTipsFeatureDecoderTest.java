@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.FeatureMetadatum;
+
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.ListProperty;
+import com.xpn.xwiki.objects.StringProperty;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PhenoTipsFeatureDecoder}.
+ */
+public class PhenoTipsFeatureDecoderTest
+{
+    @Test
+    public void featurePropertiesAreRecognized()
+    {
+        Assert.assertTrue(PhenoTipsFeatureDecoder.isFeatureProperty("phenotype"));
+        Assert.assertTrue(PhenoTipsFeatureDecoder.isFeatureProperty("negative_phenotype"));
+        Assert.assertTrue(PhenoTipsFeatureDecoder.isFeatureProperty("prenatal_phenotype"));
+        Assert.assertTrue(PhenoTipsFeatureDecoder.isFeatureProperty("negative_prenatal_phenotype"));
+        Assert.assertFalse(PhenoTipsFeatureDecoder.isFeatureProperty("extended_phenotype"));
+        Assert.assertFalse(PhenoTipsFeatureDecoder.isFeatureProperty("extended_negative_phenotype"));
+        Assert.assertFalse(PhenoTipsFeatureDecoder.isFeatureProperty("phenotype_qualifier"));
+        Assert.assertFalse(PhenoTipsFeatureDecoder.isFeatureProperty("notphenotype"));
+        Assert.assertFalse(PhenoTipsFeatureDecoder.isFeatureProperty("omim_id"));
+        Assert.assertFalse(PhenoTipsFeatureDecoder.isFeatureProperty(null));
+    }
+
+    @Test
+    public void allFeaturesAreDecodedWithTheirMetadata() throws XWikiException
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        BaseObject first = metadataObject("phenotype", "HP:0000100", "First");
+        BaseObject duplicate = metadataObject("phenotype", "HP:0000100", "Duplicate");
+        BaseObject negative = metadataObject("negative_phenotype", "HP:0000200", "Negative");
+        when(doc.getXObjects(FeatureMetadatum.CLASS_REFERENCE)).thenReturn(Arrays.asList(first, null, duplicate,
+            negative));
+        BaseObject categories = metadataObject("phenotype", "Custom", null);
+        when(categories.getListValue("target_property_category")).thenReturn(Arrays.asList("HP:0000118"));
+        when(doc.getXObjects(PhenoTipsFeature.CATEGORY_CLASS_REFERENCE)).thenReturn(
+            Collections.singletonList(categories));
+
+        BaseObject data = mock(BaseObject.class);
+        when(data.getFieldList()).thenReturn(Arrays.asList(listProperty("phenotype", "HP:0000100", "Custom", " "),
+            listProperty("negative_phenotype", "HP:0000200"), listProperty("extended_phenotype", "HP:0000001"),
+            new StringProperty()));
+
+        List<Feature> features = new ArrayList<>();
+        new PhenoTipsFeatureDecoder(doc).decodeFeatures(data, features);
+
+        Assert.assertEquals(3, features.size());
+        Assert.assertEquals("HP:0000100", features.get(0).getId());
+        Assert.assertTrue(features.get(0).isPresent());
+        Assert.assertEquals("First", features.get(0).getNotes());
+        Assert.assertTrue(features.get(0).getCategories().isEmpty());
+        Assert.assertEquals("Custom", features.get(1).getValue());
+        Assert.assertEquals("", features.get(1).getNotes());
+        Assert.assertEquals(Arrays.asList("HP:0000118"), features.get(1).getCategories());
+        Assert.assertEquals("HP:0000200", features.get(2).getId());
+        Assert.assertFalse(features.get(2).isPresent());
+        Assert.assertEquals("phenotype", features.get(2).getType());
+        Assert.assertEquals("Negative", features.get(2).getNotes());
+
+        // The objects are read once, no matter how many features there are
+        verify(doc, times(2)).getXObjects(any(EntityReference.class));
+        verify(first, times(1)).get("target_property_name");
+    }
+
+    @Test
+    public void duplicateValuesAreDecodedOnce()
+    {
+        XWikiDocument doc = mock(XWikiDocument.class);
+        BaseObject data = mock(BaseObject.class);
+        when(data.getFieldList()).thenReturn(Arrays.asList(listProperty("phenotype", "HP:0000100", "HP:0000100"),
+            listProperty("prenatal_phenotype", "HP:0000100", "Custom"), listProperty("negative_phenotype", "Custom")));
+
+        List<Feature> features = new ArrayList<>();
+        new PhenoTipsFeatureDecoder(doc).decodeFeatures(data, features);
+
+        Assert.assertEquals(2, features.size());
+        Assert.assertEquals("HP:0000100", features.get(0).getId());
+        Assert.assertEquals("phenotype", features.get(0).getType());
+        Assert.assertEquals("Custom", features.get(1).getValue());
+        Assert.assertEquals("prenatal_phenotype", features.get(1).getType());
+    }
+
+    private BaseObject metadataObject(String propertyName, String value, String comments) throws XWikiException
+    {
+        BaseObject result = mock(BaseObject.class);
+        StringProperty name = new StringProperty();
+        name.setValue(propertyName);
+        when(result.get("target_property_name")).thenReturn(name);
+        StringProperty target = new StringProperty();
+        target.setValue(value);
+        when(result.get("target_property_value")).thenReturn(target);
+        when(result.getLargeStringValue("comments")).thenReturn(comments);
+        return result;
+    }
+
+    private ListProperty listProperty(String name, String... values)
+    {
+        ListProperty result = new ListProperty();
+        result.setName(name);
+        result.setList(Arrays.asList(values));
+        return result;
+    }
+}
@@ -18,13 +18,16 @@
 package org.phenotips.data.internal;
 
 import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
 import org.phenotips.security.authorization.AuthorizationService;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -35,6 +38,10 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -139,4 +146,80 @@ public void basicFunctionalityTests() throws ComponentLookupException
         Assert.assertSame(this.p3, iterator.next());
         Assert.assertFalse(iterator.hasNext());
     }
+
+    @Test
+    public void referencesAreCheckedBeforeLoadingPatients() throws ComponentLookupException
+    {
+        PatientRepository repository = mock(PatientRepository.class);
+        when(repository.get(this.p2Reference)).thenReturn(this.p2);
+        when(repository.get(this.p3Reference)).thenReturn(this.p3);
+        List<DocumentReference> input = Arrays.asList(this.p1Reference, this.p2Reference, this.p3Reference);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, input))
+            .thenReturn(Arrays.asList(this.p2Reference, this.p3Reference));
+
+        SecurePatientIterator iterator =
+            new SecurePatientIterator(input.iterator(), repository, this.access, this.currentUser, 0);
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertSame(this.p2, iterator.next());
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertSame(this.p3, iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        verify(repository, never()).get(this.p1Reference);
+        verify(this.access, never()).hasAccess(any(User.class), any(Right.class), any(EntityReference.class));
+    }
+
+    @Test
+    public void patientsAreLoadedLazily() throws ComponentLookupException
+    {
+        PatientRepository repository = mock(PatientRepository.class);
+        when(repository.get(this.p1Reference)).thenReturn(this.p1);
+        when(repository.get(this.p2Reference)).thenReturn(this.p2);
+        when(repository.get(this.p3Reference)).thenReturn(this.p3);
+        List<DocumentReference> input = Arrays.asList(this.p1Reference, this.p2Reference, this.p3Reference);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, input)).thenReturn(input);
+
+        SecurePatientIterator iterator =
+            new SecurePatientIterator(input.iterator(), repository, this.access, this.currentUser, 0);
+        verify(repository).get(this.p1Reference);
+        verify(repository, never()).get(this.p2Reference);
+        Assert.assertSame(this.p1, iterator.next());
+        verify(repository).get(this.p2Reference);
+        verify(repository, never()).get(this.p3Reference);
+    }
+
+    @Test
+    public void prefetchLoadsPatientsAhead() throws ComponentLookupException
+    {
+        PatientRepository repository = mock(PatientRepository.class);
+        when(repository.get(this.p1Reference)).thenReturn(this.p1);
+        when(repository.get(this.p2Reference)).thenReturn(this.p2);
+        when(repository.get(this.p3Reference)).thenReturn(this.p3);
+        List<DocumentReference> input = Arrays.asList(this.p1Reference, this.p2Reference, this.p3Reference);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, input)).thenReturn(input);
+
+        SecurePatientIterator iterator =
+            new SecurePatientIterator(input.iterator(), repository, this.access, this.currentUser, 1);
+        verify(repository).get(this.p1Reference);
+        verify(repository).get(this.p2Reference);
+        verify(repository, never()).get(this.p3Reference);
+        Assert.assertSame(this.p1, iterator.next());
+        verify(repository).get(this.p3Reference);
+        Assert.assertSame(this.p2, iterator.next());
+        Assert.assertSame(this.p3, iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void missingPatientsAreSkipped() throws ComponentLookupException
+    {
+        PatientRepository repository = mock(PatientRepository.class);
+        when(repository.get(this.p2Reference)).thenReturn(this.p2);
+        List<DocumentReference> input = Arrays.asList(this.p1Reference, this.p2Reference);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, input)).thenReturn(input);
+
+        SecurePatientIterator iterator =
+            new SecurePatientIterator(input.iterator(), repository, this.access, this.currentUser, 0);
+        Assert.assertSame(this.p2, iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
 }
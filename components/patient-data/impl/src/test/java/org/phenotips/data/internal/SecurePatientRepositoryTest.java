@@ -32,11 +32,12 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -48,6 +49,8 @@
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -154,6 +157,25 @@ public void createDeniesUnauthorizedAccess() throws ComponentLookupException
         this.mocker.getComponentUnderTest().create();
     }
 
+    @Test
+    public void createFromJSONForwardsCallsWhenAuthorized() throws ComponentLookupException
+    {
+        when(this.access.hasAccess(this.currentUser, Right.EDIT, this.patientReference.getParent()))
+            .thenReturn(true);
+        List<JSONObject> input = Arrays.asList(new JSONObject(), null);
+        List<Patient> created = Arrays.asList(this.patient, null);
+        when(this.internalRepo.createFromJSON(input)).thenReturn(created);
+        Assert.assertSame(created, this.mocker.getComponentUnderTest().createFromJSON(input));
+    }
+
+    @Test(expected = SecurityException.class)
+    public void createFromJSONDeniesUnauthorizedAccess() throws ComponentLookupException
+    {
+        when(this.access.hasAccess(this.currentUser, Right.EDIT, this.patientReference.getParent()))
+            .thenReturn(false);
+        this.mocker.getComponentUnderTest().createFromJSON(Collections.singletonList(new JSONObject()));
+    }
+
     @Test
     public void loadForwardsCalls() throws ComponentLookupException
     {
@@ -164,46 +186,42 @@ public void loadForwardsCalls() throws ComponentLookupException
     @Test
     public void getAllFiltersInaccessiblePatients() throws ComponentLookupException
     {
-        List<Patient> rawInput = new LinkedList<>();
-        Patient p1 = mock(Patient.class);
-        DocumentReference p1ref = mock(DocumentReference.class);
-        when(p1.getDocument()).thenReturn(p1ref);
-        when(this.access.hasAccess(this.currentUser, Right.VIEW, p1ref)).thenReturn(false);
-        rawInput.add(p1);
+        DocumentReference p1ref = new DocumentReference("xwiki", "data", "P0000001");
+        DocumentReference p2ref = new DocumentReference("xwiki", "data", "P0000002");
         Patient p2 = mock(Patient.class);
-        DocumentReference p2ref = mock(DocumentReference.class);
-        when(p2.getDocument()).thenReturn(p2ref);
-        when(this.access.hasAccess(this.currentUser, Right.VIEW, p2ref)).thenReturn(true);
-        rawInput.add(p2);
+        when(this.internalRepo.get(p2ref)).thenReturn(p2);
+        List<DocumentReference> rawInput = Arrays.asList(p1ref, p2ref);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, rawInput))
+            .thenReturn(Collections.singletonList(p2ref));
 
-        when(this.internalRepo.getAll()).thenReturn(rawInput.iterator());
+        when(this.internalRepo.getAllReferences()).thenReturn(rawInput.iterator());
         Iterator<Patient> result = this.mocker.getComponentUnderTest().getAll();
 
         Assert.assertNotNull(result);
         Assert.assertEquals(p2, result.next());
         Assert.assertFalse(result.hasNext());
+        verify(this.internalRepo, never()).get(p1ref);
+        verify(this.internalRepo, never()).getAll();
     }
 
     @Test
     public void getAllReturnsEmptyIteratorForInaccessiblePatients() throws ComponentLookupException
     {
-        List<Patient> rawInput = new LinkedList<>();
-        Patient p1 = mock(Patient.class);
-        rawInput.add(p1);
-        Patient p2 = mock(Patient.class);
-        rawInput.add(p2);
+        List<DocumentReference> rawInput = Arrays.asList(new DocumentReference("xwiki", "data", "P0000001"),
+            new DocumentReference("xwiki", "data", "P0000002"));
 
-        when(this.internalRepo.getAll()).thenReturn(rawInput.iterator());
+        when(this.internalRepo.getAllReferences()).thenReturn(rawInput.iterator());
         Iterator<Patient> result = this.mocker.getComponentUnderTest().getAll();
 
         Assert.assertNotNull(result);
         Assert.assertFalse(result.hasNext());
+        verify(this.internalRepo, never()).get(any(DocumentReference.class));
     }
 
     @Test
     public void getAllReturnsEmptyIteratorForEmptyRepository() throws ComponentLookupException
     {
-        when(this.internalRepo.getAll()).thenReturn(Collections.<Patient>emptyIterator());
+        when(this.internalRepo.getAllReferences()).thenReturn(Collections.<DocumentReference>emptyIterator());
         Iterator<Patient> result = this.mocker.getComponentUnderTest().getAll();
 
         Assert.assertNotNull(result);
@@ -213,10 +231,28 @@ public void getAllReturnsEmptyIteratorForEmptyRepository() throws ComponentLooku
     @Test
     public void getAllReturnsEmptyIteratorForNullRepositoryResult() throws ComponentLookupException
     {
-        when(this.internalRepo.getAll()).thenReturn(null);
+        when(this.internalRepo.getAllReferences()).thenReturn(null);
         Iterator<Patient> result = this.mocker.getComponentUnderTest().getAll();
 
         Assert.assertNotNull(result);
         Assert.assertFalse(result.hasNext());
     }
+
+    @Test
+    public void getAllReferencesFiltersInaccessibleReferences() throws ComponentLookupException
+    {
+        DocumentReference p1ref = new DocumentReference("xwiki", "data", "P0000001");
+        DocumentReference p2ref = new DocumentReference("xwiki", "data", "P0000002");
+        List<DocumentReference> rawInput = Arrays.asList(p1ref, p2ref);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, rawInput))
+            .thenReturn(Collections.singletonList(p1ref));
+
+        when(this.internalRepo.getAllReferences()).thenReturn(rawInput.iterator());
+        Iterator<DocumentReference> result = this.mocker.getComponentUnderTest().getAllReferences();
+
+        Assert.assertTrue(result.hasNext());
+        Assert.assertEquals(p1ref, result.next());
+        Assert.assertFalse(result.hasNext());
+        verify(this.internalRepo, never()).get(any(DocumentReference.class));
+    }
 }
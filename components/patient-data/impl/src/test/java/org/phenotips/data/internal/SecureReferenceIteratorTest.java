@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link SecureReferenceIterator} class.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class SecureReferenceIteratorTest
+{
+    @Mock
+    private User currentUser;
+
+    @Mock
+    private AuthorizationService access;
+
+    private DocumentReference p1Reference = new DocumentReference("xwiki", "data", "P01");
+
+    private DocumentReference p2Reference = new DocumentReference("xwiki", "data", "P02");
+
+    private DocumentReference p3Reference = new DocumentReference("xwiki", "data", "P03");
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void emptyInputGivesEmptyIterator()
+    {
+        SecureReferenceIterator iterator = new SecureReferenceIterator(
+            Collections.<DocumentReference>emptyIterator(), this.access, this.currentUser);
+        Assert.assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+
+    @Test
+    public void nullInputGivesEmptyIterator()
+    {
+        SecureReferenceIterator iterator = new SecureReferenceIterator(null, this.access, this.currentUser);
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void referencesAreCheckedInBatches()
+    {
+        List<DocumentReference> input = Arrays.asList(this.p1Reference, this.p2Reference, this.p3Reference);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, Arrays.asList(this.p1Reference,
+            this.p2Reference))).thenReturn(Collections.singletonList(this.p2Reference));
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, Collections.singletonList(this.p3Reference)))
+            .thenReturn(Collections.singletonList(this.p3Reference));
+
+        SecureReferenceIterator iterator =
+            new SecureReferenceIterator(input.iterator(), this.access, this.currentUser, 2);
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(this.p2Reference, iterator.next());
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(this.p3Reference, iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        verify(this.access).filterByAccess(this.currentUser, Right.VIEW,
+            Arrays.asList(this.p1Reference, this.p2Reference));
+        verify(this.access).filterByAccess(this.currentUser, Right.VIEW, Collections.singletonList(this.p3Reference));
+    }
+
+    @Test
+    public void inaccessibleBatchesAreSkipped()
+    {
+        List<DocumentReference> input = Arrays.asList(this.p1Reference, this.p2Reference, this.p3Reference);
+        when(this.access.filterByAccess(this.currentUser, Right.VIEW, Collections.singletonList(this.p3Reference)))
+            .thenReturn(Collections.singletonList(this.p3Reference));
+
+        SecureReferenceIterator iterator =
+            new SecureReferenceIterator(input.iterator(), this.access, this.currentUser, 1);
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(this.p3Reference, iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSizeIsRejected()
+    {
+        new SecureReferenceIterator(Collections.<DocumentReference>emptyIterator(), this.access, this.currentUser, 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void removeThrowsUnsupportedOperationException()
+    {
+        new SecureReferenceIterator(null, this.access, this.currentUser).remove();
+    }
+}
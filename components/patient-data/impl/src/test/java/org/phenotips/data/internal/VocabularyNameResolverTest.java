@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link VocabularyNameResolver}.
+ */
+public class VocabularyNameResolverTest
+{
+    @Mock
+    private ComponentManager cm;
+
+    @Mock
+    private Provider<ComponentManager> mockProvider;
+
+    @Mock
+    private VocabularyManager vm;
+
+    @Mock
+    private Vocabulary hpo;
+
+    @Mock
+    private Vocabulary omim;
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionUtils.setFieldValue(new ComponentManagerRegistry(), "cmProvider", this.mockProvider);
+        when(this.mockProvider.get()).thenReturn(this.cm);
+        when(this.cm.getInstance(VocabularyManager.class)).thenReturn(this.vm);
+        when(this.vm.getVocabulary("HP")).thenReturn(this.hpo);
+        when(this.vm.getVocabulary("MIM")).thenReturn(this.omim);
+
+        when(this.hpo.getTerms(new HashSet<>(Arrays.asList("HP:0000100", "HP:0000082")))).thenReturn(
+            new HashSet<>(Arrays.asList(term("HP:0000100", "Nephrosis"), term("HP:0000082", ""))));
+        when(this.omim.getTerms(Collections.singleton("MIM:123456"))).thenReturn(
+            Collections.singleton(term("MIM:123456", "Some disorder")));
+    }
+
+    @Test
+    public void namesAreResolvedInOneBatchPerVocabulary()
+    {
+        VocabularyNameResolver resolver = new VocabularyNameResolver();
+        AbstractPhenoTipsVocabularyProperty nephrosis = property("HP:0000100");
+        AbstractPhenoTipsVocabularyProperty duplicate = property("HP:0000100");
+        AbstractPhenoTipsVocabularyProperty unnamed = property("HP:0000082");
+        AbstractPhenoTipsVocabularyProperty disorder = property("MIM:123456");
+        AbstractPhenoTipsVocabularyProperty custom = property("Custom label");
+        for (AbstractPhenoTipsVocabularyProperty p : Arrays.asList(nephrosis, duplicate, unnamed, disorder, custom)) {
+            resolver.register(p);
+        }
+        verifyZeroInteractions(this.vm);
+
+        Assert.assertEquals("Nephrosis", nephrosis.getName());
+        Assert.assertEquals("Nephrosis", duplicate.getName());
+        Assert.assertEquals("Some disorder", disorder.getName());
+        Assert.assertEquals("Custom label", custom.getName());
+        verify(this.hpo, times(1)).getTerms(anyCollectionOf(String.class));
+        verify(this.omim, times(1)).getTerms(anyCollectionOf(String.class));
+        verify(this.vm, never()).resolveTerm(anyString());
+
+        // Terms without a name are looked up again on their own
+        Assert.assertEquals("HP:0000082", unnamed.getName());
+        verify(this.vm).resolveTerm("HP:0000082");
+    }
+
+    @Test
+    public void missingTermsAreSkipped()
+    {
+        when(this.hpo.getTerms(new HashSet<>(Arrays.asList("HP:0000100", "HP:9999999")))).thenReturn(
+            new HashSet<>(Arrays.asList(term("HP:0000100", "Nephrosis"), null)));
+        VocabularyNameResolver resolver = new VocabularyNameResolver();
+        AbstractPhenoTipsVocabularyProperty nephrosis = property("HP:0000100");
+        AbstractPhenoTipsVocabularyProperty missing = property("HP:9999999");
+        resolver.register(nephrosis);
+        resolver.register(missing);
+
+        Assert.assertEquals("Nephrosis", nephrosis.getName());
+        Assert.assertEquals("HP:9999999", missing.getName());
+        verify(this.vm).resolveTerm("HP:9999999");
+    }
+
+    @Test
+    public void unknownVocabulariesAreSkipped()
+    {
+        VocabularyNameResolver resolver = new VocabularyNameResolver();
+        AbstractPhenoTipsVocabularyProperty unknown = property("XYZ:0000001");
+        resolver.register(unknown);
+
+        Assert.assertEquals("XYZ:0000001", unknown.getName());
+        verify(this.vm).getVocabulary("XYZ");
+        verify(this.vm).resolveTerm("XYZ:0000001");
+    }
+
+    private AbstractPhenoTipsVocabularyProperty property(String value)
+    {
+        return new AbstractPhenoTipsVocabularyProperty(value)
+        {
+        };
+    }
+
+    private VocabularyTerm term(String id, String name)
+    {
+        VocabularyTerm result = mock(VocabularyTerm.class);
+        when(result.getId()).thenReturn(id);
+        when(result.getName()).thenReturn(name);
+        return result;
+    }
+}
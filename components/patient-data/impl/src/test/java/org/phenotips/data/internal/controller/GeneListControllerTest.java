@@ -21,6 +21,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientDataController;
+import org.phenotips.data.StreamingPatientDataController;
 import org.phenotips.data.SimpleValuePatientData;
 
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -29,6 +30,7 @@
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -43,6 +45,7 @@
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -529,4 +532,48 @@ private void addGeneFields(String key, String[] fieldValues)
             this.geneXWikiObjects.add(obj);
         }
     }
+
+    @Test
+    public void streamedJSONIsTheSameAsTheJSONObject() throws ComponentLookupException
+    {
+        List<Map<String, String>> internalList = new LinkedList<>();
+        Map<String, String> item = new LinkedHashMap<>();
+        item.put(GENE_KEY, "GENE");
+        item.put(STATUS_KEY, "candidate");
+        item.put(STRATEGY_KEY, "sequencing|deletion");
+        internalList.add(item);
+        item = new LinkedHashMap<>();
+        item.put(GENE_KEY, "");
+        item.put(COMMENTS_KEY, "Ignored");
+        internalList.add(item);
+        PatientData<Map<String, String>> patientData = new IndexedPatientData<>(CONTROLLER_NAME, internalList);
+        doReturn(patientData).when(this.patient).getData(CONTROLLER_NAME);
+        JSONObject json = new JSONObject();
+
+        this.mocker.getComponentUnderTest().writeJSON(this.patient, json, null);
+
+        Assert.assertTrue(json.similar(stream(null)));
+        Assert.assertEquals(0, stream(Collections.singletonList("some_string")).length());
+    }
+
+    @Test
+    public void streamedJSONHasAnEmptyListWhenSelectedButMissing() throws ComponentLookupException
+    {
+        doReturn(null).when(this.patient).getData(CONTROLLER_NAME);
+
+        JSONObject result = stream(Collections.singletonList(GENES_ENABLING_FIELD_NAME));
+
+        Assert.assertEquals(0, result.getJSONArray(CONTROLLER_NAME).length());
+    }
+
+    private JSONObject stream(Collection<String> selectedFields) throws ComponentLookupException
+    {
+        StringWriter out = new StringWriter();
+        JSONWriter writer = new JSONWriter(out);
+        writer.object();
+        ((StreamingPatientDataController<Map<String, String>>) this.mocker.getComponentUnderTest())
+            .writeJSON(this.patient, writer, selectedFields);
+        writer.endObject();
+        return new JSONObject(out.toString());
+    }
 }
@@ -49,6 +49,7 @@
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -119,6 +120,28 @@ public void loadCatchesExceptionFromDocumentAccess() throws Exception
         Assert.assertNull(result);
     }
 
+    @Test
+    public void loadUsesTheDocumentAlreadyLoadedByThePatient() throws Exception
+    {
+        doReturn(this.doc).when(this.patient).getXDocument();
+        doReturn(SEX_FEMALE).when(this.data).getStringValue(INTERNAL_PROPERTY_NAME);
+
+        PatientData<String> result = this.mocker.getComponentUnderTest().load(this.patient);
+
+        Assert.assertEquals(SEX_FEMALE, result.getValue());
+        verify(this.documentAccessBridge, never()).getDocument(any(DocumentReference.class));
+    }
+
+    @Test
+    public void getSelectableFieldNamesReturnsTheControllingField() throws ComponentLookupException
+    {
+        Collection<String> result =
+            ((SelectableFieldsController<String>) this.mocker.getComponentUnderTest()).getSelectableFieldNames();
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertTrue(result.contains(INTERNAL_PROPERTY_NAME));
+    }
+
     @Test
     public void loadCatchesExceptionWhenPatientDoesNotHavePatientClass() throws ComponentLookupException
     {
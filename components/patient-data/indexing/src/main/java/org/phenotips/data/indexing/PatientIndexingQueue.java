@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Submits patient changes to the {@link PatientIndexer indexer} in the background, so that saving a patient doesn't
+ * wait for the index to be updated. Changes to the same patient that arrive in quick succession are coalesced into a
+ * single index operation.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Unstable
+@Role
+public interface PatientIndexingQueue
+{
+    /**
+     * Schedule a patient to be added to (or updated in) the index.
+     *
+     * @param patient the patient to index
+     */
+    void index(Patient patient);
+
+    /**
+     * Schedule a patient to be removed from the index. This replaces any pending update of the same patient.
+     *
+     * @param patient the patient to delete
+     */
+    void delete(Patient patient);
+
+    /**
+     * Get the current state of the queue, useful for detecting when the index falls behind.
+     *
+     * @return the statistics of this queue
+     */
+    PatientIndexingStatistics getStatistics();
+}
@@ -0,0 +1,76 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Metrics of the {@link PatientIndexingQueue patient indexing queue}. Instances are also registered as management
+ * beans, under the {@link #JMX_NAME} name.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Unstable
+public interface PatientIndexingStatistics
+{
+    /** The name under which the statistics of the queue are registered in JMX. */
+    String JMX_NAME = "org.phenotips.data.indexing:type=PatientIndexingQueue";
+
+    /**
+     * The number of patients with changes not yet sent to the index.
+     *
+     * @return a non-negative number
+     */
+    int getQueueDepth();
+
+    /**
+     * How long the oldest pending change has been waiting.
+     *
+     * @return a number of milliseconds, {@code 0} if the queue is empty
+     */
+    long getLag();
+
+    /**
+     * The number of index and delete operations successfully performed.
+     *
+     * @return a non-negative number
+     */
+    long getProcessedCount();
+
+    /**
+     * The number of changes that were merged into an already pending change of the same patient.
+     *
+     * @return a non-negative number
+     */
+    long getCoalescedCount();
+
+    /**
+     * The number of failed attempts that were scheduled again.
+     *
+     * @return a non-negative number
+     */
+    long getRetryCount();
+
+    /**
+     * The number of changes abandoned after all the retries failed.
+     *
+     * @return a non-negative number
+     */
+    long getFailedCount();
+}
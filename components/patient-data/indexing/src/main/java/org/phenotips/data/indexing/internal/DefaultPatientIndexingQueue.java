@@ -0,0 +1,404 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PatientIndexingQueue;
+import org.phenotips.data.indexing.PatientIndexingStatistics;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link PatientIndexingQueue}. Changes are kept in a map indexed by the patient
+ * document, so that a newer change of the same patient replaces the pending one, and each patient is processed after
+ * a short delay by a bounded pool of worker threads. The behavior can be configured in {@code xwiki.properties}:
+ * <ul>
+ * <li>{@code phenotips.indexing.patients.delay}: how many milliseconds to wait for more changes of the same patient,
+ * {@code 1000} by default</li>
+ * <li>{@code phenotips.indexing.patients.threads}: the number of worker threads, {@code 2} by default</li>
+ * <li>{@code phenotips.indexing.patients.retries}: how many times to retry a failed operation, {@code 3} by default
+ * </li>
+ * </ul>
+ * When the component is disposed, the changes still pending are indexed right away, without waiting for their delay.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Component
+@Singleton
+public class DefaultPatientIndexingQueue
+    implements PatientIndexingQueue, PatientIndexingStatistics, Initializable, Disposable
+{
+    private static final String CONFIGURATION_PREFIX = "phenotips.indexing.patients.";
+
+    private static final int DEFAULT_DELAY = 1000;
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private static final int DEFAULT_RETRIES = 3;
+
+    /** How long to wait for the running operations, and then for the pending changes, when shutting down. */
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    /** Does the actual indexing. */
+    @Inject
+    private PatientIndexer indexer;
+
+    /** Provides access to the queue settings. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Used for setting up an execution context for the worker threads. */
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    @Inject
+    private Execution execution;
+
+    /** The pending changes, guarded by {@code this}. */
+    private final Map<DocumentReference, PendingChange> pending = new LinkedHashMap<>();
+
+    /** The patients currently being processed, guarded by {@code this}. */
+    private final Set<DocumentReference> inProgress = new HashSet<>();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private ScheduledExecutorService workers;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        ScheduledThreadPoolExecutor pool =
+            new ScheduledThreadPoolExecutor(getSetting("threads", DEFAULT_THREADS), new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable task)
+                {
+                    Thread result = new Thread(task, "PatientIndexer-" + this.count.incrementAndGet());
+                    result.setDaemon(true);
+                    return result;
+                }
+            });
+        // The changes still waiting for their delay are drained by dispose() instead
+        pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.workers = pool;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(this, PatientIndexingStatistics.class), name);
+        } catch (JMException | SecurityException ex) {
+            this.logger.warn("Failed to register the patient indexing statistics: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.workers.shutdown();
+        try {
+            if (!this.workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                this.workers.shutdownNow();
+            }
+            // The pending changes, including failed ones waiting to be retried, can no longer be scheduled; index them
+            // now, in a separate thread which can have its own execution context
+            Thread drainer = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    drain();
+                }
+            }, "PatientIndexer-shutdown");
+            drainer.setDaemon(true);
+            drainer.start();
+            drainer.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        int depth = getQueueDepth();
+        if (depth > 0) {
+            this.logger.warn("{} patient changes were not indexed before shutdown", depth);
+        }
+    }
+
+    @Override
+    public void index(Patient patient)
+    {
+        enqueue(patient, false);
+    }
+
+    @Override
+    public void delete(Patient patient)
+    {
+        enqueue(patient, true);
+    }
+
+    @Override
+    public PatientIndexingStatistics getStatistics()
+    {
+        return this;
+    }
+
+    @Override
+    public synchronized int getQueueDepth()
+    {
+        return this.pending.size();
+    }
+
+    @Override
+    public synchronized long getLag()
+    {
+        long oldest = Long.MAX_VALUE;
+        for (PendingChange change : this.pending.values()) {
+            oldest = Math.min(oldest, change.queued);
+        }
+        return this.pending.isEmpty() ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    @Override
+    public long getProcessedCount()
+    {
+        return this.processed.get();
+    }
+
+    @Override
+    public long getCoalescedCount()
+    {
+        return this.coalesced.get();
+    }
+
+    @Override
+    public long getRetryCount()
+    {
+        return this.retried.get();
+    }
+
+    @Override
+    public long getFailedCount()
+    {
+        return this.failed.get();
+    }
+
+    private void enqueue(Patient patient, boolean delete)
+    {
+        if (patient == null || patient.getDocument() == null) {
+            return;
+        }
+        DocumentReference reference = patient.getDocument();
+        synchronized (this) {
+            PendingChange change = this.pending.get(reference);
+            if (change != null) {
+                // Only the latest state of the patient matters
+                change.patient = patient;
+                change.delete = delete;
+                change.attempts = 0;
+                this.coalesced.incrementAndGet();
+                return;
+            }
+            this.pending.put(reference, new PendingChange(patient, delete));
+        }
+        schedule(reference, getSetting("delay", DEFAULT_DELAY));
+    }
+
+    private void schedule(final DocumentReference reference, long delay)
+    {
+        try {
+            this.workers.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    process(reference);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Shutting down, the change stays pending and is indexed by dispose()
+        }
+    }
+
+    private void process(DocumentReference reference)
+    {
+        PendingChange change;
+        synchronized (this) {
+            if (this.inProgress.contains(reference)) {
+                // Another worker is still processing an older change of this patient, try again later
+                schedule(reference, getSetting("delay", DEFAULT_DELAY));
+                return;
+            }
+            change = this.pending.remove(reference);
+            if (change == null) {
+                return;
+            }
+            this.inProgress.add(reference);
+        }
+        try {
+            apply(change);
+        } catch (ExecutionContextException | RuntimeException ex) {
+            retry(reference, change, ex);
+        } finally {
+            synchronized (this) {
+                this.inProgress.remove(reference);
+            }
+        }
+    }
+
+    private void apply(PendingChange change) throws ExecutionContextException
+    {
+        this.contextManager.initialize(new ExecutionContext());
+        try {
+            if (change.delete) {
+                this.indexer.delete(change.patient);
+            } else {
+                this.indexer.index(change.patient);
+            }
+            this.processed.incrementAndGet();
+        } finally {
+            this.execution.removeContext();
+        }
+    }
+
+    /** Indexes all the pending changes one after the other, retrying failures right away. */
+    private void drain()
+    {
+        int retries = getSetting("retries", DEFAULT_RETRIES);
+        while (true) {
+            DocumentReference reference;
+            PendingChange change;
+            synchronized (this) {
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                reference = this.pending.keySet().iterator().next();
+                change = this.pending.remove(reference);
+            }
+            while (change != null) {
+                try {
+                    apply(change);
+                    change = null;
+                } catch (ExecutionContextException | RuntimeException ex) {
+                    if (++change.attempts > retries) {
+                        this.failed.incrementAndGet();
+                        this.logger.error("Failed to index patient [{}] after {} attempts: {}", reference,
+                            change.attempts, ex.getMessage());
+                        change = null;
+                    } else {
+                        this.retried.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    private void retry(DocumentReference reference, PendingChange change, Exception cause)
+    {
+        int retries = getSetting("retries", DEFAULT_RETRIES);
+        if (++change.attempts > retries) {
+            this.failed.incrementAndGet();
+            this.logger.error("Failed to index patient [{}] after {} attempts: {}", reference, change.attempts,
+                cause.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (this.pending.containsKey(reference)) {
+                // A newer change is already pending, it will be processed instead
+                return;
+            }
+            this.pending.put(reference, change);
+        }
+        this.retried.incrementAndGet();
+        this.logger.warn("Failed to index patient [{}], retrying: {}", reference, cause.getMessage());
+        // Wait longer after each failed attempt
+        schedule(reference, (long) getSetting("delay", DEFAULT_DELAY) * change.attempts);
+    }
+
+    private int getSetting(String name, int defaultValue)
+    {
+        Integer value = this.configuration.getProperty(CONFIGURATION_PREFIX + name, Integer.class);
+        return (value != null) ? value : defaultValue;
+    }
+
+    /** A change waiting to be sent to the index. */
+    private static final class PendingChange
+    {
+        private Patient patient;
+
+        private boolean delete;
+
+        private int attempts;
+
+        /** When the first change of the patient was queued, used for measuring the lag. */
+        private final long queued = System.currentTimeMillis();
+
+        PendingChange(Patient patient, boolean delete)
+        {
+            this.patient = patient;
+            this.delete = delete;
+        }
+    }
+}
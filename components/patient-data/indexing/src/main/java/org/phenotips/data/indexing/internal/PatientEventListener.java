@@ -22,6 +22,7 @@
 import org.phenotips.data.events.PatientDeletedEvent;
 import org.phenotips.data.events.PatientEvent;
 import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PatientIndexingQueue;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.observation.AbstractEventListener;
@@ -32,7 +33,8 @@
 import javax.inject.Singleton;
 
 /**
- * Monitors document changes and submits modified patients to the {@link PatientIndexer indexer}.
+ * Monitors document changes and submits modified patients to the {@link PatientIndexer indexer}. Indexing happens in
+ * the background, through the {@link PatientIndexingQueue}, so that saving a patient doesn't wait for the index.
  *
  * @version $Id$
  * @since 1.0M8
@@ -42,9 +44,9 @@
 @Singleton
 public class PatientEventListener extends AbstractEventListener
 {
-    /** Does the actual indexing. */
+    /** Sends the changes to the indexer. */
     @Inject
-    private PatientIndexer indexer;
+    private PatientIndexingQueue queue;
 
     /** Default constructor, sets up the listener name and the list of events to subscribe to. */
     public PatientEventListener()
@@ -57,9 +59,9 @@ public void onEvent(final Event event, final Object source, final Object data)
     {
         Patient patient = ((PatientEvent) event).getPatient();
         if (event instanceof PatientDeletedEvent) {
-            this.indexer.delete(patient);
+            this.queue.delete(patient);
         } else if (patient != null) {
-            this.indexer.index(patient);
+            this.queue.index(patient);
         }
     }
 }
@@ -0,0 +1,422 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.core.CoreContainer;
+import org.slf4j.Logger;
+
+/**
+ * Rebuilds the patients index in a shadow core, which replaces the live core only once all the patients are indexed,
+ * so that searches keep working during the rebuild. Patients are read one page at a time, in the order of their
+ * document names, loaded and converted into Solr documents by a pool of worker threads. After each page the shadow
+ * core is committed and the name of the last indexed document is saved in a checkpoint file, so that an interrupted
+ * reindex resumes from where it stopped instead of starting over.
+ * <p>
+ * While a reindex runs, live changes are mirrored into the shadow core, and win over the documents of a page read
+ * before them. Changes made while no reindex was running, between an interruption and the resume, are not mirrored, so
+ * a resumed reindex catches up before swapping the cores: it indexes again the patients modified since the reindex
+ * first started, whose time is kept in the checkpoint, and removes the patients deleted meanwhile.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+class ShadowCoreReindex
+{
+    /** The name of the shadow core. */
+    static final String SHADOW_CORE_NAME = SolrPatientIndexer.CORE_NAME + "_rebuild";
+
+    private static final String CHECKPOINT_FILE = "reindex.checkpoint";
+
+    private static final String LAST_KEY = "last";
+
+    private static final String COUNT_KEY = "count";
+
+    private static final String START_KEY = "start";
+
+    private static final String SINCE_KEY = "since";
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final String PATIENTS_QUERY =
+        "from doc.object(PhenoTips.PatientClass) as patient where doc.fullName > :last order by doc.fullName";
+
+    private static final String CHANGED_PATIENTS_QUERY = "from doc.object(PhenoTips.PatientClass) as patient"
+        + " where doc.fullName > :last and doc.date >= :since order by doc.fullName";
+
+    private static final String ALL_PATIENTS_QUERY = "from doc.object(PhenoTips.PatientClass) as patient";
+
+    /** Document dates may be stored with only second precision. */
+    private static final long DATE_PRECISION = 1000;
+
+    private static final double MILLISECONDS_PER_SECOND = 1000.0;
+
+    private final SolrPatientIndexer indexer;
+
+    private final CoreContainer container;
+
+    private final QueryManager qm;
+
+    private final PatientRepository repository;
+
+    private final ExecutionContextManager contextManager;
+
+    private final Execution execution;
+
+    private final Logger logger;
+
+    ShadowCoreReindex(SolrPatientIndexer indexer, CoreContainer container, QueryManager qm,
+        PatientRepository repository, ExecutionContextManager contextManager, Execution execution, Logger logger)
+    {
+        this.indexer = indexer;
+        this.container = container;
+        this.qm = qm;
+        this.repository = repository;
+        this.contextManager = contextManager;
+        this.execution = execution;
+        this.logger = logger;
+    }
+
+    /**
+     * Index all the patients in the shadow core, resuming a previous interrupted run if possible, then swap the shadow
+     * core in place of the live core.
+     *
+     * @return {@code true} if the reindex completed, {@code false} if it failed and can be resumed later
+     */
+    boolean run()
+    {
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            new ContextThreadFactory());
+        try {
+            File instanceDir = prepareShadowCore();
+            File checkpointFile = new File(instanceDir, CHECKPOINT_FILE);
+            Properties checkpoint = readCheckpoint(checkpointFile);
+            String last = checkpoint.getProperty(LAST_KEY, "");
+            long count = Long.parseLong(checkpoint.getProperty(COUNT_KEY, "0"));
+            boolean resumed = checkpoint.getProperty(LAST_KEY) != null;
+            if (resumed) {
+                this.logger.info("Resuming the patients reindex after [{}], {} patients already indexed", last, count);
+            } else {
+                checkpoint.setProperty(START_KEY, String.valueOf(System.currentTimeMillis()));
+            }
+            // Checkpoints written before the start time was recorded: catch up with all the patients
+            long firstStart = Long.parseLong(checkpoint.getProperty(START_KEY, "0"));
+
+            SolrClient shadow = createClient();
+            // Changes made while reindexing must also reach the shadow core
+            this.indexer.setShadow(shadow);
+            long start = System.currentTimeMillis();
+            long indexedNow = 0;
+            List<String> page;
+            while (true) {
+                // Taken before reading the patients, so that changes mirrored after the read win
+                long readVersion = this.indexer.getShadowVersion();
+                page = getPage(last);
+                if (page.isEmpty()) {
+                    break;
+                }
+                this.indexer.addToShadow(buildDocuments(page, workers), readVersion);
+                shadow.commit();
+                last = page.get(page.size() - 1);
+                count += page.size();
+                indexedNow += page.size();
+                checkpoint.setProperty(LAST_KEY, last);
+                checkpoint.setProperty(COUNT_KEY, String.valueOf(count));
+                writeCheckpoint(checkpoint, checkpointFile);
+                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                this.logger.info("Reindexed {} patients, {} patients/second", count,
+                    Math.round(indexedNow * MILLISECONDS_PER_SECOND / elapsed));
+            }
+
+            if (resumed) {
+                catchUp(shadow, firstStart, workers);
+            }
+
+            Files.deleteIfExists(checkpointFile.toPath());
+            this.container.swap(SolrPatientIndexer.CORE_NAME, SHADOW_CORE_NAME);
+            // The old index now lives under the name of the shadow core
+            this.container.unload(SHADOW_CORE_NAME, true, true, false);
+            this.logger.info("Finished reindexing {} patients", count);
+            return true;
+        } catch (SolrServerException | SolrException ex) {
+            this.logger.warn("Failed to reindex patients: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Error occurred while reindexing patients: {}", ex.getMessage());
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to search patients for reindexing: {}", ex.getMessage());
+        } catch (InterruptedException ex) {
+            this.logger.warn("Patients reindex interrupted, it will resume from the last checkpoint");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            this.logger.warn("Failed to build patient documents: {}", ex.getCause().getMessage());
+        } finally {
+            this.indexer.setShadow(null);
+            workers.shutdownNow();
+        }
+        return false;
+    }
+
+    /**
+     * Make sure that the shadow core exists. A shadow core left over from an interrupted reindex is reused if it has a
+     * checkpoint, otherwise a new empty one is created, with the same configuration as the live core.
+     *
+     * @return the instance directory of the shadow core
+     */
+    private File prepareShadowCore() throws IOException
+    {
+        if (this.container.getCoreNames().contains(SHADOW_CORE_NAME)) {
+            File instanceDir = getInstanceDirectory(SHADOW_CORE_NAME);
+            if (new File(instanceDir, CHECKPOINT_FILE).isFile()) {
+                return instanceDir;
+            }
+            this.container.unload(SHADOW_CORE_NAME, true, true, false);
+        }
+
+        // Alternate between two directories, since the live core keeps its directory until it is swapped out
+        File liveDir = getInstanceDirectory(SolrPatientIndexer.CORE_NAME);
+        File defaultDir = new File(this.container.getSolrHome(), SolrPatientIndexer.CORE_NAME).getAbsoluteFile();
+        File instanceDir = defaultDir.equals(liveDir)
+            ? new File(this.container.getSolrHome(), SHADOW_CORE_NAME).getAbsoluteFile() : defaultDir;
+        // Start from a clean directory, with a copy of the live configuration
+        FileUtils.deleteDirectory(instanceDir);
+        FileUtils.copyDirectory(new File(liveDir, "conf"), new File(instanceDir, "conf"));
+        this.container.create(SHADOW_CORE_NAME, instanceDir.toPath(), Collections.<String, String>emptyMap());
+        return instanceDir;
+    }
+
+    /**
+     * Create a client for the shadow core.
+     *
+     * @return a client for the shadow core
+     */
+    SolrClient createClient()
+    {
+        return new EmbeddedSolrServer(this.container, SHADOW_CORE_NAME);
+    }
+
+    private File getInstanceDirectory(String coreName)
+    {
+        return new File(this.container.getCoreDescriptor(coreName).getInstanceDir()).getAbsoluteFile();
+    }
+
+    private List<String> getPage(String last) throws QueryException
+    {
+        Query query = this.qm.createQuery(PATIENTS_QUERY, Query.XWQL);
+        query.bindValue(LAST_KEY, last);
+        query.setLimit(PAGE_SIZE);
+        return query.execute();
+    }
+
+    /**
+     * Bring the shadow core up to date with the changes made while the reindex was interrupted: index again the
+     * patients modified since the reindex first started, and remove the patients that don't exist anymore.
+     *
+     * @param shadow the shadow core
+     * @param since the time when the reindex first started, in milliseconds
+     * @param workers the pool of threads used for building documents
+     */
+    private void catchUp(SolrClient shadow, long since, ExecutorService workers)
+        throws QueryException, SolrServerException, IOException, InterruptedException, ExecutionException
+    {
+        long changed = 0;
+        String last = "";
+        List<String> page;
+        while (true) {
+            long readVersion = this.indexer.getShadowVersion();
+            page = getChangedPage(last, new Date(since - DATE_PRECISION));
+            if (page.isEmpty()) {
+                break;
+            }
+            this.indexer.addToShadow(buildDocuments(page, workers), readVersion);
+            last = page.get(page.size() - 1);
+            changed += page.size();
+        }
+
+        long readVersion = this.indexer.getShadowVersion();
+        List<String> deleted = findDeleted(shadow);
+        this.indexer.deleteFromShadow(deleted, readVersion);
+        shadow.commit();
+        this.logger.info("Caught up with {} patients changed and {} patients deleted during the interruption",
+            changed, deleted.size());
+    }
+
+    private List<String> getChangedPage(String last, Date since) throws QueryException
+    {
+        Query query = this.qm.createQuery(CHANGED_PATIENTS_QUERY, Query.XWQL);
+        query.bindValue(LAST_KEY, last);
+        query.bindValue(SINCE_KEY, since);
+        query.setLimit(PAGE_SIZE);
+        return query.execute();
+    }
+
+    /**
+     * Find the documents of the shadow core whose patient doesn't exist anymore.
+     *
+     * @param shadow the shadow core
+     * @return the references of the deleted patient documents, as stored in the index
+     */
+    private List<String> findDeleted(SolrClient shadow) throws QueryException, SolrServerException, IOException
+    {
+        Set<String> existing =
+            new HashSet<>(this.qm.createQuery(ALL_PATIENTS_QUERY, Query.XWQL).<String>execute());
+        List<String> result = new ArrayList<>();
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields(SolrPatientIndexer.DOCUMENT_FIELD);
+        query.setSort(SolrPatientIndexer.DOCUMENT_FIELD, SolrQuery.ORDER.asc);
+        query.setRows(PAGE_SIZE);
+        // A cursor isn't affected by the live changes added to the shadow core meanwhile
+        String cursor = CursorMarkParams.CURSOR_MARK_START;
+        while (true) {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+            QueryResponse response = shadow.query(query);
+            for (SolrDocument document : response.getResults()) {
+                String reference = String.valueOf(document.getFieldValue(SolrPatientIndexer.DOCUMENT_FIELD));
+                // The index holds the full reference, including the wiki, while the query returns local names
+                if (!existing.contains(StringUtils.substringAfter(reference, ":"))) {
+                    result.add(reference);
+                }
+            }
+            String next = response.getNextCursorMark();
+            if (next == null || next.equals(cursor)) {
+                return result;
+            }
+            cursor = next;
+        }
+    }
+
+    private Collection<SolrInputDocument> buildDocuments(List<String> page, ExecutorService workers)
+        throws InterruptedException, ExecutionException
+    {
+        List<Future<SolrInputDocument>> futures = new ArrayList<>(page.size());
+        for (final String patientDoc : page) {
+            futures.add(workers.submit(new Callable<SolrInputDocument>()
+            {
+                @Override
+                public SolrInputDocument call()
+                {
+                    Patient patient = ShadowCoreReindex.this.repository.get(patientDoc);
+                    return (patient == null) ? null : ShadowCoreReindex.this.indexer.buildDocument(patient);
+                }
+            }));
+        }
+        Collection<SolrInputDocument> result = new ArrayList<>(page.size());
+        for (Future<SolrInputDocument> future : futures) {
+            SolrInputDocument document = future.get();
+            if (document != null) {
+                result.add(document);
+            }
+        }
+        return result;
+    }
+
+    private Properties readCheckpoint(File file) throws IOException
+    {
+        Properties result = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                result.load(in);
+            }
+        }
+        return result;
+    }
+
+    private void writeCheckpoint(Properties checkpoint, File file) throws IOException
+    {
+        // Write to a temporary file first, so that a crash doesn't leave a truncated checkpoint
+        File tmp = new File(file.getParentFile(), CHECKPOINT_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            checkpoint.store(out, null);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Creates worker threads with their own execution context, needed for loading patients and checking rights. */
+    private final class ContextThreadFactory implements ThreadFactory
+    {
+        private int count;
+
+        @Override
+        public synchronized Thread newThread(final Runnable task)
+        {
+            Thread result = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        ShadowCoreReindex.this.contextManager.initialize(new ExecutionContext());
+                    } catch (ExecutionContextException ex) {
+                        ShadowCoreReindex.this.logger.warn("Failed to initialize the reindex context: {}",
+                            ex.getMessage());
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        ShadowCoreReindex.this.execution.removeContext();
+                    }
+                }
+            }, "PatientReindexer-" + (++this.count));
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
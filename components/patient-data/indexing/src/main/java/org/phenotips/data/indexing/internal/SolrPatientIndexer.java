@@ -25,18 +25,24 @@
 import org.phenotips.data.permissions.PermissionsManager;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
-import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -48,6 +54,7 @@
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
 import org.slf4j.Logger;
 
 /**
@@ -60,6 +67,12 @@
 @Singleton
 public class SolrPatientIndexer implements PatientIndexer, Initializable
 {
+    /** The name of the Solr core holding the patients index. */
+    static final String CORE_NAME = "patients";
+
+    /** The field holding the reference of the patient document, which is the unique key of the index. */
+    static final String DOCUMENT_FIELD = "document";
+
     private static final String GENES_KEY = "genes";
 
     private static final String GENE_NAME_FIELD = "gene";
@@ -78,6 +91,9 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
 
     private static final String SOLR_FIELD_REJECTED_GENES = "rejected_genes";
 
+    /** How soon, in milliseconds, deletions must become visible in search results. */
+    private static final int COMMIT_WITHIN = 1000;
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -88,6 +104,21 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
     /** The Solr server instance used. */
     private SolrClient server;
 
+    /** The shadow core being filled by a running reindex, if any, guarded by {@link #shadowLock}. */
+    private SolrClient shadow;
+
+    /**
+     * Serializes the changes sent to the shadow core, so that a page of documents built by the reindex cannot overwrite
+     * a newer version of the same patient mirrored meanwhile.
+     */
+    private final Object shadowLock = new Object();
+
+    /** Counts the changes mirrored into the shadow core, guarded by {@link #shadowLock}. */
+    private long shadowVersion;
+
+    /** The version of the last change mirrored for each patient document, guarded by {@link #shadowLock}. */
+    private final Map<String, Long> shadowChanges = new HashMap<>();
+
     /** Allows querying for patients. */
     @Inject
     private QueryManager qm;
@@ -99,6 +130,13 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
     @Inject
     private PermissionsManager permissions;
 
+    /** Used for setting up an execution context for the reindex worker threads. */
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    @Inject
+    private Execution execution;
+
     /** Provides access to the HPO ontology. */
     @Inject
     @Named("hpo")
@@ -107,14 +145,38 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
     @Override
     public void initialize() throws InitializationException
     {
-        this.server = new EmbeddedSolrServer(this.cores.getContainer(), "patients");
+        this.server = new EmbeddedSolrServer(this.cores.getContainer(), CORE_NAME);
     }
 
     @Override
     public void index(Patient patient)
+    {
+        SolrInputDocument input = buildDocument(patient);
+        try {
+            this.server.add(input);
+            synchronized (this.shadowLock) {
+                if (this.shadow != null) {
+                    this.shadow.add(input);
+                    this.shadowChanges.put(getDocumentKey(input), ++this.shadowVersion);
+                }
+            }
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to perform Solr search: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Error occurred while performing Solr search: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Convert a patient into the Solr document stored in the index.
+     *
+     * @param patient the patient to convert
+     * @return the Solr document
+     */
+    SolrInputDocument buildDocument(Patient patient)
     {
         SolrInputDocument input = new SolrInputDocument();
-        input.setField("document", patient.getDocument().toString());
+        input.setField(DOCUMENT_FIELD, patient.getDocument().toString());
         String reporter = "";
         if (patient.getReporter() != null) {
             reporter = patient.getReporter().toString();
@@ -122,6 +184,14 @@ public void index(Patient patient)
         input.setField("reporter", reporter);
 
         // Index direct phenotypes and extended ancestor sets
+        Set<String> termIds = new HashSet<>();
+        for (Feature phenotype : patient.getFeatures()) {
+            if (StringUtils.isNotBlank(phenotype.getId())) {
+                termIds.add(phenotype.getId());
+            }
+        }
+        // Expand all the ancestors at once
+        Map<String, Set<String>> ancestors = this.ontologyService.getAncestorsAndSelf(termIds);
         for (Feature phenotype : patient.getFeatures()) {
             String presence = (phenotype.isPresent() ? "" : "negative_");
             String fieldName = presence + phenotype.getType();
@@ -131,10 +201,10 @@ public void index(Patient patient)
             if (StringUtils.isNotBlank(termId)) {
                 input.addField(fieldName, termId);
                 // Add ancestors of the term
-                VocabularyTerm term = this.ontologyService.getTerm(termId);
-                if (term != null) {
-                    for (VocabularyTerm ancestor : term.getAncestorsAndSelf()) {
-                        input.addField(ancestorFieldName, ancestor.getId());
+                Set<String> termAncestors = ancestors.get(termId);
+                if (termAncestors != null) {
+                    for (String ancestor : termAncestors) {
+                        input.addField(ancestorFieldName, ancestor);
                     }
                 }
             }
@@ -144,22 +214,22 @@ public void index(Patient patient)
         input.setField("accessLevel", this.permissions.getPatientAccess(patient).getVisibility().getPermissiveness());
 
         addGenes(input, patient);
-
-        try {
-            this.server.add(input);
-        } catch (SolrServerException ex) {
-            this.logger.warn("Failed to perform Solr search: {}", ex.getMessage());
-        } catch (IOException ex) {
-            this.logger.warn("Error occurred while performing Solr search: {}", ex.getMessage());
-        }
+        return input;
     }
 
     @Override
     public void delete(Patient patient)
     {
         try {
-            this.server.deleteByQuery("document:" + ClientUtils.escapeQueryChars(patient.getDocument().toString()));
-            this.server.commit();
+            String query = DOCUMENT_FIELD + ':' + ClientUtils.escapeQueryChars(patient.getDocument().toString());
+            // Let Solr make the deletion visible with its next soft commit, instead of forcing a hard commit
+            this.server.deleteByQuery(query, COMMIT_WITHIN);
+            synchronized (this.shadowLock) {
+                if (this.shadow != null) {
+                    this.shadow.deleteByQuery(query);
+                    this.shadowChanges.put(patient.getDocument().toString(), ++this.shadowVersion);
+                }
+            }
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to delete from Solr: {}", ex.getMessage());
         } catch (IOException ex) {
@@ -167,8 +237,113 @@ public void delete(Patient patient)
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The index is rebuilt in a shadow core, which replaces the live core when all the patients are indexed, so
+     * searches keep working meanwhile. An interrupted reindex resumes from its last checkpoint. If the shadow core
+     * cannot be used, the live index is cleared and rebuilt in place.
+     * </p>
+     */
     @Override
-    public void reindex()
+    public synchronized void reindex()
+    {
+        CoreContainer container = this.cores.getContainer();
+        if (container != null && container.getCoreNames().contains(CORE_NAME)) {
+            new ShadowCoreReindex(this, container, this.qm, this.patientRepository, this.contextManager,
+                this.execution, this.logger).run();
+            return;
+        }
+        reindexInPlace();
+    }
+
+    /**
+     * Set the shadow core being filled by a reindex, which must also receive all the live changes.
+     *
+     * @param shadow the shadow core, or {@code null} when no reindex is running
+     */
+    void setShadow(SolrClient shadow)
+    {
+        synchronized (this.shadowLock) {
+            this.shadow = shadow;
+            this.shadowChanges.clear();
+        }
+    }
+
+    /**
+     * Get the current version of the shadow core, to be passed to {@link #addToShadow(Collection, long)} or
+     * {@link #deleteFromShadow(Collection, long)} for changes computed from data read after this call.
+     *
+     * @return the number of live changes mirrored into the shadow core so far
+     */
+    long getShadowVersion()
+    {
+        synchronized (this.shadowLock) {
+            return this.shadowVersion;
+        }
+    }
+
+    /**
+     * Add documents built by the reindex to the shadow core, except the ones whose patient was changed by a live save
+     * or delete after the documents were read, since the mirrored change is newer.
+     *
+     * @param documents the documents to add
+     * @param readVersion the {@link #getShadowVersion() shadow version} from before the patients were read
+     * @throws SolrServerException if adding the documents fails
+     * @throws IOException if communicating with the shadow core fails
+     */
+    void addToShadow(Collection<SolrInputDocument> documents, long readVersion)
+        throws SolrServerException, IOException
+    {
+        synchronized (this.shadowLock) {
+            Collection<SolrInputDocument> current = new ArrayList<>(documents.size());
+            for (SolrInputDocument document : documents) {
+                if (!isChangedSince(getDocumentKey(document), readVersion)) {
+                    current.add(document);
+                }
+            }
+            if (this.shadow != null && !current.isEmpty()) {
+                this.shadow.add(current);
+            }
+        }
+    }
+
+    /**
+     * Delete documents from the shadow core, except the ones whose patient was saved again after the decision to delete
+     * them was taken.
+     *
+     * @param documents the references of the patient documents to delete, as stored in the {@code document} field
+     * @param readVersion the {@link #getShadowVersion() shadow version} from before the patients were checked
+     * @throws SolrServerException if deleting the documents fails
+     * @throws IOException if communicating with the shadow core fails
+     */
+    void deleteFromShadow(Collection<String> documents, long readVersion) throws SolrServerException, IOException
+    {
+        synchronized (this.shadowLock) {
+            List<String> current = new ArrayList<>(documents.size());
+            for (String document : documents) {
+                if (!isChangedSince(document, readVersion)) {
+                    current.add(document);
+                }
+            }
+            if (this.shadow != null && !current.isEmpty()) {
+                this.shadow.deleteById(current);
+            }
+        }
+    }
+
+    private boolean isChangedSince(String document, long readVersion)
+    {
+        Long version = this.shadowChanges.get(document);
+        return version != null && version > readVersion;
+    }
+
+    private String getDocumentKey(SolrInputDocument document)
+    {
+        return String.valueOf(document.getFieldValue(DOCUMENT_FIELD));
+    }
+
+    private void reindexInPlace()
     {
         try {
             List<String> patientDocs =
@@ -0,0 +1,183 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PatientIndexingQueue;
+import org.phenotips.data.indexing.PatientIndexingStatistics;
+
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientIndexingQueue} component.
+ */
+public class DefaultPatientIndexingQueueTest
+{
+    private static final int DELAY = 50;
+
+    private static final int WAIT = 2000;
+
+    @Rule
+    public final MockitoComponentMockingRule<PatientIndexingQueue> mocker =
+        new MockitoComponentMockingRule<PatientIndexingQueue>(DefaultPatientIndexingQueue.class);
+
+    private PatientIndexingQueue queue;
+
+    private PatientIndexer indexer;
+
+    private Patient patient;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.queue = this.mocker.getComponentUnderTest();
+        this.indexer = this.mocker.getInstance(PatientIndexer.class);
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.indexing.patients.delay", Integer.class)).thenReturn(DELAY);
+        when(configuration.getProperty("phenotips.indexing.patients.retries", Integer.class)).thenReturn(1);
+
+        this.patient = mock(Patient.class);
+        when(this.patient.getDocument()).thenReturn(new DocumentReference("wiki", "data", "P0000001"));
+    }
+
+    @Test
+    public void repeatedChangesAreCoalesced() throws Exception
+    {
+        for (int i = 0; i < 10; ++i) {
+            this.queue.index(this.patient);
+        }
+        PatientIndexingStatistics statistics = this.queue.getStatistics();
+        Assert.assertEquals(1, statistics.getQueueDepth());
+
+        verify(this.indexer, timeout(WAIT)).index(this.patient);
+        Thread.sleep(2 * DELAY);
+        verify(this.indexer).index(this.patient);
+        Assert.assertEquals(0, statistics.getQueueDepth());
+        Assert.assertEquals(0, statistics.getLag());
+        Assert.assertEquals(9, statistics.getCoalescedCount());
+        Assert.assertEquals(1, statistics.getProcessedCount());
+    }
+
+    @Test
+    public void deleteReplacesPendingUpdate() throws Exception
+    {
+        this.queue.index(this.patient);
+        this.queue.delete(this.patient);
+
+        verify(this.indexer, timeout(WAIT)).delete(this.patient);
+        verify(this.indexer, never()).index(this.patient);
+    }
+
+    @Test
+    public void failuresAreRetried() throws Exception
+    {
+        doThrow(new IllegalStateException("Solr unavailable")).doNothing().when(this.indexer).index(this.patient);
+        this.queue.index(this.patient);
+
+        verify(this.indexer, timeout(WAIT).times(2)).index(this.patient);
+        Thread.sleep(DELAY);
+        PatientIndexingStatistics statistics = this.queue.getStatistics();
+        Assert.assertEquals(1, statistics.getRetryCount());
+        Assert.assertEquals(1, statistics.getProcessedCount());
+        Assert.assertEquals(0, statistics.getFailedCount());
+    }
+
+    @Test
+    public void changesAreAbandonedAfterAllRetriesFail() throws Exception
+    {
+        doThrow(new IllegalStateException("Solr unavailable")).when(this.indexer).index(this.patient);
+        this.queue.index(this.patient);
+
+        verify(this.indexer, timeout(WAIT).times(2)).index(this.patient);
+        Thread.sleep(4 * DELAY);
+        PatientIndexingStatistics statistics = this.queue.getStatistics();
+        Assert.assertEquals(1, statistics.getFailedCount());
+        Assert.assertEquals(0, statistics.getQueueDepth());
+        verify(this.indexer, timeout(WAIT).times(2)).index(this.patient);
+    }
+
+    @Test
+    public void pendingChangesAreFlushedOnShutdown() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.indexing.patients.delay", Integer.class)).thenReturn(WAIT);
+        this.queue.index(this.patient);
+        Thread.sleep(DELAY);
+        Assert.assertTrue(this.queue.getStatistics().getLag() >= DELAY);
+
+        ((Disposable) this.queue).dispose();
+        verify(this.indexer).index(this.patient);
+        Assert.assertEquals(0, this.queue.getStatistics().getQueueDepth());
+    }
+
+    @Test
+    public void delayedAndFailedChangesAreIndexedRightAwayOnShutdown() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.indexing.patients.delay", Integer.class)).thenReturn(60000);
+        doThrow(new IllegalStateException("Solr unavailable")).doNothing().when(this.indexer).index(this.patient);
+        this.queue.index(this.patient);
+
+        long start = System.currentTimeMillis();
+        ((Disposable) this.queue).dispose();
+
+        Assert.assertTrue(System.currentTimeMillis() - start < WAIT);
+        verify(this.indexer, times(2)).index(this.patient);
+        PatientIndexingStatistics statistics = this.queue.getStatistics();
+        Assert.assertEquals(0, statistics.getQueueDepth());
+        Assert.assertEquals(1, statistics.getRetryCount());
+        Assert.assertEquals(1, statistics.getProcessedCount());
+    }
+
+    @Test
+    public void changesQueuedAfterShutdownAreNotRejected() throws Exception
+    {
+        ((Disposable) this.queue).dispose();
+
+        this.queue.index(this.patient);
+
+        Assert.assertEquals(1, this.queue.getStatistics().getQueueDepth());
+        verify(this.indexer, never()).index(this.patient);
+    }
+
+    @Test
+    public void patientsWithoutDocumentAreIgnored() throws Exception
+    {
+        Patient incomplete = mock(Patient.class);
+        this.queue.index(incomplete);
+        this.queue.index(null);
+        Assert.assertEquals(0, this.queue.getStatistics().getQueueDepth());
+    }
+}
@@ -20,7 +20,7 @@
 import org.phenotips.data.Patient;
 import org.phenotips.data.events.PatientDeletedEvent;
 import org.phenotips.data.events.PatientEvent;
-import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PatientIndexingQueue;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.observation.EventListener;
@@ -44,7 +44,7 @@
         new MockitoComponentMockingRule<EventListener>(PatientEventListener.class);
 
     @Mock
-    private PatientIndexer patientIndexer;
+    private PatientIndexingQueue queue;
 
     @Mock
     private Patient patient;
@@ -57,7 +57,7 @@ public void setUp() throws ComponentLookupException
         MockitoAnnotations.initMocks(this);
 
         this.eventListener = this.mocker.getComponentUnderTest();
-        this.patientIndexer = this.mocker.getInstance(PatientIndexer.class);
+        this.queue = this.mocker.getInstance(PatientIndexingQueue.class);
     }
 
     @Test
@@ -67,7 +67,7 @@ public void deletePatientTest()
         doReturn(this.patient).when(patientDeleteEvent).getPatient();
 
         this.eventListener.onEvent(patientDeleteEvent, mock(Object.class), mock(Object.class));
-        verify(this.patientIndexer).delete(this.patient);
+        verify(this.queue).delete(this.patient);
     }
 
     @Test
@@ -77,6 +77,6 @@ public void indexPatientTest()
         doReturn(this.patient).when(patientEvent).getPatient();
 
         this.eventListener.onEvent(patientEvent, mock(Object.class), mock(Object.class));
-        verify(this.patientIndexer).index(this.patient);
+        verify(this.queue).index(this.patient);
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.slf4j.Logger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ShadowCoreReindex}.
+ */
+public class ShadowCoreReindexTest
+{
+    private static final String QUERY =
+        "from doc.object(PhenoTips.PatientClass) as patient where doc.fullName > :last order by doc.fullName";
+
+    private static final String CHANGED_QUERY = "from doc.object(PhenoTips.PatientClass) as patient"
+        + " where doc.fullName > :last and doc.date >= :since order by doc.fullName";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File solrHome;
+
+    private CoreContainer container;
+
+    private QueryManager qm;
+
+    private Query query;
+
+    private PatientRepository repository;
+
+    private SolrPatientIndexer indexer;
+
+    private SolrClient shadow;
+
+    private ShadowCoreReindex reindex;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.solrHome = this.folder.getRoot();
+        File liveDir = new File(this.solrHome, "patients");
+        Files.createDirectories(new File(liveDir, "conf").toPath());
+        Files.write(new File(liveDir, "conf/schema.xml").toPath(), "<schema/>".getBytes("UTF-8"));
+
+        this.container = mock(CoreContainer.class);
+        when(this.container.getSolrHome()).thenReturn(this.solrHome.getAbsolutePath());
+        when(this.container.getCoreNames()).thenReturn(Collections.singletonList("patients"));
+        mockCore("patients", liveDir);
+
+        this.qm = mock(QueryManager.class);
+        this.query = mock(Query.class);
+        when(this.qm.createQuery(QUERY, Query.XWQL)).thenReturn(this.query);
+        when(this.query.<String>execute()).thenReturn(Arrays.asList("data.P0000001", "data.P0000002"),
+            Collections.<String>emptyList());
+
+        this.repository = mock(PatientRepository.class);
+        this.indexer = mock(SolrPatientIndexer.class);
+        for (String name : Arrays.asList("data.P0000001", "data.P0000002")) {
+            Patient patient = mock(Patient.class);
+            when(this.repository.get(name)).thenReturn(patient);
+            when(this.indexer.buildDocument(patient)).thenReturn(new SolrInputDocument());
+        }
+
+        this.shadow = mock(SolrClient.class);
+        this.reindex = new ShadowCoreReindex(this.indexer, this.container, this.qm, this.repository,
+            mock(ExecutionContextManager.class), mock(Execution.class), mock(Logger.class))
+        {
+            @Override
+            SolrClient createClient()
+            {
+                return ShadowCoreReindexTest.this.shadow;
+            }
+        };
+    }
+
+    @Test
+    public void patientsAreIndexedInShadowCoreWhichIsSwappedIn() throws Exception
+    {
+        Assert.assertTrue(this.reindex.run());
+
+        File shadowDir = new File(this.solrHome, "patients_rebuild");
+        Assert.assertTrue(new File(shadowDir, "conf/schema.xml").isFile());
+        Assert.assertFalse(new File(shadowDir, "reindex.checkpoint").exists());
+        verify(this.container).create(eq("patients_rebuild"), eq(shadowDir.getAbsoluteFile().toPath()),
+            anyMapOf(String.class, String.class));
+        verify(this.query).bindValue("last", "");
+        verify(this.query).bindValue("last", "data.P0000002");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<SolrInputDocument>> documents = ArgumentCaptor.forClass((Class) Collection.class);
+        verify(this.indexer).addToShadow(documents.capture(), eq(0L));
+        Assert.assertEquals(2, documents.getValue().size());
+        verify(this.shadow).commit();
+        // Nothing to catch up with, all the changes made during a complete run are mirrored
+        verify(this.qm, never()).createQuery(CHANGED_QUERY, Query.XWQL);
+        verify(this.indexer).setShadow(this.shadow);
+        verify(this.indexer).setShadow(null);
+        verify(this.container).swap("patients", "patients_rebuild");
+        verify(this.container).unload("patients_rebuild", true, true, false);
+    }
+
+    @Test
+    public void interruptedReindexIsResumed() throws Exception
+    {
+        File shadowDir = new File(this.solrHome, "patients_rebuild");
+        Files.createDirectories(shadowDir.toPath());
+        Files.write(new File(shadowDir, "reindex.checkpoint").toPath(),
+            "last=data.P0000000\ncount=1\nstart=1500000000000\n".getBytes("UTF-8"));
+        when(this.container.getCoreNames()).thenReturn(Arrays.asList("patients", "patients_rebuild"));
+        mockCore("patients_rebuild", shadowDir);
+
+        // Patient 1 was changed and patient 3 was deleted while the reindex was interrupted
+        Query changedQuery = mock(Query.class);
+        when(this.qm.createQuery(CHANGED_QUERY, Query.XWQL)).thenReturn(changedQuery);
+        when(changedQuery.<String>execute()).thenReturn(Collections.singletonList("data.P0000001"),
+            Collections.<String>emptyList());
+        Query allQuery = mock(Query.class);
+        when(this.qm.createQuery("from doc.object(PhenoTips.PatientClass) as patient", Query.XWQL))
+            .thenReturn(allQuery);
+        when(allQuery.<String>execute()).thenReturn(Arrays.asList("data.P0000001", "data.P0000002"));
+        SolrDocumentList indexed = new SolrDocumentList();
+        for (String name : Arrays.asList("xwiki:data.P0000001", "xwiki:data.P0000003")) {
+            SolrDocument document = new SolrDocument();
+            document.setField("document", name);
+            indexed.add(document);
+        }
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(indexed);
+        when(response.getNextCursorMark()).thenReturn("*");
+        when(this.shadow.query(any(SolrParams.class))).thenReturn(response);
+
+        Assert.assertTrue(this.reindex.run());
+
+        verify(this.container, never()).create(anyString(), any(Path.class), anyMapOf(String.class, String.class));
+        verify(this.query).bindValue("last", "data.P0000000");
+        InOrder order = inOrder(this.indexer, this.container);
+        order.verify(this.indexer, times(2)).addToShadow(anyCollectionOf(SolrInputDocument.class), eq(0L));
+        order.verify(this.indexer).deleteFromShadow(Collections.singletonList("xwiki:data.P0000003"), 0L);
+        order.verify(this.container).swap("patients", "patients_rebuild");
+        verify(changedQuery).bindValue("since", new Date(1500000000000L - 1000));
+    }
+
+    @Test
+    public void failedReindexKeepsLiveCore() throws Exception
+    {
+        doThrow(new SolrServerException("disk full")).when(this.shadow).commit();
+
+        Assert.assertFalse(this.reindex.run());
+
+        verify(this.container, never()).swap(anyString(), anyString());
+        verify(this.indexer).setShadow(null);
+    }
+
+    private void mockCore(String name, File instanceDir)
+    {
+        CoreDescriptor descriptor = mock(CoreDescriptor.class);
+        when(descriptor.getInstanceDir()).thenReturn(instanceDir.getAbsolutePath());
+        when(this.container.getCoreDescriptor(name)).thenReturn(descriptor);
+    }
+}
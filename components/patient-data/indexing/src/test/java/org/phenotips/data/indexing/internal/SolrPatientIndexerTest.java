@@ -30,7 +30,6 @@
 import org.phenotips.data.permissions.internal.visibility.PublicVisibility;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
-import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.util.ReflectionUtils;
@@ -42,10 +41,12 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,16 +61,20 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.internal.matchers.CapturingMatcher;
 import org.slf4j.Logger;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -123,20 +128,13 @@ public void setupVocabulary() throws ComponentLookupException
         // Setup the vocabulary
         Vocabulary hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
 
-        // Setup mock term
-        String[] ancestorIds = { "HP:0011842", "HP:0000924", "HP:0000118", "HP:0000001" };
-        Set<VocabularyTerm> ancestors = new HashSet<VocabularyTerm>();
-        for (String id : ancestorIds) {
-            VocabularyTerm ancestor = mock(VocabularyTerm.class);
-            when(ancestor.getId()).thenReturn(id);
-            ancestors.add(ancestor);
-        }
-        VocabularyTerm term = mock(VocabularyTerm.class);
-        when(term.getId()).thenReturn("HP:0001367");
-        ancestors.add(term);
+        // Setup mock term ancestors
+        String[] ancestorIds = { "HP:0001367", "HP:0011842", "HP:0000924", "HP:0000118", "HP:0000001" };
+        Set<String> ancestors = new LinkedHashSet<String>(Arrays.asList(ancestorIds));
+        Map<String, Set<String>> expanded = new HashMap<String, Set<String>>();
+        expanded.put("HP:0001367", ancestors);
 
-        when(term.getAncestorsAndSelf()).thenReturn(ancestors);
-        when(hpo.getTerm(term.getId())).thenReturn(term);
+        when(hpo.getAncestorsAndSelf(Matchers.anyCollectionOf(String.class))).thenReturn(expanded);
     }
 
     @Test
@@ -335,26 +333,51 @@ public void deleteDefaultBehaviourTest() throws IOException, SolrServerException
         doReturn(this.patientDocReference).when(this.patient).getDocument();
         this.patientIndexer.delete(this.patient);
         verify(this.server).deleteByQuery("document:"
-            + ClientUtils.escapeQueryChars(this.patientDocReference.toString()));
-        verify(this.server).commit();
+            + ClientUtils.escapeQueryChars(this.patientDocReference.toString()), 1000);
+        verify(this.server, never()).commit();
+    }
+
+    @Test
+    public void reindexedDocumentsDoNotOverwriteNewerMirroredChanges() throws IOException, SolrServerException
+    {
+        SolrPatientIndexer indexer = (SolrPatientIndexer) this.patientIndexer;
+        SolrClient shadow = mock(SolrClient.class);
+        indexer.setShadow(shadow);
+        long readVersion = indexer.getShadowVersion();
+
+        // The patient is deleted after the reindex read it, but before its document reaches the shadow core
+        doReturn(this.patientDocReference).when(this.patient).getDocument();
+        this.patientIndexer.delete(this.patient);
+        verify(shadow).deleteByQuery("document:" + ClientUtils.escapeQueryChars(this.patientDocReference.toString()));
+
+        SolrInputDocument stale = new SolrInputDocument();
+        stale.setField("document", this.patientDocReference.toString());
+        SolrInputDocument other = new SolrInputDocument();
+        other.setField("document", "wiki:patient.P0000002");
+        indexer.addToShadow(Arrays.asList(stale, other), readVersion);
+        verify(shadow).add(Collections.singletonList(other));
+
+        // Documents read after the change are added normally
+        indexer.addToShadow(Collections.singletonList(stale), indexer.getShadowVersion());
+        verify(shadow).add(Collections.singletonList(stale));
     }
 
     @Test
     public void deleteThrowsSolrException() throws IOException, SolrServerException
     {
         doReturn(this.patientDocReference).when(this.patient).getDocument();
-        doThrow(new SolrServerException("commit failed")).when(this.server).commit();
+        doThrow(new SolrServerException("delete failed")).when(this.server).deleteByQuery(anyString(), anyInt());
         this.patientIndexer.delete(this.patient);
-        verify(this.logger).warn("Failed to delete from Solr: {}", "commit failed");
+        verify(this.logger).warn("Failed to delete from Solr: {}", "delete failed");
     }
 
     @Test
     public void deleteThrowsIOException() throws IOException, SolrServerException
     {
         doReturn(this.patientDocReference).when(this.patient).getDocument();
-        doThrow(new IOException("commit failed")).when(this.server).commit();
+        doThrow(new IOException("delete failed")).when(this.server).deleteByQuery(anyString(), anyInt());
         this.patientIndexer.delete(this.patient);
-        verify(this.logger).warn("Error occurred while deleting Solr documents: {}", "commit failed");
+        verify(this.logger).warn("Error occurred while deleting Solr documents: {}", "delete failed");
     }
 
     @Test
@@ -61,6 +61,22 @@
      */
     PatientSummary createPatientSummary(Object[] summaryData, UriInfo uriInfo);
 
+    /**
+     * Create the REST representations for several {@link Patient}s' summaries at once, starting from the raw values
+     * needed for each summary. This is the same as calling {@link #createPatientSummary(Object[], UriInfo)} for each
+     * entry, but the access rights of the current user are checked for the whole batch, and each summary is only
+     * created when the corresponding element of the returned list is first accessed, so that callers which only use
+     * part of the batch don't pay for building the rest.
+     *
+     * @param summariesData the needed information for each patient, in the same format as for
+     *            {@link #createPatientSummary(Object[], UriInfo)}
+     * @param uriInfo the URI information for the rest system and the current request
+     * @return a list with the same size and order as the input, holding for each entry the patient summary, or
+     *         {@code null} if the current user doesn't have access to that patient or the entry is not valid
+     * @since 1.3M4
+     */
+    List<PatientSummary> createPatientSummaries(List<Object[]> summariesData, UriInfo uriInfo);
+
     /**
      * Create the REST representation for a list of links to {@link Patient}s.
      *
@@ -0,0 +1,56 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+import org.phenotips.rest.RequiredAccess;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for exporting all the patient records accessible to the current user, in their JSON representation. Unlike
+ * {@link PatientsResource}, which lists short summaries one page at a time, this returns the full records in a single
+ * response, written out as each record is loaded, so that the memory needed doesn't grow with the number of records.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Path("/patients/export")
+@Relation("https://phenotips.org/rel/patientRecordsExport")
+@ParentResource(PatientsResource.class)
+public interface PatientsExportResource
+{
+    /**
+     * Export the patient records that the current user can view, as a JSON array holding the JSON representation of
+     * each record, in the same format as returned by {@link PatientResource#getPatient(String)}.
+     *
+     * @param fields a comma separated list of the names of the patient fields to export, for example
+     *            {@code external_id,phenotype}; all fields are exported if missing
+     * @return a response streaming the exported records
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @RequiredAccess("view")
+    Response exportPatients(@QueryParam("fields") String fields);
+}
@@ -49,8 +49,9 @@
      * Import one or more patients from their JSON representation.
      *
      * @param json the JSON representation of the new patient(s) to add
-     * @return the location of the newly created patient if one patient was created and the operation was successful,
-     *         null upon successful creation of several patients, and an error report otherwise
+     * @return the location of the newly created patient if one patient was created and the operation was successful;
+     *         when a JSON array is sent, a JSON array holding, in the same order, the location of each newly created
+     *         patient, or {@code null} for the members that could not be imported; an error report otherwise
      */
     @Consumes(MediaType.APPLICATION_JSON)
     @POST
@@ -58,11 +59,15 @@
     Response add(String json);
 
     /**
-     * @param start for large result set paging, the index of the first patient to display in the returned page
+     * @param start for large result set paging, the index of the first patient to display in the returned page,
+     *            counted from the position indicated by {@code after}, if any
      * @param number for large result set paging, how many patients to display in the returned page
      * @param orderField field used for ordering the patients, can be one of {@code id} (default) or {@code eid}
      * @param order the sorting order, can be one of {@code asc} (default) or {@code desc}
-     * @return a list of patient records
+     * @param after for large result set paging, the continuation token returned as {@code next} with the previous page,
+     *            for continuing the listing where that page ended; requires the same {@code orderField} and
+     *            {@code order} as the previous request, and is much faster than a large {@code start} value
+     * @return a list of patient records, along with a {@code next} continuation token if more records may follow
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -71,5 +76,6 @@ Patients listPatients(
         @QueryParam("start") @DefaultValue("0") Integer start,
         @QueryParam("number") @DefaultValue("30") Integer number,
         @QueryParam("orderField") @DefaultValue("id") String orderField,
-        @QueryParam("order") @DefaultValue("asc") String order);
+        @QueryParam("order") @DefaultValue("asc") String order,
+        @QueryParam("after") String after);
 }
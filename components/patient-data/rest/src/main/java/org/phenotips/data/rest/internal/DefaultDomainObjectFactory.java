@@ -24,6 +24,7 @@
 import org.phenotips.data.rest.model.Alternatives;
 import org.phenotips.data.rest.model.PatientSummary;
 import org.phenotips.rest.Autolinker;
+import org.phenotips.security.authorization.AuthorizationService;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
@@ -35,8 +36,12 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -64,6 +69,10 @@ public class DefaultDomainObjectFactory implements DomainObjectFactory
     @Inject
     private AuthorizationManager access;
 
+    /** Checks access rights on many documents at once. */
+    @Inject
+    private AuthorizationService authorizationService;
+
     @Inject
     private UserManager users;
 
@@ -115,18 +124,74 @@ public PatientSummary createPatientSummary(Patient patient, UriInfo uriInfo)
     @Override
     public PatientSummary createPatientSummary(Object[] summaryData, UriInfo uriInfo)
     {
-        if (summaryData == null || summaryData.length != 7
-            || !(summaryData[3] instanceof Date && summaryData[6] instanceof Date)) {
+        User currentUser = this.users.getCurrentUser();
+        return createPatientSummary(summaryData, currentUser == null ? null : currentUser.getProfileDocument(),
+            uriInfo);
+    }
+
+    @Override
+    public List<PatientSummary> createPatientSummaries(final List<Object[]> summariesData, final UriInfo uriInfo)
+    {
+        if (summariesData.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Resolve the references once, and check the access rights on all of them at once
+        final DocumentReference[] references = new DocumentReference[summariesData.size()];
+        List<DocumentReference> toCheck = new ArrayList<>(references.length);
+        for (int i = 0; i < references.length; ++i) {
+            if (isValidSummary(summariesData.get(i))) {
+                references[i] = this.stringResolver.resolve(String.valueOf(summariesData.get(i)[0]));
+                toCheck.add(references[i]);
+            }
+        }
+        final Set<DocumentReference> accessible =
+            new HashSet<>(this.authorizationService.filterByAccess(this.users.getCurrentUser(), Right.VIEW, toCheck));
+
+        // Building the summaries is more expensive, so only do it for the entries actually used by the caller
+        return new AbstractList<PatientSummary>()
+        {
+            private final PatientSummary[] summaries = new PatientSummary[references.length];
+
+            @Override
+            public PatientSummary get(int index)
+            {
+                if (this.summaries[index] == null && accessible.contains(references[index])) {
+                    this.summaries[index] = buildPatientSummary(summariesData.get(index), references[index], uriInfo);
+                }
+                return this.summaries[index];
+            }
+
+            @Override
+            public int size()
+            {
+                return references.length;
+            }
+        };
+    }
+
+    private PatientSummary createPatientSummary(Object[] summaryData, DocumentReference currentUserProfile,
+        UriInfo uriInfo)
+    {
+        if (!isValidSummary(summaryData)) {
             return null;
         }
-        PatientSummary result = new PatientSummary();
-        User currentUser = this.users.getCurrentUser();
         DocumentReference doc = this.stringResolver.resolve(String.valueOf(summaryData[0]));
 
-        if (!this.access.hasAccess(Right.VIEW, currentUser == null ? null : currentUser.getProfileDocument(), doc)) {
+        if (!this.access.hasAccess(Right.VIEW, currentUserProfile, doc)) {
             return null;
         }
+        return buildPatientSummary(summaryData, doc, uriInfo);
+    }
+
+    private boolean isValidSummary(Object[] summaryData)
+    {
+        return summaryData != null && summaryData.length == 7
+            && summaryData[3] instanceof Date && summaryData[6] instanceof Date;
+    }
 
+    private PatientSummary buildPatientSummary(Object[] summaryData, DocumentReference doc, UriInfo uriInfo)
+    {
+        PatientSummary result = new PatientSummary();
         result.withId(doc.getName()).withEid(StringUtils.defaultString((String) summaryData[1]));
         result.withCreatedBy(String.valueOf(summaryData[2])).withLastModifiedBy(
             String.valueOf(summaryData[5]));
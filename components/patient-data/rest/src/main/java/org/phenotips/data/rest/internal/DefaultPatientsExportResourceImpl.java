@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.rest.PatientsExportResource;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.rest.XWikiResource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONWriter;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Default implementation for {@link PatientsExportResource} using XWiki's support for REST resources. Records are
+ * loaded one at a time and {@link Patient#writeJSON streamed} to the response right away, so only one record is held
+ * in memory at any time. Since the response is written after the request has been handled, the records are loaded in
+ * a copy of the XWiki context of the request.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Component
+@Named("org.phenotips.data.rest.internal.DefaultPatientsExportResourceImpl")
+@Singleton
+public class DefaultPatientsExportResourceImpl extends XWikiResource implements PatientsExportResource
+{
+    @Inject
+    private Logger logger;
+
+    /** Only returns the patients that the current user can view. */
+    @Inject
+    @Named("secure")
+    private PatientRepository repository;
+
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    /** Used for removing the execution context once the response is written. */
+    @Inject
+    private Execution currentExecution;
+
+    @Override
+    public Response exportPatients(String fields)
+    {
+        this.logger.debug("Exporting patient records via REST, with fields [{}]", fields);
+        final Collection<String> selectedFields =
+            StringUtils.isBlank(fields) ? null : Arrays.asList(StringUtils.split(fields, ", "));
+        // Access rights are checked for the current user, the iterator must be obtained while handling the request
+        final Iterator<Patient> patients = this.repository.getAll();
+        // The request context is cleaned up before the response is written, so keep a copy for loading the records
+        final XWikiContext requestContext = getXWikiContext().clone();
+        StreamingOutput output = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream stream) throws IOException
+            {
+                ExecutionContext executionContext = new ExecutionContext();
+                executionContext.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, requestContext);
+                try {
+                    DefaultPatientsExportResourceImpl.this.contextManager.initialize(executionContext);
+                    writePatients(patients, selectedFields, stream);
+                } catch (ExecutionContextException ex) {
+                    throw new IOException("Failed to initialize the export context", ex);
+                } finally {
+                    DefaultPatientsExportResourceImpl.this.currentExecution.removeContext();
+                }
+            }
+        };
+        return Response.ok(output, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private void writePatients(Iterator<Patient> patients, Collection<String> selectedFields, OutputStream stream)
+        throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        JSONWriter json = new JSONWriter(writer);
+        json.array();
+        while (patients.hasNext()) {
+            patients.next().writeJSON(json, selectedFields);
+            // Send each record to the client as soon as it is ready
+            writer.flush();
+        }
+        json.endArray();
+        writer.flush();
+    }
+}
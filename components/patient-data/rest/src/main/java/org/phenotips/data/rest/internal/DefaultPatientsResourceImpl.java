@@ -29,9 +29,11 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.security.authorization.AuthorizationManager;
@@ -40,6 +42,7 @@
 import org.xwiki.users.UserManager;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -52,6 +55,7 @@
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 
+import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -68,6 +72,9 @@
 @Singleton
 public class DefaultPatientsResourceImpl extends XWikiResource implements PatientsResource
 {
+    /** The minimum number of patient records fetched from the database at once when listing patients. */
+    private static final int MIN_BATCH_SIZE = 50;
+
     @Inject
     private Logger logger;
 
@@ -88,6 +95,11 @@ public class DefaultPatientsResourceImpl extends XWikiResource implements Patien
     @Named("current")
     private EntityReferenceResolver<EntityReference> currentResolver;
 
+    /** Parses string representations of document references into proper references. */
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> stringResolver;
+
     @Inject
     private DomainObjectFactory factory;
 
@@ -120,18 +132,17 @@ public Response add(final String json)
     }
 
     /**
-     * Import new patients from their representation as a JSON array.
+     * Import new patients from their representation as a JSON array. All the patients are imported at once, which is
+     * much faster than creating them one by one.
      *
      * @param json the JSON representation of the new patients to be created
-     * @return a response containing locations of the newly created patients in its body, if successful
-     * @throws WebApplicationException if a {@link JSONArray} object cannot be created or one of the patient objects is
-     *             null
-     * @throws NullPointerException if the patient was not created
+     * @return a response containing in its body, for each member of the input array, the location of the newly
+     *         created patient, or {@code null} if that member could not be imported
+     * @throws WebApplicationException if a {@link JSONArray} object cannot be created
      */
     private Response addPatients(final String json)
     {
         final JSONArray patientsData;
-        final JSONArray createdPatientUri = new JSONArray();
         try {
             patientsData = new JSONArray(json);
         } catch (JSONException ex) {
@@ -139,14 +150,21 @@ private Response addPatients(final String json)
         }
 
         final int jsonArrayLength = patientsData.length();
+        final List<JSONObject> records = new ArrayList<>(jsonArrayLength);
         for (int i = 0; i < jsonArrayLength; i++) {
             JSONObject jsonObject = patientsData.optJSONObject(i);
             if (jsonObject == null) {
                 this.logger.warn("One of the members of the patient JSONArray is null.");
+            }
+            records.add(jsonObject);
+        }
+
+        final JSONArray createdPatientUri = new JSONArray();
+        for (Patient patient : this.repository.createFromJSON(records)) {
+            if (patient == null) {
+                createdPatientUri.put(JSONObject.NULL);
                 continue;
             }
-            Patient patient = this.repository.create();
-            patient.updateFromJSON(jsonObject);
             final URI targetURI = UriBuilder.fromUri(this.uriInfo.getBaseUri())
                 .path(PatientResource.class)
                 .build(patient.getId());
@@ -195,38 +213,44 @@ private Response buildCreatedResponse(final Patient patient)
     }
 
     @Override
-    public Patients listPatients(Integer start, Integer number, String orderField, String order)
+    public Patients listPatients(Integer start, Integer number, String orderField, String order, String after)
     {
         Patients result = new Patients();
+        String safeOrderField = "eid".equals(orderField) ? "eid" : "id";
+        boolean descending = "desc".equals(order);
+        PatientsListingCursor cursor;
         try {
-            String safeOrderField = "doc.name";
-            if ("eid".equals(orderField)) {
-                safeOrderField = "p.external_id";
-            }
-            String safeOrder = " asc";
-            if ("desc".equals(order)) {
-                safeOrder = " desc";
-            }
-            Query query = this.queries.createQuery(
-                "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
-                    + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
-                    + safeOrderField + safeOrder,
-                "xwql");
-            query.bindValue("t", "PatientTemplate");
-
-            List<Object[]> records = query.execute();
+            cursor = StringUtils.isEmpty(after) ? PatientsListingCursor.start(safeOrderField, descending)
+                : PatientsListingCursor.fromToken(after, safeOrderField, descending);
+        } catch (IllegalArgumentException ex) {
+            this.logger.debug("Invalid continuation token [{}]: {}", after, ex.getMessage());
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        try {
+            List<PatientSummary> summaries = result.getPatientSummaries();
+            // Since raw queries can't take into account access rights, we must do our own paging with rights checks,
+            // but only fetch the rows that are actually needed, one batch at a time
+            int batchSize = Math.max(number, MIN_BATCH_SIZE);
             int skipped = 0;
-            for (Object[] record : records) {
-                PatientSummary summary = this.factory.createPatientSummary(record, this.uriInfo);
-                // Since raw queries can't take into account access rights, we must do our own paging with rights checks
-                if (summary != null) {
-                    if (++skipped > start) {
-                        result.getPatientSummaries().add(summary);
-                    }
-                    if (result.getPatientSummaries().size() >= number) {
-                        break;
+            boolean hasMore = true;
+            while (hasMore && summaries.size() < number) {
+                List<Object[]> records = createListQuery(cursor, batchSize).execute();
+                // Rights are checked for the whole batch, but summaries are only built for the rows consumed below
+                List<PatientSummary> batch = this.factory.createPatientSummaries(records, this.uriInfo);
+                int consumed = 0;
+                while (consumed < records.size() && summaries.size() < number) {
+                    PatientSummary summary = batch.get(consumed++);
+                    if (summary != null && ++skipped > start) {
+                        summaries.add(summary);
                     }
                 }
+                hasMore = records.size() >= batchSize || consumed < records.size();
+                if (consumed > 0) {
+                    cursor = cursor.advance(getDocumentName(records.get(consumed - 1)), consumed);
+                }
+            }
+            if (hasMore) {
+                result.withNext(cursor.toToken());
             }
             result.withLinks(this.autolinker.get().forResource(getClass(), this.uriInfo)
                 .withGrantedRight(getGrantedRight()).build());
@@ -238,6 +262,46 @@ public Patients listPatients(Integer start, Integer number, String orderField, S
         return result;
     }
 
+    /**
+     * Builds the query fetching the next batch of patient records, starting after the position of the cursor.
+     *
+     * @param cursor the position reached so far
+     * @param batchSize the maximum number of rows to fetch
+     * @return a query ready to be executed
+     * @throws QueryException if the query cannot be created
+     */
+    private Query createListQuery(PatientsListingCursor cursor, int batchSize) throws QueryException
+    {
+        String safeOrder = cursor.isDescending() ? " desc" : " asc";
+        StringBuilder statement = new StringBuilder(
+            "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
+                + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t");
+        if (cursor.getLastName() != null) {
+            statement.append(" and doc.name ").append(cursor.isDescending() ? '<' : '>').append(" :after");
+        }
+        statement.append(" order by ");
+        if (cursor.isKeyset()) {
+            statement.append("doc.name").append(safeOrder);
+        } else {
+            // Document names are unique, use them to break ties so that rows are always returned in the same order
+            statement.append("p.external_id").append(safeOrder).append(", doc.name").append(safeOrder);
+        }
+        Query query = this.queries.createQuery(statement.toString(), "xwql");
+        query.bindValue("t", "PatientTemplate");
+        if (cursor.getLastName() != null) {
+            query.bindValue("after", cursor.getLastName());
+        }
+        query.setLimit(batchSize);
+        query.setOffset(cursor.getOffset());
+        return query;
+    }
+
+    private String getDocumentName(Object[] record)
+    {
+        DocumentReference reference = this.stringResolver.resolve(String.valueOf(record[0]));
+        return reference == null ? null : reference.getName();
+    }
+
     private Right getGrantedRight()
     {
         User currentUser = this.users.getCurrentUser();
@@ -0,0 +1,178 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest.internal;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The position reached while listing patients, which can be serialized into an opaque continuation token, so that the
+ * next page of results can be fetched without going through all the previous pages again. When listing by document
+ * name, the position is the name of the last listed document, so the next page is selected directly in the query;
+ * since external identifiers are neither mandatory nor unique, when listing by external identifier the position is
+ * instead the number of database rows already listed, which is pushed into the query as an offset.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+final class PatientsListingCursor
+{
+    private static final String ORDER_FIELD_KEY = "f";
+
+    private static final String DESCENDING_KEY = "d";
+
+    private static final String LAST_NAME_KEY = "n";
+
+    private static final String OFFSET_KEY = "o";
+
+    private final String orderField;
+
+    private final boolean descending;
+
+    private final String lastName;
+
+    private final int offset;
+
+    private PatientsListingCursor(String orderField, boolean descending, String lastName, int offset)
+    {
+        this.orderField = orderField;
+        this.descending = descending;
+        this.lastName = lastName;
+        this.offset = offset;
+    }
+
+    /**
+     * Creates a cursor positioned at the start of the listing.
+     *
+     * @param orderField the field used for ordering, either {@code id} or {@code eid}
+     * @param descending whether the listing is in descending order
+     * @return a new cursor
+     */
+    static PatientsListingCursor start(String orderField, boolean descending)
+    {
+        return new PatientsListingCursor(orderField, descending, null, 0);
+    }
+
+    /**
+     * Parses a continuation token previously returned by {@link #toToken()}.
+     *
+     * @param token the token to parse
+     * @param orderField the field used for ordering in the current request, must be the same as for the request that
+     *            generated the token
+     * @param descending whether the current request lists in descending order, must be the same as for the request that
+     *            generated the token
+     * @return the parsed cursor
+     * @throws IllegalArgumentException if the token is not valid, or was generated for a different ordering
+     */
+    static PatientsListingCursor fromToken(String token, String orderField, boolean descending)
+    {
+        try {
+            JSONObject data = new JSONObject(new String(DatatypeConverter.parseHexBinary(token),
+                StandardCharsets.UTF_8));
+            if (!orderField.equals(data.optString(ORDER_FIELD_KEY)) || descending != data.optBoolean(DESCENDING_KEY)) {
+                throw new IllegalArgumentException("The continuation token was issued for a different ordering");
+            }
+            PatientsListingCursor result = new PatientsListingCursor(orderField, descending,
+                StringUtils.defaultIfEmpty(data.optString(LAST_NAME_KEY), null), data.optInt(OFFSET_KEY));
+            if (result.offset < 0 || result.isKeyset() && result.lastName == null) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+            return result;
+        } catch (JSONException ex) {
+            throw new IllegalArgumentException("Invalid continuation token", ex);
+        }
+    }
+
+    /**
+     * Whether the position is the name of the last listed document, or the number of rows already listed.
+     *
+     * @return {@code true} when listing by document name
+     */
+    boolean isKeyset()
+    {
+        return !"eid".equals(this.orderField);
+    }
+
+    /**
+     * Whether the listing is in descending order.
+     *
+     * @return {@code true} for descending order, {@code false} for ascending order
+     */
+    boolean isDescending()
+    {
+        return this.descending;
+    }
+
+    /**
+     * The name of the last listed document, if any.
+     *
+     * @return a document name, or {@code null} at the start of the listing or when not listing by document name
+     */
+    String getLastName()
+    {
+        return this.lastName;
+    }
+
+    /**
+     * The number of rows already listed.
+     *
+     * @return a positive number, always {@code 0} when listing by document name
+     */
+    int getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * Moves the cursor forward.
+     *
+     * @param lastName the name of the last document that was listed
+     * @param rows how many rows were listed since this position
+     * @return a new cursor, positioned after the listed rows
+     */
+    PatientsListingCursor advance(String lastName, int rows)
+    {
+        if (isKeyset()) {
+            return new PatientsListingCursor(this.orderField, this.descending, lastName, 0);
+        }
+        return new PatientsListingCursor(this.orderField, this.descending, null, this.offset + rows);
+    }
+
+    /**
+     * Serializes this cursor into an opaque token, safe to use in URLs.
+     *
+     * @return the continuation token
+     */
+    String toToken()
+    {
+        JSONObject data = new JSONObject();
+        data.put(ORDER_FIELD_KEY, this.orderField);
+        data.put(DESCENDING_KEY, this.descending);
+        if (isKeyset()) {
+            data.put(LAST_NAME_KEY, this.lastName);
+        } else {
+            data.put(OFFSET_KEY, this.offset);
+        }
+        return DatatypeConverter.printHexBinary(data.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
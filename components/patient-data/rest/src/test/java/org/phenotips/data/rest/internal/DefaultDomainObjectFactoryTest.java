@@ -23,6 +23,7 @@
 import org.phenotips.data.rest.model.Alternatives;
 import org.phenotips.data.rest.model.PatientSummary;
 import org.phenotips.rest.Autolinker;
+import org.phenotips.security.authorization.AuthorizationService;
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -39,6 +40,7 @@
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -61,9 +63,14 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultDomainObjectFactoryTest
@@ -283,6 +290,58 @@ public void createPatientFromSummaryPerformsCorrectly() throws Exception
         assertEquals(this.uri1, patientSummary.getLinks().get(0).getHref());
     }
 
+    @Test
+    public void createPatientSummariesKeepsInputOrderAndSkipsInaccessiblePatients() throws Exception
+    {
+        AuthorizationService authorizationService = this.mocker.getInstance(AuthorizationService.class);
+        when(authorizationService.filterByAccess(this.user, Right.VIEW,
+            Arrays.asList(this.patientReference2, this.patientReference1)))
+                .thenReturn(Collections.singletonList(this.patientReference1));
+        List<Object[]> summaries = new ArrayList<>();
+        summaries.add(new Object[] { "data.P0000002", null, "XWiki.padams", new Date(), "1.1", "XWiki.padams",
+            new Date() });
+        summaries.add(new Object[] { "data.P0000001", this.eid, "XWiki.padams", new Date(), "version",
+            "XWiki.hmccoy", new Date() });
+        summaries.add(new Object[] { new Object() });
+
+        List<PatientSummary> result =
+            this.mocker.getComponentUnderTest().createPatientSummaries(summaries, this.uriInfo);
+
+        assertEquals(3, result.size());
+        assertNull(result.get(0));
+        assertEquals(this.patientReference1.getName(), result.get(1).getId());
+        assertEquals(this.eid, result.get(1).getEid());
+        assertNull(result.get(2));
+        verify(this.users, times(1)).getCurrentUser();
+        verify(this.access, never()).hasAccess(any(Right.class), any(DocumentReference.class),
+            any(DocumentReference.class));
+    }
+
+    @Test
+    public void createPatientSummariesOnlyBuildsAccessedSummaries() throws Exception
+    {
+        AuthorizationService authorizationService = this.mocker.getInstance(AuthorizationService.class);
+        when(authorizationService.filterByAccess(this.user, Right.VIEW,
+            Arrays.asList(this.patientReference1, this.patientReference2)))
+                .thenReturn(Arrays.asList(this.patientReference1, this.patientReference2));
+        List<Object[]> summaries = new ArrayList<>();
+        summaries.add(new Object[] { "data.P0000001", this.eid, "XWiki.padams", new Date(), "version",
+            "XWiki.hmccoy", new Date() });
+        summaries.add(new Object[] { "data.P0000002", null, "XWiki.padams", new Date(), "1.1", "XWiki.padams",
+            new Date() });
+        Autolinker autolinker = this.mocker.getInstance(Autolinker.class);
+
+        List<PatientSummary> result =
+            this.mocker.getComponentUnderTest().createPatientSummaries(summaries, this.uriInfo);
+
+        assertEquals(2, result.size());
+        verify(autolinker, never()).withExtraParameters(anyString(), anyString());
+        assertEquals(this.patientReference2.getName(), result.get(1).getId());
+        assertSame(result.get(1), result.get(1));
+        verify(autolinker, times(1)).withExtraParameters("patient-id", this.patientReference2.getName());
+        verify(autolinker, never()).withExtraParameters("patient-id", this.patientReference1.getName());
+    }
+
     @Test
     public void createPatientFromSummaryWithNoCurrentUserPerformsCorrectly() throws Exception
     {
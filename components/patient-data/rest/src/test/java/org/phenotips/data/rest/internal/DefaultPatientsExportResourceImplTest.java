@@ -0,0 +1,198 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.rest.PatientsExportResource;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientsExportResourceImpl} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientsExportResourceImplTest
+{
+    @Rule
+    public MockitoComponentMockingRule<PatientsExportResource> mocker =
+        new MockitoComponentMockingRule<PatientsExportResource>(DefaultPatientsExportResourceImpl.class);
+
+    @Mock
+    private Patient patient1;
+
+    @Mock
+    private Patient patient2;
+
+    @Mock
+    private XWikiContext requestContextCopy;
+
+    private PatientRepository repository;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        Execution execution = mock(Execution.class);
+        ExecutionContext executionContext = mock(ExecutionContext.class);
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        doReturn(executionContext).when(execution).getContext();
+        XWikiContext requestContext = mock(XWikiContext.class);
+        doReturn(requestContext).when(executionContext).getProperty("xwikicontext");
+        when(requestContext.clone()).thenReturn(this.requestContextCopy);
+
+        this.repository = this.mocker.getInstance(PatientRepository.class, "secure");
+        doAnswer(writes(new JSONObject().put("id", "P0000001"))).when(this.patient1).writeJSON(any(JSONWriter.class),
+            eq((Collection<String>) null));
+        doAnswer(writes(new JSONObject().put("id", "P0000002"))).when(this.patient2).writeJSON(any(JSONWriter.class),
+            eq((Collection<String>) null));
+    }
+
+    @Test
+    public void exportWritesAllAccessiblePatients() throws Exception
+    {
+        when(this.repository.getAll()).thenReturn(Arrays.asList(this.patient1, this.patient2).iterator());
+
+        JSONArray result = export(this.mocker.getComponentUnderTest().exportPatients(null));
+
+        Assert.assertEquals(2, result.length());
+        Assert.assertEquals("P0000001", result.getJSONObject(0).getString("id"));
+        Assert.assertEquals("P0000002", result.getJSONObject(1).getString("id"));
+        verify(this.patient1, never()).toJSON(any(Collection.class));
+    }
+
+    @Test
+    public void exportWithNoAccessiblePatientsWritesEmptyArray() throws Exception
+    {
+        when(this.repository.getAll()).thenReturn(Collections.<Patient>emptyIterator());
+
+        JSONArray result = export(this.mocker.getComponentUnderTest().exportPatients(""));
+
+        Assert.assertEquals(0, result.length());
+    }
+
+    @Test
+    public void exportOnlyWritesSelectedFields() throws Exception
+    {
+        when(this.repository.getAll()).thenReturn(Collections.singletonList(this.patient1).iterator());
+        doAnswer(writes(new JSONObject().put("external_id", "E1"))).when(this.patient1)
+            .writeJSON(any(JSONWriter.class), eq(Arrays.asList("external_id", "phenotype")));
+
+        JSONArray result = export(this.mocker.getComponentUnderTest().exportPatients("external_id,phenotype"));
+
+        Assert.assertEquals(1, result.length());
+        Assert.assertEquals("E1", result.getJSONObject(0).getString("external_id"));
+        verify(this.patient1).writeJSON(any(JSONWriter.class), eq(Arrays.asList("external_id", "phenotype")));
+    }
+
+    @Test
+    public void patientsAreLoadedInACopyOfTheRequestContext() throws Exception
+    {
+        final ExecutionContextManager contextManager = this.mocker.getInstance(ExecutionContextManager.class);
+        final Execution execution = this.mocker.getInstance(Execution.class);
+        when(this.repository.getAll()).thenReturn(Collections.singletonList(this.patient1).iterator());
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception
+            {
+                ArgumentCaptor<ExecutionContext> context = ArgumentCaptor.forClass(ExecutionContext.class);
+                verify(contextManager).initialize(context.capture());
+                Assert.assertSame(DefaultPatientsExportResourceImplTest.this.requestContextCopy,
+                    context.getValue().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY));
+                verify(execution, never()).removeContext();
+                ((JSONWriter) invocation.getArguments()[0]).value(new JSONObject().put("id", "P0000001"));
+                return null;
+            }
+        }).when(this.patient1).writeJSON(any(JSONWriter.class), eq((Collection<String>) null));
+
+        Response response = this.mocker.getComponentUnderTest().exportPatients(null);
+        verify(contextManager, never()).initialize(any(ExecutionContext.class));
+        JSONArray result = export(response);
+
+        Assert.assertEquals("P0000001", result.getJSONObject(0).getString("id"));
+        InOrder order = inOrder(contextManager, this.patient1, execution);
+        order.verify(contextManager).initialize(any(ExecutionContext.class));
+        order.verify(this.patient1).writeJSON(any(JSONWriter.class), eq((Collection<String>) null));
+        order.verify(execution).removeContext();
+    }
+
+    private Answer<Void> writes(final JSONObject json)
+    {
+        return new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                ((JSONWriter) invocation.getArguments()[0]).value(json);
+                return null;
+            }
+        };
+    }
+
+    private JSONArray export(Response response) throws Exception
+    {
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        return new JSONArray(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
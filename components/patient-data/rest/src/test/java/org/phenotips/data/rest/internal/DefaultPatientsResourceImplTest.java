@@ -31,6 +31,7 @@
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
@@ -45,6 +46,7 @@
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -53,24 +55,30 @@
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
 import com.xpn.xwiki.XWikiContext;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -132,6 +140,17 @@ public void setUp() throws ComponentLookupException, URISyntaxException
         this.uri = new URI("http://uri");
         this.userProfileDocument = new DocumentReference("wiki", "user", "00000001");
         this.factory = this.mocker.getInstance(DomainObjectFactory.class);
+        DocumentReferenceResolver<String> stringResolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        when(stringResolver.resolve(anyString())).thenAnswer(new Answer<DocumentReference>()
+        {
+            @Override
+            public DocumentReference answer(InvocationOnMock invocation)
+            {
+                String fullName = (String) invocation.getArguments()[0];
+                return new DocumentReference("xwiki", "data", StringUtils.substringAfter(fullName, "."));
+            }
+        });
 
         doReturn(this.uri).when(this.uriInfo).getBaseUri();
         doReturn(this.uri).when(this.uriInfo).getRequestUri();
@@ -197,7 +216,7 @@ public void creatingOneOfThePatientsFails()
         Exception exception = new NullPointerException();
         doReturn(true).when(this.access).hasAccess(eq(Right.EDIT), any(DocumentReference.class),
             any(EntityReference.class));
-        doThrow(exception).when(this.repository).create();
+        doThrow(exception).when(this.repository).createFromJSON(anyListOf(JSONObject.class));
         Response response = this.patientsResource.add(json.toString());
         Assert.assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), response.getStatus());
         verify(this.logger).error("Could not process patient creation request: {}", exception.getMessage(), exception);
@@ -232,11 +251,37 @@ public void addPatientsAsJSON()
     {
         doReturn(true).when(this.access).hasAccess(eq(Right.EDIT), any(DocumentReference.class),
             any(EntityReference.class));
-        doReturn(this.patient).when(this.repository).create();
+        doReturn(Arrays.asList(this.patient, this.patient, this.patient)).when(this.repository)
+            .createFromJSON(anyListOf(JSONObject.class));
         JSONArray jsonPatients = new JSONArray().put(new JSONObject()).put(new JSONObject()).put(new JSONObject());
         Response response = this.patientsResource.add(jsonPatients.toString());
         Assert.assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        Assert.assertEquals(3, new JSONArray((String) response.getEntity()).length());
         verify(this.logger).debug("Importing new patient from JSON via REST: {}", jsonPatients.toString());
+        verify(this.repository, never()).create();
+    }
+
+    @Test
+    public void addPatientsReportsStatusOfEachRecord()
+    {
+        doReturn(true).when(this.access).hasAccess(eq(Right.EDIT), any(DocumentReference.class),
+            any(EntityReference.class));
+        JSONArray jsonPatients = new JSONArray().put(new JSONObject()).put("not a patient").put(new JSONObject());
+        doReturn(Arrays.asList(null, null, this.patient)).when(this.repository)
+            .createFromJSON(anyListOf(JSONObject.class));
+
+        Response response = this.patientsResource.add(jsonPatients.toString());
+
+        Assert.assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        ArgumentCaptor<List> records = ArgumentCaptor.forClass(List.class);
+        verify(this.repository).createFromJSON(records.capture());
+        Assert.assertEquals(3, records.getValue().size());
+        Assert.assertNull(records.getValue().get(1));
+        JSONArray result = new JSONArray((String) response.getEntity());
+        Assert.assertEquals(3, result.length());
+        Assert.assertTrue(result.isNull(0));
+        Assert.assertTrue(result.isNull(1));
+        Assert.assertEquals("http://uri/patients/P00000001", result.getString(2));
     }
 
     @Test
@@ -246,7 +291,7 @@ public void listPatientsNullOrderField() throws QueryException
         doReturn(query).when(this.queries).createQuery(anyString(), anyString());
         doReturn(query).when(query).bindValue(anyString(), anyString());
         doReturn(new ArrayList<Object[]>()).when(query).execute();
-        this.patientsResource.listPatients(0, 30, null, "asc");
+        this.patientsResource.listPatients(0, 30, null, "asc", null);
         verify(this.queries).createQuery(
             "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
                 + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
@@ -261,7 +306,7 @@ public void listPatientsNullOrder() throws QueryException
         doReturn(query).when(this.queries).createQuery(anyString(), anyString());
         doReturn(query).when(query).bindValue(anyString(), anyString());
         doReturn(new ArrayList<Object[]>()).when(query).execute();
-        this.patientsResource.listPatients(0, 30, "id", null);
+        this.patientsResource.listPatients(0, 30, "id", null, null);
         verify(this.queries).createQuery(
             "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
                 + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
@@ -276,11 +321,11 @@ public void listPatientsNonDefaultBehaviour() throws QueryException
         doReturn(query).when(this.queries).createQuery(anyString(), anyString());
         doReturn(query).when(query).bindValue(anyString(), anyString());
         doReturn(new ArrayList<Object[]>()).when(query).execute();
-        this.patientsResource.listPatients(0, 30, "eid", "desc");
+        this.patientsResource.listPatients(0, 30, "eid", "desc", null);
         verify(this.queries).createQuery(
             "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
                 + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
-                + "p.external_id" + " desc",
+                + "p.external_id desc, doc.name desc",
             "xwql");
     }
 
@@ -296,8 +341,8 @@ public void listPatientsNoUserAccess() throws QueryException
         doReturn(patientList).when(query).execute();
         doReturn(false).when(this.access).hasAccess(eq(Right.VIEW), any(DocumentReference.class),
             any(EntityReference.class));
-        doReturn(null).when(this.factory).createPatientSummary(patientSummaryData, this.uriInfo);
-        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc");
+        mockSummaries(null);
+        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc", null);
         verify(this.queries).createQuery(
             "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
                 + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
@@ -318,8 +363,8 @@ public void listPatientsUserHasAccess() throws QueryException
         doReturn(patientList).when(query).execute();
         doReturn(true).when(this.access).hasAccess(eq(Right.VIEW), any(DocumentReference.class),
             any(EntityReference.class));
-        doReturn(new PatientSummary()).when(this.factory).createPatientSummary(any(Object[].class), eq(this.uriInfo));
-        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc");
+        mockSummaries(new PatientSummary());
+        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc", null);
         verify(this.queries).createQuery(
             "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
                 + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
@@ -342,18 +387,18 @@ public void listPatientsSpecificNumberOfRecords() throws QueryException
         doReturn(patientList).when(query).execute();
         doReturn(true).when(this.access).hasAccess(eq(Right.VIEW), any(DocumentReference.class),
             any(EntityReference.class));
-        doReturn(new PatientSummary()).when(this.factory).createPatientSummary(any(Object[].class), eq(this.uriInfo));
+        mockSummaries(new PatientSummary());
 
-        Patients allPatients = this.patientsResource.listPatients(0, 30, "id", "asc");
+        Patients allPatients = this.patientsResource.listPatients(0, 30, "id", "asc", null);
         Assert.assertEquals(30, allPatients.getPatientSummaries().size());
 
-        Patients selectedNumberOfPatients = this.patientsResource.listPatients(15, 15, "id", "asc");
+        Patients selectedNumberOfPatients = this.patientsResource.listPatients(15, 15, "id", "asc", null);
         Assert.assertEquals(15, selectedNumberOfPatients.getPatientSummaries().size());
 
-        Patients onePatient = this.patientsResource.listPatients(15, 1, "id", "asc");
+        Patients onePatient = this.patientsResource.listPatients(15, 1, "id", "asc", null);
         Assert.assertEquals(1, onePatient.getPatientSummaries().size());
 
-        Patients incorrectLookup = this.patientsResource.listPatients(31, 5, "id", "asc");
+        Patients incorrectLookup = this.patientsResource.listPatients(31, 5, "id", "asc", null);
         Assert.assertEquals(0, incorrectLookup.getPatientSummaries().size());
     }
 
@@ -371,8 +416,8 @@ public void listPatientsGetMoreRecordsThanAdded() throws QueryException
         doReturn(patientList).when(query).execute();
         doReturn(true).when(this.access).hasAccess(eq(Right.VIEW), any(DocumentReference.class),
             any(EntityReference.class));
-        doReturn(new PatientSummary()).when(this.factory).createPatientSummary(any(Object[].class), eq(this.uriInfo));
-        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc");
+        mockSummaries(new PatientSummary());
+        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc", null);
         Assert.assertEquals(15, result.getPatientSummaries().size());
     }
 
@@ -386,7 +431,7 @@ public void listPatientFailureHandling() throws QueryException
         doReturn(query).when(query).bindValue(anyString(), anyString());
         doThrow(queryException).when(query).execute();
         try {
-            this.patientsResource.listPatients(0, 30, "id", "asc");
+            this.patientsResource.listPatients(0, 30, "id", "asc", null);
         } catch (WebApplicationException ex) {
             exception = ex;
         }
@@ -394,4 +439,101 @@ public void listPatientFailureHandling() throws QueryException
         Assert.assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), exception.getResponse().getStatus());
         verify(this.logger).error("Failed to list patients: {}", queryException.getMessage(), queryException);
     }
+
+    @Test
+    public void listPatientsReturnsContinuationTokenWhenMoreRecordsFollow() throws QueryException
+    {
+        List<Object[]> patientList = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            patientList.add(new Object[] { "data.P000000" + i, null, null, null, null, null, null });
+        }
+        Query query = mock(DefaultQuery.class);
+        doReturn(query).when(this.queries).createQuery(anyString(), anyString());
+        doReturn(query).when(query).bindValue(anyString(), anyString());
+        doReturn(patientList).when(query).execute();
+        mockSummaries(new PatientSummary());
+
+        Patients result = this.patientsResource.listPatients(0, 2, "id", "asc", null);
+        Assert.assertEquals(2, result.getPatientSummaries().size());
+        Assert.assertNotNull(result.getNext());
+        verify(query).setLimit(50);
+
+        this.patientsResource.listPatients(0, 2, "id", "asc", result.getNext());
+        verify(this.queries).createQuery(
+            "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
+                + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t"
+                + " and doc.name > :after order by doc.name asc",
+            "xwql");
+        verify(query).bindValue("after", "P0000002");
+    }
+
+    @Test
+    public void listPatientsReturnsNoContinuationTokenOnLastPage() throws QueryException
+    {
+        List<Object[]> patientList = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            patientList.add(new Object[] { "data.P000000" + i, null, null, null, null, null, null });
+        }
+        Query query = mock(DefaultQuery.class);
+        doReturn(query).when(this.queries).createQuery(anyString(), anyString());
+        doReturn(query).when(query).bindValue(anyString(), anyString());
+        doReturn(patientList).when(query).execute();
+        mockSummaries(new PatientSummary());
+
+        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc", null);
+        Assert.assertEquals(5, result.getPatientSummaries().size());
+        Assert.assertNull(result.getNext());
+    }
+
+    @Test
+    public void listPatientsByExternalIdPushesOffsetIntoQuery() throws QueryException
+    {
+        List<Object[]> patientList = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            patientList.add(new Object[] { "data.P000000" + i, null, null, null, null, null, null });
+        }
+        Query query = mock(DefaultQuery.class);
+        doReturn(query).when(this.queries).createQuery(anyString(), anyString());
+        doReturn(query).when(query).bindValue(anyString(), anyString());
+        doReturn(patientList).when(query).execute();
+        mockSummaries(new PatientSummary());
+
+        Patients result = this.patientsResource.listPatients(0, 3, "eid", "desc", null);
+        Assert.assertEquals(3, PatientsListingCursor.fromToken(result.getNext(), "eid", true).getOffset());
+
+        this.patientsResource.listPatients(0, 3, "eid", "desc", result.getNext());
+        verify(query).setOffset(3);
+    }
+
+    @Test
+    public void listPatientsRejectsInvalidContinuationToken() throws QueryException
+    {
+        String token = PatientsListingCursor.start("eid", false).toToken();
+        for (String invalid : new String[] { "not a token", "7B7D", token }) {
+            try {
+                this.patientsResource.listPatients(0, 30, "id", "asc", invalid);
+                Assert.fail("Invalid token accepted: " + invalid);
+            } catch (WebApplicationException ex) {
+                Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), ex.getResponse().getStatus());
+            }
+        }
+    }
+
+    /**
+     * Makes the factory return the same summary, or {@code null}, for each of the records passed to
+     * {@link DomainObjectFactory#createPatientSummaries(List, UriInfo)}.
+     */
+    private void mockSummaries(final PatientSummary summary)
+    {
+        when(this.factory.createPatientSummaries(anyListOf(Object[].class), eq(this.uriInfo))).thenAnswer(
+            new Answer<List<PatientSummary>>()
+            {
+                @Override
+                public List<PatientSummary> answer(InvocationOnMock invocation)
+                {
+                    List<?> records = (List<?>) invocation.getArguments()[0];
+                    return new ArrayList<>(Collections.nCopies(records.size(), summary));
+                }
+            });
+    }
 }
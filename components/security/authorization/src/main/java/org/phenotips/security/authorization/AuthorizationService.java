@@ -23,6 +23,9 @@
 import org.xwiki.stability.Unstable;
 import org.xwiki.users.User;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Service which checks if a specific operation on an entity should be granted or not. The default implementation
  * forwards the decision to implementations of the {@link AuthorizationModule} role, in descending order of their
@@ -44,4 +47,19 @@
      * @return {@code true} if access is granted, {@code false} if access is denied
      */
     boolean hasAccess(User user, Right access, EntityReference entity);
+
+    /**
+     * Checks which of the target entities the specified user has the requested access level on. The result is the
+     * same as calling {@link #hasAccess(User, Right, EntityReference)} for each entity, but implementations may check
+     * all the entities at once, which is faster when filtering many entities.
+     *
+     * @param user the user whose rights should be checked
+     * @param access the requested access level
+     * @param entities the target entities (documents, spaces, wikis...)
+     * @param <T> the type of the target entity references
+     * @return the entities on which access is granted, in the same order as in the input; may be empty if access is
+     *         denied on all of them
+     * @since 1.3M4
+     */
+    <T extends EntityReference> List<T> filterByAccess(User user, Right access, Collection<T> entities);
 }
@@ -25,6 +25,8 @@
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -55,7 +57,29 @@ public class DefaultAuthorizationService implements AuthorizationService
     @Override
     public boolean hasAccess(User user, Right access, EntityReference entity)
     {
-        for (AuthorizationModule service : this.modules.get()) {
+        return hasAccess(this.modules.get(), user, access, entity);
+    }
+
+    @Override
+    public <T extends EntityReference> List<T> filterByAccess(User user, Right access, Collection<T> entities)
+    {
+        List<T> result = new ArrayList<>(entities.size());
+        if (entities.isEmpty()) {
+            return result;
+        }
+        // Looking up and sorting the modules is expensive, only do it once for the whole batch
+        List<AuthorizationModule> services = this.modules.get();
+        for (T entity : entities) {
+            if (hasAccess(services, user, access, entity)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    private boolean hasAccess(List<AuthorizationModule> services, User user, Right access, EntityReference entity)
+    {
+        for (AuthorizationModule service : services) {
             try {
                 Boolean decision = service.hasAccess(user, access, entity);
                 if (decision != null) {
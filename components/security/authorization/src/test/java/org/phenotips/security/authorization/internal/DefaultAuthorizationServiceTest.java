@@ -181,6 +181,35 @@ public void exceptionsInModulesAreIgnored() throws Exception
         Assert.assertTrue(this.mocker.getComponentUnderTest().hasAccess(this.user, this.access, this.document));
     }
 
+    @Test
+    public void filterByAccessKeepsOnlyAccessibleEntitiesAndLooksUpModulesOnce() throws Exception
+    {
+        this.moduleList = Arrays.asList(this.moduleOne, this.moduleTwo);
+        doReturn(this.moduleList).when(this.modules).get();
+        DocumentReference other = new DocumentReference("xwiki", "data", "P0000002");
+        DocumentReference third = new DocumentReference("xwiki", "data", "P0000003");
+
+        when(this.moduleOne.hasAccess(this.user, this.access, this.document)).thenReturn(true);
+        when(this.moduleOne.hasAccess(this.user, this.access, other)).thenReturn(null);
+        when(this.moduleTwo.hasAccess(this.user, this.access, other)).thenReturn(false);
+        when(this.moduleOne.hasAccess(this.user, this.access, third)).thenReturn(null);
+        when(this.moduleTwo.hasAccess(this.user, this.access, third)).thenReturn(true);
+
+        List<DocumentReference> result = this.mocker.getComponentUnderTest().filterByAccess(this.user, this.access,
+            Arrays.asList(this.document, other, third));
+        Assert.assertEquals(Arrays.asList(this.document, third), result);
+        Mockito.verify(this.modules).get();
+    }
+
+    @Test
+    public void filterByAccessWithNoEntitiesReturnsEmptyList() throws Exception
+    {
+        List<DocumentReference> result = this.mocker.getComponentUnderTest().filterByAccess(this.user, this.access,
+            Collections.<DocumentReference>emptyList());
+        Assert.assertTrue(result.isEmpty());
+        Mockito.verify(this.modules, never()).get();
+    }
+
     private void resetMocks()
     {
         Mockito.reset(this.moduleOne, this.moduleTwo, this.moduleThree);
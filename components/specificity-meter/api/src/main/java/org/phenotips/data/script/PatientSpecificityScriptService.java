@@ -24,6 +24,7 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientSpecificityService;
 
+import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
@@ -43,6 +44,7 @@
 import javax.inject.Singleton;
 
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 /**
  * A service that computes the patient specificity, a score estimating how "good" a patient record is.
@@ -220,6 +222,12 @@ public DocumentReference getDocument()
             return null;
         }
 
+        @Override
+        public DocumentModelBridge getXDocument()
+        {
+            return null;
+        }
+
         @Override
         public DocumentReference getReporter()
         {
@@ -256,6 +264,12 @@ public JSONObject toJSON(Collection<String> selectedFields)
             return null;
         }
 
+        @Override
+        public void writeJSON(JSONWriter writer, Collection<String> selectedFields)
+        {
+            writer.value(toJSON(selectedFields));
+        }
+
         @Override
         public void updateFromJSON(JSONObject json)
         {
@@ -50,10 +50,44 @@
      */
     Cache<VocabularyTerm> getTermCache();
 
+    /**
+     * Get the usage statistics of the {@link #getTermCache() term cache}.
+     *
+     * @return the statistics of the cache created for the target vocabulary
+     * @since 1.3M4
+     */
+    TermCacheStatistics getTermCacheStatistics();
+
     /**
      * Get the Solr core used for the target vocabulary.
      *
      * @return a Solr client for communication with the target core
      */
     SolrClient getSolrConnection();
+
+    /**
+     * Create an empty side core with the same configuration as the target core, where a complete new version of the
+     * vocabulary can be indexed while the target core keeps serving requests. A previous side core, left over from a
+     * failed reindex, is discarded.
+     *
+     * @return a Solr client for communication with the side core, or {@code null} if the side core cannot be created
+     * @since 1.3M4
+     */
+    SolrClient createReplacementCore();
+
+    /**
+     * Atomically replace the target core with the side core created by {@link #createReplacementCore()}, then discard
+     * the old index and the term cache. Afterwards, {@link #getSolrConnection()} accesses the new index.
+     *
+     * @return {@code true} if the side core was swapped in, {@code false} otherwise
+     * @since 1.3M4
+     */
+    boolean replaceCore();
+
+    /**
+     * Discard the side core created by {@link #createReplacementCore()}, without affecting the target core.
+     *
+     * @since 1.3M4
+     */
+    void discardReplacementCore();
 }
@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Usage statistics for the cache of terms of a vocabulary. Instances are also registered as management beans, under the
+ * {@link #JMX_NAME_PREFIX} name, followed by the quoted name of the vocabulary.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+@Unstable
+public interface TermCacheStatistics
+{
+    /** The prefix of the name under which the statistics of each vocabulary cache are registered in JMX. */
+    String JMX_NAME_PREFIX = "org.phenotips.vocabulary:type=TermCache,name=";
+
+    /**
+     * The number of requests that were served from the cache, including requests for terms known to be missing.
+     *
+     * @return a non-negative number
+     */
+    long getHits();
+
+    /**
+     * The number of requests for terms that weren't in the cache.
+     *
+     * @return a non-negative number
+     */
+    long getMisses();
+
+    /**
+     * The number of entries that were automatically removed from the cache to make room for new entries.
+     *
+     * @return a non-negative number
+     */
+    long getEvictions();
+
+    /**
+     * The fraction of requests that were served from the cache.
+     *
+     * @return a number between {@code 0} and {@code 1}, or {@code 0} if there were no requests yet
+     */
+    double getHitRatio();
+
+    /**
+     * The maximum number of terms that the cache can hold.
+     *
+     * @return a non-negative number
+     */
+    int getCapacity();
+
+    /** Reset all the counters to {@code 0}. */
+    void resetStatistics();
+}
@@ -53,6 +53,20 @@
      */
     Set<VocabularyTerm> getTerms(Collection<String> ids);
 
+    /**
+     * Expand several terms into their ancestors at once. This is equivalent to calling
+     * {@link VocabularyTerm#getAncestorsAndSelf()} for each of the requested terms, but it only returns the identifiers
+     * of the ancestors, and it is much faster than looking up and expanding each term individually.
+     *
+     * @param ids a collection of term identifiers, in the format {@code <vocabulary prefix>:<term id>}, for example
+     *            {@code HP:0002066}
+     * @return a map having as keys the requested identifiers that were found in the vocabulary, and as values the
+     *         identifiers of the term itself and all of its ancestors; terms not found in the vocabulary are skipped,
+     *         and an empty map is returned if none of the terms were found
+     * @since 1.3M4
+     */
+    Map<String, Set<String>> getAncestorsAndSelf(Collection<String> ids);
+
     /**
      * Generic search method, which looks for terms that match the specified term properties.
      *
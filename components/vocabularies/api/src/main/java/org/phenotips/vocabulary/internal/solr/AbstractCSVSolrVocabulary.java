@@ -28,6 +28,7 @@
 import java.util.HashSet;
 import java.util.Iterator;
 
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -51,6 +52,17 @@ public abstract class AbstractCSVSolrVocabulary extends AbstractSolrVocabulary
 
     protected static final String SYMBOL_EXACT = "symbolExact^100";
 
+    /** The documents are already built by {@link #load(URL)}, so they are passed through unchanged. */
+    private static final BulkIndexingPipeline.DocumentBuilder<SolrInputDocument> DOCUMENT_BUILDER =
+        new BulkIndexingPipeline.DocumentBuilder<SolrInputDocument>()
+        {
+            @Override
+            public SolrInputDocument build(SolrInputDocument item)
+            {
+                return item;
+            }
+        };
+
     /**
      * The number of documents to be added and committed to Solr at a time.
      *
@@ -63,8 +75,18 @@ public abstract class AbstractCSVSolrVocabulary extends AbstractSolrVocabulary
     @Override
     public int reindex(String sourceUrl)
     {
-        this.clear();
-        return this.index(sourceUrl);
+        SolrClient replacement = this.externalServicesAccess.createReplacementCore();
+        if (replacement == null) {
+            // Bulk reindexing isn't possible, update the live core batch by batch
+            this.clear();
+            return this.index(sourceUrl);
+        }
+        int result = bulkIndex(sourceUrl, replacement);
+        if (result == 0 && this.externalServicesAccess.replaceCore()) {
+            return 0;
+        }
+        this.externalServicesAccess.discardReplacementCore();
+        return (result == 0) ? 1 : result;
     }
 
     /**
@@ -101,6 +123,42 @@ protected int index(String sourceUrl)
                 batchCounter++;
             }
             commitTerms(termBatch);
+            this.externalServicesAccess.getTermCache().removeAll();
+            return 0;
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to index ontology: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Failed to communicate with the Solr server while indexing ontology: {}", ex.getMessage());
+        } catch (OutOfMemoryError ex) {
+            this.logger.warn("Failed to add terms to the Solr. Ran out of memory. {}", ex.getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Index a complete vocabulary into an empty side core, committing only once at the end.
+     *
+     * @param sourceUrl the URL to be indexed
+     * @param target the side core to fill
+     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
+     *         specified URL is invalid
+     */
+    private int bulkIndex(String sourceUrl, SolrClient target)
+    {
+        Collection<SolrInputDocument> data = null;
+        try {
+            data = load(new URL(sourceUrl));
+        } catch (MalformedURLException e) {
+            return 2;
+        }
+        if (data == null) {
+            return 2;
+        }
+        try {
+            BulkIndexingPipeline<SolrInputDocument> pipeline = new BulkIndexingPipeline<>(target, DOCUMENT_BUILDER,
+                BulkIndexingPipeline.DEFAULT_BATCH_SIZE, 1);
+            int count = pipeline.run(data.iterator());
+            this.logger.debug("Indexed {} terms in a replacement core for [{}]", count, getCoreName());
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index ontology: {}", ex.getMessage());
@@ -117,7 +175,6 @@ protected void commitTerms(Collection<SolrInputDocument> batch)
     {
         this.externalServicesAccess.getSolrConnection().add(batch);
         this.externalServicesAccess.getSolrConnection().commit();
-        this.externalServicesAccess.getTermCache().removeAll();
     }
 
     /**
@@ -20,17 +20,23 @@
 import org.phenotips.obo2solr.ParameterPreparer;
 import org.phenotips.obo2solr.SolrUpdateGenerator;
 import org.phenotips.obo2solr.TermData;
+import org.phenotips.obo2solr.TermStream;
 import org.phenotips.vocabulary.VocabularyTerm;
 
+import org.xwiki.cache.Cache;
+
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -54,6 +60,37 @@ public abstract class AbstractOBOSolrVocabulary extends AbstractSolrVocabulary
 
     protected static final String VERSION_FIELD_NAME = "version";
 
+    /** The number of documents to fetch at once when loading the structure of the ontology from the index. */
+    private static final int GRAPH_LOADING_PAGE_SIZE = 10000;
+
+    /** How long to wait before trying to load the structure of the ontology again after a failure, in milliseconds. */
+    private static final long GRAPH_LOADING_RETRY_DELAY = 60000L;
+
+    /** Converts parsed terms into Solr documents during a bulk reindex. */
+    private static final BulkIndexingPipeline.DocumentBuilder<TermData> DOCUMENT_BUILDER =
+        new BulkIndexingPipeline.DocumentBuilder<TermData>()
+        {
+            @Override
+            public SolrInputDocument build(TermData item)
+            {
+                return toDocument(item);
+            }
+        };
+
+    /**
+     * The compiled structure of the ontology, loaded from the index when first needed, and discarded when the index
+     * changes.
+     *
+     * @see #getGraph()
+     */
+    private volatile OntologyGraph graph;
+
+    /** When loading the graph may be attempted again after a failure, {@code 0} if the last attempt didn't fail. */
+    private volatile long graphRetryTime;
+
+    /** Whether the index is being updated in place, in which case the graph is only loaded once the update is done. */
+    private volatile boolean indexing;
+
     /**
      * The number of documents to be added and committed to Solr at a time.
      *
@@ -67,23 +104,193 @@ public VocabularyTerm getTerm(String id)
         if (StringUtils.isBlank(id)) {
             return null;
         }
-        VocabularyTerm result = super.getTerm(id);
-        if (result == null) {
-            Map<String, String> queryParameters = new HashMap<>();
-            queryParameters.put(ALTERNATIVE_ID_FIELD_NAME, id);
-            List<VocabularyTerm> results = search(queryParameters);
-            if (results != null && !results.isEmpty()) {
-                result = search(queryParameters).iterator().next();
+        Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache();
+        VocabularyTerm result = cache.get(id);
+        if (result != null) {
+            return (result == EMPTY_MARKER) ? null : result;
+        }
+
+        OntologyGraph currentGraph = getGraph();
+        String primaryId = id;
+        if (currentGraph != null) {
+            primaryId = currentGraph.resolve(id);
+            if (primaryId == null) {
+                cache.set(id, EMPTY_MARKER);
+                return null;
+            }
+        }
+        result = super.getTerm(primaryId);
+        if (result == null && currentGraph == null) {
+            result = searchAlternativeId(id);
+        }
+        // Remember the outcome under the requested identifier as well, so that obsolete identifiers are only resolved
+        // once
+        cache.set(id, (result == null) ? EMPTY_MARKER : result);
+        return result;
+    }
+
+    @Override
+    protected Map<String, VocabularyTerm> loadTerms(Collection<String> ids)
+    {
+        OntologyGraph currentGraph = getGraph();
+        if (currentGraph == null) {
+            return super.loadTerms(ids);
+        }
+        Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache();
+        // Map each requested identifier to the current identifier of the term
+        Map<String, String> primaryIds = new LinkedHashMap<>();
+        for (String id : ids) {
+            String primaryId = currentGraph.resolve(id);
+            if (primaryId != null) {
+                primaryIds.put(id, primaryId);
+            } else if (StringUtils.isNotBlank(id)) {
+                cache.set(id, EMPTY_MARKER);
+            }
+        }
+        Map<String, VocabularyTerm> terms = super.loadTerms(new LinkedHashSet<>(primaryIds.values()));
+        Map<String, VocabularyTerm> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> id : primaryIds.entrySet()) {
+            VocabularyTerm term = terms.get(id.getValue());
+            if (term != null) {
+                result.put(id.getKey(), term);
+                if (!id.getKey().equals(id.getValue())) {
+                    cache.set(id.getKey(), term);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Set<String>> getAncestorsAndSelf(Collection<String> ids)
+    {
+        OntologyGraph currentGraph = getGraph();
+        if (currentGraph == null) {
+            return super.getAncestorsAndSelf(ids);
+        }
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            // The requested identifier may be an alternative identifier of an updated term
+            String primaryId = currentGraph.resolve(id);
+            if (primaryId != null) {
+                result.put(id, currentGraph.getAncestorsAndSelf(primaryId));
             }
         }
         return result;
     }
 
+    @Override
+    public long getDistance(String fromTermId, String toTermId)
+    {
+        OntologyGraph currentGraph = getGraph();
+        if (currentGraph != null && currentGraph.contains(fromTermId) && currentGraph.contains(toTermId)) {
+            return currentGraph.getDistance(fromTermId, toTermId);
+        }
+        return super.getDistance(fromTermId, toTermId);
+    }
+
     @Override
     public int reindex(String sourceUrl)
     {
-        this.clear();
-        return this.index(sourceUrl);
+        SolrClient replacement = this.externalServicesAccess.createReplacementCore();
+        if (replacement == null) {
+            // Bulk reindexing isn't possible, update the live core batch by batch
+            this.clear();
+            return this.index(sourceUrl);
+        }
+        int result = bulkIndex(sourceUrl, replacement);
+        if (result == 0 && this.externalServicesAccess.replaceCore()) {
+            invalidateGraph();
+            return 0;
+        }
+        this.externalServicesAccess.discardReplacementCore();
+        return (result == 0) ? 1 : result;
+    }
+
+    /**
+     * Look for a term having the requested identifier as an alternative identifier. This is only used when the
+     * structure of the ontology isn't available.
+     *
+     * @param id the alternative identifier to look for
+     * @return the found term, or {@code null} if no term has this alternative identifier
+     */
+    private VocabularyTerm searchAlternativeId(String id)
+    {
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ALTERNATIVE_ID_FIELD_NAME, id);
+        List<VocabularyTerm> results = search(queryParameters);
+        if (results != null && !results.isEmpty()) {
+            return results.get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Get the compiled structure of this ontology, which can answer structural queries without querying the index. The
+     * graph is loaded from the index the first time it is requested, and discarded whenever the index is modified.
+     * While the index is being updated in place, and for a while after loading the graph failed, no graph is available
+     * and callers must fall back to querying the index.
+     *
+     * @return the compiled graph, or {@code null} if it cannot be loaded from the index right now
+     */
+    protected OntologyGraph getGraph()
+    {
+        if (this.indexing) {
+            return null;
+        }
+        OntologyGraph result = this.graph;
+        if (result == null && System.currentTimeMillis() >= this.graphRetryTime) {
+            synchronized (this) {
+                result = this.graph;
+                if (result == null && !this.indexing && System.currentTimeMillis() >= this.graphRetryTime) {
+                    result = loadGraph();
+                    this.graph = result;
+                    this.graphRetryTime = (result == null) ? System.currentTimeMillis() + GRAPH_LOADING_RETRY_DELAY : 0;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Discard the compiled graph after the index changed, so that it is loaded again when needed. */
+    private void invalidateGraph()
+    {
+        this.graph = null;
+        this.graphRetryTime = 0;
+    }
+
+    /**
+     * Read the identifiers and parents of all the terms from the index, and compile them into a graph.
+     *
+     * @return the compiled graph, or {@code null} if querying the index failed
+     */
+    private OntologyGraph loadGraph()
+    {
+        OntologyGraph.Builder builder = new OntologyGraph.Builder();
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields(ID_FIELD_NAME, TermData.PARENT_FIELD_NAME, ALTERNATIVE_ID_FIELD_NAME);
+        query.setRows(GRAPH_LOADING_PAGE_SIZE);
+        // Without a stable order, the pages may overlap or skip documents
+        query.setSort(ID_FIELD_NAME, SolrQuery.ORDER.asc);
+        try {
+            int start = 0;
+            SolrDocumentList page;
+            do {
+                query.setStart(start);
+                page = this.externalServicesAccess.getSolrConnection().query(query).getResults();
+                for (SolrDocument doc : page) {
+                    builder.addTerm((String) doc.getFirstValue(ID_FIELD_NAME),
+                        doc.getFieldValues(TermData.PARENT_FIELD_NAME), doc.getFieldValues(ALTERNATIVE_ID_FIELD_NAME));
+                }
+                start += page.size();
+            } while (!page.isEmpty() && start < page.getNumFound());
+            OntologyGraph result = builder.build();
+            this.logger.debug("Loaded the structure of [{}], {} terms", getCoreName(), result.size());
+            return result;
+        } catch (SolrServerException | SolrException | IOException ex) {
+            this.logger.warn("Failed to load the structure of [{}]: {}", getCoreName(), ex.getMessage());
+        }
+        return null;
     }
 
     /**
@@ -99,33 +306,59 @@ protected int index(String sourceUrl)
 
         SolrUpdateGenerator generator = new SolrUpdateGenerator();
         Map<String, Double> fieldSelection = new HashMap<>();
-        Map<String, TermData> data = generator.transform(realOntologyUrl, fieldSelection);
-        if (data == null || data.isEmpty()) {
-            return 2;
-        }
-        try {
+        this.indexing = true;
+        // Terms are parsed and sent to Solr one batch at a time, only the parent relations are kept in memory
+        try (TermStream data = generator.stream(realOntologyUrl, fieldSelection)) {
+            if (data == null || !data.hasNext()) {
+                return 2;
+            }
             Collection<SolrInputDocument> termBatch = new HashSet<>();
-            Iterator<Map.Entry<String, TermData>> dataIterator = data.entrySet().iterator();
             int batchCounter = 0;
-            while (dataIterator.hasNext()) {
+            while (data.hasNext()) {
                 /* Resetting when the batch fills */
                 if (batchCounter == getSolrDocsPerBatch()) {
                     commitTerms(termBatch);
                     termBatch = new HashSet<>();
                     batchCounter = 0;
                 }
-                Map.Entry<String, TermData> item = dataIterator.next();
-                SolrInputDocument doc = new SolrInputDocument();
-                for (Map.Entry<String, Collection<String>> property : item.getValue().entrySet()) {
-                    String name = property.getKey();
-                    for (String value : property.getValue()) {
-                        doc.addField(name, value, ParameterPreparer.DEFAULT_BOOST.floatValue());
-                    }
-                }
-                termBatch.add(doc);
+                termBatch.add(toDocument(data.next()));
                 batchCounter++;
             }
             commitTerms(termBatch);
+            this.externalServicesAccess.getTermCache().removeAll();
+            return 0;
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to index ontology: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Failed to communicate with the Solr server while indexing ontology: {}", ex.getMessage());
+        } catch (OutOfMemoryError ex) {
+            this.logger.warn("Failed to add terms to the Solr. Ran out of memory. {}", ex.getMessage());
+        } finally {
+            this.indexing = false;
+            invalidateGraph();
+        }
+        return 1;
+    }
+
+    /**
+     * Index a complete vocabulary into an empty side core, committing only once at the end.
+     *
+     * @param sourceUrl the address from where to get the vocabulary source file
+     * @param target the side core to fill
+     * @return {@code 0} if the indexing succeeded, {@code 1} if writing to the Solr server failed, {@code 2} if the
+     *         specified URL is invalid
+     */
+    private int bulkIndex(String sourceUrl, SolrClient target)
+    {
+        String realOntologyUrl = StringUtils.defaultIfBlank(sourceUrl, getDefaultSourceLocation());
+        try (TermStream data = new SolrUpdateGenerator().stream(realOntologyUrl, new HashMap<String, Double>())) {
+            if (data == null || !data.hasNext()) {
+                return 2;
+            }
+            BulkIndexingPipeline<TermData> pipeline = new BulkIndexingPipeline<>(target, DOCUMENT_BUILDER,
+                BulkIndexingPipeline.DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+            int count = pipeline.run(data);
+            this.logger.debug("Indexed {} terms in a replacement core for [{}]", count, getCoreName());
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index ontology: {}", ex.getMessage());
@@ -137,12 +370,23 @@ protected int index(String sourceUrl)
         return 1;
     }
 
+    private static SolrInputDocument toDocument(TermData term)
+    {
+        SolrInputDocument doc = new SolrInputDocument();
+        for (Map.Entry<String, Collection<String>> property : term.entrySet()) {
+            String name = property.getKey();
+            for (String value : property.getValue()) {
+                doc.addField(name, value, ParameterPreparer.DEFAULT_BOOST.floatValue());
+            }
+        }
+        return doc;
+    }
+
     protected void commitTerms(Collection<SolrInputDocument> batch)
         throws SolrServerException, IOException, OutOfMemoryError
     {
         this.externalServicesAccess.getSolrConnection().add(batch);
         this.externalServicesAccess.getSolrConnection().commit();
-        this.externalServicesAccess.getTermCache().removeAll();
     }
 
     /**
@@ -154,6 +398,7 @@ protected int clear()
     {
         try {
             this.externalServicesAccess.getSolrConnection().deleteByQuery("*:*");
+            invalidateGraph();
             return 0;
         } catch (SolrServerException ex) {
             this.logger.error("SolrServerException while clearing the Solr index", ex);
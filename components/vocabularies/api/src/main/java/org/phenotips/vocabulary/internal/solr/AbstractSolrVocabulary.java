@@ -23,9 +23,14 @@
 
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -33,6 +38,7 @@
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -57,11 +63,17 @@ public abstract class AbstractSolrVocabulary implements Vocabulary, Initializabl
     /** The name of the ID field. */
     protected static final String ID_FIELD_NAME = "id";
 
+    /** The name of the field holding the identifiers of all the ancestors of a term. */
+    protected static final String TERM_CATEGORY_FIELD_NAME = "term_category";
+
     /**
      * Object used to mark in the cache that a term doesn't exist, since null means that the cache doesn't contain the
      * requested entry.
      */
-    private static final VocabularyTerm EMPTY_MARKER = new SolrVocabularyTerm(null, null);
+    protected static final VocabularyTerm EMPTY_MARKER = new SolrVocabularyTerm(null, null);
+
+    /** How many terms to fetch with one query, well below the maximum number of boolean clauses allowed by Solr. */
+    private static final int TERMS_PER_QUERY = 500;
 
     /** Logging helper object. */
     @Inject
@@ -71,10 +83,33 @@ public abstract class AbstractSolrVocabulary implements Vocabulary, Initializabl
     @Inject
     protected SolrVocabularyResourceManager externalServicesAccess;
 
+    /** Provides access to the list of terms to preload in the cache. */
+    @Inject
+    @Named("xwikiproperties")
+    protected ConfigurationSource configuration;
+
     @Override
     public void initialize() throws InitializationException
     {
         this.externalServicesAccess.initialize(this.getCoreName());
+        warmUpCache();
+    }
+
+    /**
+     * Preload in the cache the most frequently requested terms, so that the first requests after a restart don't all
+     * reach the Solr index. The list of terms can be configured, as a comma-separated list of term identifiers, with
+     * the {@code phenotips.vocabularies.<core name>.cacheWarmup} property in {@code xwiki.properties}.
+     */
+    protected void warmUpCache()
+    {
+        String warmup = this.configuration.getProperty("phenotips.vocabularies." + getCoreName() + ".cacheWarmup",
+            String.class);
+        if (StringUtils.isBlank(warmup)) {
+            return;
+        }
+        List<String> ids = Arrays.asList(StringUtils.stripAll(StringUtils.split(warmup, ',')));
+        loadTerms(ids);
+        this.logger.debug("Preloaded {} terms in the [{}] cache", ids.size(), getCoreName());
     }
 
     // Dilemma:
@@ -111,37 +146,103 @@ public VocabularyTerm getTerm(String id)
 
     @Override
     public Set<VocabularyTerm> getTerms(Collection<String> ids)
+    {
+        Map<String, VocabularyTerm> rawResult = loadTerms(ids);
+        Set<VocabularyTerm> result = new LinkedHashSet<>();
+        for (String id : ids) {
+            result.add(rawResult.get(id));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Set<String>> getAncestorsAndSelf(Collection<String> ids)
+    {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, VocabularyTerm> term : loadTerms(ids).entrySet()) {
+            Set<String> ancestors = new LinkedHashSet<>();
+            ancestors.add(term.getValue().getId());
+            Object categories = term.getValue().get(TERM_CATEGORY_FIELD_NAME);
+            if (categories instanceof Collection) {
+                for (Object category : (Collection<?>) categories) {
+                    ancestors.add(StringUtils.substringBefore(String.valueOf(category), " "));
+                }
+            }
+            result.put(term.getKey(), ancestors);
+        }
+        return result;
+    }
+
+    /**
+     * Load several terms at once, taking them from the cache if possible, and fetching all the missing terms from the
+     * index in as few queries as possible, each one fetching up to 500 terms. The newly fetched terms are also stored
+     * in the cache, as well as the fact that some of the requested terms don't exist.
+     *
+     * @param ids the identifiers of the terms to load
+     * @return a map with the requested identifiers that were found as keys, in the same order as they were requested,
+     *         and the loaded terms as values
+     */
+    protected Map<String, VocabularyTerm> loadTerms(Collection<String> ids)
     {
         Map<String, VocabularyTerm> rawResult = new HashMap<>();
-        StringBuilder query = new StringBuilder("id:(");
+        Set<String> missing = new LinkedHashSet<>();
         for (String id : ids) {
             VocabularyTerm cachedTerm = this.externalServicesAccess.getTermCache().get(id);
             if (cachedTerm != null) {
                 if (cachedTerm != EMPTY_MARKER) {
                     rawResult.put(id, cachedTerm);
                 }
-            } else {
-                query.append(ClientUtils.escapeQueryChars(id));
-                query.append(' ');
+            } else if (StringUtils.isNotBlank(id)) {
+                missing.add(id);
             }
         }
-        query.append(')');
 
-        // There's at least one more term not found in the cache
-        if (query.length() > 5) {
-            for (SolrDocument doc : this.search(SolrQueryUtils.transformQueryToSolrParams(query.toString()))) {
-                VocabularyTerm term = new SolrVocabularyTerm(doc, this);
-                rawResult.put(term.getId(), term);
-            }
+        // Fetch the terms not found in the cache, without exceeding the maximum number of clauses in a query
+        List<String> toFetch = new ArrayList<>(missing);
+        for (int i = 0; i < toFetch.size(); i += TERMS_PER_QUERY) {
+            fetchTerms(toFetch.subList(i, Math.min(toFetch.size(), i + TERMS_PER_QUERY)), rawResult);
         }
 
-        Set<VocabularyTerm> result = new LinkedHashSet<>();
+        Map<String, VocabularyTerm> result = new LinkedHashMap<>();
         for (String id : ids) {
-            result.add(rawResult.get(id));
+            if (rawResult.containsKey(id)) {
+                result.put(id, rawResult.get(id));
+            }
         }
         return result;
     }
 
+    /**
+     * Fetch terms from the index with one query, and store them in the cache. The identifiers that aren't found are
+     * marked as missing in the cache.
+     *
+     * @param ids the identifiers of the terms to fetch, not found in the cache
+     * @param result where to add the fetched terms, with their identifiers as keys
+     */
+    private void fetchTerms(List<String> ids, Map<String, VocabularyTerm> result)
+    {
+        StringBuilder query = new StringBuilder("id:(");
+        for (String id : ids) {
+            query.append(ClientUtils.escapeQueryChars(id));
+            query.append(' ');
+        }
+        query.append(')');
+        SolrDocumentList docs = this.search(SolrQueryUtils.transformQueryToSolrParams(query.toString()));
+        if (docs == null) {
+            return;
+        }
+        Set<String> notFound = new HashSet<>(ids);
+        for (SolrDocument doc : docs) {
+            VocabularyTerm term = new SolrVocabularyTerm(doc, this);
+            result.put(term.getId(), term);
+            this.externalServicesAccess.getTermCache().set(term.getId(), term);
+            notFound.remove(term.getId());
+        }
+        for (String id : notFound) {
+            this.externalServicesAccess.getTermCache().set(id, EMPTY_MARKER);
+        }
+    }
+
     @Override
     public List<VocabularyTerm> search(Map<String, ?> fieldValues)
     {
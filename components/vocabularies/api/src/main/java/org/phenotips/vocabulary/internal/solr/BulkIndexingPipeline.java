@@ -0,0 +1,191 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Pushes a large number of documents into a Solr core, committing only once at the end. Source items are read by a
+ * producer thread, converted into Solr documents in parallel by a pool of workers, and added to the core in batches by
+ * the calling thread. The number of items waiting to be added is bounded, so that a fast producer doesn't fill up the
+ * memory.
+ *
+ * @param <T> the type of the source items
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class BulkIndexingPipeline<T>
+{
+    /** The default number of documents sent to Solr in one request. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** Marks the end of the source. */
+    private final Future<SolrInputDocument> end = new FutureTask<>(new Callable<SolrInputDocument>()
+    {
+        @Override
+        public SolrInputDocument call()
+        {
+            return null;
+        }
+    });
+
+    private final SolrClient target;
+
+    private final DocumentBuilder<T> builder;
+
+    private final int batchSize;
+
+    private final int threads;
+
+    /**
+     * Simple constructor.
+     *
+     * @param target the core where documents are added
+     * @param builder converts source items into Solr documents
+     * @param batchSize how many documents to send to Solr in one request
+     * @param threads how many threads to use for building documents
+     */
+    public BulkIndexingPipeline(SolrClient target, DocumentBuilder<T> builder, int batchSize, int threads)
+    {
+        this.target = target;
+        this.builder = builder;
+        this.batchSize = Math.max(1, batchSize);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Index all the items from the source, and commit once all of them are added.
+     *
+     * @param source the items to index
+     * @return the number of documents added
+     * @throws SolrServerException if adding the documents fails
+     * @throws IOException if communicating with the Solr core fails
+     */
+    public int run(final Iterator<T> source) throws SolrServerException, IOException
+    {
+        final BlockingQueue<Future<SolrInputDocument>> pending = new ArrayBlockingQueue<>(2 * this.batchSize);
+        final ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        Future<?> production = producer.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws InterruptedException
+            {
+                try {
+                    while (source.hasNext()) {
+                        final T item = source.next();
+                        pending.put(workers.submit(new Callable<SolrInputDocument>()
+                        {
+                            @Override
+                            public SolrInputDocument call()
+                            {
+                                return BulkIndexingPipeline.this.builder.build(item);
+                            }
+                        }));
+                    }
+                } finally {
+                    pending.put(BulkIndexingPipeline.this.end);
+                }
+                return null;
+            }
+        });
+        try {
+            int count = consume(pending);
+            production.get();
+            this.target.commit();
+            return count;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", ex);
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        } finally {
+            producer.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private int consume(BlockingQueue<Future<SolrInputDocument>> pending)
+        throws InterruptedException, ExecutionException, SolrServerException, IOException
+    {
+        int count = 0;
+        Collection<SolrInputDocument> batch = new ArrayList<>(this.batchSize);
+        Future<SolrInputDocument> next;
+        while ((next = pending.take()) != this.end) {
+            SolrInputDocument doc = next.get();
+            if (doc == null) {
+                continue;
+            }
+            batch.add(doc);
+            if (batch.size() >= this.batchSize) {
+                this.target.add(batch);
+                count += batch.size();
+                batch = new ArrayList<>(this.batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            this.target.add(batch);
+            count += batch.size();
+        }
+        return count;
+    }
+
+    private static IOException unwrap(ExecutionException ex)
+    {
+        Throwable cause = ex.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException("Failed to build the documents to index", cause);
+    }
+
+    /**
+     * Converts a source item into a Solr document. Must be safe to call concurrently.
+     *
+     * @param <T> the type of the source items
+     */
+    public interface DocumentBuilder<T>
+    {
+        /**
+         * Build the Solr document for an item.
+         *
+         * @param item the source item to convert
+         * @return the Solr document, or {@code null} if the item must be skipped
+         */
+        SolrInputDocument build(T item);
+    }
+}
@@ -19,34 +19,47 @@
 
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.TermCacheStatistics;
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
 import org.xwiki.extension.distribution.internal.DistributionManager;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
+import org.slf4j.Logger;
 
 /**
  * Default implementation for the {@link SolrVocabularyResourceManager} component.
@@ -63,11 +76,31 @@ public class DefaultSolrVocabularyResourceManager implements SolrVocabularyResou
         "/conf/solrcore.properties", "/conf/protwords.txt", "/conf/stopwords.txt", "/conf/synonyms.txt",
         "/core.properties");
 
+    private static final String CORE_PROPERTIES = "core.properties";
+
+    /** Suffix added to the vocabulary name for the side core used during a bulk reindex. */
+    private static final String REPLACEMENT_CORE_SUFFIX = "_rebuild";
+
+    /** The default maximum number of terms to keep in the cache of each vocabulary. */
+    private static final int DEFAULT_CACHE_CAPACITY = 10000;
+
+    /** The name of the managed vocabulary, also used as the core name. */
+    private String vocabularyName;
+
     /** @see #getSolrConnection() */
     private SolrClient core;
 
     /** @see #getTermCache() */
-    private Cache<VocabularyTerm> cache;
+    private MonitoredTermCache cache;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    /** Provides access to the configured cache capacity. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
 
     /** Provides access to the Solr cores. */
     @Inject
@@ -86,6 +119,7 @@ public class DefaultSolrVocabularyResourceManager implements SolrVocabularyResou
     @Override
     public void initialize(String vocabularyName) throws InitializationException
     {
+        this.vocabularyName = vocabularyName;
         CoreContainer container = this.cores.getContainer();
         SolrCore solrCore = container.getCore(vocabularyName);
 
@@ -97,31 +131,22 @@ public void initialize(String vocabularyName) throws InitializationException
 
             // Check if the core version differs from phenotips version
             if (!phenotipsVersion.equals(phenotipsCoreVersion)) {
-
-                // Get data Solr home path
-                File solrHome = new File(this.environment.getPermanentDirectory().getAbsolutePath(), "solr");
-                File dest = solrHome;
-                Files.createDirectories(dest.toPath().resolve(vocabularyName + "/conf"));
-
-                for (String file : CONFIG_FILES) {
-                    InputStream in = this.getClass().getResourceAsStream("/" + vocabularyName + file);
-                    if (in == null) {
-                        continue;
-                    }
-                    Files.copy(in, dest.toPath().resolve(vocabularyName + file), StandardCopyOption.REPLACE_EXISTING);
-                }
                 if (solrCore != null) {
+                    // After a bulk reindex the core may live in a different directory than the default one
+                    copyConfiguration(getInstanceDirectory(solrCore));
                     container.reload(vocabularyName);
                 } else {
-                    // container.create will fail if core.properties is already there, so we temporarily delete it
+                    // container.create will fail if core.properties is already there
                     // FIXME We should first read the properties file as a map and pass it to container.create
-                    Files.delete(dest.toPath().resolve(vocabularyName + "/core.properties"));
+                    Path instanceDir = getSolrHome().resolve(vocabularyName);
+                    copyConfiguration(instanceDir);
+                    Files.deleteIfExists(instanceDir.resolve(CORE_PROPERTIES));
                     container.create(vocabularyName, Collections.<String, String>emptyMap());
                 }
             }
 
             this.core = new EmbeddedSolrServer(container, vocabularyName);
-            this.cache = this.cacheFactory.createNewLocalCache(new CacheConfiguration());
+            this.cache = createCache(vocabularyName);
         } catch (final CacheException ex) {
             throw new InitializationException("Cannot create cache: " + ex.getMessage(), ex);
         } catch (IOException ex) {
@@ -139,9 +164,141 @@ public Cache<VocabularyTerm> getTermCache()
         return this.cache;
     }
 
+    @Override
+    public TermCacheStatistics getTermCacheStatistics()
+    {
+        return this.cache;
+    }
+
+    /**
+     * Create a size-bounded term cache for the target vocabulary, and register its statistics in JMX. The capacity of
+     * the cache can be configured with the {@code phenotips.vocabularies.<vocabulary name>.cacheCapacity} property in
+     * {@code xwiki.properties}.
+     *
+     * @param vocabularyName the name of the vocabulary being managed
+     * @return the new cache
+     * @throws CacheException if creating the cache fails
+     */
+    private MonitoredTermCache createCache(String vocabularyName) throws CacheException
+    {
+        int capacity = this.configuration.getProperty("phenotips.vocabularies." + vocabularyName + ".cacheCapacity",
+            DEFAULT_CACHE_CAPACITY);
+        LRUEvictionConfiguration eviction = new LRUEvictionConfiguration(capacity);
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(eviction);
+        MonitoredTermCache result =
+            new MonitoredTermCache(this.cacheFactory.<VocabularyTerm>createNewLocalCache(cacheConfiguration), capacity);
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(TermCacheStatistics.JMX_NAME_PREFIX + ObjectName.quote(vocabularyName));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(result, TermCacheStatistics.class), name);
+        } catch (JMException | SecurityException ex) {
+            this.logger.warn("Failed to register the term cache statistics for [{}]: {}", vocabularyName,
+                ex.getMessage());
+        }
+        return result;
+    }
+
     @Override
     public SolrClient getSolrConnection()
     {
         return this.core;
     }
+
+    @Override
+    public SolrClient createReplacementCore()
+    {
+        discardReplacementCore();
+        CoreContainer container = this.cores.getContainer();
+        SolrCore solrCore = container.getCore(this.vocabularyName);
+        if (solrCore == null) {
+            return null;
+        }
+        try {
+            // Alternate between two directories, since the current core keeps its directory until it is swapped out
+            Path defaultDir = getSolrHome().resolve(this.vocabularyName);
+            Path instanceDir = defaultDir.equals(getInstanceDirectory(solrCore))
+                ? getSolrHome().resolve(getReplacementCoreName()) : defaultDir;
+            copyConfiguration(instanceDir);
+            Files.deleteIfExists(instanceDir.resolve(CORE_PROPERTIES));
+            container.create(getReplacementCoreName(), instanceDir, Collections.<String, String>emptyMap());
+            return new EmbeddedSolrServer(container, getReplacementCoreName());
+        } catch (IOException | SolrException ex) {
+            this.logger.warn("Failed to create a replacement core for [{}]: {}", this.vocabularyName,
+                ex.getMessage());
+        } finally {
+            solrCore.close();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean replaceCore()
+    {
+        CoreContainer container = this.cores.getContainer();
+        try {
+            container.swap(this.vocabularyName, getReplacementCoreName());
+            // The old data now lives under the name of the replacement core
+            container.unload(getReplacementCoreName(), true, true, false);
+            this.cache.removeAll();
+            return true;
+        } catch (SolrException ex) {
+            this.logger.error("Failed to replace the core of [{}]: {}", this.vocabularyName, ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public void discardReplacementCore()
+    {
+        CoreContainer container = this.cores.getContainer();
+        try {
+            if (container.getCoreNames().contains(getReplacementCoreName())) {
+                container.unload(getReplacementCoreName(), true, true, false);
+            }
+        } catch (SolrException ex) {
+            this.logger.warn("Failed to discard the replacement core of [{}]: {}", this.vocabularyName,
+                ex.getMessage());
+        }
+    }
+
+    private String getReplacementCoreName()
+    {
+        return this.vocabularyName + REPLACEMENT_CORE_SUFFIX;
+    }
+
+    private Path getSolrHome()
+    {
+        return new File(this.environment.getPermanentDirectory().getAbsolutePath(), "solr").toPath();
+    }
+
+    private Path getInstanceDirectory(SolrCore solrCore)
+    {
+        return Paths.get(solrCore.getResourceLoader().getInstanceDir()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Copy the configuration files bundled for the managed vocabulary into a core directory. The core properties are
+     * not copied, since they identify the core which currently uses the directory.
+     *
+     * @param instanceDir the target core directory
+     * @throws IOException if writing the files fails
+     */
+    private void copyConfiguration(Path instanceDir) throws IOException
+    {
+        Files.createDirectories(instanceDir.resolve("conf"));
+        for (String file : CONFIG_FILES) {
+            if (file.endsWith(CORE_PROPERTIES)) {
+                continue;
+            }
+            try (InputStream in = this.getClass().getResourceAsStream("/" + this.vocabularyName + file)) {
+                if (in != null) {
+                    Files.copy(in, instanceDir.resolve(file.substring(1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
 }
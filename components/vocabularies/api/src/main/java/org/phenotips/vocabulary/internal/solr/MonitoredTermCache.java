@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.TermCacheStatistics;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A term cache that wraps a real cache and counts how many requests were served from the cache, how many missed, and
+ * how many entries were evicted.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public class MonitoredTermCache implements Cache<VocabularyTerm>, TermCacheStatistics
+{
+    /** The real cache. */
+    private final Cache<VocabularyTerm> cache;
+
+    /** @see #getCapacity() */
+    private final int capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Marks explicit removals, so that they aren't counted as evictions by the listener. */
+    private final ThreadLocal<Boolean> removing = new ThreadLocal<>();
+
+    /**
+     * Simple constructor.
+     *
+     * @param cache the real cache to wrap
+     * @param capacity the maximum number of entries that the real cache was configured to hold
+     */
+    public MonitoredTermCache(Cache<VocabularyTerm> cache, int capacity)
+    {
+        this.cache = cache;
+        this.capacity = capacity;
+        this.cache.addCacheEntryListener(new EvictionCounter());
+    }
+
+    @Override
+    public void set(String key, VocabularyTerm value)
+    {
+        this.cache.set(key, value);
+    }
+
+    @Override
+    public VocabularyTerm get(String key)
+    {
+        VocabularyTerm result = this.cache.get(key);
+        if (result == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        this.removing.set(Boolean.TRUE);
+        try {
+            this.cache.remove(key);
+        } finally {
+            this.removing.remove();
+        }
+    }
+
+    @Override
+    public void removeAll()
+    {
+        this.removing.set(Boolean.TRUE);
+        try {
+            this.cache.removeAll();
+        } finally {
+            this.removing.remove();
+        }
+    }
+
+    @Override
+    public void addCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        this.cache.addCacheEntryListener(listener);
+    }
+
+    @Override
+    public void removeCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        this.cache.removeCacheEntryListener(listener);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.cache.dispose();
+    }
+
+    @Override
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    @Override
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long currentHits = this.hits.get();
+        long total = currentHits + this.misses.get();
+        return total == 0 ? 0 : (double) currentHits / total;
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    @Override
+    public void resetStatistics()
+    {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.evictions.set(0);
+    }
+
+    /** Counts entries removed from the cache without an explicit request. */
+    private final class EvictionCounter implements CacheEntryListener<VocabularyTerm>
+    {
+        @Override
+        public void cacheEntryAdded(CacheEntryEvent<VocabularyTerm> event)
+        {
+            // Not interested
+        }
+
+        @Override
+        public void cacheEntryRemoved(CacheEntryEvent<VocabularyTerm> event)
+        {
+            if (MonitoredTermCache.this.removing.get() == null) {
+                MonitoredTermCache.this.evictions.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void cacheEntryModified(CacheEntryEvent<VocabularyTerm> event)
+        {
+            // Not interested
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An immutable, compact snapshot of the structure of an ontology, used for answering structural queries (parents,
+ * ancestors, distance between terms) without querying the Solr index. Each term is assigned an integer index, and the
+ * parent, child and ancestor relations are stored as flattened arrays of indexes, with an offsets array pointing to
+ * where the relations of each term start.
+ *
+ * @version $Id$
+ * @since 1.3M4
+ */
+public final class OntologyGraph
+{
+    /** The identifiers of all the terms, indexed by their assigned integer index. */
+    private final String[] ids;
+
+    /** Reverse mapping from term identifiers to integer indexes. */
+    private final Map<String, Integer> index;
+
+    /** Mapping from alternative identifiers, usually older identifiers of updated terms, to integer indexes. */
+    private final Map<String, Integer> alternativeIndex;
+
+    /** Where the parents of each term start in {@link #parents}; has one more element than the number of terms. */
+    private final int[] parentOffsets;
+
+    /** The parents of all the terms, concatenated. */
+    private final int[] parents;
+
+    /** Where the children of each term start in {@link #children}; has one more element than the number of terms. */
+    private final int[] childOffsets;
+
+    /** The children of all the terms, concatenated. */
+    private final int[] children;
+
+    /** Where the ancestors of each term start in {@link #ancestors}; has one more element than the number of terms. */
+    private final int[] ancestorOffsets;
+
+    /** The sorted ancestors (not including the term itself) of all the terms, concatenated. */
+    private final int[] ancestors;
+
+    private OntologyGraph(String[] ids, Map<String, Integer> index, Map<String, Integer> alternativeIndex,
+        int[][] parentLists)
+    {
+        this.ids = ids;
+        this.index = index;
+        this.alternativeIndex = alternativeIndex;
+        int size = ids.length;
+
+        this.parentOffsets = new int[size + 1];
+        int[] childCounts = new int[size];
+        for (int i = 0; i < size; ++i) {
+            this.parentOffsets[i + 1] = this.parentOffsets[i] + parentLists[i].length;
+            for (int parent : parentLists[i]) {
+                ++childCounts[parent];
+            }
+        }
+        this.parents = new int[this.parentOffsets[size]];
+        for (int i = 0; i < size; ++i) {
+            System.arraycopy(parentLists[i], 0, this.parents, this.parentOffsets[i], parentLists[i].length);
+        }
+
+        this.childOffsets = new int[size + 1];
+        for (int i = 0; i < size; ++i) {
+            this.childOffsets[i + 1] = this.childOffsets[i] + childCounts[i];
+        }
+        this.children = new int[this.childOffsets[size]];
+        int[] childPositions = Arrays.copyOf(this.childOffsets, size);
+        for (int i = 0; i < size; ++i) {
+            for (int parent : parentLists[i]) {
+                this.children[childPositions[parent]++] = i;
+            }
+        }
+
+        int[][] ancestorLists = new int[size][];
+        int[] marks = new int[size];
+        int[] queue = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; ++i) {
+            ancestorLists[i] = computeAncestors(i, marks, queue);
+            total += ancestorLists[i].length;
+        }
+        this.ancestorOffsets = new int[size + 1];
+        this.ancestors = new int[total];
+        for (int i = 0; i < size; ++i) {
+            this.ancestorOffsets[i + 1] = this.ancestorOffsets[i] + ancestorLists[i].length;
+            System.arraycopy(ancestorLists[i], 0, this.ancestors, this.ancestorOffsets[i], ancestorLists[i].length);
+        }
+    }
+
+    /**
+     * Get the number of terms in this graph.
+     *
+     * @return a positive number, or {@code 0} if the graph is empty
+     */
+    public int size()
+    {
+        return this.ids.length;
+    }
+
+    /**
+     * Check if a term is part of this graph.
+     *
+     * @param id the identifier of the term to check
+     * @return {@code true} if the term is known, {@code false} otherwise
+     */
+    public boolean contains(String id)
+    {
+        return id != null && this.index.containsKey(id);
+    }
+
+    /**
+     * Find the current identifier of a term, given either its current identifier, or one of its alternative
+     * identifiers.
+     *
+     * @param id the identifier to resolve
+     * @return the current identifier of the term, or {@code null} if the identifier is unknown
+     */
+    public String resolve(String id)
+    {
+        if (id == null) {
+            return null;
+        }
+        if (this.index.containsKey(id)) {
+            return id;
+        }
+        Integer term = this.alternativeIndex.get(id);
+        return term == null ? null : this.ids[term];
+    }
+
+    /**
+     * Get the direct parents of a term.
+     *
+     * @param id the identifier of the term whose parents are requested
+     * @return the identifiers of the parents, an empty set if the term is unknown or is a root
+     */
+    public Set<String> getParents(String id)
+    {
+        Integer term = this.index.get(id);
+        if (term == null) {
+            return Collections.emptySet();
+        }
+        return toIds(this.parents, this.parentOffsets[term], this.parentOffsets[term + 1], null);
+    }
+
+    /**
+     * Get the direct children of a term.
+     *
+     * @param id the identifier of the term whose children are requested
+     * @return the identifiers of the children, an empty set if the term is unknown or is a leaf
+     */
+    public Set<String> getChildren(String id)
+    {
+        Integer term = this.index.get(id);
+        if (term == null) {
+            return Collections.emptySet();
+        }
+        return toIds(this.children, this.childOffsets[term], this.childOffsets[term + 1], null);
+    }
+
+    /**
+     * Get all the ancestors of a term, not including the term itself.
+     *
+     * @param id the identifier of the term whose ancestors are requested
+     * @return the identifiers of the ancestors, an empty set if the term is unknown or is a root
+     */
+    public Set<String> getAncestors(String id)
+    {
+        Integer term = this.index.get(id);
+        if (term == null) {
+            return Collections.emptySet();
+        }
+        return toIds(this.ancestors, this.ancestorOffsets[term], this.ancestorOffsets[term + 1], null);
+    }
+
+    /**
+     * Get all the ancestors of a term, including the term itself.
+     *
+     * @param id the identifier of the term whose ancestors are requested
+     * @return the identifier of the term followed by the identifiers of its ancestors, an empty set if the term is
+     *         unknown
+     */
+    public Set<String> getAncestorsAndSelf(String id)
+    {
+        Integer term = this.index.get(id);
+        if (term == null) {
+            return Collections.emptySet();
+        }
+        return toIds(this.ancestors, this.ancestorOffsets[term], this.ancestorOffsets[term + 1], this.ids[term]);
+    }
+
+    /**
+     * Find the distance between two terms, as the minimum number of edges that connect the two terms through a common
+     * ancestor.
+     *
+     * @param fromId the identifier of the term that is considered the start point
+     * @param toId the identifier of the term that is considered the end point
+     * @return the minimum number of edges connecting the two terms, or {@code -1} if at least one of the terms is
+     *         unknown or if the terms don't have a common ancestor
+     */
+    public long getDistance(String fromId, String toId)
+    {
+        Integer from = this.index.get(fromId);
+        Integer to = this.index.get(toId);
+        if (from == null || to == null) {
+            return -1;
+        }
+        if (from.intValue() == to.intValue()) {
+            return 0;
+        }
+        int[] fromAncestors = ancestorsAndSelf(from);
+        int[] fromDistances = upwardDistances(from, fromAncestors);
+        int[] toAncestors = ancestorsAndSelf(to);
+        int[] toDistances = upwardDistances(to, toAncestors);
+
+        long result = Long.MAX_VALUE;
+        for (int i = 0; i < fromAncestors.length; ++i) {
+            int j = Arrays.binarySearch(toAncestors, fromAncestors[i]);
+            if (j >= 0) {
+                result = Math.min(result, (long) fromDistances[i] + toDistances[j]);
+            }
+        }
+        return result == Long.MAX_VALUE ? -1 : result;
+    }
+
+    /**
+     * Builds the sorted array of ancestors of a term, including the term itself.
+     *
+     * @param term the index of the target term
+     * @return a new sorted array of indexes
+     */
+    private int[] ancestorsAndSelf(int term)
+    {
+        int start = this.ancestorOffsets[term];
+        int end = this.ancestorOffsets[term + 1];
+        int[] result = new int[end - start + 1];
+        System.arraycopy(this.ancestors, start, result, 0, end - start);
+        result[end - start] = term;
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Computes the distance from a term to each of its ancestors, using a breadth-first traversal of the parent
+     * relation.
+     *
+     * @param term the index of the start term
+     * @param scope the sorted ancestors of the term, including the term itself
+     * @return an array parallel to {@code scope}, holding the distance to each of the ancestors
+     */
+    private int[] upwardDistances(int term, int[] scope)
+    {
+        int[] distances = new int[scope.length];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[scope.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = term;
+        distances[Arrays.binarySearch(scope, term)] = 0;
+        while (head < tail) {
+            int current = queue[head++];
+            int currentDistance = distances[Arrays.binarySearch(scope, current)];
+            for (int p = this.parentOffsets[current]; p < this.parentOffsets[current + 1]; ++p) {
+                int position = Arrays.binarySearch(scope, this.parents[p]);
+                if (distances[position] < 0) {
+                    distances[position] = currentDistance + 1;
+                    queue[tail++] = this.parents[p];
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Computes the transitive closure of the parent relation for one term, during construction.
+     *
+     * @param term the index of the target term
+     * @param marks scratch array shared between calls, marks which terms were already visited for the current term
+     * @param queue scratch array shared between calls, large enough to hold all the terms
+     * @return a sorted array with the indexes of all the ancestors, not including the term itself
+     */
+    private int[] computeAncestors(int term, int[] marks, int[] queue)
+    {
+        int stamp = term + 1;
+        int head = 0;
+        int tail = 0;
+        marks[term] = stamp;
+        for (int p = this.parentOffsets[term]; p < this.parentOffsets[term + 1]; ++p) {
+            if (marks[this.parents[p]] != stamp) {
+                marks[this.parents[p]] = stamp;
+                queue[tail++] = this.parents[p];
+            }
+        }
+        while (head < tail) {
+            int current = queue[head++];
+            for (int p = this.parentOffsets[current]; p < this.parentOffsets[current + 1]; ++p) {
+                if (marks[this.parents[p]] != stamp) {
+                    marks[this.parents[p]] = stamp;
+                    queue[tail++] = this.parents[p];
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(queue, tail);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private Set<String> toIds(int[] source, int start, int end, String first)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        if (first != null) {
+            result.add(first);
+        }
+        for (int i = start; i < end; ++i) {
+            result.add(this.ids[source[i]]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Collects the terms of an ontology, and compiles them into an immutable {@link OntologyGraph}. Parent identifiers
+     * may be specified in the OBO format {@code HP:0000001 ! All}, since everything after the first space is ignored.
+     * Parents that are not themselves added as terms are ignored.
+     *
+     * @version $Id$
+     * @since 1.3M4
+     */
+    public static final class Builder
+    {
+        private final Map<String, Integer> index = new HashMap<>();
+
+        private final List<String> ids = new ArrayList<>();
+
+        private final List<Collection<String>> parents = new ArrayList<>();
+
+        private final Map<String, String> alternatives = new HashMap<>();
+
+        /**
+         * Add a term to the graph.
+         *
+         * @param id the identifier of the term, blank identifiers are ignored
+         * @param parentIds the identifiers of the direct parents of the term, may be {@code null}
+         * @return this builder, for chaining calls
+         */
+        public Builder addTerm(String id, Collection<?> parentIds)
+        {
+            return addTerm(id, parentIds, null);
+        }
+
+        /**
+         * Add a term to the graph.
+         *
+         * @param id the identifier of the term, blank identifiers are ignored
+         * @param parentIds the identifiers of the direct parents of the term, may be {@code null}
+         * @param alternativeIds alternative identifiers of the term, usually older identifiers which were merged into
+         *            this term, may be {@code null}
+         * @return this builder, for chaining calls
+         */
+        public Builder addTerm(String id, Collection<?> parentIds, Collection<?> alternativeIds)
+        {
+            if (StringUtils.isBlank(id) || this.index.containsKey(id)) {
+                return this;
+            }
+            if (alternativeIds != null) {
+                for (Object alternative : alternativeIds) {
+                    this.alternatives.put(String.valueOf(alternative), id);
+                }
+            }
+            this.index.put(id, this.ids.size());
+            this.ids.add(id);
+            Collection<String> cleanParents = new LinkedHashSet<>();
+            if (parentIds != null) {
+                for (Object parent : parentIds) {
+                    cleanParents.add(StringUtils.substringBefore(String.valueOf(parent), " "));
+                }
+            }
+            this.parents.add(cleanParents);
+            return this;
+        }
+
+        /**
+         * Compile the collected terms into a graph.
+         *
+         * @return an immutable graph
+         */
+        public OntologyGraph build()
+        {
+            int size = this.ids.size();
+            int[][] parentLists = new int[size][];
+            for (int i = 0; i < size; ++i) {
+                int[] resolved = new int[this.parents.get(i).size()];
+                int count = 0;
+                for (String parent : this.parents.get(i)) {
+                    Integer parentIndex = this.index.get(parent);
+                    if (parentIndex != null && parentIndex != i) {
+                        resolved[count++] = parentIndex;
+                    }
+                }
+                parentLists[i] = Arrays.copyOf(resolved, count);
+            }
+            Map<String, Integer> alternativeIndex = new HashMap<>();
+            for (Map.Entry<String, String> alternative : this.alternatives.entrySet()) {
+                if (!this.index.containsKey(alternative.getKey())) {
+                    alternativeIndex.put(alternative.getKey(), this.index.get(alternative.getValue()));
+                }
+            }
+            return new OntologyGraph(this.ids.toArray(new String[size]), new HashMap<>(this.index), alternativeIndex,
+                parentLists);
+        }
+    }
+}
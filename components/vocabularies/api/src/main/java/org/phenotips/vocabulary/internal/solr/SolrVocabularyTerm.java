@@ -96,17 +96,33 @@ public SolrVocabularyTerm(SolrDocument doc, Vocabulary ontology)
         this.ontology = ontology;
         if (doc != null) {
             this.removeSelfDuplicate();
-            this.parents = new LazySolrTermSet(doc.getFieldValues(IS_A), ontology);
-            this.ancestors = new LazySolrTermSet(doc.getFieldValues(TERM_CATEGORY), ontology);
-            Collection<Object> termSet = new LinkedHashSet<>();
-            termSet.add(this.getId());
-            if (doc.getFieldValues(TERM_CATEGORY) != null) {
-                termSet.addAll(doc.getFieldValues(TERM_CATEGORY));
+            OntologyGraph graph = null;
+            if (ontology instanceof AbstractOBOSolrVocabulary) {
+                graph = ((AbstractOBOSolrVocabulary) ontology).getGraph();
+            }
+            if (graph != null && graph.contains(this.getId())) {
+                // The compiled structure already knows all the relatives, each set is loaded with a single query
+                this.parents = createTermSet(graph.getParents(this.getId()));
+                this.ancestors = createTermSet(graph.getAncestors(this.getId()));
+                this.ancestorsAndSelf = createTermSet(graph.getAncestorsAndSelf(this.getId()));
+            } else {
+                this.parents = new LazySolrTermSet(doc.getFieldValues(IS_A), ontology);
+                this.ancestors = new LazySolrTermSet(doc.getFieldValues(TERM_CATEGORY), ontology);
+                Collection<Object> termSet = new LinkedHashSet<>();
+                termSet.add(this.getId());
+                if (doc.getFieldValues(TERM_CATEGORY) != null) {
+                    termSet.addAll(doc.getFieldValues(TERM_CATEGORY));
+                }
+                this.ancestorsAndSelf = new LazySolrTermSet(termSet, this.ontology);
             }
-            this.ancestorsAndSelf = new LazySolrTermSet(termSet, this.ontology);
         }
     }
 
+    private Set<VocabularyTerm> createTermSet(Set<String> identifiers)
+    {
+        return new LazySolrTermSet(Collections.<Object>unmodifiableSet(identifiers), this.ontology);
+    }
+
     /**
      * The field "term_category" in {@code this.doc} can contain the term itself. It appears that this only happens with
      * HPO. To avoid this problem, and to avoid writing a separate implementation for HPO specifically, this method
@@ -187,6 +203,13 @@ public long getDistanceTo(final VocabularyTerm other)
             return 0;
         }
 
+        if (this.ontology instanceof AbstractOBOSolrVocabulary) {
+            OntologyGraph graph = ((AbstractOBOSolrVocabulary) this.ontology).getGraph();
+            if (graph != null && graph.contains(getId()) && graph.contains(other.getId())) {
+                return graph.getDistance(getId(), other.getId());
+            }
+        }
+
         long distance = Long.MAX_VALUE;
 
         Map<String, Integer> myLevelMap = new HashMap<>();
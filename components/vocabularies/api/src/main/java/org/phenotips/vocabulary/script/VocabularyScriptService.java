@@ -17,6 +17,7 @@
  */
 package org.phenotips.vocabulary.script;
 
+import org.phenotips.vocabulary.TermCacheStatistics;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
@@ -25,9 +26,15 @@
 import org.xwiki.script.service.ScriptService;
 import org.xwiki.stability.Unstable;
 
+import java.lang.management.ManagementFactory;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 /**
  * Provides access to the available vocabularies and their terms to public scripts.
@@ -85,4 +92,32 @@ public Vocabulary get(String vocabularyId)
     {
         return this.manager.getVocabulary(vocabularyId);
     }
+
+    /**
+     * Retrieve the usage statistics of the term cache of a vocabulary.
+     *
+     * @param vocabularyId the vocabulary identifier, or a {@link Vocabulary#getAliases() known alias} for it, for
+     *            example {@code MIM}, {@code hpo}, {@code HP} or {@code HPO}
+     * @return the cache statistics, or {@code null} if the vocabulary doesn't exist, or it doesn't have a monitored
+     *         cache
+     * @since 1.3M4
+     */
+    public TermCacheStatistics getCacheStatistics(String vocabularyId)
+    {
+        Vocabulary vocabulary = this.manager.getVocabulary(vocabularyId);
+        if (vocabulary == null) {
+            return null;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name =
+                new ObjectName(TermCacheStatistics.JMX_NAME_PREFIX + ObjectName.quote(vocabulary.getIdentifier()));
+            if (server.isRegistered(name)) {
+                return JMX.newMBeanProxy(server, name, TermCacheStatistics.class);
+            }
+        } catch (MalformedObjectNameException ex) {
+            // Shouldn't happen, the name is quoted
+        }
+        return null;
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the shared term loading code in {@link AbstractSolrVocabulary}.
+ */
+public class AbstractSolrVocabularyTest
+{
+    private AbstractSolrVocabulary vocabulary;
+
+    private Cache<VocabularyTerm> cache;
+
+    private SolrClient server;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        this.vocabulary = mock(AbstractSolrVocabulary.class, Mockito.CALLS_REAL_METHODS);
+        doReturn("test").when(this.vocabulary).getCoreName();
+        this.cache = mock(Cache.class);
+        this.server = mock(SolrClient.class);
+        SolrVocabularyResourceManager externalServicesAccess = mock(SolrVocabularyResourceManager.class);
+        when(externalServicesAccess.getTermCache()).thenReturn(this.cache);
+        when(externalServicesAccess.getSolrConnection()).thenReturn(this.server);
+        ReflectionUtils.setFieldValue(this.vocabulary, "externalServicesAccess", externalServicesAccess);
+        ReflectionUtils.setFieldValue(this.vocabulary, "logger", mock(Logger.class));
+    }
+
+    @Test
+    public void manyTermsAreLoadedInSeveralQueries() throws Exception
+    {
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "T1000");
+        SolrDocumentList results = new SolrDocumentList();
+        results.add(doc);
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(results);
+        when(this.server.query(any(SolrParams.class))).thenReturn(response);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1200; ++i) {
+            ids.add("T" + i);
+        }
+
+        Map<String, VocabularyTerm> terms = this.vocabulary.loadTerms(ids);
+
+        ArgumentCaptor<SolrParams> queries = ArgumentCaptor.forClass(SolrParams.class);
+        verify(this.server, times(3)).query(queries.capture());
+        int total = 0;
+        for (SolrParams query : queries.getAllValues()) {
+            int count = StringUtils.split(StringUtils.substringBetween(query.get(CommonParams.Q), "(", ")")).length;
+            assertTrue(count <= 500);
+            total += count;
+        }
+        assertEquals(1200, total);
+        assertEquals(1, terms.size());
+        assertEquals("T1000", terms.get("T1000").getId());
+        verify(this.cache).set("T1000", terms.get("T1000"));
+        verify(this.cache).set("T0", AbstractSolrVocabulary.EMPTY_MARKER);
+        verify(this.cache).set("T1199", AbstractSolrVocabulary.EMPTY_MARKER);
+    }
+}
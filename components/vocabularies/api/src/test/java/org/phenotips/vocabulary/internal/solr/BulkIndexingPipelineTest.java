@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link BulkIndexingPipeline}.
+ */
+public class BulkIndexingPipelineTest
+{
+    private static final BulkIndexingPipeline.DocumentBuilder<Integer> BUILDER =
+        new BulkIndexingPipeline.DocumentBuilder<Integer>()
+        {
+            @Override
+            public SolrInputDocument build(Integer item)
+            {
+                if (item % 10 == 0) {
+                    return null;
+                }
+                SolrInputDocument doc = new SolrInputDocument();
+                doc.addField("id", item);
+                return doc;
+            }
+        };
+
+    private SolrClient server;
+
+    private List<Object> added = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.server = mock(SolrClient.class);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                @SuppressWarnings("unchecked")
+                Collection<SolrInputDocument> batch = (Collection<SolrInputDocument>) invocation.getArguments()[0];
+                for (SolrInputDocument doc : batch) {
+                    BulkIndexingPipelineTest.this.added.add(doc.getFieldValue("id"));
+                }
+                return null;
+            }
+        }).when(this.server).add(Matchers.anyCollectionOf(SolrInputDocument.class));
+    }
+
+    @Test
+    public void documentsAreAddedInBatchesAndCommittedOnce() throws Exception
+    {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 1; i <= 250; ++i) {
+            source.add(i);
+        }
+        int count = new BulkIndexingPipeline<>(this.server, BUILDER, 100, 4).run(source.iterator());
+
+        assertEquals(225, count);
+        assertEquals(225, this.added.size());
+        assertEquals(1, this.added.get(0));
+        assertEquals(11, this.added.get(9));
+        InOrder order = inOrder(this.server);
+        order.verify(this.server, times(3)).add(Matchers.anyCollectionOf(SolrInputDocument.class));
+        order.verify(this.server).commit();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void buildFailuresAbortIndexing() throws Exception
+    {
+        List<Integer> source = new ArrayList<>();
+        for (int i = 1; i <= 250; ++i) {
+            source.add(i);
+        }
+        try {
+            new BulkIndexingPipeline<>(this.server, new BulkIndexingPipeline.DocumentBuilder<Integer>()
+            {
+                @Override
+                public SolrInputDocument build(Integer item)
+                {
+                    throw new IllegalStateException();
+                }
+            }, 100, 2).run(source.iterator());
+        } finally {
+            verify(this.server, never()).commit();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MonitoredTermCache}.
+ */
+public class MonitoredTermCacheTest
+{
+    private Cache<VocabularyTerm> realCache;
+
+    private MonitoredTermCache cache;
+
+    private CacheEntryListener<VocabularyTerm> listener;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Before
+    public void setUp()
+    {
+        this.realCache = mock(Cache.class);
+        this.cache = new MonitoredTermCache(this.realCache, 100);
+        ArgumentCaptor<CacheEntryListener> captor = ArgumentCaptor.forClass(CacheEntryListener.class);
+        verify(this.realCache).addCacheEntryListener(captor.capture());
+        this.listener = captor.getValue();
+    }
+
+    @Test
+    public void hitsAndMissesAreCounted()
+    {
+        when(this.realCache.get("HP:0000001")).thenReturn(mock(VocabularyTerm.class));
+        this.cache.get("HP:0000001");
+        this.cache.get("HP:0000001");
+        this.cache.get("HP:0000002");
+        assertEquals(2, this.cache.getHits());
+        assertEquals(1, this.cache.getMisses());
+        assertEquals(2.0 / 3, this.cache.getHitRatio(), 0.0001);
+        assertEquals(100, this.cache.getCapacity());
+
+        this.cache.resetStatistics();
+        assertEquals(0, this.cache.getHits());
+        assertEquals(0, this.cache.getMisses());
+        assertEquals(0, this.cache.getHitRatio(), 0.0001);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void onlyImplicitRemovalsAreCountedAsEvictions()
+    {
+        final CacheEntryEvent<VocabularyTerm> event = mock(CacheEntryEvent.class);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                MonitoredTermCacheTest.this.listener.cacheEntryRemoved(event);
+                return null;
+            }
+        }).when(this.realCache).remove(any(String.class));
+
+        this.cache.remove("HP:0000001");
+        assertEquals(0, this.cache.getEvictions());
+
+        this.listener.cacheEntryRemoved(event);
+        assertEquals(1, this.cache.getEvictions());
+    }
+}
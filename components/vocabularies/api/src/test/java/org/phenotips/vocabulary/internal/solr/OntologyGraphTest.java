@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OntologyGraph}.
+ */
+public class OntologyGraphTest
+{
+    private OntologyGraph graph;
+
+    @Before
+    public void setUp()
+    {
+        // T0 <- T1 <- T2 <- T3, T0 <- T4 <- T3, T5 isolated
+        this.graph = new OntologyGraph.Builder()
+            .addTerm("T3", Arrays.asList("T2 ! Term 2", "T4"))
+            .addTerm("T0", null)
+            .addTerm("T1", Collections.singleton("T0"))
+            .addTerm("T2", Collections.singleton("T1"))
+            .addTerm("T4", Collections.singleton("T0 ! Root"), Arrays.asList("T6", "T7"))
+            .addTerm("T5", Collections.singleton("T9"))
+            .build();
+    }
+
+    @Test
+    public void structureIsCompiled()
+    {
+        assertEquals(6, this.graph.size());
+        assertTrue(this.graph.contains("T3"));
+        assertFalse(this.graph.contains("T9"));
+        assertEquals(set("T2", "T4"), this.graph.getParents("T3"));
+        assertEquals(set("T1", "T4"), this.graph.getChildren("T0"));
+        assertEquals(set("T0", "T1", "T2", "T4"), this.graph.getAncestors("T3"));
+        assertEquals(set("T3", "T0", "T1", "T2", "T4"), this.graph.getAncestorsAndSelf("T3"));
+        assertTrue(this.graph.getAncestors("T5").isEmpty());
+        assertTrue(this.graph.getAncestors("T9").isEmpty());
+    }
+
+    @Test
+    public void distanceUsesShortestPathThroughCommonAncestor()
+    {
+        assertEquals(0, this.graph.getDistance("T3", "T3"));
+        assertEquals(2, this.graph.getDistance("T3", "T0"));
+        assertEquals(2, this.graph.getDistance("T0", "T3"));
+        assertEquals(3, this.graph.getDistance("T2", "T4"));
+        assertEquals(1, this.graph.getDistance("T2", "T3"));
+        assertEquals(-1, this.graph.getDistance("T3", "T5"));
+        assertEquals(-1, this.graph.getDistance("T3", "T9"));
+    }
+
+    @Test
+    public void alternativeIdentifiersAreResolved()
+    {
+        assertEquals("T4", this.graph.resolve("T4"));
+        assertEquals("T4", this.graph.resolve("T6"));
+        assertEquals("T4", this.graph.resolve("T7"));
+        assertNull(this.graph.resolve("T9"));
+        assertNull(this.graph.resolve(null));
+        assertFalse(this.graph.contains("T6"));
+    }
+
+    private static Set<String> set(String... ids)
+    {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+}
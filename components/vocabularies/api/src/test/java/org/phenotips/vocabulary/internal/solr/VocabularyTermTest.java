@@ -20,13 +20,20 @@
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 
 import org.apache.solr.common.SolrDocument;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -65,4 +72,37 @@ public void testDistanceToRootTerm()
         assertEquals(3, childTerm.getDistanceTo(rootTerm));
         assertEquals(3, rootTerm.getDistanceTo(childTerm));
     }
+
+    @Test
+    public void relativesAreTakenFromTheGraph()
+    {
+        AbstractOBOSolrVocabulary vocabulary = mock(AbstractOBOSolrVocabulary.class);
+        // T0 <- T1 <- T3, T0 <- T2 <- T3
+        when(vocabulary.getGraph()).thenReturn(new OntologyGraph.Builder()
+            .addTerm("T0", null)
+            .addTerm("T1", Collections.singleton("T0"))
+            .addTerm("T2", Collections.singleton("T0"))
+            .addTerm("T3", Arrays.asList("T1", "T2"))
+            .build());
+
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "T3");
+        // Outdated structure stored in the document, which must be ignored
+        doc.setField("is_a", Collections.singleton("T1"));
+        doc.setField("term_category", Collections.singleton("T1"));
+        VocabularyTerm term = new SolrVocabularyTerm(doc, vocabulary);
+
+        assertEquals(2, term.getParents().size());
+        assertTrue(term.getParents().containsAll(Arrays.asList("T1", "T2")));
+        assertEquals(3, term.getAncestors().size());
+        assertTrue(term.getAncestors().containsAll(Arrays.asList("T0", "T1", "T2")));
+        assertEquals(4, term.getAncestorsAndSelf().size());
+        assertTrue(term.getAncestorsAndSelf().contains("T3"));
+        verify(vocabulary, never()).getTerms(anyCollectionOf(String.class));
+
+        Collection<String> ancestors = new LinkedHashSet<>(Arrays.asList("T0", "T1", "T2"));
+        when(vocabulary.getTerms(ancestors)).thenReturn(Collections.<VocabularyTerm>emptySet());
+        term.getAncestors().iterator();
+        verify(vocabulary).getTerms(anyCollectionOf(String.class));
+    }
 }
@@ -38,6 +38,7 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -190,6 +191,28 @@ public Set<VocabularyTerm> getTerms(Collection<String> ids)
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The remote service can only fetch one gene at a time, so, unlike the Solr based vocabularies, this deliberately
+     * falls back to looking up each identifier with {@link #getTerm(String)}. Genes are cached, including the ones that
+     * don't exist, so repeated lookups of the same genes don't reach the remote service again.
+     * </p>
+     */
+    @Override
+    public Map<String, Set<String>> getAncestorsAndSelf(Collection<String> ids)
+    {
+        // Flat nomenclature, each gene is its own and only ancestor
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            VocabularyTerm term = getTerm(id);
+            if (term != null) {
+                result.put(id, Collections.singleton(term.getId()));
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<VocabularyTerm> search(Map<String, ?> fieldValues)
     {